@@ -20,6 +20,7 @@ import ij.process.ColorProcessor;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.WritableRaster;
+import java.io.IOException;
 
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
 
@@ -88,6 +89,55 @@ public class ArgbRenderer {
         Renderer.renderToBufferedImage(renderParameters, targetImage, imageProcessorCache, CONVERTER);
     }
 
+    /**
+     * Constructs a renderer instance and renders horizontal strips of the target image one at a time
+     * so that the full target image never needs to be held in memory.
+     *
+     * @param  renderParameters     specifies what to render
+     *                              (see {@link Renderer#isStripRenderingSupported}).
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  stripHeight          number of target image rows in each strip.
+     * @param  startRow             index of the first target image row to render
+     *                              (e.g. to continue after a first strip rendered by {@link #renderStrip}).
+     * @param  stripConsumer        consumer for rendered strips (called in row order).
+     *
+     * @throws IllegalArgumentException
+     *   if rendering fails for any reason.
+     *
+     * @throws IOException
+     *   if the consumer fails to process a strip.
+     */
+    public static void renderStrips(final RenderParameters renderParameters,
+                                    final ImageProcessorCache imageProcessorCache,
+                                    final int stripHeight,
+                                    final int startRow,
+                                    final Renderer.StripConsumer stripConsumer)
+            throws IllegalArgumentException, IOException {
+        Renderer.renderStrips(renderParameters, imageProcessorCache, CONVERTER, stripHeight, startRow, stripConsumer);
+    }
+
+    /**
+     * Constructs a renderer instance and renders one horizontal strip of the target image.
+     *
+     * @param  renderParameters     specifies what to render
+     *                              (see {@link Renderer#isStripRenderingSupported}).
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  firstRow             index of the strip's first row within the full target image.
+     * @param  numberOfRows         number of rows in the strip.
+     *
+     * @return the rendered strip.
+     *
+     * @throws IllegalArgumentException
+     *   if rendering fails for any reason.
+     */
+    public static BufferedImage renderStrip(final RenderParameters renderParameters,
+                                            final ImageProcessorCache imageProcessorCache,
+                                            final int firstRow,
+                                            final int numberOfRows)
+            throws IllegalArgumentException {
+        return Renderer.renderStrip(renderParameters, imageProcessorCache, CONVERTER, firstRow, numberOfRows);
+    }
+
     /**
      * Constructs a renderer instance and saves the rendered result to disk.
      * This is basically the 'main' method but it has been extracted so that it can be more easily used for tests.
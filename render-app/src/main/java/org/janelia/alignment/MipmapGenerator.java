@@ -14,10 +14,15 @@ import java.math.BigInteger;
 import java.net.URI;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -50,6 +55,10 @@ import org.slf4j.LoggerFactory;
  * level and format of the mipmap
  * (e.g. /groups/saalfeld/generated-mipmaps/groups/saalfeld/raw-data/stack-1/file1.tif_level_2_mipmap.jpg).
  *
+ * Missing mipmaps for a tile are generated as a cascade: the source image (and mask) is decoded once
+ * and then down-sampled in memory for each successive level.  If the generator is constructed with a
+ * writer service, each level is encoded and written asynchronously while the next level is being down-sampled.
+ *
  * @author Eric Trautman
  */
 public class MipmapGenerator {
@@ -58,6 +67,7 @@ public class MipmapGenerator {
 
         File outputFile = null;
         FileOutputStream outputStream = null;
+        ExecutorService writerService = null;
         long tileCount = 0;
         try {
 
@@ -73,10 +83,14 @@ public class MipmapGenerator {
 
                 params.validate();
 
+                // even a single writer thread lets each level be written while the next level is down-sampled
+                writerService = Executors.newFixedThreadPool(params.getNumberOfWriterThreads());
+
                 final MipmapGenerator mipmapGenerator = new MipmapGenerator(params.getRootDirectory(),
                                                                             params.getFormat(),
                                                                             params.getQuality(),
-                                                                            params.consolidateMasks());
+                                                                            params.consolidateMasks(),
+                                                                            writerService);
 
                 final int mipmapLevel = params.getMipmapLevel();
                 final boolean forceBoxCalculation =  params.forceBoxCalculation();
@@ -124,6 +138,9 @@ public class MipmapGenerator {
                 }
 
             }
+            if (writerService != null) {
+                writerService.shutdown();
+            }
         }
     }
 
@@ -131,6 +148,7 @@ public class MipmapGenerator {
     private final String format;
     private final float jpegQuality;
     private final boolean consolidateMasks;
+    private final ExecutorService writerService;
     private MessageDigest messageDigest;
     private Map<String, File> sourceDigestToMaskMipmapBaseFileMap;
 
@@ -146,10 +164,29 @@ public class MipmapGenerator {
                            final String format,
                            final float jpegQuality,
                            final boolean consolidateMasks) {
+        this(rootDirectory, format, jpegQuality, consolidateMasks, null);
+    }
+
+    /**
+     * Constructs a generator for use with a specific base path that writes mipmap files asynchronously.
+     *
+     * @param  rootDirectory     the root directory for all generated mipmap files.
+     * @param  format            the format for all generated mipmap files.
+     * @param  jpegQuality       the jpg quality factor (0.0 to 1.0) which is only used when generating jpg mipmaps.
+     * @param  consolidateMasks  if true, consolidate equivalent zipped TrakEM2 mask files.
+     * @param  writerService     service for writing mipmap files
+     *                           (or null to write files in the calling thread).
+     */
+    public MipmapGenerator(final File rootDirectory,
+                           final String format,
+                           final float jpegQuality,
+                           final boolean consolidateMasks,
+                           final ExecutorService writerService) {
         this.rootDirectory = rootDirectory;
         this.format = format;
         this.jpegQuality = jpegQuality;
         this.consolidateMasks = consolidateMasks;
+        this.writerService = writerService;
 
         if (consolidateMasks) {
             try {
@@ -165,6 +202,9 @@ public class MipmapGenerator {
      * Examines the specified tile specification and generates any missing image and/or mask mipmaps
      * for all levels less than or equal to the specified greatest level.
      *
+     * The source for the first missing level is decoded once and all subsequent missing levels are
+     * down-sampled in memory from the prior level.  All mipmap files have been written when this method returns.
+     *
      * @param  tileSpec             the source tile specification which must include at least a
      *                              level zero image mipmap.
      *
@@ -180,54 +220,86 @@ public class MipmapGenerator {
                                            final int greatestMipmapLevel)
             throws IllegalArgumentException, IOException {
 
-        for (final ChannelSpec channelSpec : tileSpec.getAllChannels()) {
-            ImageAndMask imageAndMask = channelSpec.getMipmap(0);
+        final List<Future<?>> pendingWrites = new ArrayList<>();
 
-            if ((imageAndMask == null) || (!imageAndMask.hasImage())) {
-                throw new IllegalArgumentException("level 0 mipmap is missing from " + tileSpec);
-            }
+        try {
 
-            final File imageMipmapBaseFile = getMipmapBaseFile(imageAndMask.getImageUrl(), true);
+            for (final ChannelSpec channelSpec : tileSpec.getAllChannels()) {
+                ImageAndMask imageAndMask = channelSpec.getMipmap(0);
 
-            File maskMipmapBaseFile = null;
-            final boolean hasMask = imageAndMask.hasMask();
-            if (hasMask) {
+                if ((imageAndMask == null) || (!imageAndMask.hasImage())) {
+                    throw new IllegalArgumentException("level 0 mipmap is missing from " + tileSpec);
+                }
 
-                maskMipmapBaseFile = getMipmapBaseFile(imageAndMask.getMaskUrl(), true);
+                final File imageMipmapBaseFile = getMipmapBaseFile(imageAndMask.getImageUrl(), true);
 
-                if (consolidateMasks) {
-                    final File sourceMaskFile = getFileForUrlString(imageAndMask.getMaskUrl());
-                    final String sourceDigest = getDigest(sourceMaskFile);
-                    if (sourceDigestToMaskMipmapBaseFileMap.containsKey(sourceDigest)) {
-                        maskMipmapBaseFile = sourceDigestToMaskMipmapBaseFileMap.get(sourceDigest);
-                    } else {
-                        sourceDigestToMaskMipmapBaseFileMap.put(sourceDigest, maskMipmapBaseFile);
+                File maskMipmapBaseFile = null;
+                final boolean hasMask = imageAndMask.hasMask();
+                if (hasMask) {
+
+                    maskMipmapBaseFile = getMipmapBaseFile(imageAndMask.getMaskUrl(), true);
+
+                    if (consolidateMasks) {
+                        final File sourceMaskFile = getFileForUrlString(imageAndMask.getMaskUrl());
+                        final String sourceDigest = getDigest(sourceMaskFile);
+                        if (sourceDigestToMaskMipmapBaseFileMap.containsKey(sourceDigest)) {
+                            maskMipmapBaseFile = sourceDigestToMaskMipmapBaseFileMap.get(sourceDigest);
+                        } else {
+                            sourceDigestToMaskMipmapBaseFileMap.put(sourceDigest, maskMipmapBaseFile);
+                        }
                     }
+
                 }
 
-            }
+                // processors for the most recently down-sampled level (only loaded when needed)
+                ImageProcessor imageProcessor = null;
+                ImageProcessor maskProcessor = null;
+                int processorLevel = -1;
 
-            File imageMipmapFile;
-            File maskMipmapFile;
-            for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
-                if (! channelSpec.hasMipmap(mipmapLevel)) {
-                    imageMipmapFile = getMipmapFile(imageMipmapBaseFile, mipmapLevel);
-                    generateMipmapFile(imageAndMask.getImageUrl(), imageMipmapFile, 1);
+                File imageMipmapFile;
+                File maskMipmapFile;
+                for (int mipmapLevel = 1; mipmapLevel <= greatestMipmapLevel; mipmapLevel++) {
+                    if (! channelSpec.hasMipmap(mipmapLevel)) {
+                        imageMipmapFile = getMipmapFile(imageMipmapBaseFile, mipmapLevel);
+                        maskMipmapFile = hasMask ? getMipmapFile(maskMipmapBaseFile, mipmapLevel) : null;
 
-                    if (hasMask) {
-                        maskMipmapFile = getMipmapFile(maskMipmapBaseFile, mipmapLevel);
-                        generateMipmapFile(imageAndMask.getMaskUrl(), maskMipmapFile, 1);
-                    } else {
-                        maskMipmapFile = null;
-                    }
+                        final boolean isImageMissing = ! imageMipmapFile.exists();
+                        final boolean isMaskMissing = hasMask && (! maskMipmapFile.exists());
+
+                        if (isImageMissing || isMaskMissing) {
+
+                            if (processorLevel != (mipmapLevel - 1)) {
+                                // prior level was not generated here, so decode it from its source
+                                imageProcessor = loadImageProcessor(imageAndMask.getImageUrl());
+                                maskProcessor = hasMask ? loadImageProcessor(imageAndMask.getMaskUrl()) : null;
+                            }
+
+                            imageProcessor = Downsampler.downsampleImageProcessor(imageProcessor, 1);
+                            if (isImageMissing) {
+                                writeMipmapFile(imageProcessor, imageMipmapFile, pendingWrites);
+                            }
+
+                            if (hasMask) {
+                                maskProcessor = Downsampler.downsampleImageProcessor(maskProcessor, 1);
+                                if (isMaskMissing) {
+                                    writeMipmapFile(maskProcessor, maskMipmapFile, pendingWrites);
+                                }
+                            }
+
+                            processorLevel = mipmapLevel;
+                        }
 
-                    imageAndMask = new ImageAndMask(imageMipmapFile, maskMipmapFile);
-                    channelSpec.putMipmap(mipmapLevel, imageAndMask);
+                        imageAndMask = new ImageAndMask(imageMipmapFile, maskMipmapFile);
+                        channelSpec.putMipmap(mipmapLevel, imageAndMask);
 
-                } else {
-                    imageAndMask = channelSpec.getMipmap(mipmapLevel);
+                    } else {
+                        imageAndMask = channelSpec.getMipmap(mipmapLevel);
+                    }
                 }
             }
+
+        } finally {
+            waitForWrites(pendingWrites);
         }
     }
 
@@ -280,26 +352,75 @@ public class MipmapGenerator {
         return new File(mipmapBaseFile.getAbsolutePath() + "_level_" + mipmapLevel + "_mipmap." + format);
     }
 
-    private void generateMipmapFile(final String sourceUrl,
-                                    final File targetMipmapFile,
-                                    final int mipmapLevelDelta)
+    private ImageProcessor loadImageProcessor(final String sourceUrl)
+            throws IllegalArgumentException {
+        final ImagePlus sourceImagePlus = Utils.openImagePlusUrl(sourceUrl);
+        if (sourceImagePlus == null) {
+            throw new IllegalArgumentException("failed to load '" + sourceUrl + "' for scaling");
+        }
+        return sourceImagePlus.getProcessor();
+    }
+
+    /**
+     * Converts the specified processor and then writes it to the target file,
+     * asynchronously if this generator has a writer service.
+     * Down-sampling always creates a new processor, so the converted image is never modified after submission.
+     */
+    private void writeMipmapFile(final ImageProcessor downSampledProcessor,
+                                 final File targetMipmapFile,
+                                 final List<Future<?>> pendingWrites)
             throws IOException {
 
-        if (! targetMipmapFile.exists()) {
-            FileOutputStream outputStream = null;
+        final BufferedImage downSampledImage = downSampledProcessor.getBufferedImage();
+
+        if (writerService == null) {
+            writeImageFile(downSampledImage, targetMipmapFile);
+        } else {
+            pendingWrites.add(writerService.submit(() -> {
+                writeImageFile(downSampledImage, targetMipmapFile);
+                return null;
+            }));
+        }
+    }
+
+    private void writeImageFile(final BufferedImage image,
+                                final File targetMipmapFile)
+            throws IOException {
+
+        try (final FileOutputStream outputStream = new FileOutputStream(targetMipmapFile)) {
+            final ImageOutputStream imageOutputStream = new MemoryCacheImageOutputStream(outputStream);
+            Utils.writeImage(image, format, false, jpegQuality, imageOutputStream);
+        }
+    }
+
+    /**
+     * Waits for all pending writes to finish (even if some of them fail).
+     *
+     * @throws IOException
+     *   if any write failed or the wait was interrupted.
+     */
+    private void waitForWrites(final List<Future<?>> pendingWrites)
+            throws IOException {
+
+        IOException firstFailure = null;
+        for (final Future<?> pendingWrite : pendingWrites) {
             try {
-                outputStream = new FileOutputStream(targetMipmapFile);
-                generateMipmap(sourceUrl, mipmapLevelDelta, format, jpegQuality, outputStream);
-            } finally {
-                if (outputStream != null) {
-                    try {
-                        outputStream.close();
-                    } catch (final Throwable t) {
-                        LOG.warn("failed to close " + targetMipmapFile.getAbsolutePath() + " (ignoring error)", t);
-                    }
+                pendingWrite.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for mipmap files to be written", e);
+            } catch (final ExecutionException e) {
+                if (firstFailure == null) {
+                    final Throwable cause = e.getCause();
+                    firstFailure = (cause instanceof IOException) ? (IOException) cause :
+                                   new IOException("failed to write mipmap file", cause);
                 }
             }
         }
+
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
     }
 
     private String getDigest(final File file)
@@ -64,6 +64,9 @@ public class MipmapGeneratorParameters {
     @Parameter(names = "--force_box", description = "Force calculation of tile bounding box attributes", required = false)
     private final boolean forceBoxCalculation;
 
+    @Parameter(names = "--writer_threads", description = "Number of asynchronous writer threads", required = false)
+    private final int numberOfWriterThreads;
+
     /** List of tile specifications parsed from --url or deserialized directly from json. */
     private List<TileSpec> tileSpecs;
 
@@ -90,6 +93,7 @@ public class MipmapGeneratorParameters {
         this.outputFileName = null;
         this.consolidateMasks = false;
         this.forceBoxCalculation = false;
+        this.numberOfWriterThreads = DEFAULT_NUMBER_OF_WRITER_THREADS;
 
         this.tileSpecs = new ArrayList<>();
         this.transformIdToSpecMap = new HashMap<>();
@@ -239,6 +243,10 @@ public class MipmapGeneratorParameters {
         return forceBoxCalculation;
     }
 
+    public int getNumberOfWriterThreads() {
+        return numberOfWriterThreads;
+    }
+
     public boolean hasTileSpecs() {
         return ((tileSpecs != null) && (tileSpecs.size() > 0));
     }
@@ -291,6 +299,11 @@ public class MipmapGeneratorParameters {
             throw new IllegalArgumentException("quality (" + quality + ") should be between 0.0 and 1.0");
         }
 
+        if (numberOfWriterThreads < 1) {
+            throw new IllegalArgumentException("number of writer threads (" + numberOfWriterThreads +
+                                               ") should be greater than 0");
+        }
+
         final File outputFile = getOutputFile();
         if (outputFile.exists()) {
             if (! rootDirectory.canWrite()) {
@@ -327,6 +340,7 @@ public class MipmapGeneratorParameters {
                ", url='" + url + '\'' +
                ", outputFileName='" + outputFileName + '\'' +
                ", consolidateMasks=" + consolidateMasks +
+               ", numberOfWriterThreads=" + numberOfWriterThreads +
                ", numberOfTileSpecs=" + numberOfTileSpecs() +
                ", initialized=" + initialized +
                '}';
@@ -450,4 +464,5 @@ public class MipmapGeneratorParameters {
 
     private static final int DEFAULT_MIPMAP_LEVEL = 3;
     private static final float DEFAULT_QUALITY = 0.85f;
+    private static final int DEFAULT_NUMBER_OF_WRITER_THREADS = 1;
 }
@@ -17,14 +17,15 @@
 package org.janelia.alignment;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import mpicbg.models.AffineModel2D;
+import mpicbg.models.NoninvertibleModelException;
 import mpicbg.trakem2.util.Pair;
 import mpicbg.util.Util;
 
 import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.util.MappingThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,10 +35,57 @@ import org.slf4j.LoggerFactory;
  */
 public class RenderTransformMeshMappingWithMasks {
 
+    /**
+     * Supported approaches for rasterizing the target triangles of a mesh.
+     */
+    public enum Engine {
+
+        /**
+         * Tests every pixel in each triangle's bounding box for containment and
+         * inverse transforms each contained pixel separately.
+         */
+        BOUNDING_BOX,
+
+        /**
+         * Derives the contained span of each triangle row once and steps source coordinates
+         * incrementally across the span (possible because each triangle's transform is affine).
+         * Pixel coverage is identical to {@link #BOUNDING_BOX} but source coordinates may differ
+         * by floating point rounding error.
+         */
+        SCANLINE
+    }
+
+    /** Name of system property that specifies the default {@link Engine} for all mappings. */
+    public static final String ENGINE_PROPERTY = "render.mappingEngine";
+
     private final RenderTransformMesh transform;
+    private final Engine engine;
 
     public RenderTransformMeshMappingWithMasks(final RenderTransformMesh transform) {
+        this(transform, getDefaultEngine());
+    }
+
+    public RenderTransformMeshMappingWithMasks(final RenderTransformMesh transform,
+                                               final Engine engine) {
         this.transform = transform;
+        this.engine = engine;
+    }
+
+    /**
+     * @return the engine specified by the {@value #ENGINE_PROPERTY} system property
+     *         or {@link Engine#BOUNDING_BOX} if that property is not defined.
+     *
+     * @throws IllegalArgumentException
+     *   if the property value is not a valid engine name.
+     */
+    public static Engine getDefaultEngine()
+            throws IllegalArgumentException {
+        final String engineName = System.getProperty(ENGINE_PROPERTY);
+        return engineName == null ? Engine.BOUNDING_BOX : Engine.valueOf(engineName.toUpperCase());
+    }
+
+    public Engine getEngine() {
+        return engine;
     }
 
     public final void map(final PixelMapper pixelMapper) {
@@ -47,48 +95,20 @@ public class RenderTransformMeshMappingWithMasks {
     public final void map(final PixelMapper pixelMapper,
                           final int numThreads) {
 
+        final Consumer<Pair<AffineModel2D, double[][]>> triangleMapper;
+        if (engine == Engine.SCANLINE) {
+            triangleMapper = triangle -> mapTriangleScanlines(triangle, pixelMapper);
+        } else {
+            triangleMapper = triangle -> mapTriangle(triangle, pixelMapper);
+        }
+
         final ArrayList<Pair<AffineModel2D, double[][]>> av = transform.getAV();
         if (numThreads > 1) {
-            final AtomicInteger i = new AtomicInteger(0);
-            final ArrayList<Thread> threads = new ArrayList<>(numThreads);
-            for (int k = 0; k < numThreads; ++k) {
-                final Thread mtt = new MapTriangleThread(i, av, pixelMapper);
-                threads.add(mtt);
-                mtt.start();
-            }
-            for (final Thread mtt : threads) {
-                try {
-                    mtt.join();
-                } catch (final InterruptedException e) {
-                    LOG.warn("ignoring exception", e);
-                }
-            }
+            // use shared pool to avoid creating new threads for every mapped tile
+            MappingThreadPool.getSharedInstance().forEach(av, numThreads, triangleMapper);
         } else {
             for (final Pair<AffineModel2D, double[][]> triangle : av) {
-                mapTriangle(triangle, pixelMapper);
-            }
-        }
-    }
-
-    private static final class MapTriangleThread extends Thread {
-        private final AtomicInteger i;
-        private final List<Pair<AffineModel2D, double[][]>> triangles;
-        private final PixelMapper pixelMapper;
-
-        MapTriangleThread(final AtomicInteger i,
-                          final List<Pair<AffineModel2D, double[][]>> triangles,
-                          final PixelMapper pixelMapper) {
-            this.i = i;
-            this.triangles = triangles;
-            this.pixelMapper = pixelMapper;
-        }
-
-        @Override
-        final public void run() {
-            int k = i.getAndIncrement();
-            while (!isInterrupted() && k < triangles.size()) {
-                mapTriangle(triangles.get(k), pixelMapper);
-                k = i.getAndIncrement();
+                triangleMapper.accept(triangle);
             }
         }
     }
@@ -101,16 +121,15 @@ public class RenderTransformMeshMappingWithMasks {
 
         final double[][] pq = ai.b;
 
-        final double[] min = new double[2];
-        final double[] max = new double[2];
-        RenderTransformMesh.calculateTargetBoundingBox(pq, min, max);
-
-        final int minX = Math.max(0, Util.roundPos(min[0]));
-        final int minY = Math.max(0, Util.roundPos(min[1]));
-        final int maxX = Math.min(w, Util.roundPos(max[0]));
-        final int maxY = Math.min(h, Util.roundPos(max[1]));
+        // target bounding box (same as RenderTransformMesh.calculateTargetBoundingBox without the array allocations)
+        final double[] targetXs = pq[2];
+        final double[] targetYs = pq[3];
+        final int minX = Math.max(0, Util.roundPos(Math.min(targetXs[0], Math.min(targetXs[1], targetXs[2]))));
+        final int minY = Math.max(0, Util.roundPos(Math.min(targetYs[0], Math.min(targetYs[1], targetYs[2]))));
+        final int maxX = Math.min(w, Util.roundPos(Math.max(targetXs[0], Math.max(targetXs[1], targetXs[2]))));
+        final int maxY = Math.min(h, Util.roundPos(Math.max(targetYs[0], Math.max(targetYs[1], targetYs[2]))));
 
-        final double[] source = new double[2];
+        final double[] source = SOURCE_LOCATION.get();
 
         if (pixelMapper.isMappingInterpolated()) {
 
@@ -159,5 +178,149 @@ public class RenderTransformMeshMappingWithMasks {
         }
     }
 
+    private static void mapTriangleScanlines(final Pair<AffineModel2D, double[][]> ai,
+                                             final PixelMapper pixelMapper) {
+
+        final int w = pixelMapper.getTargetWidth() - 1;
+        final int h = pixelMapper.getTargetHeight() - 1;
+
+        final double[][] pq = ai.b;
+
+        final double[] targetXs = pq[2];
+        final double[] targetYs = pq[3];
+        final int minX = Math.max(0, Util.roundPos(Math.min(targetXs[0], Math.min(targetXs[1], targetXs[2]))));
+        final int minY = Math.max(0, Util.roundPos(Math.min(targetYs[0], Math.min(targetYs[1], targetYs[2]))));
+        final int maxX = Math.min(w, Util.roundPos(Math.max(targetXs[0], Math.max(targetXs[1], targetXs[2]))));
+        final int maxY = Math.min(h, Util.roundPos(Math.max(targetYs[0], Math.max(targetYs[1], targetYs[2]))));
+
+        if ((minX > maxX) || (minY > maxY)) {
+            return;
+        }
+
+        final double[] source = SOURCE_LOCATION.get();
+        final boolean isMappingInterpolated = pixelMapper.isMappingInterpolated();
+
+        try {
+
+            // the inverse transform is affine, so the source step for each target x step is constant
+            final int deltaSpan = Math.max(1, maxX - minX);
+            source[0] = minX;
+            source[1] = minY;
+            ai.a.applyInverseInPlace(source);
+            final double firstSourceX = source[0];
+            final double firstSourceY = source[1];
+            source[0] = minX + deltaSpan;
+            source[1] = minY;
+            ai.a.applyInverseInPlace(source);
+            final double sourceDeltaX = (source[0] - firstSourceX) / deltaSpan;
+            final double sourceDeltaY = (source[1] - firstSourceY) / deltaSpan;
+
+            for (int targetY = minY; targetY <= maxY; ++targetY) {
+
+                final long span = getContainedSpan(pq, targetY, minX, maxX);
+                if (span < 0) {
+                    continue;
+                }
+
+                final int spanStartX = (int) (span >> 32);
+                final int spanEndX = (int) span;
+
+                source[0] = spanStartX;
+                source[1] = targetY;
+                ai.a.applyInverseInPlace(source);
+                final double rowSourceX = source[0];
+                final double rowSourceY = source[1];
+
+                if (isMappingInterpolated) {
+                    for (int targetX = spanStartX; targetX <= spanEndX; ++targetX) {
+                        final int step = targetX - spanStartX;
+                        pixelMapper.mapInterpolated(rowSourceX + (step * sourceDeltaX),
+                                                    rowSourceY + (step * sourceDeltaY),
+                                                    targetX,
+                                                    targetY);
+                    }
+                } else {
+                    for (int targetX = spanStartX; targetX <= spanEndX; ++targetX) {
+                        final int step = targetX - spanStartX;
+                        pixelMapper.map(rowSourceX + (step * sourceDeltaX),
+                                        rowSourceY + (step * sourceDeltaY),
+                                        targetX,
+                                        targetY);
+                    }
+                }
+            }
+
+        } catch (final NoninvertibleModelException e) {
+            LOG.warn("ignoring exception", e);
+        }
+    }
+
+    /**
+     * Finds the first and last x values in the specified target row that are contained in the specified triangle.
+     * The span is estimated from the triangle edge intersections with the row and then refined with
+     * {@link RenderTransformMesh#isInTargetTriangle} so that the contained pixels exactly match those
+     * that would be found by testing every pixel in the row.
+     *
+     * @return the span start x packed into the high 32 bits and the span end x packed into the low 32 bits,
+     *         or -1 if no pixels in the row are contained in the triangle.
+     */
+    static long getContainedSpan(final double[][] pq,
+                                 final int targetY,
+                                 final int minX,
+                                 final int maxX) {
+
+        final double[] xs = pq[2];
+        final double[] ys = pq[3];
+
+        double left = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < 3; i++) {
+            final int j = (i + 1) % 3;
+            final double y1 = ys[i];
+            final double y2 = ys[j];
+            if ((targetY >= Math.min(y1, y2)) && (targetY <= Math.max(y1, y2))) {
+                if (y1 == y2) {
+                    left = Math.min(left, Math.min(xs[i], xs[j]));
+                    right = Math.max(right, Math.max(xs[i], xs[j]));
+                } else {
+                    final double x = xs[i] + ((targetY - y1) * (xs[j] - xs[i]) / (y2 - y1));
+                    left = Math.min(left, x);
+                    right = Math.max(right, x);
+                }
+            }
+        }
+
+        if (left > right) {
+            return -1;
+        }
+
+        // start with a (slightly) conservative estimate and then refine it with exact containment tests
+        int startX = (int) Math.max(minX, Math.floor(left));
+        int endX = (int) Math.min(maxX, Math.ceil(right));
+
+        while ((startX <= endX) && (! RenderTransformMesh.isInTargetTriangle(pq, startX, targetY))) {
+            startX++;
+        }
+
+        if (startX > endX) {
+            return -1;
+        }
+
+        while ((startX > minX) && RenderTransformMesh.isInTargetTriangle(pq, startX - 1, targetY)) {
+            startX--;
+        }
+        while (! RenderTransformMesh.isInTargetTriangle(pq, endX, targetY)) {
+            endX--;
+        }
+        while ((endX < maxX) && RenderTransformMesh.isInTargetTriangle(pq, endX + 1, targetY)) {
+            endX++;
+        }
+
+        return ((long) startX << 32) | (endX & 0xffffffffL);
+    }
+
+    /** Per-thread scratch location reused for every mapped pixel. */
+    private static final ThreadLocal<double[]> SOURCE_LOCATION = ThreadLocal.withInitial(() -> new double[2]);
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderTransformMeshMappingWithMasks.class);
 }
@@ -21,6 +21,9 @@ import ij.process.ByteProcessor;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
@@ -28,6 +31,8 @@ import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWith
 import org.janelia.alignment.mipmap.AveragedChannelMipmapSource;
 import org.janelia.alignment.mipmap.MipmapSource;
 import org.janelia.alignment.mipmap.RenderedCanvasMipmapSource;
+import org.janelia.alignment.spec.ChannelSpec;
+import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.util.ImageProcessorCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +62,19 @@ public class Renderer {
                                                        final ImageProcessorWithMasks renderedImageProcessorWithMasks);
     }
 
+    public interface StripConsumer {
+        /**
+         * @param  strip     rendered strip of target image rows.
+         * @param  firstRow  index of the strip's first row within the full target image.
+         *
+         * @throws IOException
+         *   if the strip cannot be processed.
+         */
+        void accept(final BufferedImage strip,
+                    final int firstRow)
+                throws IOException;
+    }
+
     private final RenderParameters renderParameters;
     private final ImageProcessorCache imageProcessorCache;
 
@@ -199,44 +217,282 @@ public class Renderer {
         final long drawImageStart = System.currentTimeMillis();
 
         if (worldTarget != null) {
+            drawWorldTarget(converter, worldTarget, targetImage);
+        }
+
+        final long drawImageStop = System.currentTimeMillis();
+
+        LOG.debug("renderToBufferedImage: exit, {} tiles processed in {} milliseconds, draw image:{}",
+                  numberOfTileSpecs,
+                  System.currentTimeMillis() - tileLoopStart,
+                  drawImageStop - drawImageStart);
+    }
+
+    /**
+     * Converts the rendered world target and draws it (along with any background or overlay) onto the target image.
+     */
+    private void drawWorldTarget(final ProcessorWithMasksConverter converter,
+                                 final ImageProcessorWithMasks worldTarget,
+                                 final BufferedImage targetImage) {
+
+        final Graphics2D targetGraphics = targetImage.createGraphics();
+
+        // TODO: see if there is a more efficient way to do the background fill and avoid redraw of image below
+        final Integer backgroundRGBColor = renderParameters.getBackgroundRGBColor();
+        if (backgroundRGBColor != null) {
+
+            targetGraphics.setBackground(new Color(backgroundRGBColor));
+            targetGraphics.clearRect(0, 0, targetImage.getWidth(), targetImage.getHeight());
+
+        } else if (renderParameters.isFillWithNoise()) {
+
+            final ByteProcessor ip = new ByteProcessor(targetImage.getWidth(), targetImage.getHeight());
+            mpicbg.ij.util.Util.fillWithNoise(ip);
+            targetGraphics.drawImage(ip.createImage(), 0, 0, null);
+
+        }
+
+        final BufferedImage image = converter.convertProcessorWithMasksToImage(renderParameters, worldTarget);
+        targetGraphics.drawImage(image, 0, 0, null);
+
+        if (renderParameters.isAddWarpFieldDebugOverlay()) {
+            WarpFieldDebugRenderer.render(renderParameters,
+                                          targetGraphics,
+                                          targetImage.getWidth(),
+                                          targetImage.getHeight());
+        }
+
+        targetGraphics.dispose();
+    }
+
+    /**
+     * Renders horizontal strips of the target image one at a time, passing each finished strip to the
+     * specified consumer before rendering the next one.  Only tiles that intersect a strip are
+     * loaded and mapped for that strip, so peak memory is proportional to the strip height
+     * instead of the full target image height.  The trade-off is that tiles spanning multiple strips
+     * are meshed and mapped once for each strip they intersect.
+     *
+     * @param  converter      converts to the desired output type.
+     * @param  stripHeight    number of target image rows in each strip.
+     * @param  startRow       index of the first target image row to render
+     *                        (e.g. to continue after a separately rendered first strip).
+     * @param  stripConsumer  consumer for rendered strips.
+     *
+     * @throws IllegalArgumentException
+     *   if these parameters cannot be rendered in strips or if rendering fails for any reason.
+     *
+     * @throws IOException
+     *   if the consumer fails to process a strip.
+     */
+    private void renderStrips(final ProcessorWithMasksConverter converter,
+                              final int stripHeight,
+                              final int startRow,
+                              final StripConsumer stripConsumer)
+            throws IllegalArgumentException, IOException {
+
+        validateStripParameters(stripHeight);
+
+        final int targetHeight = (int) (renderParameters.getScale() * renderParameters.getHeight());
+
+        LOG.debug("renderStrips: entry, rendering rows {} to {} in strips of {} rows",
+                  startRow, targetHeight - 1, stripHeight);
 
-            final Graphics2D targetGraphics = targetImage.createGraphics();
+        final double[] intensityRange = deriveIntensityRange();
 
-            // TODO: see if there is a more efficient way to do the background fill and avoid redraw of image below
-            final Integer backgroundRGBColor = renderParameters.getBackgroundRGBColor();
-            if (backgroundRGBColor != null) {
+        for (int firstRow = startRow; firstRow < targetHeight; firstRow += stripHeight) {
+            final int numberOfRows = Math.min(stripHeight, targetHeight - firstRow);
+            stripConsumer.accept(renderStripImage(converter, firstRow, numberOfRows, intensityRange), firstRow);
+        }
 
-                targetGraphics.setBackground(new Color(backgroundRGBColor));
-                targetGraphics.clearRect(0, 0, targetImage.getWidth(), targetImage.getHeight());
+        LOG.debug("renderStrips: exit");
+    }
 
-            } else if (renderParameters.isFillWithNoise()) {
+    /**
+     * @return rendered image for the specified target rows.
+     *
+     * @throws IllegalArgumentException
+     *   if these parameters cannot be rendered in strips or if rendering fails for any reason.
+     */
+    private BufferedImage renderStripImage(final ProcessorWithMasksConverter converter,
+                                           final int firstRow,
+                                           final int numberOfRows)
+            throws IllegalArgumentException {
+        validateStripParameters(numberOfRows);
+        return renderStripImage(converter, firstRow, numberOfRows, deriveIntensityRange());
+    }
+
+    private BufferedImage renderStripImage(final ProcessorWithMasksConverter converter,
+                                           final int firstRow,
+                                           final int numberOfRows,
+                                           final double[] intensityRange) {
+
+        final int targetWidth = (int) (renderParameters.getScale() * renderParameters.getWidth());
+        final BufferedImage stripImage = new BufferedImage(targetWidth, numberOfRows, BufferedImage.TYPE_INT_ARGB);
 
-                final ByteProcessor ip = new ByteProcessor(targetImage.getWidth(), targetImage.getHeight());
-                mpicbg.ij.util.Util.fillWithNoise(ip);
-                targetGraphics.drawImage(ip.createImage(), 0, 0, null);
+        if (renderParameters.numberOfTileSpecs() > 0) {
+            final ImageProcessorWithMasks stripTarget = renderStrip(firstRow, numberOfRows);
 
+            // mimic the full render: intensity range comes from the last mapped tile and
+            // (with masks) any pixels not covered by a tile are transparent
+            if (intensityRange != null) {
+                stripTarget.ip.setMinAndMax(intensityRange[0], intensityRange[1]);
+            }
+            if (renderParameters.hasMasks() && (stripTarget.mask == null)) {
+                stripTarget.mask = new ByteProcessor(stripTarget.ip.getWidth(), stripTarget.ip.getHeight());
             }
 
-            final BufferedImage image = converter.convertProcessorWithMasksToImage(renderParameters, worldTarget);
-            targetGraphics.drawImage(image, 0, 0, null);
+            drawWorldTarget(converter, stripTarget, stripImage);
+        }
+
+        return stripImage;
+    }
+
+    private void validateStripParameters(final int stripHeight)
+            throws IllegalArgumentException {
 
-            if (renderParameters.isAddWarpFieldDebugOverlay()) {
-                WarpFieldDebugRenderer.render(renderParameters,
-                                              targetGraphics,
-                                              targetImage.getWidth(),
-                                              targetImage.getHeight());
+        if (! isStripRenderingSupported(renderParameters)) {
+            throw new IllegalArgumentException("parameters with filters, multiple channels, an input image, or " +
+                                               "a warp field overlay cannot be rendered in strips");
+        }
+
+        if (stripHeight < 1) {
+            throw new IllegalArgumentException("strip height must be positive");
+        }
+    }
+
+    /**
+     * When a full target image is rendered, the target intensity range is taken from the last mapped tile.
+     * Strips may not include that tile, so the range is derived from the last tile's channel specification
+     * (or the render parameters when they override tile intensities) without loading any pixels.
+     *
+     * @return the full render's intensity range as [min, max] or null if no tile has a rendered channel.
+     */
+    private double[] deriveIntensityRange() {
+
+        double[] intensityRange = null;
+
+        final Set<String> channelNames = renderParameters.getChannelNames();
+        final List<TileSpec> tileSpecs = renderParameters.getTileSpecs();
+        for (int i = tileSpecs.size() - 1; (intensityRange == null) && (i >= 0); i--) {
+            final List<ChannelSpec> channelSpecs = tileSpecs.get(i).getChannels(channelNames);
+            if (channelSpecs.size() > 0) {
+                final ChannelSpec channelSpec = channelSpecs.get(0);
+                final Double renderMinIntensity = renderParameters.getMinIntensity();
+                final Double renderMaxIntensity = renderParameters.getMaxIntensity();
+                intensityRange = new double[] {
+                        renderMinIntensity == null ? channelSpec.getMinIntensity() : renderMinIntensity,
+                        renderMaxIntensity == null ? channelSpec.getMaxIntensity() : renderMaxIntensity
+                };
             }
+        }
 
-            targetGraphics.dispose();
+        return intensityRange;
+    }
 
+    /**
+     * @return rendered processor with masks for the specified target rows
+     *         (may include one extra row when the scaled strip height is not integral).
+     */
+    private ImageProcessorWithMasks renderStrip(final int firstRow,
+                                                final int numberOfRows) {
+
+        final double scale = renderParameters.getScale();
+        final double stripY = renderParameters.getY() + (firstRow / scale);
+        final int stripFullScaleHeight = (int) Math.ceil(numberOfRows / scale);
+        final double margin = STRIP_MARGIN_PIXELS / scale;
+        final double minY = stripY - margin;
+        final double maxY = stripY + stripFullScaleHeight + margin;
+
+        final List<TileSpec> stripTileSpecs = new ArrayList<>();
+        for (final TileSpec tileSpec : renderParameters.getTileSpecs()) {
+            if ((tileSpec.getMinY() == null) || (tileSpec.getMaxY() == null) ||
+                ((tileSpec.getMaxY() >= minY) && (tileSpec.getMinY() <= maxY))) {
+                stripTileSpecs.add(tileSpec);
+            }
         }
 
-        final long drawImageStop = System.currentTimeMillis();
+        final RenderedCanvasMipmapSource stripSource =
+                new RenderedCanvasMipmapSource("canvas rows " + firstRow + " to " + (firstRow + numberOfRows - 1),
+                                               renderParameters.getChannelNames(),
+                                               RenderedCanvasMipmapSource.buildCanvasList(renderParameters,
+                                                                                          stripTileSpecs,
+                                                                                          imageProcessorCache),
+                                               renderParameters.getX(),
+                                               stripY,
+                                               renderParameters.getWidth(),
+                                               stripFullScaleHeight,
+                                               renderParameters.getRes(scale),
+                                               scale,
+                                               renderParameters.getNumberOfThreads(),
+                                               renderParameters.skipInterpolation(),
+                                               renderParameters.hasMasks(),
+                                               renderParameters.binaryMask());
+
+        LOG.debug("renderStrip: mapping {} of {} tiles for {}",
+                  stripTileSpecs.size(), renderParameters.numberOfTileSpecs(), stripSource.getSourceName());
+
+        return stripSource.getChannels(0).getFirstChannel();
+    }
 
-        LOG.debug("renderToBufferedImage: exit, {} tiles processed in {} milliseconds, draw image:{}",
-                  numberOfTileSpecs,
-                  System.currentTimeMillis() - tileLoopStart,
-                  drawImageStop - drawImageStart);
+    /**
+     * @return true if the specified parameters can be rendered in horizontal strips (see {@link #renderStrips}).
+     */
+    public static boolean isStripRenderingSupported(final RenderParameters renderParameters) {
+        return (renderParameters.in == null) &&
+               (! renderParameters.hasFilters()) &&
+               (! renderParameters.isAddWarpFieldDebugOverlay()) &&
+               (renderParameters.getChannelNames().size() == 1);
+    }
+
+    /**
+     * Constructs a renderer instance and renders the specified parameters in horizontal strips.
+     *
+     * @param  renderParameters     specifies what to render.
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  converter            converts to the desired output type.
+     * @param  stripHeight          number of target image rows in each strip.
+     * @param  startRow             index of the first target image row to render.
+     * @param  stripConsumer        consumer for rendered strips.
+     *
+     * @throws IllegalArgumentException
+     *   if rendering fails for any reason.
+     *
+     * @throws IOException
+     *   if the consumer fails to process a strip.
+     */
+    static void renderStrips(final RenderParameters renderParameters,
+                             final ImageProcessorCache imageProcessorCache,
+                             final ProcessorWithMasksConverter converter,
+                             final int stripHeight,
+                             final int startRow,
+                             final StripConsumer stripConsumer)
+            throws IllegalArgumentException, IOException {
+        final Renderer renderer = new Renderer(renderParameters, imageProcessorCache);
+        renderer.renderStrips(converter, stripHeight, startRow, stripConsumer);
+    }
+
+    /**
+     * Constructs a renderer instance and renders one horizontal strip of the target image.
+     *
+     * @param  renderParameters     specifies what to render.
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  converter            converts to the desired output type.
+     * @param  firstRow             index of the strip's first row within the full target image.
+     * @param  numberOfRows         number of rows in the strip.
+     *
+     * @return the rendered strip.
+     *
+     * @throws IllegalArgumentException
+     *   if these parameters cannot be rendered in strips or if rendering fails for any reason.
+     */
+    static BufferedImage renderStrip(final RenderParameters renderParameters,
+                                     final ImageProcessorCache imageProcessorCache,
+                                     final ProcessorWithMasksConverter converter,
+                                     final int firstRow,
+                                     final int numberOfRows)
+            throws IllegalArgumentException {
+        final Renderer renderer = new Renderer(renderParameters, imageProcessorCache);
+        return renderer.renderStripImage(converter, firstRow, numberOfRows);
     }
 
     /**
@@ -282,5 +538,8 @@ public class Renderer {
         }
     }
 
+    /** Tiles within this many pixels of a strip are mapped for the strip. */
+    private static final int STRIP_MARGIN_PIXELS = 2;
+
     private static final Logger LOG = LoggerFactory.getLogger(Renderer.class);
 }
@@ -2,9 +2,6 @@ package org.janelia.alignment.mapper;
 
 import ij.process.ImageProcessor;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.janelia.alignment.ChannelMap;
 
 import static mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
@@ -17,8 +14,8 @@ import static mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProces
 public class MultiChannelWithAlphaMapper
         extends MultiChannelMapper {
 
-    protected final List<Double> sourceMaxMaskIntensityList;
-    protected final List<Double> targetMaxMaskIntensityList;
+    protected final double[] sourceMaxMaskIntensities;
+    protected final double[] targetMaxMaskIntensities;
 
     public MultiChannelWithAlphaMapper(final ChannelMap sourceChannels,
                                        final ChannelMap targetChannels,
@@ -26,14 +23,14 @@ public class MultiChannelWithAlphaMapper
 
         super(sourceChannels, targetChannels, isMappingInterpolated);
 
-        this.sourceMaxMaskIntensityList = new ArrayList<>(normalizedSourceList.size());
-        for (final ImageProcessorWithMasks normalizedSource : normalizedSourceList) {
-            this.sourceMaxMaskIntensityList.add(normalizedSource.mask.getMax());
+        this.sourceMaxMaskIntensities = new double[normalizedSourceList.size()];
+        for (int i = 0; i < sourceMaxMaskIntensities.length; i++) {
+            this.sourceMaxMaskIntensities[i] = normalizedSourceList.get(i).mask.getMax();
         }
 
-        this.targetMaxMaskIntensityList = new ArrayList<>(targetList.size());
-        for (final ImageProcessorWithMasks target : targetList) {
-            this.targetMaxMaskIntensityList.add(target.mask.getMax());
+        this.targetMaxMaskIntensities = new double[targetList.size()];
+        for (int i = 0; i < targetMaxMaskIntensities.length; i++) {
+            this.targetMaxMaskIntensities[i] = targetList.get(i).mask.getMax();
         }
 
         if (isMappingInterpolated) {
@@ -59,10 +56,10 @@ public class MultiChannelWithAlphaMapper
             setBlendedIntensity(targetX,
                                 targetY,
                                 targetList.get(i),
-                                targetMaxMaskIntensityList.get(i),
+                                targetMaxMaskIntensities[i],
                                 normalizedSource.ip.getf(roundedSourceX, roundedSourceY),
                                 normalizedSource.mask.getf(roundedSourceX, roundedSourceY),
-                                sourceMaxMaskIntensityList.get(i));
+                                sourceMaxMaskIntensities[i]);
         }
 
     }
@@ -79,10 +76,10 @@ public class MultiChannelWithAlphaMapper
             setBlendedIntensity(targetX,
                                 targetY,
                                 targetList.get(i),
-                                targetMaxMaskIntensityList.get(i),
+                                targetMaxMaskIntensities[i],
                                 normalizedSource.ip.getInterpolatedPixel(sourceX, sourceY),
                                 normalizedSource.mask.getInterpolatedPixel(sourceX, sourceY),
-                                sourceMaxMaskIntensityList.get(i));
+                                sourceMaxMaskIntensities[i]);
         }
     }
 
@@ -98,15 +95,17 @@ public class MultiChannelWithAlphaMapper
         final double targetIntensity = target.ip.getf(targetX, targetY);
         final double targetAlpha = target.mask.getf(targetX, targetY) / targetMaxMaskIntensity;
 
-        final double[] blendedIntensityAndAlpha =
-                SingleChannelWithAlphaMapper.getBlendedIntensityAndAlpha(sourceIntensity,
-                                                                         sourceAlpha,
-                                                                         targetIntensity,
-                                                                         targetAlpha);
-
-        target.ip.setf(targetX, targetY, (float) blendedIntensityAndAlpha[0]);
-        target.mask.setf(targetX, targetY, (float) (blendedIntensityAndAlpha[1] * targetMaxMaskIntensity));
+        final double blendedAlpha =
+                SingleChannelWithAlphaMapper.getBlendedAlpha(sourceAlpha, targetIntensity, targetAlpha);
+        final double blendedIntensity =
+                SingleChannelWithAlphaMapper.getBlendedIntensity(sourceIntensity,
+                                                                 sourceAlpha,
+                                                                 targetIntensity,
+                                                                 targetAlpha,
+                                                                 blendedAlpha);
+
+        target.ip.setf(targetX, targetY, (float) blendedIntensity);
+        target.mask.setf(targetX, targetY, (float) (blendedAlpha * targetMaxMaskIntensity));
     }
 
-
 }
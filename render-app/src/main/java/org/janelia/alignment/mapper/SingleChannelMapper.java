@@ -20,6 +20,14 @@ public class SingleChannelMapper
     protected final ImageProcessorWithMasks target;
     protected final boolean isMappingInterpolated;
 
+    // backing arrays for direct (allocation and virtual call free) pixel access,
+    // null if the source and target are not float processors
+    protected final float[] sourcePixels;
+    protected final float[] targetPixels;
+    protected final int sourceWidth;
+    protected final int sourceHeight;
+    protected final int targetWidth;
+
     public SingleChannelMapper(final ImageProcessorWithMasks source,
                                final ImageProcessorWithMasks target,
                                final boolean isMappingInterpolated) {
@@ -31,6 +39,19 @@ public class SingleChannelMapper
         if (isMappingInterpolated) {
             this.normalizedSource.ip.setInterpolationMethod(ImageProcessor.BILINEAR);
         }
+
+        final float[] floatSourcePixels = PixelArrays.getFloatPixels(this.normalizedSource.ip);
+        final float[] floatTargetPixels = PixelArrays.getFloatPixels(target.ip);
+        if ((floatSourcePixels != null) && (floatTargetPixels != null)) {
+            this.sourcePixels = floatSourcePixels;
+            this.targetPixels = floatTargetPixels;
+        } else {
+            this.sourcePixels = null;
+            this.targetPixels = null;
+        }
+        this.sourceWidth = this.normalizedSource.ip.getWidth();
+        this.sourceHeight = this.normalizedSource.ip.getHeight();
+        this.targetWidth = target.ip.getWidth();
     }
 
     @Override
@@ -57,7 +78,11 @@ public class SingleChannelMapper
         final int roundedSourceX = (int) Math.round(sourceX);
         final int roundedSourceY = (int) Math.round(sourceY);
 
-        target.ip.setf(targetX, targetY, normalizedSource.ip.getf(roundedSourceX, roundedSourceY));
+        if (targetPixels == null) {
+            target.ip.setf(targetX, targetY, normalizedSource.ip.getf(roundedSourceX, roundedSourceY));
+        } else {
+            targetPixels[targetY * targetWidth + targetX] = sourcePixels[roundedSourceY * sourceWidth + roundedSourceX];
+        }
     }
 
     @Override
@@ -66,7 +91,12 @@ public class SingleChannelMapper
                                 final int targetX,
                                 final int targetY) {
 
-        target.ip.setf(targetX, targetY, (float) normalizedSource.ip.getInterpolatedPixel(sourceX, sourceY));
+        if (targetPixels == null) {
+            target.ip.setf(targetX, targetY, (float) normalizedSource.ip.getInterpolatedPixel(sourceX, sourceY));
+        } else {
+            targetPixels[targetY * targetWidth + targetX] =
+                    (float) PixelArrays.getInterpolatedPixel(sourcePixels, sourceWidth, sourceHeight, sourceX, sourceY);
+        }
     }
 
     public static ImageProcessorWithMasks normalizeSourceForTarget(final ImageProcessorWithMasks source,
@@ -15,6 +15,10 @@ public class SingleChannelWithAlphaMapper
     protected final double sourceMaxMaskIntensity;
     protected final double targetMaxMaskIntensity;
 
+    // backing mask arrays for direct pixel access, null if direct access is not supported
+    protected final byte[] sourceMaskPixels;
+    protected final byte[] targetMaskPixels;
+
     public SingleChannelWithAlphaMapper(final ImageProcessorWithMasks source,
                                         final ImageProcessorWithMasks target,
                                         final boolean isMappingInterpolated) {
@@ -27,6 +31,16 @@ public class SingleChannelWithAlphaMapper
 
         this.sourceMaxMaskIntensity = this.normalizedSource.mask.getMax();
         this.targetMaxMaskIntensity = this.target.mask.getMax();
+
+        final byte[] byteSourceMaskPixels = PixelArrays.getBytePixels(this.normalizedSource.mask);
+        final byte[] byteTargetMaskPixels = PixelArrays.getBytePixels(this.target.mask);
+        if ((targetPixels != null) && (byteSourceMaskPixels != null) && (byteTargetMaskPixels != null)) {
+            this.sourceMaskPixels = byteSourceMaskPixels;
+            this.targetMaskPixels = byteTargetMaskPixels;
+        } else {
+            this.sourceMaskPixels = null;
+            this.targetMaskPixels = null;
+        }
     }
 
     @Override
@@ -38,10 +52,18 @@ public class SingleChannelWithAlphaMapper
         final int roundedSourceX = (int) Math.round(sourceX);
         final int roundedSourceY = (int) Math.round(sourceY);
 
-        setBlendedIntensity(targetX,
-                            targetY,
-                            normalizedSource.ip.getf(roundedSourceX, roundedSourceY),
-                            normalizedSource.mask.getf(roundedSourceX, roundedSourceY));
+        if (targetMaskPixels == null) {
+            setBlendedIntensity(targetX,
+                                targetY,
+                                normalizedSource.ip.getf(roundedSourceX, roundedSourceY),
+                                normalizedSource.mask.getf(roundedSourceX, roundedSourceY));
+        } else {
+            final int sourceIndex = roundedSourceY * sourceWidth + roundedSourceX;
+            setBlendedIntensity(targetX,
+                                targetY,
+                                sourcePixels[sourceIndex],
+                                sourceMaskPixels[sourceIndex] & 0xff);
+        }
     }
 
     @Override
@@ -50,10 +72,25 @@ public class SingleChannelWithAlphaMapper
                                 final int targetX,
                                 final int targetY) {
 
-        setBlendedIntensity(targetX,
-                            targetY,
-                            normalizedSource.ip.getInterpolatedPixel(sourceX, sourceY),
-                            normalizedSource.mask.getInterpolatedPixel(sourceX, sourceY));
+        if (targetMaskPixels == null) {
+            setBlendedIntensity(targetX,
+                                targetY,
+                                normalizedSource.ip.getInterpolatedPixel(sourceX, sourceY),
+                                normalizedSource.mask.getInterpolatedPixel(sourceX, sourceY));
+        } else {
+            setBlendedIntensity(targetX,
+                                targetY,
+                                PixelArrays.getInterpolatedPixel(sourcePixels,
+                                                                 sourceWidth,
+                                                                 sourceHeight,
+                                                                 sourceX,
+                                                                 sourceY),
+                                PixelArrays.getInterpolatedPixel(sourceMaskPixels,
+                                                                 sourceWidth,
+                                                                 sourceHeight,
+                                                                 sourceX,
+                                                                 sourceY));
+        }
     }
 
     public void setBlendedIntensity(final int targetX,
@@ -62,43 +99,79 @@ public class SingleChannelWithAlphaMapper
                                     final double sourceMaskIntensity) {
 
         final double sourceAlpha = sourceMaskIntensity / sourceMaxMaskIntensity;
-        final double targetIntensity = target.ip.getf(targetX, targetY);
-        final double targetAlpha = target.mask.getf(targetX, targetY) / targetMaxMaskIntensity;
 
-        final double[] blendedIntensityAndAlpha =
-                getBlendedIntensityAndAlpha(sourceIntensity, sourceAlpha, targetIntensity, targetAlpha);
+        if (targetMaskPixels == null) {
+
+            final double targetIntensity = target.ip.getf(targetX, targetY);
+            final double targetAlpha = target.mask.getf(targetX, targetY) / targetMaxMaskIntensity;
+            final double blendedAlpha = getBlendedAlpha(sourceAlpha, targetIntensity, targetAlpha);
 
-        target.ip.setf(targetX, targetY, (float) blendedIntensityAndAlpha[0]);
-        target.mask.setf(targetX, targetY, (float) (blendedIntensityAndAlpha[1] * targetMaxMaskIntensity));
+            target.ip.setf(targetX, targetY,
+                           (float) getBlendedIntensity(sourceIntensity,
+                                                       sourceAlpha,
+                                                       targetIntensity,
+                                                       targetAlpha,
+                                                       blendedAlpha));
+            target.mask.setf(targetX, targetY, (float) (blendedAlpha * targetMaxMaskIntensity));
+
+        } else {
+
+            final int targetIndex = targetY * targetWidth + targetX;
+            final double targetIntensity = targetPixels[targetIndex];
+            final double targetAlpha = (targetMaskPixels[targetIndex] & 0xff) / targetMaxMaskIntensity;
+            final double blendedAlpha = getBlendedAlpha(sourceAlpha, targetIntensity, targetAlpha);
+
+            targetPixels[targetIndex] = (float) getBlendedIntensity(sourceIntensity,
+                                                                    sourceAlpha,
+                                                                    targetIntensity,
+                                                                    targetAlpha,
+                                                                    blendedAlpha);
+            targetMaskPixels[targetIndex] = PixelArrays.toByte((float) (blendedAlpha * targetMaxMaskIntensity));
+        }
     }
 
-    public static double[] getBlendedIntensityAndAlpha(final double sourceIntensity,
-                                                       final double sourceAlpha,
-                                                       final double targetIntensity,
-                                                       final double targetAlpha) {
+    /**
+     * @return alpha value for a source pixel blended over a target pixel.
+     */
+    public static double getBlendedAlpha(final double sourceAlpha,
+                                         final double targetIntensity,
+                                         final double targetAlpha) {
+        final double blendedAlpha;
+        if (targetIntensity == 0) {
+            blendedAlpha = sourceAlpha;
+        } else {
+            blendedAlpha = sourceAlpha + (targetAlpha * (1 - sourceAlpha));
+        }
+        return blendedAlpha;
+    }
+
+    /**
+     * @return intensity value for a source pixel blended over a target pixel.
+     */
+    public static double getBlendedIntensity(final double sourceIntensity,
+                                             final double sourceAlpha,
+                                             final double targetIntensity,
+                                             final double targetAlpha,
+                                             final double blendedAlpha) {
 
         final double blendedIntensity;
-        final double blendedAlpha;
 
         if (targetIntensity == 0) {
 
             blendedIntensity = sourceIntensity * sourceAlpha;
-            blendedAlpha = sourceAlpha;
 
-        } else {
+        } else if (blendedAlpha == 0) {
 
-            blendedAlpha = sourceAlpha + (targetAlpha * (1 - sourceAlpha));
+            blendedIntensity = 0;
+
+        } else {
 
-            if (blendedAlpha == 0) {
-                blendedIntensity = 0;
-            } else {
-                blendedIntensity =
-                        ((sourceIntensity * sourceAlpha) + (targetIntensity * targetAlpha * (1 - sourceAlpha))) /
-                        blendedAlpha;
-            }
+            blendedIntensity =
+                    ((sourceIntensity * sourceAlpha) + (targetIntensity * targetAlpha * (1 - sourceAlpha))) /
+                    blendedAlpha;
         }
 
-        return new double[] { blendedIntensity, blendedAlpha };
+        return blendedIntensity;
     }
 
 }
@@ -24,8 +24,14 @@ public class SingleChannelWithBinaryMaskMapper
                                     final double sourceMaskIntensity) {
 
         if (sourceMaskIntensity > 0.0) {
-            target.ip.setf(worldTargetX, worldTargetY, (float) sourceIntensity);
-            target.mask.setf(worldTargetX, worldTargetY, (float) targetMaxMaskIntensity);
+            if (targetMaskPixels == null) {
+                target.ip.setf(worldTargetX, worldTargetY, (float) sourceIntensity);
+                target.mask.setf(worldTargetX, worldTargetY, (float) targetMaxMaskIntensity);
+            } else {
+                final int targetIndex = worldTargetY * targetWidth + worldTargetX;
+                targetPixels[targetIndex] = (float) sourceIntensity;
+                targetMaskPixels[targetIndex] = PixelArrays.toByte((float) targetMaxMaskIntensity);
+            }
         }
     }
 
@@ -1,12 +1,16 @@
 package org.janelia.alignment.match;
 
 import ij.ImagePlus;
+import ij.process.ImageProcessor;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import mpicbg.ij.SIFT;
 import mpicbg.imagefeatures.Feature;
@@ -17,6 +21,7 @@ import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
 import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.alignment.util.MappingThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +37,7 @@ public class CanvasFeatureExtractor implements Serializable {
     private final double minScale;
     private final double maxScale;
     private final boolean fillWithNoise;
+    private final int numberOfThreads;
 
     /**
      * Sets up everything that is needed to extract the feature list for a canvas.
@@ -46,6 +52,26 @@ public class CanvasFeatureExtractor implements Serializable {
                                   final double minScale,
                                   final double maxScale,
                                   final boolean fillWithNoise) {
+        this(coreSiftParameters, minScale, maxScale, fillWithNoise, 1);
+    }
+
+    /**
+     * Sets up everything that is needed to extract the feature list for a canvas.
+     *
+     * @param  coreSiftParameters  core SIFT parameters for feature extraction.
+     * @param  minScale            SIFT minimum scale (minSize * minScale < size < maxSize * maxScale).
+     * @param  maxScale            SIFT maximum scale (minSize * minScale < size < maxSize * maxScale).
+     * @param  fillWithNoise       indicates whether the rendered canvas image should be filled with
+     *                             noise before rendering to improve point match derivation.
+     * @param  numberOfThreads     number of threads to use for extracting features from each canvas.
+     *                             When greater than one, canvases are split into overlapping horizontal
+     *                             strips that are processed concurrently (see {@link #getStripMargin}).
+     */
+    public CanvasFeatureExtractor(final FloatArray2DSIFT.Param coreSiftParameters,
+                                  final double minScale,
+                                  final double maxScale,
+                                  final boolean fillWithNoise,
+                                  final int numberOfThreads) {
 
         // clone provided parameters since they get modified during feature extraction
         this.coreSiftParameters = coreSiftParameters.clone();
@@ -53,6 +79,7 @@ public class CanvasFeatureExtractor implements Serializable {
         this.minScale = minScale;
         this.maxScale = maxScale;
         this.fillWithNoise = fillWithNoise;
+        this.numberOfThreads = numberOfThreads;
     }
 
     /**
@@ -73,13 +100,37 @@ public class CanvasFeatureExtractor implements Serializable {
     public List<Feature> extractFeatures(final RenderParameters renderParameters,
                                          final File renderFile)
             throws IllegalArgumentException, IllegalStateException {
+        return extractFeatures(renderParameters, renderFile, ImageProcessorCache.DISABLED_CACHE);
+    }
+
+    /**
+     * Extract SIFT features from canvas built from specified render parameters.
+     *
+     * @param  renderParameters     parameters for building canvas.
+     * @param  renderFile           file to persist rendered canvas (for debugging).
+     *                              Specify as null to skip debug persistence.
+     * @param  imageProcessorCache  cache of source images (e.g. shared with other canvases that overlap
+     *                              the same tiles) to use when rendering the canvas.
+     *
+     * @return list of extracted features.
+     *
+     * @throws IllegalArgumentException
+     *   if the specified render parameters are invalid.
+     *
+     * @throws IllegalStateException
+     *   if the specified render parameters have not been initialized or no features are found.
+     */
+    public List<Feature> extractFeatures(final RenderParameters renderParameters,
+                                         final File renderFile,
+                                         final ImageProcessorCache imageProcessorCache)
+            throws IllegalArgumentException, IllegalStateException {
 
         renderParameters.validate();
 
         final BufferedImage bufferedImage = renderParameters.openTargetImage();
         renderParameters.setFillWithNoise(fillWithNoise);
 
-        ArgbRenderer.render(renderParameters, bufferedImage, ImageProcessorCache.DISABLED_CACHE);
+        ArgbRenderer.render(renderParameters, bufferedImage, imageProcessorCache);
 
         if (renderFile != null) {
             try {
@@ -102,19 +153,14 @@ public class CanvasFeatureExtractor implements Serializable {
      *
      * @return list of extracted features.
      */
-    private List<Feature> extractFeaturesFromImage(final BufferedImage bufferedImage) {
+    List<Feature> extractFeaturesFromImage(final BufferedImage bufferedImage) {
 
         final Timer timer = new Timer();
         timer.start();
 
-        // clone provided parameters since they get modified during feature extraction
-        final FloatArray2DSIFT.Param siftParameters = coreSiftParameters.clone();
         final int w = bufferedImage.getWidth();
         final int h = bufferedImage.getHeight();
-        final int minSize = w < h ? w : h;
-        final int maxSize = w > h ? w : h;
-        siftParameters.minOctaveSize = (int) (minScale * minSize - 1.0);
-        siftParameters.maxOctaveSize = (int) Math.round(maxScale * maxSize);
+        final FloatArray2DSIFT.Param siftParameters = getSiftParameters(w, h);
 
         LOG.info("extractFeatures: entry, fdSize={}, steps={}, minScale={}, maxScale={}, minOctaveSize={}, maxOctaveSize={}",
                  siftParameters.fdSize,
@@ -127,12 +173,17 @@ public class CanvasFeatureExtractor implements Serializable {
         // Let imagePlus determine correct processor - original use of ColorProcessor resulted in
         // fewer extracted features when bufferedImage was loaded from disk.
         final ImagePlus imagePlus = new ImagePlus("", bufferedImage);
+        final ImageProcessor imageProcessor = imagePlus.getProcessor();
 
-        final FloatArray2DSIFT sift = new FloatArray2DSIFT(siftParameters);
-        final SIFT ijSIFT = new SIFT(sift);
+        final int stripMargin = getStripMargin(siftParameters.fdSize);
+        final int numberOfStrips = Math.min(numberOfThreads, h / (2 * stripMargin));
 
-        final List<Feature> featureList = new ArrayList<>();
-        ijSIFT.extractFeatures(imagePlus.getProcessor(), featureList);
+        final List<Feature> featureList;
+        if (numberOfStrips > 1) {
+            featureList = extractFeaturesFromStrips(imageProcessor, numberOfStrips, stripMargin);
+        } else {
+            featureList = extractFeaturesFromProcessor(imageProcessor, siftParameters);
+        }
 
         if (featureList.size() == 0) {
 
@@ -162,10 +213,127 @@ public class CanvasFeatureExtractor implements Serializable {
         }
 
         LOG.info("extractFeatures: exit, extracted " + featureList.size() +
-                 " features, elapsedTime=" + timer.stop() + "ms");
+                 " features using " + Math.max(1, numberOfStrips) + " strip(s), elapsedTime=" + timer.stop() + "ms");
 
         return featureList;
     }
 
+    /**
+     * @return SIFT parameters with octave size limits for an image with the specified dimensions.
+     */
+    private FloatArray2DSIFT.Param getSiftParameters(final int width,
+                                                     final int height) {
+        // clone provided parameters since they get modified during feature extraction
+        final FloatArray2DSIFT.Param siftParameters = coreSiftParameters.clone();
+        final int minSize = width < height ? width : height;
+        final int maxSize = width > height ? width : height;
+        siftParameters.minOctaveSize = (int) (minScale * minSize - 1.0);
+        siftParameters.maxOctaveSize = (int) Math.round(maxScale * maxSize);
+        return siftParameters;
+    }
+
+    private static List<Feature> extractFeaturesFromProcessor(final ImageProcessor imageProcessor,
+                                                              final FloatArray2DSIFT.Param siftParameters) {
+        final FloatArray2DSIFT sift = new FloatArray2DSIFT(siftParameters);
+        final SIFT ijSIFT = new SIFT(sift);
+
+        final List<Feature> featureList = new ArrayList<>();
+        ijSIFT.extractFeatures(imageProcessor, featureList);
+        return featureList;
+    }
+
+    /**
+     * Splits the image into horizontal strips that overlap by the specified margin and concurrently
+     * extracts features from each strip (with independent SIFT instances).
+     * Octave size limits are derived from each strip's dimensions using the same relative scales as
+     * whole images, so the same octaves are processed.  Each strip only keeps the features located in its
+     * core (non-overlapping) rows so every feature is found exactly once.
+     *
+     * Features whose support extends beyond a strip's margin and, for images without
+     * noise filled backgrounds, features affected by the per strip intensity normalization SIFT applies
+     * may differ slightly from those extracted from the whole image.
+     *
+     * Strips are processed by the JVM's shared {@link MappingThreadPool} so that concurrent extractions
+     * do not each create their own threads.
+     *
+     * @return features from all strips in strip (top to bottom) order.
+     */
+    private List<Feature> extractFeaturesFromStrips(final ImageProcessor imageProcessor,
+                                                    final int numberOfStrips,
+                                                    final int stripMargin) {
+
+        final int width = imageProcessor.getWidth();
+        final int height = imageProcessor.getHeight();
+        final int coreHeight = (int) Math.ceil(height / (double) numberOfStrips);
+
+        final Executor executor = MappingThreadPool.getSharedInstance().getExecutor();
+        final List<CompletableFuture<List<Feature>>> futures = new ArrayList<>(numberOfStrips);
+
+        boolean isComplete = false;
+        try {
+
+            for (int coreTop = 0; coreTop < height; coreTop += coreHeight) {
+
+                final int coreBottom = Math.min(height, coreTop + coreHeight);
+                final int stripTop = Math.max(0, coreTop - stripMargin);
+                final int stripBottom = Math.min(height, coreBottom + stripMargin);
+
+                // crop on this thread since the roi is part of the shared processor's state
+                imageProcessor.setRoi(0, stripTop, width, stripBottom - stripTop);
+                final ImageProcessor stripProcessor = imageProcessor.crop();
+
+                final double minCoreY = coreTop - stripTop;
+                final double maxCoreY = coreBottom - stripTop;
+
+                futures.add(CompletableFuture.supplyAsync(() -> {
+
+                    final FloatArray2DSIFT.Param stripParameters =
+                            getSiftParameters(stripProcessor.getWidth(), stripProcessor.getHeight());
+
+                    final List<Feature> coreFeatures = new ArrayList<>();
+                    for (final Feature feature : extractFeaturesFromProcessor(stripProcessor, stripParameters)) {
+                        if ((feature.location[1] >= minCoreY) && (feature.location[1] < maxCoreY)) {
+                            feature.location[1] += stripTop;
+                            coreFeatures.add(feature);
+                        }
+                    }
+                    return coreFeatures;
+                }, executor));
+            }
+
+            imageProcessor.resetRoi();
+
+            final List<Feature> featureList = new ArrayList<>();
+            for (final CompletableFuture<List<Feature>> future : futures) {
+                featureList.addAll(future.join());
+            }
+            isComplete = true;
+            return featureList;
+
+        } catch (final CompletionException e) {
+            throw new IllegalStateException("failed to extract features from image strips", e.getCause());
+        } finally {
+            if (! isComplete) {
+                // don't leave pool threads working on strips that are no longer needed
+                for (final CompletableFuture<List<Feature>> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of rows that strips must overlap so that the support regions of features
+     *         in the coarsest octave processed (for this extractor's minScale) are fully contained
+     *         in the strip that keeps them.
+     */
+    int getStripMargin(final int fdSize) {
+        // descriptor window (4 samples per bin at up to twice the octave base scale)
+        // plus gaussian kernel support, in octave pixels
+        final int marginInOctavePixels = (4 * fdSize) + 16;
+        final double coarsestOctaveFactor = minScale > 0 ? Math.max(1.0, 1.0 / minScale) : 1.0;
+        return (int) Math.ceil(marginInOctavePixels * coarsestOctaveFactor);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureExtractor.class);
 }
@@ -16,13 +16,37 @@ import org.janelia.alignment.util.FileUtil;
 /**
  * List of features along with the rendering context used to produce them for a canvas.
  *
- * Includes {@link #writeToStorage(File, CanvasFeatureList)} and {@link #readFromStorage(File, CanvasId)} methods
+ * Includes {@link #writeToStorage(File, CanvasFeatureList, StorageFormat)} and
+ * {@link #readFromStorage(File, CanvasId, StorageFormat)} methods
  * to facilitate persistence to and retrieval from a file system.
  *
  * @author Eric Trautman
  */
 public class CanvasFeatureList implements Serializable {
 
+    /** Supported persistence formats. */
+    public enum StorageFormat {
+
+        /** Gzipped JSON (legacy default). */
+        JSON(".features.json.gz"),
+
+        /** Little-endian columnar binary (see {@link CanvasFeatureListBinaryFormat}). */
+        BINARY(".features.bin"),
+
+        /** Columnar binary with descriptor values quantized to single bytes. */
+        QUANTIZED_BINARY(".features.q8.bin");
+
+        private final String fileNameSuffix;
+
+        StorageFormat(final String fileNameSuffix) {
+            this.fileNameSuffix = fileNameSuffix;
+        }
+
+        public String getFileNameSuffix() {
+            return fileNameSuffix;
+        }
+    }
+
     private final CanvasId canvasId;
     private final String renderParametersUrl;
     private final Double renderScale;
@@ -82,7 +106,7 @@ public class CanvasFeatureList implements Serializable {
      * @param  rootDirectory  root directory for all features extracted in a particular run.
      * @param  canvasId       identifies the desired canvas.
      *
-     * @return persisted feature list for the specified canvas.
+     * @return persisted (JSON) feature list for the specified canvas.
      *
      * @throws IOException
      *   if the canvas feature storage file cannot be found or parsed.
@@ -90,13 +114,36 @@ public class CanvasFeatureList implements Serializable {
     public static CanvasFeatureList readFromStorage(final File rootDirectory,
                                                     final CanvasId canvasId)
             throws IOException {
-        final Path path = getStoragePath(rootDirectory, canvasId);
-        final Reader reader = new FileUtil().getExtensionBasedReader(path.toString());
-        return JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+        return readFromStorage(rootDirectory, canvasId, StorageFormat.JSON);
+    }
+
+    /**
+     * @param  rootDirectory  root directory for all features extracted in a particular run.
+     * @param  canvasId       identifies the desired canvas.
+     * @param  format         format of the persisted data.
+     *
+     * @return persisted feature list for the specified canvas.
+     *
+     * @throws IOException
+     *   if the canvas feature storage file cannot be found or parsed.
+     */
+    public static CanvasFeatureList readFromStorage(final File rootDirectory,
+                                                    final CanvasId canvasId,
+                                                    final StorageFormat format)
+            throws IOException {
+        final Path path = getStoragePath(rootDirectory, canvasId, format);
+        final CanvasFeatureList canvasFeatureList;
+        if (format == StorageFormat.JSON) {
+            final Reader reader = new FileUtil().getExtensionBasedReader(path.toString());
+            canvasFeatureList = JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+        } else {
+            canvasFeatureList = CanvasFeatureListBinaryFormat.read(path);
+        }
+        return canvasFeatureList;
     }
 
     /**
-     * Persists the specified feature data to disk (see {@link #getStoragePath(File, CanvasId)}).
+     * Persists the specified feature data to disk as JSON (see {@link #getStoragePath(File, CanvasId)}).
      *
      * @param  rootDirectory      root directory for all features extracted in the current run.
      * @param  canvasFeatureList  feature data to persist.
@@ -107,13 +154,36 @@ public class CanvasFeatureList implements Serializable {
     public static void writeToStorage(final File rootDirectory,
                                       final CanvasFeatureList canvasFeatureList)
             throws IOException {
-        final Path path = getStoragePath(rootDirectory, canvasFeatureList.canvasId);
+        writeToStorage(rootDirectory, canvasFeatureList, StorageFormat.JSON);
+    }
+
+    /**
+     * Persists the specified feature data to disk (see {@link #getStoragePath(File, CanvasId, StorageFormat)}).
+     *
+     * @param  rootDirectory      root directory for all features extracted in the current run.
+     * @param  canvasFeatureList  feature data to persist.
+     * @param  format             format for the persisted data.
+     *
+     * @throws IOException
+     *   if the feature data cannot be persisted.
+     */
+    public static void writeToStorage(final File rootDirectory,
+                                      final CanvasFeatureList canvasFeatureList,
+                                      final StorageFormat format)
+            throws IOException {
+        final Path path = getStoragePath(rootDirectory, canvasFeatureList.canvasId, format);
         FileUtil.ensureWritableDirectory(path.getParent().toFile());
-        FileUtil.saveJsonFile(path.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+        if (format == StorageFormat.JSON) {
+            FileUtil.saveJsonFile(path.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+        } else {
+            CanvasFeatureListBinaryFormat.write(path,
+                                                canvasFeatureList,
+                                                format == StorageFormat.QUANTIZED_BINARY);
+        }
     }
 
     /**
-     * Builds a standard storage path for the specified canvas of the form:
+     * Builds a standard JSON storage path for the specified canvas of the form:
      * [root]/[canvas_group_id]/[canvas_id].features.json.gz
      *
      * @param  rootDirectory  root directory for all features extracted in a particular run.
@@ -123,13 +193,29 @@ public class CanvasFeatureList implements Serializable {
      */
     public static Path getStoragePath(final File rootDirectory,
                                       final CanvasId canvasId) {
+        return getStoragePath(rootDirectory, canvasId, StorageFormat.JSON);
+    }
+
+    /**
+     * Builds a standard storage path for the specified canvas of the form:
+     * [root]/[canvas_group_id]/[canvas_id][format_suffix] (e.g. [canvas_id].features.json.gz)
+     *
+     * @param  rootDirectory  root directory for all features extracted in a particular run.
+     * @param  canvasId       the current canvas.
+     * @param  format         format of the persisted data.
+     *
+     * @return standard storage path for the specified canvas' feature data.
+     */
+    public static Path getStoragePath(final File rootDirectory,
+                                      final CanvasId canvasId,
+                                      final StorageFormat format) {
         String name = canvasId.getId();
         if (canvasId.getRelativePosition() != null) {
             name = name + "__" + canvasId.getRelativePosition();
         }
         return Paths.get(rootDirectory.getAbsolutePath(),
                          canvasId.getGroupId(),
-                         name + ".features.json.gz");
+                         name + format.getFileNameSuffix());
     }
 
 }
@@ -0,0 +1,473 @@
+package org.janelia.alignment.match;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact binary (columnar) encoding of a {@link CanvasFeatureList}.
+ *
+ * All values are little-endian and stored in fixed width column blocks:
+ * <pre>
+ *   int       magic number
+ *   int       format version
+ *   int       metadata length (m)
+ *   byte[m]   metadata (UTF-8 JSON for the canvas feature list without features)
+ *   byte[]    padding to the next 8 byte boundary
+ *   int       number of features (n)
+ *   int       descriptor dimension (d)
+ *   int       descriptor encoding (0 for 32-bit floats, 1 for quantized unsigned bytes)
+ *   int       unused (keeps columns 8 byte aligned)
+ *   double[2n]  location x and y values
+ *   double[n]   scale values
+ *   double[n]   orientation values
+ *   float[n]    quantized descriptor minimum values (quantized encoding only)
+ *   float[n]    quantized descriptor step sizes (quantized encoding only)
+ *   float[nd] or byte[nd]  descriptor values
+ * </pre>
+ *
+ * Each quantized descriptor is scaled by its own range and decoded as minimum + (byte_value * step),
+ * which loses a little precision but cuts descriptor storage to roughly a quarter of its float size.
+ *
+ * Files are written through a small reusable buffer and memory mapped (one bounded window at a time)
+ * when read, so that columns are bulk copied directly into feature arrays without any parsing.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureListBinaryFormat {
+
+    /**
+     * Persists the specified feature list to the specified path.
+     *
+     * @param  path                 file path for the encoded data.
+     * @param  canvasFeatureList    feature data to persist.
+     * @param  quantizeDescriptors  indicates whether descriptor values should be quantized to single bytes.
+     *
+     * @throws IllegalArgumentException
+     *   if the features have inconsistent descriptor dimensions or non-2D locations.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public static void write(final Path path,
+                             final CanvasFeatureList canvasFeatureList,
+                             final boolean quantizeDescriptors)
+            throws IllegalArgumentException, IOException {
+
+        final List<Feature> featureList = canvasFeatureList.getFeatureList();
+        final int numberOfFeatures = featureList.size();
+        final int dimension = numberOfFeatures == 0 ? 0 : featureList.get(0).descriptor.length;
+
+        for (final Feature feature : featureList) {
+            if (feature.descriptor.length != dimension) {
+                throw new IllegalArgumentException(
+                        "all features for " + canvasFeatureList.getCanvasId() + " must have " + dimension +
+                        " dimensional descriptors but found one with " + feature.descriptor.length + " dimensions");
+            }
+            if (feature.location.length != 2) {
+                throw new IllegalArgumentException(
+                        "all features for " + canvasFeatureList.getCanvasId() + " must have 2D locations");
+            }
+        }
+
+        final byte[] metadata = getMetadataBytes(canvasFeatureList);
+        final long columnsOffset = getColumnsOffset(metadata.length);
+
+        try (final FileChannel channel = FileChannel.open(path,
+                                                          StandardOpenOption.CREATE,
+                                                          StandardOpenOption.TRUNCATE_EXISTING,
+                                                          StandardOpenOption.WRITE)) {
+
+            final ChannelWriter writer = new ChannelWriter(channel);
+
+            writer.putInt(MAGIC_NUMBER);
+            writer.putInt(VERSION);
+            writer.putInt(metadata.length);
+            writer.put(metadata);
+            for (long i = 12L + metadata.length; i < columnsOffset - HEADER_BYTES; i++) {
+                writer.put((byte) 0);
+            }
+
+            writer.putInt(numberOfFeatures);
+            writer.putInt(dimension);
+            writer.putInt(quantizeDescriptors ? QUANTIZED_BYTE_ENCODING : FLOAT_ENCODING);
+            writer.putInt(0);
+
+            for (final Feature feature : featureList) {
+                writer.putDouble(feature.location[0]);
+                writer.putDouble(feature.location[1]);
+            }
+            for (final Feature feature : featureList) {
+                writer.putDouble(feature.scale);
+            }
+            for (final Feature feature : featureList) {
+                writer.putDouble(feature.orientation);
+            }
+
+            if (quantizeDescriptors) {
+
+                final float[] descriptorMinimums = new float[numberOfFeatures];
+                final float[] descriptorSteps = new float[numberOfFeatures];
+                for (int i = 0; i < numberOfFeatures; i++) {
+                    float descriptorMinimum = Float.MAX_VALUE;
+                    float descriptorMaximum = -Float.MAX_VALUE;
+                    for (final float value : featureList.get(i).descriptor) {
+                        descriptorMinimum = Math.min(descriptorMinimum, value);
+                        descriptorMaximum = Math.max(descriptorMaximum, value);
+                    }
+                    if (descriptorMaximum > descriptorMinimum) {
+                        descriptorMinimums[i] = descriptorMinimum;
+                        descriptorSteps[i] = (descriptorMaximum - descriptorMinimum) / 255.0f;
+                    } else if (descriptorMaximum == descriptorMinimum) {
+                        descriptorMinimums[i] = descriptorMinimum; // constant descriptor
+                    }
+                }
+
+                for (final float descriptorMinimum : descriptorMinimums) {
+                    writer.putFloat(descriptorMinimum);
+                }
+                for (final float descriptorStep : descriptorSteps) {
+                    writer.putFloat(descriptorStep);
+                }
+                for (int i = 0; i < numberOfFeatures; i++) {
+                    for (final float value : featureList.get(i).descriptor) {
+                        writer.put(quantize(value, descriptorMinimums[i], descriptorSteps[i]));
+                    }
+                }
+
+            } else {
+                for (final Feature feature : featureList) {
+                    for (final float value : feature.descriptor) {
+                        writer.putFloat(value);
+                    }
+                }
+            }
+
+            writer.flush();
+
+        } catch (final Throwable t) {
+            throw new IOException("failed to write " + path, t);
+        }
+
+        LOG.info("write: exit, wrote {} features to {}", numberOfFeatures, path);
+    }
+
+    /**
+     * @param  path  file path for encoded data.
+     *
+     * @return feature list decoded from the specified path.
+     *
+     * @throws IOException
+     *   if the data cannot be read, is not in this format, or is truncated.
+     */
+    public static CanvasFeatureList read(final Path path)
+            throws IOException {
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final long fileSize = channel.size();
+
+            if (fileSize < 12) {
+                throw new IOException(path + " does not contain binary feature data");
+            }
+
+            final ByteBuffer prefix = readFully(channel, 0, 12);
+            if (prefix.getInt() != MAGIC_NUMBER) {
+                throw new IOException(path + " does not contain binary feature data");
+            }
+
+            final int version = prefix.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported binary feature data version " + version + " in " + path);
+            }
+
+            final int metadataLength = prefix.getInt();
+            if ((metadataLength < 0) || (getColumnsOffset(metadataLength) > fileSize)) {
+                throw new IOException("invalid metadata length " + metadataLength + " in " + path +
+                                      " (file size is " + fileSize + " bytes)");
+            }
+
+            final byte[] metadata = new byte[metadataLength];
+            readFully(channel, 12, metadataLength).get(metadata);
+            final CanvasFeatureList storedMetadata =
+                    JsonUtils.FAST_MAPPER.readValue(new String(metadata, StandardCharsets.UTF_8),
+                                                    CanvasFeatureList.class);
+
+            final long columnsOffset = getColumnsOffset(metadataLength);
+            final ByteBuffer header = readFully(channel, columnsOffset - HEADER_BYTES, HEADER_BYTES);
+
+            final int numberOfFeatures = header.getInt();
+            final int dimension = header.getInt();
+            final int descriptorEncoding = header.getInt();
+
+            final long descriptorValueBytes;
+            final long perFeatureColumnBytes;
+            if (descriptorEncoding == FLOAT_ENCODING) {
+                descriptorValueBytes = 4;
+                perFeatureColumnBytes = 32;
+            } else if (descriptorEncoding == QUANTIZED_BYTE_ENCODING) {
+                descriptorValueBytes = 1;
+                perFeatureColumnBytes = 40;
+            } else {
+                throw new IOException("unsupported descriptor encoding " + descriptorEncoding + " in " + path);
+            }
+
+            if ((numberOfFeatures < 0) || (numberOfFeatures > MAX_NUMBER_OF_FEATURES) ||
+                (dimension < 0) || ((descriptorValueBytes * dimension) > MAX_MAPPED_BYTES)) {
+                throw new IOException("invalid feature count " + numberOfFeatures + " or descriptor dimension " +
+                                      dimension + " in " + path);
+            }
+
+            final long descriptorBytes = descriptorValueBytes * dimension;
+            final long expectedFileSize = columnsOffset +
+                                          (perFeatureColumnBytes * numberOfFeatures) +
+                                          (descriptorBytes * numberOfFeatures);
+            if (expectedFileSize > fileSize) {
+                throw new IOException(path + " is truncated, " + numberOfFeatures + " features with " +
+                                      dimension + " dimensional descriptors need " + expectedFileSize +
+                                      " bytes but file only has " + fileSize + " bytes");
+            }
+
+            final double[] locations = new double[2 * numberOfFeatures];
+            final double[] scales = new double[numberOfFeatures];
+            final double[] orientations = new double[numberOfFeatures];
+
+            long position = columnsOffset;
+            position = getDoubles(channel, position, locations);
+            position = getDoubles(channel, position, scales);
+            position = getDoubles(channel, position, orientations);
+
+            final float[] descriptorMinimums;
+            final float[] descriptorSteps;
+            if (descriptorEncoding == QUANTIZED_BYTE_ENCODING) {
+                descriptorMinimums = new float[numberOfFeatures];
+                descriptorSteps = new float[numberOfFeatures];
+                position = getFloats(channel, position, descriptorMinimums);
+                position = getFloats(channel, position, descriptorSteps);
+            } else {
+                descriptorMinimums = null;
+                descriptorSteps = null;
+            }
+
+            final List<Feature> featureList = new ArrayList<>(numberOfFeatures);
+
+            // map descriptors in bounded windows so that large files do not exceed the mapped buffer limit
+            final int featuresPerWindow = (int) Math.max(1, MAX_MAPPED_BYTES / Math.max(1, descriptorBytes));
+            final byte[] quantizedDescriptor = new byte[dimension];
+
+            for (int windowStart = 0; windowStart < numberOfFeatures; windowStart += featuresPerWindow) {
+
+                final int windowEnd = (int) Math.min(numberOfFeatures, (long) windowStart + featuresPerWindow);
+                final ByteBuffer window = map(channel, position, descriptorBytes * (windowEnd - windowStart));
+                position += descriptorBytes * (windowEnd - windowStart);
+
+                final FloatBuffer floatWindow = descriptorMinimums == null ? window.asFloatBuffer() : null;
+
+                for (int i = windowStart; i < windowEnd; i++) {
+                    final float[] descriptor = new float[dimension];
+                    if (floatWindow != null) {
+                        floatWindow.get(descriptor);
+                    } else {
+                        window.get(quantizedDescriptor);
+                        for (int d = 0; d < dimension; d++) {
+                            descriptor[d] = descriptorMinimums[i] + ((quantizedDescriptor[d] & 0xff) * descriptorSteps[i]);
+                        }
+                    }
+                    featureList.add(buildFeature(i, locations, scales, orientations, descriptor));
+                }
+            }
+
+            return new CanvasFeatureList(storedMetadata.getCanvasId(),
+                                         storedMetadata.getRenderParametersUrl(),
+                                         storedMetadata.getRenderScale(),
+                                         storedMetadata.getClipWidth(),
+                                         storedMetadata.getClipHeight(),
+                                         featureList);
+        }
+    }
+
+    private static byte[] getMetadataBytes(final CanvasFeatureList canvasFeatureList)
+            throws IOException {
+        final CanvasFeatureList metadata = new CanvasFeatureList(canvasFeatureList.getCanvasId(),
+                                                                 canvasFeatureList.getRenderParametersUrl(),
+                                                                 canvasFeatureList.getRenderScale(),
+                                                                 canvasFeatureList.getClipWidth(),
+                                                                 canvasFeatureList.getClipHeight(),
+                                                                 null);
+        return JsonUtils.FAST_MAPPER.writeValueAsString(metadata).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return offset of the first column, aligned so that all columns start on an 8 byte boundary.
+     */
+    private static long getColumnsOffset(final int metadataLength) {
+        final long unalignedHeaderEnd = 12L + metadataLength;
+        return (((unalignedHeaderEnd + 7) / 8) * 8) + HEADER_BYTES;
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel,
+                                        final long position,
+                                        final int length)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file at byte " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer map(final FileChannel channel,
+                                  final long position,
+                                  final long length)
+            throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long getDoubles(final FileChannel channel,
+                                   final long position,
+                                   final double[] values)
+            throws IOException {
+        final int valuesPerWindow = (int) (MAX_MAPPED_BYTES / 8);
+        long windowPosition = position;
+        for (int start = 0; start < values.length; start += valuesPerWindow) {
+            final int count = Math.min(valuesPerWindow, values.length - start);
+            final DoubleBuffer doubleBuffer = map(channel, windowPosition, 8L * count).asDoubleBuffer();
+            doubleBuffer.get(values, start, count);
+            windowPosition += 8L * count;
+        }
+        return windowPosition;
+    }
+
+    private static long getFloats(final FileChannel channel,
+                                  final long position,
+                                  final float[] values)
+            throws IOException {
+        final int valuesPerWindow = (int) (MAX_MAPPED_BYTES / 4);
+        long windowPosition = position;
+        for (int start = 0; start < values.length; start += valuesPerWindow) {
+            final int count = Math.min(valuesPerWindow, values.length - start);
+            final FloatBuffer floatBuffer = map(channel, windowPosition, 4L * count).asFloatBuffer();
+            floatBuffer.get(values, start, count);
+            windowPosition += 4L * count;
+        }
+        return windowPosition;
+    }
+
+    private static byte quantize(final float value,
+                                 final float minimum,
+                                 final float step) {
+        int quantizedValue = 0;
+        if (step > 0) {
+            quantizedValue = Math.round((value - minimum) / step);
+            quantizedValue = Math.max(0, Math.min(255, quantizedValue));
+        }
+        return (byte) quantizedValue;
+    }
+
+    private static Feature buildFeature(final int index,
+                                        final double[] locations,
+                                        final double[] scales,
+                                        final double[] orientations,
+                                        final float[] descriptor) {
+        final double[] location = { locations[2 * index], locations[(2 * index) + 1] };
+        return new Feature(scales[index], orientations[index], location, descriptor);
+    }
+
+    /** "RFL1" when viewed as little-endian bytes. */
+    private static final int MAGIC_NUMBER = 0x314C4652;
+
+    /** Version 2 quantizes each descriptor with its own minimum and step. */
+    private static final int VERSION = 2;
+
+    /** Size of feature count, dimension, encoding, and unused values. */
+    private static final int HEADER_BYTES = 16;
+
+    /** Largest number of features whose location column fits in a Java array. */
+    private static final int MAX_NUMBER_OF_FEATURES = (Integer.MAX_VALUE - 8) / 2;
+
+    /** Largest (8 byte aligned) window that can be memory mapped at once. */
+    private static final long MAX_MAPPED_BYTES = (Integer.MAX_VALUE / 8) * 8L;
+
+    /** Size of the reusable buffer for streamed writes. */
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    private static final int FLOAT_ENCODING = 0;
+    private static final int QUANTIZED_BYTE_ENCODING = 1;
+
+    /**
+     * Streams little-endian values to a channel through a small reusable buffer.
+     */
+    private static class ChannelWriter {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        ChannelWriter(final FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        void put(final byte value) throws IOException {
+            ensureRemaining(1);
+            buffer.put(value);
+        }
+
+        void put(final byte[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                ensureRemaining(1);
+                final int length = Math.min(buffer.remaining(), values.length - offset);
+                buffer.put(values, offset, length);
+                offset += length;
+            }
+        }
+
+        void putInt(final int value) throws IOException {
+            ensureRemaining(4);
+            buffer.putInt(value);
+        }
+
+        void putFloat(final float value) throws IOException {
+            ensureRemaining(4);
+            buffer.putFloat(value);
+        }
+
+        void putDouble(final double value) throws IOException {
+            ensureRemaining(8);
+            buffer.putDouble(value);
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensureRemaining(final int numberOfBytes) throws IOException {
+            if (buffer.remaining() < numberOfBytes) {
+                flush();
+            }
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureListBinaryFormat.class);
+}
@@ -38,6 +38,15 @@ public class CanvasFeatureMatcher implements Serializable {
         AGGREGATED_CONSENSUS_SETS
     }
 
+    /** Supported descriptor matching engines. */
+    public enum MatchingEngine {
+        /** Compare every pair of descriptors (using {@link FeatureTransform#matchFeatures}). */
+        FEATURE_TRANSFORM,
+
+        /** Find approximate nearest neighbors with a randomized k-d forest index (fastest, may miss matches). */
+        KD_FOREST
+    }
+
     private final float rod;
     private final ModelType modelType;
     private final int iterations;
@@ -47,6 +56,7 @@ public class CanvasFeatureMatcher implements Serializable {
     private final int minNumInliers;
     private final Integer maxNumInliers;
     private final FilterType filterType;
+    private final MatchingEngine matchingEngine;
 
     /**
      * Sets up everything that is needed to derive point matches from the feature lists of two canvases.
@@ -70,6 +80,34 @@ public class CanvasFeatureMatcher implements Serializable {
                                 final double maxTrust,
                                 final Integer maxNumInliers,
                                 final FilterType filterType) {
+        this(rod, modelType, iterations, maxEpsilon, minInlierRatio, minNumInliers, maxTrust, maxNumInliers,
+             filterType, MatchingEngine.FEATURE_TRANSFORM);
+    }
+
+    /**
+     * Sets up everything that is needed to derive point matches from the feature lists of two canvases.
+     *
+     * @param  rod             ratio of distances (e.g. 0.92f).
+     * @param  modelType       type of model to use for filter.
+     * @param  iterations      filter iterations (e.g. 1000).
+     * @param  maxEpsilon      minimal allowed transfer error (e.g. 20.0f).
+     * @param  minInlierRatio  minimal ratio of inliers to candidates (e.g. 0.0f).
+     * @param  minNumInliers   minimal absolute number of inliers for matches (e.g. 10).
+     * @param  maxTrust        reject candidates with a cost larger than maxTrust * median cost (e.g. 3).
+     * @param  maxNumInliers   (optional) maximum number of inliers for matches; null indicates no maximum.
+     * @param  filterType      type of match filtering.
+     * @param  matchingEngine  engine for finding candidate descriptor matches (null for brute force).
+     */
+    public CanvasFeatureMatcher(final float rod,
+                                final ModelType modelType,
+                                final int iterations,
+                                final float maxEpsilon,
+                                final float minInlierRatio,
+                                final int minNumInliers,
+                                final double maxTrust,
+                                final Integer maxNumInliers,
+                                final FilterType filterType,
+                                final MatchingEngine matchingEngine) {
         this.rod = rod;
         this.modelType = modelType;
         this.iterations = iterations;
@@ -79,6 +117,7 @@ public class CanvasFeatureMatcher implements Serializable {
         this.maxTrust = maxTrust;
         this.maxNumInliers = maxNumInliers;
         this.filterType = filterType;
+        this.matchingEngine = matchingEngine == null ? MatchingEngine.FEATURE_TRANSFORM : matchingEngine;
     }
 
     /**
@@ -89,6 +128,25 @@ public class CanvasFeatureMatcher implements Serializable {
      */
     public CanvasFeatureMatchResult deriveMatchResult(final List<Feature> canvas1Features,
                                                       final List<Feature> canvas2Features) {
+        return deriveMatchResult(canvas1Features, canvas2Features, null, null);
+    }
+
+    /**
+     * @param  canvas1Features  feature list for first canvas.
+     * @param  canvas2Features  feature list for second canvas.
+     * @param  predictedOffset  (optional) predicted x[0] and y[1] offset (in canvas pixels) of second canvas
+     *                          feature locations from their corresponding first canvas feature locations.
+     * @param  searchRadius     (optional) only compare descriptors of second canvas features within this
+     *                          many canvas pixels of each predicted location.
+     *                          Spatially constrained matching is only used when both this and
+     *                          the predicted offset are specified.
+     *
+     * @return match results for the specified feature lists.
+     */
+    public CanvasFeatureMatchResult deriveMatchResult(final List<Feature> canvas1Features,
+                                                      final List<Feature> canvas2Features,
+                                                      final double[] predictedOffset,
+                                                      final Double searchRadius) {
 
         LOG.info("deriveMatchResult: entry, canvas1Features.size={}, canvas2Features.size={}",
                  canvas1Features.size(), canvas2Features.size());
@@ -97,9 +155,17 @@ public class CanvasFeatureMatcher implements Serializable {
         timer.start();
 
         final Model model = modelType.getInstance();
-        final List<PointMatch> candidates = new ArrayList<>(canvas1Features.size());
-
-        FeatureTransform.matchFeatures(canvas1Features, canvas2Features, candidates, rod);
+        final List<PointMatch> candidates;
+        if ((predictedOffset != null) && (searchRadius != null)) {
+            LOG.info("deriveMatchResult: searching within {} pixels of predicted offset ({}, {})",
+                     searchRadius, predictedOffset[0], predictedOffset[1]);
+            candidates = new SpatialDescriptorMatcher(searchRadius).matchFeatures(canvas1Features,
+                                                                                  canvas2Features,
+                                                                                  predictedOffset,
+                                                                                  rod);
+        } else {
+            candidates = findCandidateMatches(canvas1Features, canvas2Features);
+        }
 
         CanvasFeatureMatchResult result = null;
         switch (filterType) {
@@ -127,6 +193,32 @@ public class CanvasFeatureMatcher implements Serializable {
         return result;
     }
 
+    /**
+     * @param  canvas1Features  feature list for first canvas.
+     * @param  canvas2Features  feature list for second canvas.
+     *
+     * @return unfiltered candidate matches that pass the ratio of distances test.
+     */
+    public List<PointMatch> findCandidateMatches(final List<Feature> canvas1Features,
+                                                 final List<Feature> canvas2Features) {
+
+        final List<PointMatch> candidates;
+        switch (matchingEngine) {
+            case KD_FOREST:
+                candidates = new DescriptorRatioMatcher(KD_FOREST_NUMBER_OF_TREES,
+                                                        KD_FOREST_NUMBER_OF_RANDOM_DIMENSIONS,
+                                                        KD_FOREST_MAX_CHECKS).matchFeatures(canvas1Features,
+                                                                                            canvas2Features,
+                                                                                            rod);
+                break;
+            default:
+                candidates = new ArrayList<>(canvas1Features.size());
+                FeatureTransform.matchFeatures(canvas1Features, canvas2Features, candidates, rod);
+        }
+
+        return candidates;
+    }
+
     public List<PointMatch> filterMatches(final List<PointMatch> candidates,
                                           final Model model) {
 
@@ -167,30 +259,16 @@ public class CanvasFeatureMatcher implements Serializable {
      */
     public List<List<PointMatch>> filterConsensusMatches(final List<PointMatch> candidates) {
 
-        final List<List<PointMatch>> listOfInliersLists = new ArrayList<>();
         final int totalNumberOfCandidates = candidates.size();
 
-        boolean modelFound;
-        do {
-            final Model model = modelType.getInstance();
-            final List<PointMatch> modelInliers = new ArrayList<>();
-            try {
-                modelFound = model.filterRansac(candidates,
-                                                modelInliers,
-                                                iterations,
-                                                maxEpsilon,
-                                                minInlierRatio,
-                                                minNumInliers);
-            } catch (final NotEnoughDataPointsException e) {
-                modelFound = false;
-            }
-
-            if (modelFound) {
-                listOfInliersLists.add(modelInliers);
-                candidates.removeAll(modelInliers);
-            }
-
-        } while (modelFound);
+        final ConsensusSetFilter consensusSetFilter = new ConsensusSetFilter(modelType,
+                                                                             iterations,
+                                                                             maxEpsilon,
+                                                                             minInlierRatio,
+                                                                             minNumInliers,
+                                                                             CONSENSUS_SET_MAX_TRUST,
+                                                                             CONSENSUS_SET_RANDOM_SEED);
+        final List<List<PointMatch>> listOfInliersLists = consensusSetFilter.filter(candidates);
 
         // additional post processing of inliers is needed to apply maxNumInliers constraint and address minNumInliers bug
 
@@ -233,5 +311,14 @@ public class CanvasFeatureMatcher implements Serializable {
         }
     }
 
+    // same maxTrust as the six argument Model.filterRansac method
+    private static final double CONSENSUS_SET_MAX_TRUST = 3.0;
+    private static final long CONSENSUS_SET_RANDOM_SEED = 69997;
+
+    // randomized k-d forest settings (see FeatureMatchingPerformanceTest for speed and recall comparisons)
+    private static final int KD_FOREST_NUMBER_OF_TREES = 4;
+    private static final int KD_FOREST_NUMBER_OF_RANDOM_DIMENSIONS = 5;
+    private static final int KD_FOREST_MAX_CHECKS = 512;
+
     private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureMatcher.class);
 }
@@ -110,14 +110,40 @@ public class CanvasRenderParametersUrlTemplate
             throws IllegalArgumentException {
 
         final RenderParameters renderParameters = RenderParameters.loadFromUrl(renderParametersUrl);
+        applyClipInfo(canvasId, renderParameters);
 
+        return renderParameters;
+    }
+
+    /**
+     * Clips the specified (unclipped) render parameters for the specified canvas
+     * if clip information has been set for this template.
+     *
+     * @param  canvasId          canvas for the parameters (clip offsets are set as a side effect).
+     * @param  renderParameters  parameters to clip.
+     */
+    public void applyClipInfo(final CanvasId canvasId,
+                              final RenderParameters renderParameters) {
         if ((clipWidth != null) || (clipHeight != null)) {
             // TODO: setting the canvas offsets here is hack-y, probably want a cleaner way
             canvasId.setClipOffsets(renderParameters.getWidth(), renderParameters.getHeight(), clipWidth, clipHeight);
             renderParameters.clipForMontagePair(canvasId, clipWidth, clipHeight);
         }
+    }
 
-        return renderParameters;
+    /**
+     * @return URL for retrieving render parameters for a batch of tiles with a single request
+     *         or null if this is not a tile render parameters template
+     *         (e.g. [stack_url]/tile/{id}/render-parameters?scale=0.4 becomes
+     *         [stack_url]/tile-render-parameters?scale=0.4).
+     */
+    public String getTileBatchRenderParametersUrl() {
+        String batchUrl = null;
+        final Matcher m = TILE_RENDER_PARAMETERS_PATTERN.matcher(templateString);
+        if (m.matches() && (! containsGroupIdReference)) {
+            batchUrl = m.group(1) + "/tile-render-parameters" + (m.group(2) == null ? "" : m.group(2));
+        }
+        return batchUrl;
     }
 
     /**
@@ -208,4 +234,6 @@ public class CanvasRenderParametersUrlTemplate
     private static final Pattern ID_TOKEN_PATTERN = buildTokenPattern(TEMPLATE_ID_TOKEN);
     private static final Pattern GROUP_ID_TOKEN_PATTERN = buildTokenPattern(TEMPLATE_GROUP_ID_TOKEN);
     private static final Pattern BOX_ID_PATTERN = Pattern.compile("z_.*_box_(.*)(_set_.*)?");
+    private static final Pattern TILE_RENDER_PARAMETERS_PATTERN =
+            Pattern.compile("(.*/stack/[^/]+)/tile/" + Pattern.quote(TEMPLATE_ID_TOKEN) + "/render-parameters(\\?.*)?");
 }
@@ -0,0 +1,419 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import mpicbg.models.Affine2D;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.Model;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.PointMatch;
+
+/**
+ * Primitive array implementation of repeated RANSAC filtering for multiple consensus sets.
+ *
+ * Each round mirrors {@link Model#filterRansac}
+ * (random minimal sample hypotheses that are iteratively refit to their inliers, followed by
+ * median based trust filtering), but candidate coordinates are kept in flat double arrays,
+ * models are applied via their affine matrix elements instead of through {@link PointMatch} objects,
+ * inliers are tracked in bit sets, and the inliers of each consensus set are removed from the
+ * remaining candidates in linear time.
+ *
+ * Hypothesis scoring stops as soon as enough candidates have failed that the hypothesis can no
+ * longer satisfy the minimum inlier constraints, so rejected hypotheses are never fully scored.
+ *
+ * Hypotheses are accepted and refined with the same criteria as filterRansac, but minimal samples
+ * are drawn from this filter's own seeded {@link Random} (instead of the generator shared by all
+ * mpicbg models) and in a different order, so the consensus sets found are generally
+ * <em>not</em> identical to those found by repeated filterRansac calls.
+ * Results are repeatable for the same seed and candidates.
+ *
+ * @author Eric Trautman
+ */
+public class ConsensusSetFilter {
+
+    private final ModelType modelType;
+    private final int iterations;
+    private final double maxEpsilon;
+    private final double minInlierRatio;
+    private final int minNumInliers;
+    private final double maxTrust;
+    private final Random random;
+
+    /**
+     * @param  modelType       type of model to use for filter.
+     * @param  iterations      RANSAC iterations for each consensus set (e.g. 1000).
+     * @param  maxEpsilon      minimal allowed transfer error (e.g. 20.0f).
+     * @param  minInlierRatio  minimal ratio of inliers to candidates (e.g. 0.0f).
+     * @param  minNumInliers   minimal absolute number of inliers for a consensus set (e.g. 10).
+     * @param  maxTrust        reject inliers with a cost larger than maxTrust * median cost (e.g. 3).
+     * @param  randomSeed      seed for sample selection.
+     */
+    public ConsensusSetFilter(final ModelType modelType,
+                              final int iterations,
+                              final double maxEpsilon,
+                              final double minInlierRatio,
+                              final int minNumInliers,
+                              final double maxTrust,
+                              final long randomSeed) {
+        this.modelType = modelType;
+        this.iterations = iterations;
+        this.maxEpsilon = maxEpsilon;
+        this.minInlierRatio = minInlierRatio;
+        this.minNumInliers = minNumInliers;
+        this.maxTrust = maxTrust;
+        this.random = new Random(randomSeed);
+    }
+
+    /**
+     * Finds consensus sets until no more sets can be found in the remaining candidates.
+     *
+     * @param  candidates  list of all candidate matches (inliers for all found sets are removed from this list).
+     *
+     * @return list of consensus set inlier lists in the order they were found.
+     */
+    public List<List<PointMatch>> filter(final List<PointMatch> candidates) {
+
+        final Candidates remaining = new Candidates(candidates);
+        final List<List<PointMatch>> listOfInliersLists = new ArrayList<>();
+        final BitSet removed = new BitSet(candidates.size());
+
+        BitSet inliers;
+        do {
+            inliers = findConsensusSet(remaining);
+            if (inliers != null) {
+                final List<PointMatch> modelInliers = new ArrayList<>(inliers.cardinality());
+                for (int i = inliers.nextSetBit(0); i >= 0; i = inliers.nextSetBit(i + 1)) {
+                    final int candidateIndex = remaining.originalIndexes[i];
+                    modelInliers.add(candidates.get(candidateIndex));
+                    removed.set(candidateIndex);
+                }
+                listOfInliersLists.add(modelInliers);
+                remaining.remove(inliers);
+            }
+        } while (inliers != null);
+
+        if (! removed.isEmpty()) {
+            final List<PointMatch> outliers = new ArrayList<>(candidates.size() - removed.cardinality());
+            for (int i = removed.nextClearBit(0); i < candidates.size(); i = removed.nextClearBit(i + 1)) {
+                outliers.add(candidates.get(i));
+            }
+            candidates.clear();
+            candidates.addAll(outliers);
+        }
+
+        return listOfInliersLists;
+    }
+
+    /**
+     * @return inlier (remaining candidate) indexes for the best consensus set or null if none was found.
+     */
+    private BitSet findConsensusSet(final Candidates remaining) {
+
+        final Model<?> model = modelType.getInstance();
+        final int minNumMatches = model.getMinNumMatches();
+
+        if (remaining.size < minNumMatches) {
+            return null;
+        }
+
+        final int minRansacInliers = Math.max(minNumInliers, minNumMatches);
+        final FitData sampleFitData = new FitData(minNumMatches);
+        final FitData fitData = new FitData(remaining.size);
+        final double[] m = new double[6];
+        final int[] sample = new int[minNumMatches];
+
+        BitSet bestInliers = null;
+        int bestCount = 0;
+
+        BitSet tempInliers = new BitSet(remaining.size);
+        BitSet refinedInliers = new BitSet(remaining.size);
+
+        for (int i = 0; i < iterations; i++) {
+
+            selectSample(remaining.size, sample);
+
+            if (! fit(model, remaining, sample, sampleFitData, m)) {
+                continue;
+            }
+
+            int count = test(remaining, m, minNumMatches, tempInliers);
+            boolean isGood = count >= 0;
+            int numInliers = 0;
+
+            while (isGood && (numInliers < count)) {
+                numInliers = count;
+                if (fit(model, remaining, tempInliers, fitData, m)) {
+                    count = test(remaining, m, minRansacInliers, refinedInliers);
+                    isGood = count >= 0;
+                    final BitSet swap = tempInliers;
+                    tempInliers = refinedInliers;
+                    refinedInliers = swap;
+                } else {
+                    isGood = false;
+                }
+            }
+
+            if (isGood && (count > bestCount) && (count >= minRansacInliers)) {
+                bestCount = count;
+                bestInliers = (BitSet) tempInliers.clone();
+            }
+        }
+
+        return bestInliers == null ? null : trustFilter(model, remaining, bestInliers, minNumMatches, fitData, m);
+    }
+
+    /**
+     * Tests all remaining candidates against the specified affine model.
+     *
+     * @return number of inliers or -1 if the inliers do not satisfy the minimum constraints.
+     */
+    private int test(final Candidates remaining,
+                     final double[] m,
+                     final int minCount,
+                     final BitSet inliers) {
+
+        inliers.clear();
+
+        final int size = remaining.size;
+        final double maxEpsilonSquared = maxEpsilon * maxEpsilon;
+
+        // smallest count that satisfies both the absolute and ratio constraints
+        int requiredCount = minCount;
+        while ((requiredCount <= size) && ((requiredCount / (double) size) <= minInlierRatio)) {
+            requiredCount++;
+        }
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+
+            // preemptively reject once remaining candidates cannot reach the required count
+            if ((count + (size - i)) < requiredCount) {
+                return -1;
+            }
+
+            final double x = remaining.pX[i];
+            final double y = remaining.pY[i];
+            final double dx = (m[0] * x) + (m[2] * y) + m[4] - remaining.qX[i];
+            final double dy = (m[1] * x) + (m[3] * y) + m[5] - remaining.qY[i];
+            if (((dx * dx) + (dy * dy)) < maxEpsilonSquared) {
+                inliers.set(i);
+                count++;
+            }
+        }
+
+        return count >= requiredCount ? count : -1;
+    }
+
+    /**
+     * Iteratively refits the model to the consensus set and removes inliers with errors larger than
+     * maxTrust * median error (mirrors mpicbg model filter logic).
+     *
+     * @return filtered inliers or null if they do not satisfy the minimum constraints.
+     */
+    private BitSet trustFilter(final Model<?> model,
+                               final Candidates remaining,
+                               final BitSet consensusSet,
+                               final int minNumMatches,
+                               final FitData fitData,
+                               final double[] m) {
+
+        if (consensusSet.cardinality() < minNumMatches) {
+            return null;
+        }
+
+        final BitSet inliers = (BitSet) consensusSet.clone();
+        final double[] distances = new double[remaining.size];
+        final double[] sortedDistances = new double[remaining.size];
+
+        int numInliers;
+        int count = inliers.cardinality();
+        do {
+            numInliers = count;
+
+            if (! fit(model, remaining, inliers, fitData, m)) {
+                return null;
+            }
+
+            int n = 0;
+            for (int i = inliers.nextSetBit(0); i >= 0; i = inliers.nextSetBit(i + 1)) {
+                final double x = remaining.pX[i];
+                final double y = remaining.pY[i];
+                final double dx = (m[0] * x) + (m[2] * y) + m[4] - remaining.qX[i];
+                final double dy = (m[1] * x) + (m[3] * y) + m[5] - remaining.qY[i];
+                distances[i] = Math.sqrt((dx * dx) + (dy * dy));
+                sortedDistances[n++] = distances[i];
+            }
+
+            Arrays.sort(sortedDistances, 0, n);
+            final int half = n / 2;
+            final double median = (n % 2 == 0) ? (sortedDistances[half - 1] + sortedDistances[half]) / 2.0 :
+                                  sortedDistances[half];
+            final double threshold = median * maxTrust;
+
+            count = 0;
+            for (int i = inliers.nextSetBit(0); i >= 0; i = inliers.nextSetBit(i + 1)) {
+                if (distances[i] <= threshold) {
+                    count++;
+                } else {
+                    inliers.clear(i);
+                }
+            }
+
+        } while (numInliers > count);
+
+        // numInliers (rather than count) is checked to remain consistent with Model#filter
+        return numInliers < minNumInliers ? null : inliers;
+    }
+
+    /**
+     * Selects distinct random indexes.
+     */
+    private void selectSample(final int size,
+                              final int[] sample) {
+        for (int s = 0; s < sample.length; s++) {
+            boolean isDuplicate;
+            do {
+                sample[s] = random.nextInt(size);
+                isDuplicate = false;
+                for (int t = 0; t < s; t++) {
+                    if (sample[t] == sample[s]) {
+                        isDuplicate = true;
+                        break;
+                    }
+                }
+            } while (isDuplicate);
+        }
+    }
+
+    private boolean fit(final Model<?> model,
+                        final Candidates remaining,
+                        final int[] indexes,
+                        final FitData fitData,
+                        final double[] m) {
+        for (int n = 0; n < indexes.length; n++) {
+            fitData.set(n, remaining, indexes[n]);
+        }
+        return fitData.fit(model, indexes.length, m);
+    }
+
+    private boolean fit(final Model<?> model,
+                        final Candidates remaining,
+                        final BitSet indexes,
+                        final FitData fitData,
+                        final double[] m) {
+        int n = 0;
+        for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+            fitData.set(n++, remaining, i);
+        }
+        return fitData.fit(model, n, m);
+    }
+
+    /**
+     * Flat coordinates for candidates that have not yet been assigned to a consensus set.
+     */
+    private static class Candidates {
+
+        private int size;
+        private final double[] pX;
+        private final double[] pY;
+        private final double[] qX;
+        private final double[] qY;
+        private final double[] weights;
+        private final int[] originalIndexes;
+
+        Candidates(final List<PointMatch> candidates) {
+            this.size = candidates.size();
+            this.pX = new double[size];
+            this.pY = new double[size];
+            this.qX = new double[size];
+            this.qY = new double[size];
+            this.weights = new double[size];
+            this.originalIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                final PointMatch pointMatch = candidates.get(i);
+                final double[] p = pointMatch.getP1().getL();
+                final double[] q = pointMatch.getP2().getW();
+                pX[i] = p[0];
+                pY[i] = p[1];
+                qX[i] = q[0];
+                qY[i] = q[1];
+                weights[i] = pointMatch.getWeight();
+                originalIndexes[i] = i;
+            }
+        }
+
+        /**
+         * Compacts the arrays to remove the specified candidates (preserving the order of the others).
+         */
+        void remove(final BitSet indexes) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (! indexes.get(i)) {
+                    pX[n] = pX[i];
+                    pY[n] = pY[i];
+                    qX[n] = qX[i];
+                    qY[n] = qY[i];
+                    weights[n] = weights[i];
+                    originalIndexes[n] = originalIndexes[i];
+                    n++;
+                }
+            }
+            size = n;
+        }
+    }
+
+    /**
+     * Reusable arrays in the form expected by {@link Model#fit(double[][], double[][], double[])}.
+     */
+    private static class FitData {
+
+        private final double[][] p;
+        private final double[][] q;
+        private final double[] w;
+
+        FitData(final int capacity) {
+            this.p = new double[2][capacity];
+            this.q = new double[2][capacity];
+            this.w = new double[capacity];
+        }
+
+        void set(final int n,
+                 final Candidates candidates,
+                 final int index) {
+            p[0][n] = candidates.pX[index];
+            p[1][n] = candidates.pY[index];
+            q[0][n] = candidates.qX[index];
+            q[1][n] = candidates.qY[index];
+            w[n] = candidates.weights[index];
+        }
+
+        /**
+         * Fits the model to the first count points and copies its affine elements into m.
+         * Models fit all points in the arrays they are given, so the weights of the unused
+         * trailing points are zeroed (which removes them from the weighted fit) instead of
+         * copying the used points into new arrays for every fit.
+         *
+         * @return true if the model was successfully fit; otherwise false.
+         */
+        boolean fit(final Model<?> model,
+                    final int count,
+                    final double[] m) {
+            if (count < model.getMinNumMatches()) {
+                return false;
+            }
+            Arrays.fill(w, count, w.length, 0.0);
+            try {
+                model.fit(p, q, w);
+            } catch (final NotEnoughDataPointsException | IllDefinedDataPointsException e) {
+                return false;
+            }
+            ((Affine2D<?>) model).toArray(m);
+            return true;
+        }
+    }
+
+}
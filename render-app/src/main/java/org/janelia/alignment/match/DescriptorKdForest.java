@@ -0,0 +1,433 @@
+package org.janelia.alignment.match;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Index of feature descriptors that supports two-nearest-neighbor searches for ratio-of-distances matching.
+ *
+ * A forest with one tree that always splits on the dimension with the largest variance and is searched
+ * without a check limit returns exact nearest neighbors.  Forests with multiple randomized trees
+ * (each split dimension is randomly selected from the dimensions with the largest variances) searched with a
+ * limited number of descriptor checks return approximate nearest neighbors much faster, following the
+ * randomized k-d forest approach of Silpa-Anan and Hartley (as popularized by FLANN).
+ *
+ * Trees are stored in flat primitive arrays to keep node traversal cheap and allocation free.
+ *
+ * @author Eric Trautman
+ */
+public class DescriptorKdForest {
+
+    /** Check limit value that indicates searches should be exact. */
+    public static final int UNLIMITED_CHECKS = Integer.MAX_VALUE;
+
+    private final FeatureDescriptors indexedDescriptors;
+    private final int numberOfTrees;
+    private final int numberOfRandomDimensions;
+    private final Random random;
+
+    // tree nodes: split dimension (or -1 for leaves), split value, child indexes, and leaf index ranges
+    private int[] splitDimension;
+    private float[] splitValue;
+    private int[] lowChild;
+    private int[] highChild;
+    private int[] leafStart;
+    private int[] leafStop;
+    private int numberOfNodes;
+
+    private final int[] treeRoots;
+    private final int[][] treeIndexes;
+
+    /**
+     * Builds an index for the specified descriptors.
+     *
+     * @param  indexedDescriptors        descriptors to index.
+     * @param  numberOfTrees             number of trees to build (use 1 for exact searches).
+     * @param  numberOfRandomDimensions  number of largest variance dimensions to randomly select split
+     *                                   dimensions from (use 1 to always split on the largest variance dimension).
+     * @param  randomSeed                seed for split dimension selection.
+     */
+    public DescriptorKdForest(final FeatureDescriptors indexedDescriptors,
+                              final int numberOfTrees,
+                              final int numberOfRandomDimensions,
+                              final long randomSeed) {
+
+        this.indexedDescriptors = indexedDescriptors;
+        this.numberOfTrees = numberOfTrees;
+        this.numberOfRandomDimensions = Math.max(1, numberOfRandomDimensions);
+        this.random = new Random(randomSeed);
+
+        final int initialCapacity = Math.max(16, (numberOfTrees * 2 * indexedDescriptors.size()) / LEAF_SIZE);
+        this.splitDimension = new int[initialCapacity];
+        this.splitValue = new float[initialCapacity];
+        this.lowChild = new int[initialCapacity];
+        this.highChild = new int[initialCapacity];
+        this.leafStart = new int[initialCapacity];
+        this.leafStop = new int[initialCapacity];
+        this.numberOfNodes = 0;
+
+        this.treeRoots = new int[numberOfTrees];
+        this.treeIndexes = new int[numberOfTrees][];
+
+        for (int t = 0; t < numberOfTrees; t++) {
+            final int[] indexes = new int[indexedDescriptors.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = i;
+            }
+            treeIndexes[t] = indexes;
+            treeRoots[t] = buildNode(indexes, 0, indexes.length);
+        }
+    }
+
+    /**
+     * Reusable search state so that searches do not allocate.  Each thread needs its own instance.
+     */
+    public static class Search {
+
+        private final int[] visitedStamps;
+        private int stamp;
+
+        private double[] queueBounds;
+        private int[] queueNodes;
+        private int queueSize;
+
+        private int nearestIndex;
+        private double nearestDistanceSquared;
+        private int secondNearestIndex;
+        private double secondNearestDistanceSquared;
+
+        public Search(final DescriptorKdForest forest) {
+            this.visitedStamps = new int[forest.indexedDescriptors.size()];
+            this.stamp = 0;
+            this.queueBounds = new double[64];
+            this.queueNodes = new int[64];
+            this.queueSize = 0;
+        }
+
+        /** @return index of the nearest indexed descriptor (or -1 if none was found). */
+        public int getNearestIndex() {
+            return nearestIndex;
+        }
+
+        public double getNearestDistanceSquared() {
+            return nearestDistanceSquared;
+        }
+
+        /** @return index of the second nearest indexed descriptor (or -1 if none was found). */
+        public int getSecondNearestIndex() {
+            return secondNearestIndex;
+        }
+
+        public double getSecondNearestDistanceSquared() {
+            return secondNearestDistanceSquared;
+        }
+
+        private void reset() {
+            stamp++;
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visitedStamps, 0);
+                stamp = 1;
+            }
+            queueSize = 0;
+            nearestIndex = -1;
+            nearestDistanceSquared = Double.MAX_VALUE;
+            secondNearestIndex = -1;
+            secondNearestDistanceSquared = Double.MAX_VALUE;
+        }
+
+        private boolean markVisited(final int index) {
+            final boolean isNew = visitedStamps[index] != stamp;
+            visitedStamps[index] = stamp;
+            return isNew;
+        }
+
+        private void offer(final int index,
+                           final double distanceSquared) {
+            if (distanceSquared < nearestDistanceSquared) {
+                secondNearestIndex = nearestIndex;
+                secondNearestDistanceSquared = nearestDistanceSquared;
+                nearestIndex = index;
+                nearestDistanceSquared = distanceSquared;
+            } else if (distanceSquared < secondNearestDistanceSquared) {
+                secondNearestIndex = index;
+                secondNearestDistanceSquared = distanceSquared;
+            }
+        }
+
+        // minimal binary heap of (bound, node) pairs ordered by bound
+
+        private void push(final double bound,
+                          final int node) {
+            if (queueSize == queueBounds.length) {
+                queueBounds = Arrays.copyOf(queueBounds, queueSize * 2);
+                queueNodes = Arrays.copyOf(queueNodes, queueSize * 2);
+            }
+            int i = queueSize++;
+            while (i > 0) {
+                final int parent = (i - 1) / 2;
+                if (queueBounds[parent] <= bound) {
+                    break;
+                }
+                queueBounds[i] = queueBounds[parent];
+                queueNodes[i] = queueNodes[parent];
+                i = parent;
+            }
+            queueBounds[i] = bound;
+            queueNodes[i] = node;
+        }
+
+        private int pop() {
+            final int node = queueNodes[0];
+            queueSize--;
+            if (queueSize > 0) {
+                final double lastBound = queueBounds[queueSize];
+                final int lastNode = queueNodes[queueSize];
+                int i = 0;
+                while (true) {
+                    int child = (2 * i) + 1;
+                    if (child >= queueSize) {
+                        break;
+                    }
+                    if (((child + 1) < queueSize) && (queueBounds[child + 1] < queueBounds[child])) {
+                        child++;
+                    }
+                    if (lastBound <= queueBounds[child]) {
+                        break;
+                    }
+                    queueBounds[i] = queueBounds[child];
+                    queueNodes[i] = queueNodes[child];
+                    i = child;
+                }
+                queueBounds[i] = lastBound;
+                queueNodes[i] = lastNode;
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Finds the two indexed descriptors nearest to the specified query descriptor.
+     * Results are available from the search object.
+     *
+     * @param  queryDescriptors  list containing the query descriptor.
+     * @param  queryIndex        index of the query descriptor within its list.
+     * @param  maxChecks         maximum number of indexed descriptors to compare
+     *                           (use {@link #UNLIMITED_CHECKS} for exact results).
+     * @param  search            reusable search state.
+     */
+    public void findTwoNearest(final FeatureDescriptors queryDescriptors,
+                               final int queryIndex,
+                               final int maxChecks,
+                               final Search search) {
+
+        search.reset();
+
+        int checkCount = 0;
+
+        // descend every tree once before exploring any deferred branches
+        for (int t = 0; (t < numberOfTrees) && (checkCount < maxChecks); t++) {
+            checkCount += descend(treeRoots[t], t, queryDescriptors, queryIndex, search);
+        }
+
+        while ((search.queueSize > 0) && (checkCount < maxChecks)) {
+            if (search.queueBounds[0] >= search.secondNearestDistanceSquared) {
+                break; // no deferred branch can contain a closer descriptor
+            }
+            final int encodedNode = search.pop();
+            checkCount += descend(encodedNode / numberOfTrees, encodedNode % numberOfTrees,
+                                  queryDescriptors, queryIndex, search);
+        }
+    }
+
+    private int descend(final int startNode,
+                        final int tree,
+                        final FeatureDescriptors queryDescriptors,
+                        final int queryIndex,
+                        final Search search) {
+
+        int node = startNode;
+        while (splitDimension[node] >= 0) {
+            final double diff = queryDescriptors.getValue(queryIndex, splitDimension[node]) - splitValue[node];
+            final int nearChild;
+            final int farChild;
+            if (diff < 0) {
+                nearChild = lowChild[node];
+                farChild = highChild[node];
+            } else {
+                nearChild = highChild[node];
+                farChild = lowChild[node];
+            }
+            final double bound = diff * diff;
+            if (bound < search.secondNearestDistanceSquared) {
+                search.push(bound, (farChild * numberOfTrees) + tree);
+            }
+            node = nearChild;
+        }
+
+        final int[] indexes = treeIndexes[tree];
+        int checkCount = 0;
+        for (int i = leafStart[node]; i < leafStop[node]; i++) {
+            final int index = indexes[i];
+            if (search.markVisited(index)) {
+                final double distanceSquared =
+                        queryDescriptors.getDistanceSquared(queryIndex,
+                                                            indexedDescriptors,
+                                                            index,
+                                                            search.secondNearestDistanceSquared);
+                search.offer(index, distanceSquared);
+                checkCount++;
+            }
+        }
+
+        return checkCount;
+    }
+
+    private int buildNode(final int[] indexes,
+                          final int start,
+                          final int stop) {
+
+        final int node = addNode();
+
+        final int count = stop - start;
+        int dimension = -1;
+        if (count > LEAF_SIZE) {
+            dimension = selectSplitDimension(indexes, start, stop);
+        }
+
+        if (dimension < 0) {
+            splitDimension[node] = -1;
+            leafStart[node] = start;
+            leafStop[node] = stop;
+        } else {
+            final int middle = start + (count / 2);
+            selectNth(indexes, start, stop, middle, dimension);
+
+            splitDimension[node] = dimension;
+            splitValue[node] = indexedDescriptors.getValue(indexes[middle], dimension);
+
+            final int low = buildNode(indexes, start, middle);
+            final int high = buildNode(indexes, middle, stop);
+            lowChild[node] = low;
+            highChild[node] = high;
+        }
+
+        return node;
+    }
+
+    private int addNode() {
+        if (numberOfNodes == splitDimension.length) {
+            final int capacity = numberOfNodes * 2;
+            splitDimension = Arrays.copyOf(splitDimension, capacity);
+            splitValue = Arrays.copyOf(splitValue, capacity);
+            lowChild = Arrays.copyOf(lowChild, capacity);
+            highChild = Arrays.copyOf(highChild, capacity);
+            leafStart = Arrays.copyOf(leafStart, capacity);
+            leafStop = Arrays.copyOf(leafStop, capacity);
+        }
+        return numberOfNodes++;
+    }
+
+    /**
+     * @return dimension with the largest (sampled) variance or a random choice among the
+     *         largest variance dimensions for randomized trees, -1 if all sampled values are identical.
+     */
+    private int selectSplitDimension(final int[] indexes,
+                                     final int start,
+                                     final int stop) {
+
+        final int dimensions = indexedDescriptors.getDimension();
+        final int count = stop - start;
+        final int sampleCount = Math.min(count, VARIANCE_SAMPLE_SIZE);
+        final int sampleStep = count / sampleCount;
+
+        final double[] sums = new double[dimensions];
+        final double[] sumsOfSquares = new double[dimensions];
+        for (int s = 0; s < sampleCount; s++) {
+            final int index = indexes[start + (s * sampleStep)];
+            for (int d = 0; d < dimensions; d++) {
+                final double value = indexedDescriptors.getValue(index, d);
+                sums[d] += value;
+                sumsOfSquares[d] += value * value;
+            }
+        }
+
+        // keep the top numberOfRandomDimensions dimensions by variance (in descending order)
+        final int topCount = Math.min(numberOfRandomDimensions, dimensions);
+        final int[] topDimensions = new int[topCount];
+        final double[] topVariances = new double[topCount];
+        int numberOfTopDimensions = 0;
+        for (int d = 0; d < dimensions; d++) {
+            final double mean = sums[d] / sampleCount;
+            final double variance = (sumsOfSquares[d] / sampleCount) - (mean * mean);
+            if (variance > 0) {
+                int i = Math.min(numberOfTopDimensions, topCount - 1);
+                if ((numberOfTopDimensions < topCount) || (variance > topVariances[i])) {
+                    while ((i > 0) && (topVariances[i - 1] < variance)) {
+                        topVariances[i] = topVariances[i - 1];
+                        topDimensions[i] = topDimensions[i - 1];
+                        i--;
+                    }
+                    topVariances[i] = variance;
+                    topDimensions[i] = d;
+                    if (numberOfTopDimensions < topCount) {
+                        numberOfTopDimensions++;
+                    }
+                }
+            }
+        }
+
+        final int dimension;
+        if (numberOfTopDimensions == 0) {
+            dimension = -1;
+        } else if (numberOfTopDimensions == 1) {
+            dimension = topDimensions[0];
+        } else {
+            dimension = topDimensions[random.nextInt(numberOfTopDimensions)];
+        }
+
+        return dimension;
+    }
+
+    /**
+     * Partially sorts the index range (quickselect) so that the element at position n has the
+     * value it would have in a fully sorted range and no element before it has a larger value.
+     */
+    private void selectNth(final int[] indexes,
+                           final int start,
+                           final int stop,
+                           final int n,
+                           final int dimension) {
+        int left = start;
+        int right = stop - 1;
+        while (right > left) {
+            final float pivot = indexedDescriptors.getValue(indexes[(left + right) >>> 1], dimension);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (indexedDescriptors.getValue(indexes[i], dimension) < pivot) {
+                    i++;
+                }
+                while (indexedDescriptors.getValue(indexes[j], dimension) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int swap = indexes[i];
+                    indexes[i] = indexes[j];
+                    indexes[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (n <= j) {
+                right = j;
+            } else if (n >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static final int LEAF_SIZE = 8;
+    private static final int VARIANCE_SAMPLE_SIZE = 128;
+}
@@ -0,0 +1,155 @@
+package org.janelia.alignment.match;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.Point;
+import mpicbg.models.PointMatch;
+
+/**
+ * Ratio-of-distances feature matcher that uses a {@link DescriptorKdForest} index
+ * instead of comparing every pair of descriptors.
+ *
+ * Matching semantics mirror {@link mpicbg.ij.FeatureTransform#matchFeatures}:
+ * a feature is matched to its nearest neighbor only if the ratio of its nearest and second nearest
+ * descriptor distances is less than the specified ratio (rod), and all matches that share a target
+ * location are removed as ambiguous.  With an exact index, results are the same as those from
+ * {@link mpicbg.ij.FeatureTransform#matchFeatures} (except for the arbitrary resolution of equidistant neighbors).
+ *
+ * @author Eric Trautman
+ */
+public class DescriptorRatioMatcher {
+
+    private final int numberOfTrees;
+    private final int numberOfRandomDimensions;
+    private final int maxChecks;
+
+    /**
+     * Exact searches of high dimensional descriptors are slower than brute force comparison,
+     * so this is only used to validate matching results.
+     *
+     * @return matcher that finds exact nearest neighbors with a single k-d tree.
+     */
+    static DescriptorRatioMatcher buildExactMatcher() {
+        return new DescriptorRatioMatcher(1, 1, DescriptorKdForest.UNLIMITED_CHECKS);
+    }
+
+    /**
+     * @param  numberOfTrees             number of randomized trees to search.
+     * @param  numberOfRandomDimensions  number of largest variance dimensions to randomly choose splits from.
+     * @param  maxChecks                 maximum number of descriptors to compare for each query.
+     */
+    public DescriptorRatioMatcher(final int numberOfTrees,
+                                  final int numberOfRandomDimensions,
+                                  final int maxChecks) {
+        this.numberOfTrees = numberOfTrees;
+        this.numberOfRandomDimensions = numberOfRandomDimensions;
+        this.maxChecks = maxChecks;
+    }
+
+    /**
+     * @param  canvas1Features  features for first canvas.
+     * @param  canvas2Features  features for second canvas.
+     * @param  rod              ratio of distances (e.g. 0.92f).
+     *
+     * @return unambiguous candidate matches ordered by first canvas feature.
+     */
+    public List<PointMatch> matchFeatures(final List<Feature> canvas1Features,
+                                          final List<Feature> canvas2Features,
+                                          final float rod) {
+
+        final FeatureDescriptors p = FeatureDescriptors.fromFeatures(canvas1Features);
+        final FeatureDescriptors q = FeatureDescriptors.fromFeatures(canvas2Features);
+
+        return buildPointMatches(p, q, findMatchedIndexes(p, q, rod));
+    }
+
+    /**
+     * @param  p    first canvas descriptors.
+     * @param  q    second canvas descriptors.
+     * @param  rod  ratio of distances (e.g. 0.92f).
+     *
+     * @return array of matched q indexes for each p descriptor (-1 when a p descriptor is not matched).
+     */
+    public int[] findMatchedIndexes(final FeatureDescriptors p,
+                                    final FeatureDescriptors q,
+                                    final float rod) {
+
+        final int[] matchedIndexes = new int[p.size()];
+        java.util.Arrays.fill(matchedIndexes, -1);
+
+        if ((p.size() == 0) || (q.size() < 2)) {
+            return matchedIndexes;
+        }
+
+        if (p.getDimension() != q.getDimension()) {
+            throw new IllegalArgumentException("descriptor dimensions differ (" + p.getDimension() +
+                                               " and " + q.getDimension() + ")");
+        }
+
+        final DescriptorKdForest forest =
+                new DescriptorKdForest(q, numberOfTrees, numberOfRandomDimensions, RANDOM_SEED);
+        final DescriptorKdForest.Search search = new DescriptorKdForest.Search(forest);
+
+        final Map<Point2D.Double, Integer> matchedLocationCounts = new HashMap<>();
+
+        for (int pIndex = 0; pIndex < p.size(); pIndex++) {
+            forest.findTwoNearest(p, pIndex, maxChecks, search);
+            if (search.getSecondNearestIndex() >= 0) {
+                // use the same distance ratio (of square roots) as FeatureTransform for consistent results
+                final double ratio = Math.sqrt(search.getNearestDistanceSquared()) /
+                                     Math.sqrt(search.getSecondNearestDistanceSquared());
+                if (ratio < rod) {
+                    final int qIndex = search.getNearestIndex();
+                    matchedIndexes[pIndex] = qIndex;
+                    matchedLocationCounts.merge(new Point2D.Double(q.getX(qIndex), q.getY(qIndex)), 1, Integer::sum);
+                }
+            }
+        }
+
+        removeAmbiguousMatches(q, matchedIndexes, matchedLocationCounts);
+
+        return matchedIndexes;
+    }
+
+    /**
+     * @return point matches for all matched indexes ordered by first canvas feature.
+     */
+    static List<PointMatch> buildPointMatches(final FeatureDescriptors p,
+                                              final FeatureDescriptors q,
+                                              final int[] matchedIndexes) {
+        final List<PointMatch> matches = new ArrayList<>();
+        for (int pIndex = 0; pIndex < matchedIndexes.length; pIndex++) {
+            final int qIndex = matchedIndexes[pIndex];
+            if (qIndex >= 0) {
+                matches.add(new PointMatch(new Point(new double[] { p.getX(pIndex), p.getY(pIndex) }),
+                                           new Point(new double[] { q.getX(qIndex), q.getY(qIndex) })));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Removes ambiguous matches (multiple p descriptors matched to the same q location).
+     *
+     * @param  q                      second canvas descriptors.
+     * @param  matchedIndexes         array of matched q indexes for each p descriptor (updated in place).
+     * @param  matchedLocationCounts  number of matches for each matched q location.
+     */
+    static void removeAmbiguousMatches(final FeatureDescriptors q,
+                                       final int[] matchedIndexes,
+                                       final Map<Point2D.Double, Integer> matchedLocationCounts) {
+        for (int pIndex = 0; pIndex < matchedIndexes.length; pIndex++) {
+            final int qIndex = matchedIndexes[pIndex];
+            if ((qIndex >= 0) && (matchedLocationCounts.get(new Point2D.Double(q.getX(qIndex), q.getY(qIndex))) > 1)) {
+                matchedIndexes[pIndex] = -1;
+            }
+        }
+    }
+
+    private static final long RANDOM_SEED = 17;
+}
@@ -0,0 +1,126 @@
+package org.janelia.alignment.match;
+
+import java.io.Serializable;
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+
+/**
+ * Flat (primitive array) storage for the descriptors and locations of a list of features.
+ *
+ * Keeping all descriptors in one contiguous array avoids dereferencing a {@link Feature} object
+ * (and its descriptor array) for every distance calculation during matching.
+ *
+ * @author Eric Trautman
+ */
+public class FeatureDescriptors
+        implements Serializable {
+
+    private final int size;
+    private final int dimension;
+    private final float[] descriptors;
+    private final double[] locations;
+
+    /**
+     * @param  size         number of features.
+     * @param  dimension    number of values in each descriptor.
+     * @param  descriptors  descriptor values for all features (feature i starts at i * dimension).
+     * @param  locations    x and y locations for all features (feature i starts at i * 2).
+     *
+     * @throws IllegalArgumentException
+     *   if the array lengths are inconsistent with the specified size and dimension.
+     */
+    public FeatureDescriptors(final int size,
+                              final int dimension,
+                              final float[] descriptors,
+                              final double[] locations)
+            throws IllegalArgumentException {
+
+        if ((descriptors.length != (size * dimension)) || (locations.length != (size * 2))) {
+            throw new IllegalArgumentException("descriptor and location array lengths must match size " + size +
+                                               " and dimension " + dimension);
+        }
+
+        this.size = size;
+        this.dimension = dimension;
+        this.descriptors = descriptors;
+        this.locations = locations;
+    }
+
+    /**
+     * @return flat descriptors for the specified features.
+     *
+     * @throws IllegalArgumentException
+     *   if the features do not all have the same descriptor length.
+     */
+    public static FeatureDescriptors fromFeatures(final List<Feature> featureList)
+            throws IllegalArgumentException {
+
+        final int size = featureList.size();
+        final int dimension = size == 0 ? 0 : featureList.get(0).descriptor.length;
+        final float[] descriptors = new float[size * dimension];
+        final double[] locations = new double[size * 2];
+
+        int descriptorOffset = 0;
+        int locationOffset = 0;
+        for (final Feature feature : featureList) {
+            if (feature.descriptor.length != dimension) {
+                throw new IllegalArgumentException("all features must have descriptors with " + dimension +
+                                                   " values");
+            }
+            System.arraycopy(feature.descriptor, 0, descriptors, descriptorOffset, dimension);
+            descriptorOffset += dimension;
+            locations[locationOffset++] = feature.location[0];
+            locations[locationOffset++] = feature.location[1];
+        }
+
+        return new FeatureDescriptors(size, dimension, descriptors, locations);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public double getX(final int index) {
+        return locations[index * 2];
+    }
+
+    public double getY(final int index) {
+        return locations[(index * 2) + 1];
+    }
+
+    float getValue(final int index,
+                   final int dimensionIndex) {
+        return descriptors[(index * dimension) + dimensionIndex];
+    }
+
+    /**
+     * @return squared euclidean distance between a descriptor in this list and a descriptor in
+     *         the other list, accumulated in the same order as {@link Feature#descriptorDistance}
+     *         so that the square root of this value is identical to the feature distance.
+     *         Accumulation stops early (returning a partial sum) once the sum exceeds the specified limit.
+     */
+    double getDistanceSquared(final int index,
+                              final FeatureDescriptors other,
+                              final int otherIndex,
+                              final double limit) {
+        final float[] otherDescriptors = other.descriptors;
+        int i = index * dimension;
+        int j = otherIndex * dimension;
+        final int stop = i + dimension;
+        double sum = 0;
+        while (i < stop) {
+            final double a = descriptors[i++] - otherDescriptors[j++];
+            sum += a * a;
+            if (sum > limit) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+}
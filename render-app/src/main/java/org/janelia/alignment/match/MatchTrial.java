@@ -124,7 +124,8 @@ public class MatchTrial implements Serializable {
                                                                       matchDerivationParameters.matchMinNumInliers,
                                                                       matchDerivationParameters.matchMaxTrust,
                                                                       matchDerivationParameters.matchMaxNumInliers,
-                                                                      matchDerivationParameters.matchFilter);
+                                                                      matchDerivationParameters.matchFilter,
+                                                                      matchDerivationParameters.matchEngine);
 
         final CanvasFeatureMatchResult matchResult =
                 matcher.deriveMatchResult(pCanvasData.getFeatureList(), qCanvasData.getFeatureList());
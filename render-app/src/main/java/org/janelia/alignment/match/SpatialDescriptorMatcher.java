@@ -0,0 +1,222 @@
+package org.janelia.alignment.match;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.PointMatch;
+
+/**
+ * Ratio-of-distances feature matcher for canvas pairs with known relative geometry.
+ *
+ * Second canvas features are binned into a spatial grid and each first canvas feature is only compared with
+ * the second canvas features that are within a search radius of its predicted location
+ * (first canvas location + predicted offset).  For pairs whose relative placement is already roughly known
+ * (e.g. montage neighbors positioned by the current stack transforms), this dramatically reduces the number of
+ * descriptor comparisons and keeps geometrically impossible candidates away from the RANSAC filter.
+ *
+ * Matching semantics otherwise mirror {@link DescriptorRatioMatcher}, but note that the nearest and
+ * second nearest neighbors (and therefore the ratio test) only consider features within the search radius.
+ *
+ * @author Eric Trautman
+ */
+public class SpatialDescriptorMatcher {
+
+    private final double searchRadius;
+
+    /**
+     * @param  searchRadius  maximum distance (in canvas pixels) between a second canvas feature and
+     *                       the predicted location of a first canvas feature for the two to be compared.
+     *
+     * @throws IllegalArgumentException
+     *   if the search radius is not positive.
+     */
+    public SpatialDescriptorMatcher(final double searchRadius)
+            throws IllegalArgumentException {
+        if (! (searchRadius > 0)) {
+            throw new IllegalArgumentException("search radius must be positive");
+        }
+        this.searchRadius = searchRadius;
+    }
+
+    /**
+     * @param  canvas1Features  features for first canvas.
+     * @param  canvas2Features  features for second canvas.
+     * @param  predictedOffset  predicted x[0] and y[1] offset of second canvas feature locations from
+     *                          their corresponding first canvas feature locations (in canvas pixels).
+     * @param  rod              ratio of distances (e.g. 0.92f).
+     *
+     * @return unambiguous candidate matches ordered by first canvas feature.
+     */
+    public List<PointMatch> matchFeatures(final List<Feature> canvas1Features,
+                                          final List<Feature> canvas2Features,
+                                          final double[] predictedOffset,
+                                          final float rod) {
+
+        final FeatureDescriptors p = FeatureDescriptors.fromFeatures(canvas1Features);
+        final FeatureDescriptors q = FeatureDescriptors.fromFeatures(canvas2Features);
+
+        return DescriptorRatioMatcher.buildPointMatches(p, q, findMatchedIndexes(p, q, predictedOffset, rod));
+    }
+
+    /**
+     * @param  p                first canvas descriptors.
+     * @param  q                second canvas descriptors.
+     * @param  predictedOffset  predicted x[0] and y[1] offset of q locations from their corresponding p locations.
+     * @param  rod              ratio of distances (e.g. 0.92f).
+     *
+     * @return array of matched q indexes for each p descriptor (-1 when a p descriptor is not matched).
+     */
+    public int[] findMatchedIndexes(final FeatureDescriptors p,
+                                    final FeatureDescriptors q,
+                                    final double[] predictedOffset,
+                                    final float rod) {
+
+        final int[] matchedIndexes = new int[p.size()];
+        Arrays.fill(matchedIndexes, -1);
+
+        if ((p.size() == 0) || (q.size() < 2)) {
+            return matchedIndexes;
+        }
+
+        if (p.getDimension() != q.getDimension()) {
+            throw new IllegalArgumentException("descriptor dimensions differ (" + p.getDimension() +
+                                               " and " + q.getDimension() + ")");
+        }
+
+        final Grid grid = new Grid(q, searchRadius);
+        final double searchRadiusSquared = searchRadius * searchRadius;
+
+        final Map<Point2D.Double, Integer> matchedLocationCounts = new HashMap<>();
+
+        for (int pIndex = 0; pIndex < p.size(); pIndex++) {
+
+            final double x = p.getX(pIndex) + predictedOffset[0];
+            final double y = p.getY(pIndex) + predictedOffset[1];
+
+            final int minColumn = grid.getColumn(x - searchRadius);
+            final int maxColumn = grid.getColumn(x + searchRadius);
+            final int minRow = grid.getRow(y - searchRadius);
+            final int maxRow = grid.getRow(y + searchRadius);
+
+            int nearestIndex = -1;
+            double nearestDistanceSquared = Double.MAX_VALUE;
+            double secondNearestDistanceSquared = Double.MAX_VALUE;
+            int numberOfNeighbors = 0;
+
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    final int cell = (row * grid.numberOfColumns) + column;
+                    for (int i = grid.cellStarts[cell]; i < grid.cellStarts[cell + 1]; i++) {
+
+                        final int qIndex = grid.cellMembers[i];
+                        final double dx = q.getX(qIndex) - x;
+                        final double dy = q.getY(qIndex) - y;
+
+                        if (((dx * dx) + (dy * dy)) <= searchRadiusSquared) {
+                            numberOfNeighbors++;
+                            final double distanceSquared =
+                                    p.getDistanceSquared(pIndex, q, qIndex, secondNearestDistanceSquared);
+                            if (distanceSquared < nearestDistanceSquared) {
+                                secondNearestDistanceSquared = nearestDistanceSquared;
+                                nearestDistanceSquared = distanceSquared;
+                                nearestIndex = qIndex;
+                            } else if (distanceSquared < secondNearestDistanceSquared) {
+                                secondNearestDistanceSquared = distanceSquared;
+                            }
+                        }
+
+                    }
+                }
+            }
+
+            if (numberOfNeighbors > 1) {
+                // use the same distance ratio (of square roots) as FeatureTransform for consistent results
+                final double ratio = Math.sqrt(nearestDistanceSquared) / Math.sqrt(secondNearestDistanceSquared);
+                if (ratio < rod) {
+                    matchedIndexes[pIndex] = nearestIndex;
+                    matchedLocationCounts.merge(new Point2D.Double(q.getX(nearestIndex), q.getY(nearestIndex)),
+                                                1, Integer::sum);
+                }
+            }
+        }
+
+        DescriptorRatioMatcher.removeAmbiguousMatches(q, matchedIndexes, matchedLocationCounts);
+
+        return matchedIndexes;
+    }
+
+    /**
+     * Uniform grid of feature indexes stored in compressed row form:
+     * indexes for cell c are cellMembers[cellStarts[c]] through cellMembers[cellStarts[c + 1] - 1].
+     */
+    private static class Grid {
+
+        private final double minX;
+        private final double minY;
+        private final double cellSize;
+        private final int numberOfColumns;
+        private final int numberOfRows;
+        private final int[] cellStarts;
+        private final int[] cellMembers;
+
+        Grid(final FeatureDescriptors features,
+             final double searchRadius) {
+
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < features.size(); i++) {
+                minX = Math.min(minX, features.getX(i));
+                minY = Math.min(minY, features.getY(i));
+                maxX = Math.max(maxX, features.getX(i));
+                maxY = Math.max(maxY, features.getY(i));
+            }
+
+            // cells as large as the search radius mean each search covers at most 3x3 cells,
+            // but limit the number of cells for tiny radii
+            final double maxExtent = Math.max(maxX - minX, maxY - minY);
+            this.minX = minX;
+            this.minY = minY;
+            this.cellSize = Math.max(searchRadius, maxExtent / MAX_CELLS_PER_DIMENSION);
+            this.numberOfColumns = (int) ((maxX - minX) / cellSize) + 1;
+            this.numberOfRows = (int) ((maxY - minY) / cellSize) + 1;
+
+            final int numberOfCells = numberOfColumns * numberOfRows;
+            final int[] cells = new int[features.size()];
+            this.cellStarts = new int[numberOfCells + 1];
+            for (int i = 0; i < features.size(); i++) {
+                cells[i] = (getRow(features.getY(i)) * numberOfColumns) + getColumn(features.getX(i));
+                cellStarts[cells[i] + 1]++;
+            }
+            for (int c = 0; c < numberOfCells; c++) {
+                cellStarts[c + 1] += cellStarts[c];
+            }
+
+            final int[] nextMember = Arrays.copyOf(cellStarts, numberOfCells);
+            this.cellMembers = new int[features.size()];
+            for (int i = 0; i < features.size(); i++) {
+                cellMembers[nextMember[cells[i]]++] = i;
+            }
+        }
+
+        int getColumn(final double x) {
+            return clamp((int) Math.floor((x - minX) / cellSize), numberOfColumns);
+        }
+
+        int getRow(final double y) {
+            return clamp((int) Math.floor((y - minY) / cellSize), numberOfRows);
+        }
+
+        private static int clamp(final int index,
+                                 final int count) {
+            return index < 0 ? 0 : (index >= count ? count - 1 : index);
+        }
+    }
+
+    private static final double MAX_CELLS_PER_DIMENSION = 1024;
+}
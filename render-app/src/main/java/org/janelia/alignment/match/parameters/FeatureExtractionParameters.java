@@ -40,6 +40,13 @@ public class FeatureExtractionParameters
     )
     public Integer steps;
 
+    @Parameter(
+            names = "--SIFTnumberOfThreads",
+            description = "Number of threads to use when extracting features from each canvas " +
+                          "(canvases are split into overlapping strips when greater than 1)"
+    )
+    public Integer numberOfThreads;
+
     void setDefaults() {
 
         if (fdSize == null) {
@@ -54,6 +61,9 @@ public class FeatureExtractionParameters
         if (steps == null) {
             steps = 3;
         }
+        if (numberOfThreads == null) {
+            numberOfThreads = 1;
+        }
     }
 
 }
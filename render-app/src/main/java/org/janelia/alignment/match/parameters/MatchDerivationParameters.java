@@ -72,6 +72,22 @@ public class MatchDerivationParameters implements Serializable {
     )
     public CanvasFeatureMatcher.FilterType matchFilter = CanvasFeatureMatcher.FilterType.SINGLE_SET;
 
+    @Parameter(
+            names = "--matchEngine",
+            description = "Engine for finding candidate descriptor matches: " +
+                          "FEATURE_TRANSFORM compares every descriptor pair, " +
+                          "KD_FOREST finds most matches much faster with an approximate index"
+    )
+    public CanvasFeatureMatcher.MatchingEngine matchEngine = CanvasFeatureMatcher.MatchingEngine.FEATURE_TRANSFORM;
+
+    @Parameter(
+            names = "--matchSearchRadius",
+            description = "If specified, only compare descriptors of features within this many full scale pixels " +
+                          "of their location predicted by the current relative position of each canvas pair " +
+                          "(omit to compare descriptors regardless of location)"
+    )
+    public Double matchSearchRadius;
+
     @Parameter(
             names = "--pairMaxDeltaStandardDeviation",
             description = "Reject match pairs with delta x or delta y standard deviations greater than this number. " +
@@ -2,10 +2,23 @@ package org.janelia.alignment.mipmap;
 
 import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import mpicbg.models.AffineModel2D;
 import mpicbg.models.CoordinateTransform;
@@ -27,6 +40,7 @@ import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
 import org.janelia.alignment.mapper.SingleChannelWithBinaryMaskMapper;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.alignment.util.MappingThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,6 +54,14 @@ import org.slf4j.LoggerFactory;
 public class RenderedCanvasMipmapSource
         implements MipmapSource {
 
+    /** Name of system property that specifies the number of threads in the shared source loading pool. */
+    public static final String LOADING_POOL_SIZE_PROPERTY = "render.sourceLoadingThreadPoolSize";
+
+    private static ExecutorService sharedLoadingExecutor;
+
+    /** Flags threads in the shared loading pool so that nested canvases load their sources directly. */
+    private static final ThreadLocal<Boolean> IS_LOADING_THREAD = ThreadLocal.withInitial(() -> false);
+
     private final String canvasName;
     private final Set<String> channelNames;
     private final List<TransformableCanvas> canvasList;
@@ -92,7 +114,8 @@ public class RenderedCanvasMipmapSource
      * @param  fullScaleHeight         canvas height at mipmap level 0.
      * @param  meshCellSize            desired size of a mesh cell (triangle) in pixels.
      * @param  levelZeroScale          scale factor for transformed components at mipmap level 0 of this canvas.
-     * @param  numberOfMappingThreads  number of threads to use for pixel mapping.
+     * @param  numberOfMappingThreads  number of threads to use for pixel mapping
+     *                                 (if greater than one, multiple canvases are loaded and mapped concurrently).
      * @param  skipInterpolation       enable sloppy but fast rendering by skipping interpolation.
      * @param  hasMasks                true if this canvas contains at least one source with a mask.
      * @param  binaryMask              render only 100% opaque pixels.
@@ -158,6 +181,22 @@ public class RenderedCanvasMipmapSource
                                        null));
         }
 
+        if ((numberOfMappingThreads > 1) && (canvasList.size() > 1)) {
+            mapCanvasesInParallel(levelScale, targetChannels);
+        } else {
+            mapCanvasesSequentially(levelScale, targetChannels);
+        }
+
+        return targetChannels;
+    }
+
+    /**
+     * Maps each canvas in this source's list one at a time (in list order),
+     * using all mapping threads to map the triangles of each canvas.
+     */
+    private void mapCanvasesSequentially(final double levelScale,
+                                         final ChannelMap targetChannels) {
+
         long totalScaleDerivationTime = 0;
 
         for (final TransformableCanvas canvas : canvasList) {
@@ -169,12 +208,7 @@ public class RenderedCanvasMipmapSource
 
             final MipmapSource source = canvas.getSource();
 
-            final double averageScale = Utils.sampleAverageScale(renderTransformList,
-                                                                 source.getFullScaleWidth(),
-                                                                 source.getFullScaleHeight(),
-                                                                 meshCellSize);
-
-            final int componentMipmapLevel = Utils.bestMipmapLevel(averageScale);
+            final int componentMipmapLevel = deriveComponentMipmapLevel(source, renderTransformList);
 
             totalScaleDerivationTime += (System.currentTimeMillis() - scaleDerivationStart);
 
@@ -192,8 +226,203 @@ public class RenderedCanvasMipmapSource
         LOG.debug("getChannels: deriving average scale for {} canvases took {} milliseconds",
                   canvasList.size(),
                   totalScaleDerivationTime);
+    }
 
-        return targetChannels;
+    /**
+     * Loads sources, builds meshes, and maps pixels for multiple canvases concurrently.
+     *
+     * Canvases are loaded in list order by the JVM's shared source loading pool
+     * (so that blocking I/O never occupies mapping threads) and then meshed and mapped
+     * by the JVM's shared {@link MappingThreadPool}.
+     * A prepared canvas is mapped as soon as all earlier canvases with overlapping target bounds
+     * have been mapped, so overlapping canvases are always composited in list order and the
+     * blended result is identical to the result produced by {@link #mapCanvasesSequentially}.
+     *
+     * No more than the number of mapping threads canvases are loaded concurrently for one render
+     * and, to bound memory usage, no more than twice that number of canvases are loaded but not yet mapped.
+     */
+    private void mapCanvasesInParallel(final double levelScale,
+                                       final ChannelMap targetChannels)
+            throws IllegalArgumentException {
+
+        final long startTime = System.currentTimeMillis();
+
+        final int numberOfCanvases = canvasList.size();
+        final int maxCanvasesInFlight = numberOfMappingThreads * 2;
+
+        final List<CompletableFuture<SourceMapping>> preparedList = new ArrayList<>(numberOfCanvases);
+        final LinkedList<SourceMapping> inFlightList = new LinkedList<>();
+        final List<SourceMapping> mappedList = new ArrayList<>(numberOfCanvases);
+
+        // nested canvases load their sources in the current (loading) thread to avoid waiting on their own pool
+        final Executor loadingExecutor = IS_LOADING_THREAD.get() ? Runnable::run : getSharedLoadingExecutor();
+        final Executor mappingExecutor = MappingThreadPool.getSharedInstance().getExecutor();
+        boolean isMappingComplete = false;
+
+        try {
+
+            for (int i = 0; i < numberOfCanvases; i++) {
+
+                // keep a bounded number of canvases loading ahead of the current canvas
+                while ((preparedList.size() < numberOfCanvases) &&
+                       (preparedList.size() - i) < numberOfMappingThreads) {
+                    final TransformableCanvas canvas = canvasList.get(preparedList.size());
+                    preparedList.add(
+                            CompletableFuture.supplyAsync(() -> loadCanvas(canvas, levelScale), loadingExecutor)
+                                    .thenApplyAsync(this::prepareLoadedCanvas, mappingExecutor));
+                }
+
+                final SourceMapping sourceMapping = getResult(preparedList.get(i));
+                preparedList.set(i, null); // release reference to loaded data once it is mapped
+
+                if (sourceMapping != null) {
+
+                    // wait for oldest canvas to be mapped if too many are still in flight
+                    removeMappedSources(inFlightList);
+                    while (inFlightList.size() >= maxCanvasesInFlight) {
+                        getResult(inFlightList.removeFirst().mappedFuture);
+                    }
+
+                    // overlapping canvases must be mapped in list order to preserve blending results
+                    final List<CompletableFuture<Void>> overlappingList = new ArrayList<>();
+                    for (final SourceMapping inFlight : inFlightList) {
+                        if (inFlight.targetBoundsIntersect(sourceMapping)) {
+                            overlappingList.add(inFlight.mappedFuture);
+                        }
+                    }
+
+                    sourceMapping.mappedFuture =
+                            CompletableFuture.allOf(overlappingList.toArray(new CompletableFuture[0]))
+                                    .thenRunAsync(() -> sourceMapping.map(hasMasks,
+                                                                          binaryMask,
+                                                                          skipInterpolation,
+                                                                          1,
+                                                                          targetChannels),
+                                                  mappingExecutor);
+
+                    inFlightList.add(sourceMapping);
+                    mappedList.add(sourceMapping);
+                }
+            }
+
+            for (final SourceMapping inFlight : inFlightList) {
+                getResult(inFlight.mappedFuture);
+            }
+
+            isMappingComplete = true;
+
+        } finally {
+            if (! isMappingComplete) {
+                // keep queued work for a failed render from occupying the shared pools
+                for (final CompletableFuture<SourceMapping> prepared : preparedList) {
+                    if (prepared != null) {
+                        prepared.cancel(false);
+                    }
+                }
+                for (final SourceMapping inFlight : inFlightList) {
+                    inFlight.mappedFuture.cancel(false);
+                }
+            }
+        }
+
+        // like sequential mapping, use the intensity ranges of the last source that was actually mapped
+        for (int i = mappedList.size() - 1; i >= 0; i--) {
+            final SourceMapping sourceMapping = mappedList.get(i);
+            if (sourceMapping.intensityRanges != null) {
+                applySourceIntensityRanges(sourceMapping.intensityRanges, targetChannels);
+                break;
+            }
+        }
+
+        LOG.debug("getChannels: mapping {} canvases with {} threads took {} milliseconds",
+                  numberOfCanvases,
+                  numberOfMappingThreads,
+                  System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Loads the source pixel data for the specified canvas (typically blocking on I/O).
+     */
+    private LoadedCanvas loadCanvas(final TransformableCanvas canvas,
+                                    final double levelScale) {
+
+        final long loadStart = System.currentTimeMillis();
+
+        final CoordinateTransformList<CoordinateTransform> renderTransformList =
+                addRenderScaleAndOffset(canvas.getTransformList(), levelZeroScale, levelScale, x, y);
+
+        final MipmapSource source = canvas.getSource();
+
+        final int componentMipmapLevel = deriveComponentMipmapLevel(source, renderTransformList);
+
+        final ChannelMap sourceChannels = loadSourceChannels(source, componentMipmapLevel, hasMasks);
+
+        return new LoadedCanvas(source,
+                                componentMipmapLevel,
+                                renderTransformList,
+                                sourceChannels,
+                                System.currentTimeMillis() - loadStart);
+    }
+
+    /**
+     * Builds the mesh needed to map the specified loaded canvas (CPU bound).
+     */
+    private SourceMapping prepareLoadedCanvas(final LoadedCanvas loadedCanvas) {
+        return prepareSourceMapping(loadedCanvas.source,
+                                    loadedCanvas.sourceChannels,
+                                    loadedCanvas.mipmapLevel,
+                                    loadedCanvas.renderTransformList,
+                                    meshCellSize,
+                                    loadedCanvas.loadTime);
+    }
+
+    private int deriveComponentMipmapLevel(final MipmapSource source,
+                                           final CoordinateTransformList<CoordinateTransform> renderTransformList) {
+
+        final double averageScale = Utils.sampleAverageScale(renderTransformList,
+                                                             source.getFullScaleWidth(),
+                                                             source.getFullScaleHeight(),
+                                                             meshCellSize);
+
+        return Utils.bestMipmapLevel(averageScale);
+    }
+
+    /**
+     * Removes all sources that have already been mapped from the specified list.
+     *
+     * @throws IllegalArgumentException
+     *   if mapping failed for any of the removed sources.
+     */
+    private static void removeMappedSources(final List<SourceMapping> inFlightList)
+            throws IllegalArgumentException {
+        final Iterator<SourceMapping> iterator = inFlightList.iterator();
+        while (iterator.hasNext()) {
+            final SourceMapping sourceMapping = iterator.next();
+            if (sourceMapping.mappedFuture.isDone()) {
+                getResult(sourceMapping.mappedFuture);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the result of the specified future, unwrapping any
+     *         {@link IllegalArgumentException} thrown while computing the result.
+     */
+    private static <T> T getResult(final CompletableFuture<T> future)
+            throws IllegalArgumentException {
+        try {
+            return future.join();
+        } catch (final CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new IllegalArgumentException("failed to map canvas", cause);
+            }
+        }
     }
 
     /**
@@ -201,13 +430,23 @@ public class RenderedCanvasMipmapSource
      */
     public static List<TransformableCanvas> buildCanvasList(final RenderParameters renderParameters,
                                                             final ImageProcessorCache imageProcessorCache) {
+        return buildCanvasList(renderParameters, renderParameters.getTileSpecs(), imageProcessorCache);
+    }
+
+    /**
+     * @return a list of {@link TransformableCanvas} objects for the specified subset of tile specs
+     *         using the render context defined by the specified parameters.
+     */
+    public static List<TransformableCanvas> buildCanvasList(final RenderParameters renderParameters,
+                                                            final List<TileSpec> tileSpecs,
+                                                            final ImageProcessorCache imageProcessorCache) {
 
         final Set<String> channelNames = renderParameters.getChannelNames();
 
-        final List<TransformableCanvas> canvasList = new ArrayList<>(renderParameters.numberOfTileSpecs());
+        final List<TransformableCanvas> canvasList = new ArrayList<>(tileSpecs.size());
 
         MipmapSource source;
-        for (final TileSpec tileSpec : renderParameters.getTileSpecs()) {
+        for (final TileSpec tileSpec : tileSpecs) {
 
             source = new UrlMipmapSource("tile '" + tileSpec.getTileId() + "'",
                                          tileSpec.getWidth(),
@@ -325,78 +564,162 @@ public class RenderedCanvasMipmapSource
                                  final boolean skipInterpolation,
                                  final ChannelMap targetChannels) {
 
-        final ChannelMap sourceChannels = source.getChannels(mipmapLevel);
-
-        if (sourceChannels.size() > 0) {
+        final long loadStart = System.currentTimeMillis();
+
+        final ChannelMap sourceChannels = loadSourceChannels(source, mipmapLevel, canvasHasMasks);
+
+        final SourceMapping sourceMapping = prepareSourceMapping(source,
+                                                                 sourceChannels,
+                                                                 mipmapLevel,
+                                                                 renderTransformList,
+                                                                 meshCellSize,
+                                                                 System.currentTimeMillis() - loadStart);
+        if ((sourceMapping != null) &&
+            sourceMapping.map(canvasHasMasks,
+                              binaryMask,
+                              skipInterpolation,
+                              numberOfMappingThreads,
+                              targetChannels)) {
+            applySourceIntensityRanges(sourceMapping.intensityRanges, targetChannels);
+        }
 
-            final long mapStart = System.currentTimeMillis();
+    }
 
-            // all channels should have same size, so we only need to look at the first channel
-            final ImageProcessorWithMasks firstChannel = sourceChannels.getFirstChannel();
-            final int mipmapWidth = firstChannel.ip.getWidth();
-            final int mipmapHeight = firstChannel.ip.getHeight();
+    /**
+     * Loads source pixel data, adding empty (inverted) source masks when the larger canvas has masks.
+     *
+     * @param  source                  source pixel data.
+     * @param  mipmapLevel             source mipmap level.
+     * @param  canvasHasMasks          true if at least one source in the larger canvas being rendered has a mask
+     *                                 (even if this source does not have a mask).
+     *
+     * @return the loaded source channels.
+     */
+    private static ChannelMap loadSourceChannels(final MipmapSource source,
+                                                 final int mipmapLevel,
+                                                 final boolean canvasHasMasks) {
 
-            if (canvasHasMasks) {
-                // add target mask for each channel if it does not already exist
-                for (final ImageProcessorWithMasks targetChannel : targetChannels.values()) {
-                    if (targetChannel.mask == null) {
-                        targetChannel.mask = new ByteProcessor(targetChannel.ip.getWidth(),
-                                                               targetChannel.ip.getHeight());
-                    }
-                }
+        final ChannelMap sourceChannels = source.getChannels(mipmapLevel);
 
-                // add empty (inverted) source mask for each channel if it does not already exist
-                for (final ImageProcessorWithMasks sourceChannel : sourceChannels.values()) {
-                    if (sourceChannel.mask == null) {
-                        sourceChannel.mask = new ByteProcessor(sourceChannel.ip.getWidth(),
-                                                               sourceChannel.ip.getHeight());
-                        sourceChannel.mask.invert();
-                    }
+        if (canvasHasMasks) {
+            // add empty (inverted) source mask for each channel if it does not already exist
+            for (final ImageProcessorWithMasks sourceChannel : sourceChannels.values()) {
+                if (sourceChannel.mask == null) {
+                    sourceChannel.mask = new ByteProcessor(sourceChannel.ip.getWidth(),
+                                                           sourceChannel.ip.getHeight());
+                    sourceChannel.mask.invert();
                 }
             }
+        }
 
-            final PixelMapper tilePixelMapper = getPixelMapper(sourceChannels,
-                                                               canvasHasMasks,
-                                                               binaryMask,
-                                                               skipInterpolation,
-                                                               targetChannels);
-            if (tilePixelMapper != null) {
+        return sourceChannels;
+    }
 
-                final RenderTransformMesh mesh = createRenderMesh(mipmapLevel,
-                                                                  renderTransformList,
-                                                                  source.getFullScaleWidth(),
-                                                                  meshCellSize,
-                                                                  mipmapWidth,
-                                                                  mipmapHeight);
+    /**
+     * Creates the mesh needed to map loaded source pixel data to a target.
+     * This method does not modify any target data, so it can safely be called concurrently
+     * for different sources that will be mapped to the same target.
+     *
+     * @param  source                  source pixel data.
+     * @param  sourceChannels          channels loaded from the source.
+     * @param  mipmapLevel             source mipmap level.
+     * @param  renderTransformList     list of transforms for the render context.
+     * @param  meshCellSize            desired size of a mesh cell (triangle) in pixels.
+     * @param  loadTime                milliseconds taken to load the source channels.
+     *
+     * @return the prepared mapping or null if the source does not have any channels to map.
+     */
+    private static SourceMapping prepareSourceMapping(final MipmapSource source,
+                                                      final ChannelMap sourceChannels,
+                                                      final int mipmapLevel,
+                                                      final CoordinateTransformList<CoordinateTransform> renderTransformList,
+                                                      final double meshCellSize,
+                                                      final long loadTime) {
 
-                final long meshCreationStop = System.currentTimeMillis();
+        SourceMapping sourceMapping = null;
 
-                final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh);
+        if (sourceChannels.size() > 0) {
 
-                final String mapType = skipInterpolation ? "" : " interpolated";
-                mapping.map(tilePixelMapper, numberOfMappingThreads);
+            // all channels should have same size, so we only need to look at the first channel
+            final ImageProcessorWithMasks firstChannel = sourceChannels.getFirstChannel();
 
-                // apply source channel intensity ranges to corresponding target channels
-                for (final String channelName : targetChannels.names()) {
-                    final ImageProcessorWithMasks sourceChannel = sourceChannels.get(channelName);
-                    final ImageProcessorWithMasks targetChannel = targetChannels.get(channelName);
-                    targetChannel.ip.setMinAndMax(sourceChannel.ip.getMin(), sourceChannel.ip.getMax());
-                }
+            final long meshCreationStart = System.currentTimeMillis();
 
-                final long mapStop = System.currentTimeMillis();
+            final RenderTransformMesh mesh = createRenderMesh(mipmapLevel,
+                                                              renderTransformList,
+                                                              source.getFullScaleWidth(),
+                                                              meshCellSize,
+                                                              firstChannel.ip.getWidth(),
+                                                              firstChannel.ip.getHeight());
 
-                LOG.debug("mapPixels: mapping of {} took {} milliseconds to process (mesh:{}, map{}:{})",
-                          source.getSourceName(),
-                          mapStop - mapStart,
-                          meshCreationStop - mapStart,
-                          mapType,
-                          mapStop - meshCreationStop);
-            }
+            sourceMapping = new SourceMapping(source.getSourceName(),
+                                              sourceChannels,
+                                              mesh,
+                                              loadTime,
+                                              System.currentTimeMillis() - meshCreationStart);
 
         } else {
             LOG.warn("mapPixels: {} does not have any channels to map", source.getSourceName());
         }
 
+        return sourceMapping;
+    }
+
+    /**
+     * @return the JVM's shared executor for loading canvas sources.
+     *         Loading typically blocks on I/O, so it is kept off the (non-blocking) shared mapping pool.
+     */
+    private static synchronized ExecutorService getSharedLoadingExecutor() {
+        if (sharedLoadingExecutor == null) {
+            final int poolSize = Integer.getInteger(LOADING_POOL_SIZE_PROPERTY,
+                                                    Runtime.getRuntime().availableProcessors() * 2);
+            if (poolSize < 1) {
+                throw new IllegalArgumentException(LOADING_POOL_SIZE_PROPERTY + " must be greater than zero");
+            }
+            final AtomicInteger threadCount = new AtomicInteger(0);
+            sharedLoadingExecutor = new ThreadPoolExecutor(poolSize,
+                                                           poolSize,
+                                                           0L,
+                                                           TimeUnit.MILLISECONDS,
+                                                           new LinkedBlockingQueue<>(),
+                                                           runnable -> {
+                final Thread thread = new Thread(() -> {
+                    IS_LOADING_THREAD.set(true);
+                    runnable.run();
+                }, "canvas-loader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            LOG.info("getSharedLoadingExecutor: created pool with {} threads", poolSize);
+        }
+        return sharedLoadingExecutor;
+    }
+
+    /**
+     * Applies source channel intensity ranges to corresponding target channels.
+     */
+    private static void applySourceIntensityRanges(final Map<String, double[]> intensityRanges,
+                                                   final ChannelMap targetChannels) {
+        for (final String channelName : targetChannels.names()) {
+            final double[] minAndMax = intensityRanges.get(channelName);
+            final ImageProcessorWithMasks targetChannel = targetChannels.get(channelName);
+            targetChannel.ip.setMinAndMax(minAndMax[0], minAndMax[1]);
+        }
+    }
+
+    /**
+     * Adds a target mask for each channel if it does not already exist.
+     * Synchronized on the target channel map since sources may be mapped concurrently.
+     */
+    private static void addMissingTargetMasks(final ChannelMap targetChannels) {
+        synchronized (targetChannels) {
+            for (final ImageProcessorWithMasks targetChannel : targetChannels.values()) {
+                if (targetChannel.mask == null) {
+                    targetChannel.mask = new ByteProcessor(targetChannel.ip.getWidth(),
+                                                           targetChannel.ip.getHeight());
+                }
+            }
+        }
     }
 
     /**
@@ -466,6 +789,133 @@ public class RenderedCanvasMipmapSource
         return tilePixelMapper;
     }
 
+    /**
+     * Loaded source channels and render context for one canvas that still needs a mesh.
+     */
+    private static class LoadedCanvas {
+
+        private final MipmapSource source;
+        private final int mipmapLevel;
+        private final CoordinateTransformList<CoordinateTransform> renderTransformList;
+        private final ChannelMap sourceChannels;
+        private final long loadTime;
+
+        LoadedCanvas(final MipmapSource source,
+                     final int mipmapLevel,
+                     final CoordinateTransformList<CoordinateTransform> renderTransformList,
+                     final ChannelMap sourceChannels,
+                     final long loadTime) {
+            this.source = source;
+            this.mipmapLevel = mipmapLevel;
+            this.renderTransformList = renderTransformList;
+            this.sourceChannels = sourceChannels;
+            this.loadTime = loadTime;
+        }
+    }
+
+    /**
+     * Loaded source channels and mesh for one source that is ready to be mapped to a target.
+     */
+    private static class SourceMapping {
+
+        private final String sourceName;
+        private ChannelMap sourceChannels;
+        private Map<String, double[]> intensityRanges;
+        private RenderTransformMesh mesh;
+        private final int targetMinX;
+        private final int targetMinY;
+        private final int targetMaxX;
+        private final int targetMaxY;
+        private final long loadTime;
+        private final long meshCreationTime;
+        private CompletableFuture<Void> mappedFuture;
+
+        SourceMapping(final String sourceName,
+                      final ChannelMap sourceChannels,
+                      final RenderTransformMesh mesh,
+                      final long loadTime,
+                      final long meshCreationTime) {
+
+            this.sourceName = sourceName;
+            this.sourceChannels = sourceChannels;
+            this.mesh = mesh;
+            this.loadTime = loadTime;
+            this.meshCreationTime = meshCreationTime;
+
+            final double[] min = new double[2];
+            final double[] max = new double[2];
+            mesh.bounds(min, max);
+
+            this.targetMinX = (int) Math.floor(min[0]);
+            this.targetMinY = (int) Math.floor(min[1]);
+            this.targetMaxX = (int) Math.ceil(max[0]);
+            this.targetMaxY = (int) Math.ceil(max[1]);
+
+            this.mappedFuture = null;
+        }
+
+        boolean targetBoundsIntersect(final SourceMapping that) {
+            return (this.targetMinX <= that.targetMaxX) && (that.targetMinX <= this.targetMaxX) &&
+                   (this.targetMinY <= that.targetMaxY) && (that.targetMinY <= this.targetMaxY);
+        }
+
+        /**
+         * Maps source pixels to the target and then releases the source data.
+         *
+         * @return true if pixels were mapped (in which case the source intensity ranges are retained);
+         *         otherwise false.
+         */
+        boolean map(final boolean canvasHasMasks,
+                 final boolean binaryMask,
+                 final boolean skipInterpolation,
+                 final int numberOfMappingThreads,
+                 final ChannelMap targetChannels) {
+
+            final long mapStart = System.currentTimeMillis();
+
+            if (canvasHasMasks) {
+                addMissingTargetMasks(targetChannels);
+            }
+
+            final PixelMapper tilePixelMapper = getPixelMapper(sourceChannels,
+                                                               canvasHasMasks,
+                                                               binaryMask,
+                                                               skipInterpolation,
+                                                               targetChannels);
+            final boolean isMapped = (tilePixelMapper != null);
+
+            if (isMapped) {
+
+                final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh);
+
+                final String mapType = skipInterpolation ? "" : " interpolated";
+                mapping.map(tilePixelMapper, numberOfMappingThreads);
+
+                final long mapStop = System.currentTimeMillis();
+
+                LOG.debug("mapPixels: mapping of {} took {} milliseconds to process (load:{}, mesh:{}, map{}:{})",
+                          sourceName,
+                          loadTime + meshCreationTime + (mapStop - mapStart),
+                          loadTime,
+                          meshCreationTime,
+                          mapType,
+                          mapStop - mapStart);
+
+                intensityRanges = new HashMap<>();
+                for (final String channelName : sourceChannels.names()) {
+                    final ImageProcessor ip = sourceChannels.get(channelName).ip;
+                    intensityRanges.put(channelName, new double[] { ip.getMin(), ip.getMax() });
+                }
+            }
+
+            // source data and mesh are no longer needed once pixels have been mapped
+            sourceChannels = null;
+            mesh = null;
+
+            return isMapped;
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderedCanvasMipmapSource.class);
 
 }
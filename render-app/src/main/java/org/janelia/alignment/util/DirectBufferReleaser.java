@@ -0,0 +1,88 @@
+package org.janelia.alignment.util;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Explicitly frees the native memory of direct {@link ByteBuffer} instances
+ * instead of waiting for the buffers to be garbage collected.
+ *
+ * The JDK has no public API for this, so the Java 9+ Unsafe.invokeCleaner method is used when available
+ * and the Java 8 DirectByteBuffer cleaner is used otherwise.  If neither is available,
+ * release requests are ignored and memory is freed by garbage collection as usual.
+ *
+ * Released buffers must never be accessed again.
+ *
+ * @author Eric Trautman
+ */
+class DirectBufferReleaser {
+
+    private interface Releaser {
+        void release(ByteBuffer buffer) throws Exception;
+    }
+
+    private static final Releaser RELEASER = buildReleaser();
+
+    /**
+     * Frees the specified buffer's native memory (if it is a direct buffer and release is supported).
+     */
+    static void release(final ByteBuffer buffer) {
+        if ((RELEASER != null) && (buffer != null) && buffer.isDirect()) {
+            try {
+                RELEASER.release(buffer);
+            } catch (final Throwable t) {
+                LOG.warn("failed to release direct buffer, memory will be released by garbage collection", t);
+            }
+        }
+    }
+
+    /**
+     * @return true if buffers can be explicitly released in this JVM.
+     */
+    static boolean isSupported() {
+        return RELEASER != null;
+    }
+
+    private static Releaser buildReleaser() {
+
+        Releaser releaser = null;
+
+        try {
+            // Java 9+
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            final Method invokeCleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            final Field theUnsafeField = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafeField.setAccessible(true);
+            final Object unsafe = theUnsafeField.get(null);
+            releaser = buffer -> invokeCleanerMethod.invoke(unsafe, buffer);
+        } catch (final Throwable t) {
+            LOG.debug("buildReleaser: Unsafe.invokeCleaner is not available", t);
+        }
+
+        if (releaser == null) {
+            try {
+                // Java 8
+                final Method cleanerMethod = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+                cleanMethod.setAccessible(true);
+                releaser = buffer -> {
+                    final Object cleaner = cleanerMethod.invoke(buffer);
+                    if (cleaner != null) {
+                        cleanMethod.invoke(cleaner);
+                    }
+                };
+            } catch (final Throwable t) {
+                LOG.warn("buildReleaser: direct buffers cannot be explicitly released in this JVM", t);
+            }
+        }
+
+        return releaser;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DirectBufferReleaser.class);
+}
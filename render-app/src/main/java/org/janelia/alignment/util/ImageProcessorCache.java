@@ -8,6 +8,7 @@ import com.google.common.cache.Weigher;
 
 import ij.ImagePlus;
 import ij.io.Opener;
+import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
 
 import javax.annotation.Nullable;
@@ -35,14 +36,15 @@ import org.slf4j.LoggerFactory;
 public class ImageProcessorCache {
 
     /** Cache instance that doesn't cache anything but provides the same API for loading images. */
-    public static final ImageProcessorCache DISABLED_CACHE = new ImageProcessorCache(0, false, false);
+    public static final ImageProcessorCache DISABLED_CACHE = new ImageProcessorCache(0, false, false, null);
     
     /** Default max number of pixels is 1GB (or 160 full resolution 2500x2500 pixel tiles). */
     public static final long DEFAULT_MAX_CACHED_PIXELS = 1000 * 1000000; // 1GB
 
     private final long maximumNumberOfCachedKilobytes;
     private final boolean recordStats;
-    private final boolean cacheOriginalsForDownSampledImages;
+    protected final boolean cacheOriginalsForDownSampledImages;
+    private final ImageProcessorDiskCache diskCache;
 
     private final LoadingCache<CacheKey, ImageProcessor> cache;
 
@@ -72,25 +74,36 @@ public class ImageProcessorCache {
     public ImageProcessorCache(final long maximumNumberOfCachedPixels,
                                final boolean recordStats,
                                final boolean cacheOriginalsForDownSampledImages) {
+        this(maximumNumberOfCachedPixels,
+             recordStats,
+             cacheOriginalsForDownSampledImages,
+             ImageProcessorDiskCache.getSharedInstance());
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumNumberOfCachedPixels         the maximum number of pixels to maintain in the cache.
+     *
+     * @param  recordStats                         if true, tuning stats are maintained.
+     *
+     * @param  cacheOriginalsForDownSampledImages  if true, source images of down sampled images are also cached.
+     *
+     * @param  diskCache                           second tier (local disk) cache for decoded images
+     *                                             or null if images should only be cached in memory.
+     */
+    protected ImageProcessorCache(final long maximumNumberOfCachedPixels,
+                                  final boolean recordStats,
+                                  final boolean cacheOriginalsForDownSampledImages,
+                                  final ImageProcessorDiskCache diskCache) {
 
         this.maximumNumberOfCachedKilobytes = maximumNumberOfCachedPixels / 1000;
         this.recordStats = recordStats;
         this.cacheOriginalsForDownSampledImages = cacheOriginalsForDownSampledImages;
+        this.diskCache = diskCache;
 
         final Weigher<CacheKey, ImageProcessor> weigher =
-                (key, value) -> {
-                    final long bitCount = ((long) value.getPixelCount()) * value.getBitDepth();
-                    final long kilobyteCount = bitCount / 8000L;
-                    final int weight;
-                    if (kilobyteCount < 0 || kilobyteCount > Integer.MAX_VALUE) {
-                        weight = Integer.MAX_VALUE;
-                        LOG.warn("{} is too large ({} kilobytes) for cache weight function, using max weight of {}",
-                                 key, kilobyteCount, weight);
-                    } else {
-                        weight = Math.max(1, (int) kilobyteCount);
-                    }
-                    return weight;
-                };
+                (key, value) -> getWeight(key, getPixelByteCount(value));
 
         final CacheLoader<CacheKey, ImageProcessor> loader =
                 new CacheLoader<CacheKey, ImageProcessor>() {
@@ -186,6 +199,38 @@ public class ImageProcessorCache {
                '}';
     }
 
+    /**
+     * @param  imageProcessor  processor to measure.
+     *
+     * @return number of bytes used to store the specified processor's pixels.
+     */
+    public static long getPixelByteCount(final ImageProcessor imageProcessor) {
+        final long bytesPerPixel;
+        if (imageProcessor instanceof ColorProcessor) {
+            bytesPerPixel = 4; // 24-bit RGB values are stored in 32-bit ints
+        } else {
+            bytesPerPixel = imageProcessor.getBitDepth() / 8;
+        }
+        return imageProcessor.getPixelCount() * bytesPerPixel;
+    }
+
+    /**
+     * @return the cache weight (in kilobytes) for the specified number of bytes.
+     */
+    static int getWeight(final CacheKey key,
+                         final long byteCount) {
+        final long kilobyteCount = byteCount / 1000L;
+        final int weight;
+        if (kilobyteCount < 0 || kilobyteCount > Integer.MAX_VALUE) {
+            weight = Integer.MAX_VALUE;
+            LOG.warn("{} is too large ({} kilobytes) for cache weight function, using max weight of {}",
+                     key, kilobyteCount, weight);
+        } else {
+            weight = Math.max(1, (int) kilobyteCount);
+        }
+        return weight;
+    }
+
     /**
      * @param  url               url for the image.
      * @param  downSampleLevels  number of levels to further down sample the image.
@@ -228,11 +273,28 @@ public class ImageProcessorCache {
             LOG.debug("loadImageProcessor: entry, url={}, downSampleLevels={}, convertTo16Bit={}", url, downSampleLevels,convertTo16Bit);
         }
 
+        final CacheKey key = new CacheKey(url, downSampleLevels, isMask, convertTo16Bit);
+        final CacheKey sourceKey = new CacheKey(url, 0, isMask, convertTo16Bit);
+
+        // if a local disk cache is configured, see if it already has the requested image
+        if (diskCache != null) {
+            final ImageProcessor diskCachedProcessor = diskCache.get(key);
+            if (diskCachedProcessor != null) {
+                return diskCachedProcessor;
+            }
+        }
+
         ImageProcessor imageProcessor = null;
 
         // if we need to down sample, see if source image is already cached before trying to load it
         if (downSampleLevels > 0) {
-            imageProcessor = cache.getIfPresent(new CacheKey(url, 0, isMask,convertTo16Bit));
+            imageProcessor = getCachedImageProcessorIfPresent(sourceKey);
+            if ((imageProcessor == null) && (diskCache != null)) {
+                imageProcessor = diskCache.get(sourceKey);
+                if ((imageProcessor != null) && cacheOriginalsForDownSampledImages) {
+                    cacheImageProcessor(sourceKey, imageProcessor);
+                }
+            }
         }
 
         // load the image as needed
@@ -257,6 +319,10 @@ public class ImageProcessorCache {
                 imageProcessor.multiply(256.0);
             }
 
+            if (diskCache != null) {
+                diskCache.put(sourceKey, imageProcessor);
+            }
+
             // if we're going to down sample and we're supposed to cache originals, do so here
             if (cacheOriginalsForDownSampledImages && (downSampleLevels > 0)) {
 
@@ -264,7 +330,7 @@ public class ImageProcessorCache {
                     LOG.debug("loadImageProcessor: caching level 0 for {}", url);
                 }
 
-                cache.put(new CacheKey(url, 0, isMask,convertTo16Bit), imageProcessor);
+                cacheImageProcessor(sourceKey, imageProcessor);
             }
 
         }
@@ -275,15 +341,34 @@ public class ImageProcessorCache {
             //       so we don't need to duplicate a cached source instance before down sampling.
             imageProcessor = Downsampler.downsampleImageProcessor(imageProcessor,
                                                                   downSampleLevels);
+            if (diskCache != null) {
+                diskCache.put(key, imageProcessor);
+            }
         }
 
         return imageProcessor;
     }
 
+    /**
+     * @return the cached processor for the specified key or null if it is not cached.
+     *         The returned instance must not be modified.
+     */
+    protected ImageProcessor getCachedImageProcessorIfPresent(final CacheKey key) {
+        return cache.getIfPresent(key);
+    }
+
+    /**
+     * Adds the specified processor to this cache.
+     */
+    protected void cacheImageProcessor(final CacheKey key,
+                                       final ImageProcessor imageProcessor) {
+        cache.put(key, imageProcessor);
+    }
+
     /**
      * Key that combines an image's url with its down sample levels.
      */
-    private class CacheKey {
+    protected static class CacheKey {
 
         private final String url;
         private final int downSampleLevels;
@@ -0,0 +1,408 @@
+package org.janelia.alignment.util;
+
+import com.google.common.hash.Hashing;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second tier (local disk) cache of decoded {@link ImageProcessor} pixels that sits beneath the
+ * in-memory {@link ImageProcessorCache}.
+ *
+ * Source images and down sampled levels are written to a local (ideally SSD) directory as raw
+ * uncompressed pixels so that in-memory cache misses do not need to re-read and re-decode images
+ * from shared (NFS or S3) storage.  Entries are keyed by the same url, down sample levels, mask,
+ * and 16-bit conversion attributes as the in-memory cache.
+ *
+ * Files are managed by a {@link LocalFileCache}, so the total size of cached files is bounded,
+ * least recently used files are removed to make room, and recency is preserved across JVM restarts.
+ *
+ * To keep disk writes out of the render request path, pixels are copied when they are added and then
+ * written by a background thread.  If too many writes are pending, new additions are skipped
+ * (they will simply be added again the next time the image is loaded).
+ *
+ * A single shared instance is used by all in-memory caches in a JVM.
+ * It is configured with the {@value #DIRECTORY_PROPERTY} and {@value #MAX_GB_PROPERTY} system properties
+ * or by calling {@link #initializeSharedInstance} before the first in-memory cache is created.
+ *
+ * @author Eric Trautman
+ */
+public class ImageProcessorDiskCache {
+
+    /** Name of system property that specifies the directory for the shared disk cache. */
+    public static final String DIRECTORY_PROPERTY = "render.imageDiskCacheDirectory";
+
+    /** Name of system property that specifies the maximum size (in gigabytes) of the shared disk cache. */
+    public static final String MAX_GB_PROPERTY = "render.imageDiskCacheMaxGb";
+
+    /** Default maximum size of the shared disk cache. */
+    public static final long DEFAULT_MAX_BYTES = 100_000_000_000L; // 100GB
+
+    private static ImageProcessorDiskCache sharedInstance;
+    private static boolean isSharedInstanceBuilt = false;
+
+    private final LocalFileCache fileCache;
+    private final Executor writeExecutor;
+
+    /**
+     * Constructs a cache for the specified directory, indexing any previously cached files found there.
+     *
+     * @param  directory             directory for cached files (will be created if it does not exist).
+     * @param  maximumNumberOfBytes  maximum total size of all cached files.
+     *
+     * @throws IllegalArgumentException
+     *   if the directory cannot be created or is not writable.
+     */
+    public ImageProcessorDiskCache(final File directory,
+                                   final long maximumNumberOfBytes)
+            throws IllegalArgumentException {
+        this(directory, maximumNumberOfBytes, buildWriteExecutor());
+    }
+
+    /**
+     * Constructs a cache that uses the specified executor for writes (e.g. a synchronous executor for tests).
+     */
+    ImageProcessorDiskCache(final File directory,
+                            final long maximumNumberOfBytes,
+                            final Executor writeExecutor)
+            throws IllegalArgumentException {
+        this.fileCache = new LocalFileCache(directory, maximumNumberOfBytes, FILE_SUFFIX);
+        this.writeExecutor = writeExecutor;
+    }
+
+    /**
+     * @return the disk cache shared by all in-memory caches in this JVM or null if a shared disk cache
+     *         has not been configured.
+     */
+    public static ImageProcessorDiskCache getSharedInstance() {
+        if (! isSharedInstanceBuilt) {
+            buildSharedInstance(null, null);
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Explicitly configures the shared disk cache.
+     * This needs to be called before the shared cache is first used, otherwise it has no effect.
+     *
+     * @param  directory             directory for cached files.
+     * @param  maximumNumberOfBytes  maximum total size of all cached files.
+     *
+     * @return the disk cache shared by all in-memory caches in this JVM.
+     */
+    public static ImageProcessorDiskCache initializeSharedInstance(final File directory,
+                                                                   final long maximumNumberOfBytes) {
+        buildSharedInstance(directory, maximumNumberOfBytes);
+        return sharedInstance;
+    }
+
+    private static synchronized void buildSharedInstance(final File directory,
+                                                         final Long maximumNumberOfBytes) {
+        if (! isSharedInstanceBuilt) {
+
+            File cacheDirectory = directory;
+            long maxBytes = DEFAULT_MAX_BYTES;
+
+            if (cacheDirectory == null) {
+                final String directoryPath = System.getProperty(DIRECTORY_PROPERTY);
+                if ((directoryPath != null) && (directoryPath.trim().length() > 0)) {
+                    cacheDirectory = new File(directoryPath.trim());
+                }
+                final Integer maxGb = Integer.getInteger(MAX_GB_PROPERTY);
+                if (maxGb != null) {
+                    maxBytes = maxGb * 1_000_000_000L;
+                }
+            } else if (maximumNumberOfBytes != null) {
+                maxBytes = maximumNumberOfBytes;
+            }
+
+            if (cacheDirectory != null) {
+                try {
+                    sharedInstance = new ImageProcessorDiskCache(cacheDirectory, maxBytes);
+                    LOG.info("buildSharedInstance: exit, created {}", sharedInstance);
+                } catch (final Throwable t) {
+                    LOG.error("buildSharedInstance: failed to create disk cache, continuing without it", t);
+                }
+            }
+
+            isSharedInstanceBuilt = true;
+
+        } else if (directory != null) {
+            LOG.warn("buildSharedInstance: ignoring request for {} since shared disk cache is already {}",
+                     directory, sharedInstance);
+        }
+    }
+
+    /**
+     * @return the cached processor for the specified key or null if it is not cached.
+     */
+    public ImageProcessor get(final ImageProcessorCache.CacheKey key) {
+        final String keyString = getKeyString(key);
+        return fileCache.read(getFileName(key), file -> readFile(file, keyString));
+    }
+
+    /**
+     * Copies the specified processor's pixels and then writes them to this cache in the background,
+     * evicting least recently used files as needed.
+     * Processors with non-default lookup tables are not cached since only pixel values are persisted.
+     * Write failures are logged and otherwise ignored.
+     */
+    public void put(final ImageProcessorCache.CacheKey key,
+                    final ImageProcessor imageProcessor) {
+        if (isSupported(imageProcessor)) {
+            final String fileName = getFileName(key);
+            final EncodedPixels encodedPixels = new EncodedPixels(getKeyString(key), imageProcessor);
+            try {
+                writeExecutor.execute(() -> fileCache.put(fileName, encodedPixels::writeTo));
+            } catch (final RejectedExecutionException e) {
+                LOG.debug("put: skipping {} because too many writes are pending", key);
+            }
+        }
+    }
+
+    /**
+     * Removes all cached files.
+     */
+    public void invalidateAll() {
+        fileCache.invalidateAll();
+    }
+
+    /**
+     * @return number of bytes currently used by cached files.
+     */
+    public long getTotalNumberOfBytes() {
+        return fileCache.getTotalNumberOfBytes();
+    }
+
+    /**
+     * @return number of currently cached files.
+     */
+    public int size() {
+        return fileCache.size();
+    }
+
+    @Override
+    public String toString() {
+        return fileCache.toString();
+    }
+
+    private static String getKeyString(final ImageProcessorCache.CacheKey key) {
+        return key.getUri() + "::" + key.getDownSampleLevels() + "::" + key.isMask() + "::" + key.isConvertTo16Bit();
+    }
+
+    private static String getFileName(final ImageProcessorCache.CacheKey key) {
+        return Hashing.sha256().hashString(getKeyString(key), StandardCharsets.UTF_8).toString();
+    }
+
+    static boolean isSupported(final ImageProcessor imageProcessor) {
+        return (imageProcessor instanceof ColorProcessor) ||
+               (((imageProcessor instanceof ByteProcessor) ||
+                 (imageProcessor instanceof ShortProcessor) ||
+                 (imageProcessor instanceof FloatProcessor)) && imageProcessor.isDefaultLut());
+    }
+
+    static void writeFile(final File file,
+                          final String keyString,
+                          final ImageProcessor imageProcessor)
+            throws IOException {
+        new EncodedPixels(keyString, imageProcessor).writeTo(file);
+    }
+
+    static ImageProcessor readFile(final File file,
+                                   final String expectedKeyString)
+            throws IOException {
+
+        try (final FileInputStream inputStream = new FileInputStream(file);
+             final FileChannel channel = inputStream.getChannel()) {
+
+            final DataInputStream header = new DataInputStream(inputStream);
+
+            final int version = header.readInt();
+            if (version != FILE_FORMAT_VERSION) {
+                throw new IOException("unsupported file format version " + version);
+            }
+
+            final String keyString = header.readUTF();
+            if (! expectedKeyString.equals(keyString)) {
+                throw new IOException("file contains '" + keyString + "' instead of '" + expectedKeyString + "'");
+            }
+
+            final byte type = header.readByte();
+            final int width = header.readInt();
+            final int height = header.readInt();
+            final double min = header.readDouble();
+            final double max = header.readDouble();
+            final int pixelCount = width * height;
+
+            final ImageProcessor imageProcessor;
+            switch (type) {
+                case BYTE_TYPE:
+                    final byte[] bytePixels = new byte[pixelCount];
+                    readFully(channel, ByteBuffer.wrap(bytePixels));
+                    imageProcessor = new ByteProcessor(width, height, bytePixels);
+                    break;
+                case SHORT_TYPE:
+                    final short[] shortPixels = new short[pixelCount];
+                    readFully(channel, pixelCount * 2).asShortBuffer().get(shortPixels);
+                    imageProcessor = new ShortProcessor(width, height, shortPixels, null);
+                    break;
+                case FLOAT_TYPE:
+                    final float[] floatPixels = new float[pixelCount];
+                    readFully(channel, pixelCount * 4).asFloatBuffer().get(floatPixels);
+                    imageProcessor = new FloatProcessor(width, height, floatPixels);
+                    break;
+                case COLOR_TYPE:
+                    final int[] colorPixels = new int[pixelCount];
+                    readFully(channel, pixelCount * 4).asIntBuffer().get(colorPixels);
+                    imageProcessor = new ColorProcessor(width, height, colorPixels);
+                    break;
+                default:
+                    throw new IOException("unsupported pixel type " + type);
+            }
+
+            if ((imageProcessor.getMin() != min) || (imageProcessor.getMax() != max)) {
+                imageProcessor.setMinAndMax(min, max);
+            }
+
+            return imageProcessor;
+        }
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel,
+                                        final int numberOfBytes)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(numberOfBytes);
+        readFully(channel, buffer);
+        return buffer;
+    }
+
+    private static void readFully(final FileChannel channel,
+                                  final ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static Executor buildWriteExecutor() {
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "image-disk-cache-writer");
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(1, 1,
+                                      0L, TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<>(MAX_PENDING_WRITES),
+                                      threadFactory,
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Copy of a processor's header attributes and pixels in file format,
+     * so that the processor can be used (and modified) while the copy is being written.
+     */
+    private static class EncodedPixels {
+
+        private final byte[] header;
+        private final ByteBuffer pixelBuffer;
+
+        EncodedPixels(final String keyString,
+                      final ImageProcessor imageProcessor)
+                throws IllegalArgumentException {
+
+            final Object pixels = imageProcessor.getPixels();
+            final int pixelCount = imageProcessor.getPixelCount();
+
+            final byte type;
+            if (pixels instanceof byte[]) {
+                type = BYTE_TYPE;
+                pixelBuffer = ByteBuffer.allocate(pixelCount);
+                pixelBuffer.put((byte[]) pixels, 0, pixelCount);
+                pixelBuffer.flip();
+            } else if (pixels instanceof short[]) {
+                type = SHORT_TYPE;
+                pixelBuffer = ByteBuffer.allocate(pixelCount * 2);
+                pixelBuffer.asShortBuffer().put((short[]) pixels, 0, pixelCount);
+            } else if (pixels instanceof float[]) {
+                type = FLOAT_TYPE;
+                pixelBuffer = ByteBuffer.allocate(pixelCount * 4);
+                pixelBuffer.asFloatBuffer().put((float[]) pixels, 0, pixelCount);
+            } else {
+                type = COLOR_TYPE;
+                pixelBuffer = ByteBuffer.allocate(pixelCount * 4);
+                pixelBuffer.asIntBuffer().put((int[]) pixels, 0, pixelCount);
+            }
+
+            final ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(256);
+            try (final DataOutputStream headerStream = new DataOutputStream(headerBytes)) {
+                headerStream.writeInt(FILE_FORMAT_VERSION);
+                headerStream.writeUTF(keyString);
+                headerStream.writeByte(type);
+                headerStream.writeInt(imageProcessor.getWidth());
+                headerStream.writeInt(imageProcessor.getHeight());
+                headerStream.writeDouble(imageProcessor.getMin());
+                headerStream.writeDouble(imageProcessor.getMax());
+            } catch (final IOException e) {
+                throw new IllegalArgumentException("failed to encode header for " + keyString, e);
+            }
+            this.header = headerBytes.toByteArray();
+        }
+
+        void writeTo(final File file)
+                throws IOException {
+
+            // use views so that repeated writes (and concurrent writers) never share buffer position state
+            final ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+            final ByteBuffer pixelView = pixelBuffer.duplicate();
+
+            try (final FileOutputStream outputStream = new FileOutputStream(file);
+                 final FileChannel channel = outputStream.getChannel()) {
+                while (headerBuffer.hasRemaining()) {
+                    channel.write(headerBuffer);
+                }
+                while (pixelView.hasRemaining()) {
+                    channel.write(pixelView);
+                }
+            }
+        }
+    }
+
+    /** Max number of copied processors waiting to be written (bounds memory used for pending writes). */
+    private static final int MAX_PENDING_WRITES = 16;
+
+    private static final String FILE_SUFFIX = ".pixels";
+    private static final int FILE_FORMAT_VERSION = 1;
+
+    private static final byte BYTE_TYPE = 1;
+    private static final byte SHORT_TYPE = 2;
+    private static final byte FLOAT_TYPE = 3;
+    private static final byte COLOR_TYPE = 4;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ImageProcessorDiskCache.class);
+}
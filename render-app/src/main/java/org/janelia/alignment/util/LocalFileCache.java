@@ -0,0 +1,359 @@
+package org.janelia.alignment.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Size bounded directory of cached files that are removed in least recently used order.
+ *
+ * Files are identified by (hex) names and spread across subdirectories named with the first two
+ * characters of each name.  Files are written atomically, file modification times are updated on each
+ * hit, and existing files are indexed in modification time order when a cache is created,
+ * so recency is preserved across JVM restarts.
+ *
+ * Cached files are only accessed through {@link #read} so that a file being read is never deleted.
+ * Files that are evicted while they are being read are deleted once the last reader has finished.
+ *
+ * @author Eric Trautman
+ */
+public class LocalFileCache {
+
+    /**
+     * Writes cached data to a file.
+     */
+    public interface FileWriter {
+        void write(final File file) throws IOException;
+    }
+
+    /**
+     * Reads cached data from a file.
+     */
+    public interface FileReader<T> {
+        T read(final File file) throws IOException;
+    }
+
+    private final File directory;
+    private final long maximumNumberOfBytes;
+    private final String fileSuffix;
+
+    // access ordered map of file names to entries (eldest entry is least recently used)
+    private final LinkedHashMap<String, Entry> fileNameToEntry;
+    private long totalNumberOfBytes;
+
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+    private final AtomicLong writeCount;
+    private final AtomicLong evictionCount;
+
+    /**
+     * Constructs a cache for the specified directory, indexing any previously cached files found there.
+     *
+     * @param  directory             directory for cached files (will be created if it does not exist).
+     * @param  maximumNumberOfBytes  maximum total size of all cached files.
+     * @param  fileSuffix            suffix for all cached file names.
+     *
+     * @throws IllegalArgumentException
+     *   if the directory cannot be created or is not writable.
+     */
+    public LocalFileCache(final File directory,
+                          final long maximumNumberOfBytes,
+                          final String fileSuffix)
+            throws IllegalArgumentException {
+
+        if (! directory.exists()) {
+            if (! directory.mkdirs()) {
+                throw new IllegalArgumentException("failed to create cache directory " + directory);
+            }
+        }
+
+        if (! (directory.isDirectory() && directory.canWrite())) {
+            throw new IllegalArgumentException("cache directory " + directory + " is not writable");
+        }
+
+        this.directory = directory;
+        this.maximumNumberOfBytes = maximumNumberOfBytes;
+        this.fileSuffix = fileSuffix;
+        this.fileNameToEntry = new LinkedHashMap<>(1024, 0.75f, true);
+        this.totalNumberOfBytes = 0;
+
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+        this.writeCount = new AtomicLong(0);
+        this.evictionCount = new AtomicLong(0);
+
+        indexExistingFiles();
+    }
+
+    /**
+     * Reads the cached file with the specified name.
+     * The file is not deleted (even if it is evicted) until the read has finished.
+     * If the read fails, the file is removed from this cache (unless it has since been rewritten).
+     *
+     * @param  fileName  name of the file.
+     * @param  reader    reads the file's data.
+     *
+     * @return the data read from the file or null if the file is not cached or could not be read.
+     */
+    public <T> T read(final String fileName,
+                      final FileReader<T> reader) {
+
+        final Entry entry;
+        synchronized (this) {
+            entry = fileNameToEntry.get(fileName); // get updates access order
+            if (entry != null) {
+                entry.readerCount++;
+            }
+        }
+
+        T data = null;
+
+        if (entry == null) {
+
+            missCount.incrementAndGet();
+
+        } else {
+
+            final File file = getFile(fileName);
+            try {
+
+                if (! file.setLastModified(System.currentTimeMillis())) {
+                    LOG.debug("read: failed to update last modified time for {}", file);
+                }
+                data = reader.read(file);
+                hitCount.incrementAndGet();
+
+            } catch (final Exception e) {
+
+                LOG.warn("read: failed to read " + file + ", removing it from cache", e);
+                missCount.incrementAndGet();
+                synchronized (this) {
+                    if (fileNameToEntry.get(fileName) == entry) {
+                        removeEntry(fileName, entry);
+                    }
+                }
+
+            } finally {
+
+                synchronized (this) {
+                    entry.readerCount--;
+                    // only delete the file if it has not been rewritten by a later put
+                    if (entry.isRemoved && (entry.readerCount == 0) && (! fileNameToEntry.containsKey(fileName))) {
+                        deleteFile(fileName);
+                    }
+                }
+
+            }
+        }
+
+        return data;
+    }
+
+    /**
+     * Writes a file to this cache, evicting least recently used files as needed.
+     * Write failures are logged and otherwise ignored.
+     *
+     * @param  fileName  name of the file.
+     * @param  writer    writes the file's data to a temporary file that is then moved into place
+     *                   so that readers never see partially written files.
+     */
+    public void put(final String fileName,
+                    final FileWriter writer) {
+
+        final File file = getFile(fileName);
+
+        File partFile = null;
+        try {
+
+            final File parentDirectory = file.getParentFile();
+            if (! parentDirectory.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                parentDirectory.mkdirs();
+            }
+
+            partFile = File.createTempFile(fileName, PART_FILE_SUFFIX, parentDirectory);
+            writer.write(partFile);
+
+            // move and index under the lock so that a finishing reader of an evicted
+            // version of this file cannot delete the new version
+            synchronized (this) {
+                Files.move(partFile.toPath(), file.toPath(),
+                           StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                add(fileName, file.length());
+            }
+
+            writeCount.incrementAndGet();
+
+        } catch (final Throwable t) {
+            LOG.warn("put: failed to write " + file, t);
+            if ((partFile != null) && partFile.exists()) {
+                //noinspection ResultOfMethodCallIgnored
+                partFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes the specified file from this cache.
+     */
+    public synchronized void remove(final String fileName) {
+        final Entry entry = fileNameToEntry.get(fileName);
+        if (entry != null) {
+            removeEntry(fileName, entry);
+        }
+    }
+
+    /**
+     * Removes all cached files.
+     */
+    public synchronized void invalidateAll() {
+        for (final Map.Entry<String, Entry> mapEntry : new ArrayList<>(fileNameToEntry.entrySet())) {
+            removeEntry(mapEntry.getKey(), mapEntry.getValue());
+        }
+    }
+
+    /**
+     * @return number of bytes currently used by cached files.
+     */
+    public synchronized long getTotalNumberOfBytes() {
+        return totalNumberOfBytes;
+    }
+
+    /**
+     * @return number of currently cached files.
+     */
+    public synchronized int size() {
+        return fileNameToEntry.size();
+    }
+
+    @Override
+    public String toString() {
+        return "{directory: '" + directory +
+               "', numberOfFiles: " + size() +
+               ", totalNumberOfBytes: " + getTotalNumberOfBytes() +
+               ", maximumNumberOfBytes: " + maximumNumberOfBytes +
+               ", hitCount: " + hitCount.get() +
+               ", missCount: " + missCount.get() +
+               ", writeCount: " + writeCount.get() +
+               ", evictionCount: " + evictionCount.get() +
+               '}';
+    }
+
+    private synchronized void add(final String fileName,
+                                  final long numberOfBytes) {
+
+        final Entry previousEntry = fileNameToEntry.put(fileName, new Entry(numberOfBytes));
+        totalNumberOfBytes += numberOfBytes;
+        if (previousEntry != null) {
+            // previous file has already been replaced on disk, so it must not be deleted
+            totalNumberOfBytes -= previousEntry.numberOfBytes;
+            previousEntry.isRemoved = true;
+        }
+
+        final Iterator<Map.Entry<String, Entry>> iterator = fileNameToEntry.entrySet().iterator();
+        while ((totalNumberOfBytes > maximumNumberOfBytes) && iterator.hasNext()) {
+            final Map.Entry<String, Entry> eldestMapEntry = iterator.next();
+            final String eldestFileName = eldestMapEntry.getKey();
+            if (! fileName.equals(eldestFileName)) {
+                final Entry eldestEntry = eldestMapEntry.getValue();
+                iterator.remove();
+                totalNumberOfBytes -= eldestEntry.numberOfBytes;
+                eldestEntry.isRemoved = true;
+                if (eldestEntry.readerCount == 0) {
+                    deleteFile(eldestFileName);
+                }
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Removes the specified entry, deleting its file unless it is currently being read
+     * (in which case the last reader deletes it).
+     */
+    private void removeEntry(final String fileName,
+                             final Entry entry) {
+        fileNameToEntry.remove(fileName);
+        totalNumberOfBytes -= entry.numberOfBytes;
+        entry.isRemoved = true;
+        if (entry.readerCount == 0) {
+            deleteFile(fileName);
+        }
+    }
+
+    private void deleteFile(final String fileName) {
+        final File file = getFile(fileName);
+        if (file.exists() && (! file.delete())) {
+            LOG.warn("deleteFile: failed to delete {}", file);
+        }
+    }
+
+    private void indexExistingFiles() {
+
+        final List<File> cachedFiles = new ArrayList<>();
+
+        final File[] subdirectories = directory.listFiles(File::isDirectory);
+        if (subdirectories != null) {
+            for (final File subdirectory : subdirectories) {
+                final File[] files = subdirectory.listFiles(File::isFile);
+                if (files != null) {
+                    for (final File file : files) {
+                        if (file.getName().endsWith(fileSuffix)) {
+                            cachedFiles.add(file);
+                        } else if (file.getName().endsWith(PART_FILE_SUFFIX)) {
+                            // remove partially written files left behind by a previous JVM
+                            //noinspection ResultOfMethodCallIgnored
+                            file.delete();
+                        }
+                    }
+                }
+            }
+        }
+
+        cachedFiles.sort(Comparator.comparingLong(File::lastModified));
+
+        for (final File file : cachedFiles) {
+            final String name = file.getName();
+            add(name.substring(0, name.length() - fileSuffix.length()), file.length());
+        }
+
+        LOG.info("indexExistingFiles: indexed {} files ({} bytes) in {}",
+                 fileNameToEntry.size(), totalNumberOfBytes, directory);
+    }
+
+    private File getFile(final String fileName) {
+        // spread files across subdirectories to keep directory sizes reasonable
+        return new File(new File(directory, fileName.substring(0, 2)), fileName + fileSuffix);
+    }
+
+    /**
+     * Size and read state of a cached file.  Entry state is guarded by the cache's lock.
+     */
+    private static class Entry {
+
+        private final long numberOfBytes;
+        private int readerCount;
+        private boolean isRemoved;
+
+        Entry(final long numberOfBytes) {
+            this.numberOfBytes = numberOfBytes;
+            this.readerCount = 0;
+            this.isRemoved = false;
+        }
+    }
+
+    private static final String PART_FILE_SUFFIX = ".part";
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocalFileCache.class);
+}
@@ -0,0 +1,311 @@
+package org.janelia.alignment.util;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded work-stealing pool of threads for mapping source pixels to a render target.
+ *
+ * A single shared instance is used by all renderers in a JVM so that the mapping stage
+ * reuses a fixed set of threads instead of creating (and joining) new threads for every mapped tile.
+ * The shared instance is sized by the {@value #POOL_SIZE_PROPERTY} system property
+ * (or by the number of available processors if that property is not defined).
+ *
+ * @author Eric Trautman
+ */
+public class MappingThreadPool {
+
+    /** Name of system property that specifies the number of threads in the shared pool. */
+    public static final String POOL_SIZE_PROPERTY = "render.mappingThreadPoolSize";
+
+    private static MappingThreadPool sharedInstance;
+
+    private final ForkJoinPool pool;
+
+    private final LongAdder taskCount;
+    private final LongAdder totalTaskWaitNanos;
+    private final LongAdder totalTaskRunNanos;
+    private final LongAccumulator maxTaskWaitNanos;
+
+    /**
+     * Constructs a pool with the specified number of threads.
+     *
+     * @param  parallelism  maximum number of threads in the pool.
+     *
+     * @throws IllegalArgumentException
+     *   if the parallelism is less than one.
+     */
+    public MappingThreadPool(final int parallelism)
+            throws IllegalArgumentException {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("mapping thread pool parallelism must be greater than zero");
+        }
+
+        final ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = p -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("mapping-" + thread.getPoolIndex());
+            return thread;
+        };
+
+        this.pool = new ForkJoinPool(parallelism, threadFactory, null, false);
+
+        this.taskCount = new LongAdder();
+        this.totalTaskWaitNanos = new LongAdder();
+        this.totalTaskRunNanos = new LongAdder();
+        this.maxTaskWaitNanos = new LongAccumulator(Long::max, 0);
+    }
+
+    /**
+     * @return the pool instance shared by all renderers in this JVM.
+     */
+    public static MappingThreadPool getSharedInstance() {
+        if (sharedInstance == null) {
+            buildSharedInstance(null);
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Explicitly sizes the shared pool.
+     * This needs to be called before the shared pool is first used, otherwise it has no effect.
+     *
+     * @param  parallelism  maximum number of threads in the shared pool.
+     *
+     * @return the pool instance shared by all renderers in this JVM.
+     */
+    public static MappingThreadPool initializeSharedInstance(final int parallelism) {
+        buildSharedInstance(parallelism);
+        return sharedInstance;
+    }
+
+    private static synchronized void buildSharedInstance(final Integer parallelism) {
+        if (sharedInstance == null) {
+
+            int poolSize = Runtime.getRuntime().availableProcessors();
+            if (parallelism != null) {
+                poolSize = parallelism;
+            } else {
+                final Integer configuredSize = Integer.getInteger(POOL_SIZE_PROPERTY);
+                if (configuredSize != null) {
+                    poolSize = configuredSize;
+                }
+            }
+
+            sharedInstance = new MappingThreadPool(poolSize);
+
+            LOG.info("buildSharedInstance: exit, created {}", sharedInstance);
+
+        } else if ((parallelism != null) && (parallelism != sharedInstance.getParallelism())) {
+            LOG.warn("buildSharedInstance: ignoring request for {} threads since shared pool already has {} threads",
+                     parallelism, sharedInstance.getParallelism());
+        }
+    }
+
+    /**
+     * @return maximum number of threads in this pool.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Applies the specified consumer to every item in the specified list,
+     * splitting the list into batches that are processed concurrently by this pool's threads.
+     * This method blocks until all items have been processed.
+     *
+     * @param  itemList        items to process.
+     * @param  maxParallelism  maximum number of batches to split the list into
+     *                         (items are processed in the calling thread if this is less than 2).
+     * @param  itemConsumer    function to apply to each item.
+     */
+    public <T> void forEach(final List<T> itemList,
+                            final int maxParallelism,
+                            final Consumer<T> itemConsumer) {
+
+        final int numberOfItems = itemList.size();
+        final int numberOfBatches = Math.min(maxParallelism, numberOfItems);
+
+        if (numberOfBatches > 1) {
+            final int batchSize = (int) Math.ceil((double) numberOfItems / numberOfBatches);
+            pool.invoke(new BatchAction<>(itemList, 0, numberOfItems, batchSize, itemConsumer, System.nanoTime()));
+        } else {
+            for (final T item : itemList) {
+                itemConsumer.accept(item);
+            }
+        }
+    }
+
+    /**
+     * @return an executor that runs tasks on this pool's threads
+     *         (for pipelined work that cannot be expressed as a {@link #forEach} call).
+     *         Tasks should not block waiting for other tasks submitted to this pool.
+     */
+    public Executor getExecutor() {
+        return pool;
+    }
+
+    /**
+     * @return a current snapshot of this pool's queue depth and task latency metrics.
+     */
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    @Override
+    public String toString() {
+        return "{parallelism: " + getParallelism() +
+               ", poolSize: " + pool.getPoolSize() +
+               ", activeThreadCount: " + pool.getActiveThreadCount() +
+               '}';
+    }
+
+    /**
+     * Action that recursively splits a range of items until it is small enough to process directly.
+     */
+    private class BatchAction<T>
+            extends RecursiveAction {
+
+        private final List<T> itemList;
+        private final int fromIndex;
+        private final int toIndex;
+        private final int batchSize;
+        private final Consumer<T> itemConsumer;
+        private final long submitNanos;
+
+        BatchAction(final List<T> itemList,
+                    final int fromIndex,
+                    final int toIndex,
+                    final int batchSize,
+                    final Consumer<T> itemConsumer,
+                    final long submitNanos) {
+            this.itemList = itemList;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.batchSize = batchSize;
+            this.itemConsumer = itemConsumer;
+            this.submitNanos = submitNanos;
+        }
+
+        @Override
+        protected void compute() {
+            if ((toIndex - fromIndex) > batchSize) {
+                final int middleIndex = fromIndex + (((toIndex - fromIndex) / batchSize + 1) / 2) * batchSize;
+                invokeAll(new BatchAction<>(itemList, fromIndex, middleIndex, batchSize, itemConsumer, submitNanos),
+                          new BatchAction<>(itemList, middleIndex, toIndex, batchSize, itemConsumer, submitNanos));
+            } else {
+                final long startNanos = System.nanoTime();
+                for (int i = fromIndex; i < toIndex; i++) {
+                    itemConsumer.accept(itemList.get(i));
+                }
+                final long waitNanos = startNanos - submitNanos;
+                taskCount.increment();
+                totalTaskWaitNanos.add(waitNanos);
+                totalTaskRunNanos.add(System.nanoTime() - startNanos);
+                maxTaskWaitNanos.accumulate(waitNanos);
+            }
+        }
+    }
+
+    /**
+     * Snapshot of pool metrics.
+     */
+    public static class Stats
+            implements Serializable {
+
+        private final int parallelism;
+        private final int poolSize;
+        private final int activeThreadCount;
+        private final long queueDepth;
+        private final long stealCount;
+        private final long completedTaskCount;
+        private final double averageTaskWaitMilliseconds;
+        private final double maxTaskWaitMilliseconds;
+        private final double averageTaskRunMilliseconds;
+
+        Stats(final MappingThreadPool mappingThreadPool) {
+            final ForkJoinPool pool = mappingThreadPool.pool;
+            this.parallelism = pool.getParallelism();
+            this.poolSize = pool.getPoolSize();
+            this.activeThreadCount = pool.getActiveThreadCount();
+            this.queueDepth = pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+            this.stealCount = pool.getStealCount();
+            this.completedTaskCount = mappingThreadPool.taskCount.sum();
+            if (completedTaskCount > 0) {
+                this.averageTaskWaitMilliseconds =
+                        mappingThreadPool.totalTaskWaitNanos.sum() / (completedTaskCount * 1_000_000.0);
+                this.averageTaskRunMilliseconds =
+                        mappingThreadPool.totalTaskRunNanos.sum() / (completedTaskCount * 1_000_000.0);
+            } else {
+                this.averageTaskWaitMilliseconds = 0;
+                this.averageTaskRunMilliseconds = 0;
+            }
+            this.maxTaskWaitMilliseconds = mappingThreadPool.maxTaskWaitNanos.get() / 1_000_000.0;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public int getActiveThreadCount() {
+            return activeThreadCount;
+        }
+
+        /**
+         * @return number of queued tasks plus number of queued submissions (the current queue depth).
+         */
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getStealCount() {
+            return stealCount;
+        }
+
+        public long getCompletedTaskCount() {
+            return completedTaskCount;
+        }
+
+        public double getAverageTaskWaitMilliseconds() {
+            return averageTaskWaitMilliseconds;
+        }
+
+        public double getMaxTaskWaitMilliseconds() {
+            return maxTaskWaitMilliseconds;
+        }
+
+        public double getAverageTaskRunMilliseconds() {
+            return averageTaskRunMilliseconds;
+        }
+
+        @Override
+        public String toString() {
+            return "{parallelism: " + parallelism +
+                   ", poolSize: " + poolSize +
+                   ", activeThreadCount: " + activeThreadCount +
+                   ", queueDepth: " + queueDepth +
+                   ", stealCount: " + stealCount +
+                   ", completedTaskCount: " + completedTaskCount +
+                   ", averageTaskWaitMilliseconds: " + averageTaskWaitMilliseconds +
+                   ", maxTaskWaitMilliseconds: " + maxTaskWaitMilliseconds +
+                   ", averageTaskRunMilliseconds: " + averageTaskRunMilliseconds +
+                   '}';
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappingThreadPool.class);
+}
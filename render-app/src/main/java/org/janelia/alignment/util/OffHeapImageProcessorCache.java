@@ -0,0 +1,332 @@
+package org.janelia.alignment.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Cache of {@link ImageProcessor} pixels for rendering that stores pixel data in direct (off-heap) buffers.
+ *
+ * Keeping cached pixels off the Java heap means large caches no longer need to be traced or copied by the
+ * garbage collector, which significantly reduces full GC pause times for JVMs with large heaps.
+ * Each cache is constrained by a max byte count that is compared against the exact size of each
+ * cached pixel buffer (plus a small fixed overhead for each entry).
+ *
+ * Because ImageJ processors must be backed by heap arrays, each {@link #get} call returns a new
+ * processor whose pixels are bulk copied from the cached buffer.  This is the same single copy that the
+ * heap based {@link ImageProcessorCache} makes when it duplicates cached processors, so hits are no more
+ * expensive than they were before.
+ *
+ * Each cached buffer is reference counted so that its direct memory can be released explicitly as soon as
+ * it is evicted and no longer being copied, instead of waiting for the buffer object to be garbage collected.
+ * If explicit release is not supported by the JVM, memory is released by garbage collection, so the JVM's
+ * -XX:MaxDirectMemorySize option should still be set somewhat larger than the maximum size of this cache.
+ *
+ * @author Eric Trautman
+ */
+public class OffHeapImageProcessorCache
+        extends ImageProcessorCache {
+
+    private final long maximumNumberOfCachedBytes;
+    private final boolean recordStats;
+
+    private final LoadingCache<CacheKey, CachedPixels> offHeapCache;
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumNumberOfCachedBytes          the maximum number of (off-heap) bytes to maintain in the cache.
+     *
+     * @param  recordStats                         if true, useful tuning stats like cache hits and loads will be
+     *                                             maintained (presumably at some nominal overhead cost);
+     *                                             otherwise stats are not maintained.
+     *
+     * @param  cacheOriginalsForDownSampledImages  if true, when down sampled images are requested their source
+     *                                             images will also be cached (presumably improving the speed
+     *                                             of future down sampling to a different level);
+     *                                             otherwise only the down sampled result images are cached.
+     */
+    public OffHeapImageProcessorCache(final long maximumNumberOfCachedBytes,
+                                      final boolean recordStats,
+                                      final boolean cacheOriginalsForDownSampledImages) {
+
+        // parent heap cache is never populated since all caching is delegated to the off-heap cache
+        super(0, false, cacheOriginalsForDownSampledImages);
+
+        this.maximumNumberOfCachedBytes = maximumNumberOfCachedBytes;
+        this.recordStats = recordStats;
+
+        final Weigher<CacheKey, CachedPixels> weigher =
+                (key, value) -> getWeight(key, value.getByteCount());
+
+        final CacheLoader<CacheKey, CachedPixels> loader =
+                new CacheLoader<CacheKey, CachedPixels>() {
+
+                    @Override
+                    public CachedPixels load(@Nullable final CacheKey key) {
+                        CachedPixels cachedPixels = null;
+                        if (key != null) {
+                            cachedPixels = new CachedPixels(loadImageProcessor(key.getUri(),
+                                                                               key.getDownSampleLevels(),
+                                                                               key.isMask(),
+                                                                               key.isConvertTo16Bit()));
+                        }
+                        return cachedPixels;
+                    }
+                };
+
+        // release the cache's reference to removed (evicted, replaced, or invalidated) pixels
+        final RemovalListener<CacheKey, CachedPixels> removalListener =
+                notification -> {
+                    final CachedPixels cachedPixels = notification.getValue();
+                    if (cachedPixels != null) {
+                        cachedPixels.release();
+                    }
+                };
+
+        final long maximumNumberOfCachedKilobytes = maximumNumberOfCachedBytes / 1000;
+
+        if (recordStats) {
+            offHeapCache = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumNumberOfCachedKilobytes)
+                    .weigher(weigher)
+                    .removalListener(removalListener)
+                    .recordStats()
+                    .build(loader);
+        } else {
+            offHeapCache = CacheBuilder.newBuilder()
+                    .maximumWeight(maximumNumberOfCachedKilobytes)
+                    .weigher(weigher)
+                    .removalListener(removalListener)
+                    .build(loader);
+        }
+    }
+
+    /**
+     * @param  url               url for the image.
+     *
+     * @param  downSampleLevels  number of levels to further down sample the image.
+     *                           Negative values are considered the same as zero.
+     *
+     * @param  isMask            indicates whether the image is a mask.
+     *
+     * @param  convertTo16Bit    indicates whether the loaded image processor should be converted to 16-bit.
+     *
+     * @return a new processor with a copy of the cached pixels for the specified url string.
+     *         If the pixels are not already cached, they will be loaded into the cache.
+     *
+     * @throws IllegalArgumentException
+     *   if the image cannot be loaded.
+     */
+    @Override
+    public ImageProcessor get(final String url,
+                              final int downSampleLevels,
+                              final boolean isMask,
+                              final boolean convertTo16Bit)
+            throws IllegalArgumentException {
+
+        final CacheKey key = new CacheKey(url, downSampleLevels, isMask, convertTo16Bit);
+        final CachedPixels cachedPixels;
+        try {
+            cachedPixels = offHeapCache.get(key);
+        } catch (final Throwable t) {
+            throw new IllegalArgumentException("failed to retrieve " + key + " from cache", t);
+        }
+
+        ImageProcessor imageProcessor = cachedPixels.copyToImageProcessor();
+        if (imageProcessor == null) {
+            // pixels were evicted (and released) before they could be copied,
+            // this should be rare unless the image is too large for the cache
+            imageProcessor = loadImageProcessor(url, downSampleLevels, isMask, convertTo16Bit);
+        }
+        return imageProcessor;
+    }
+
+    @Override
+    public long size() {
+        return offHeapCache.size();
+    }
+
+    /**
+     * @return the number of off-heap bytes currently used by this cache.
+     */
+    public long getCachedByteCount() {
+        long byteCount = 0;
+        for (final CachedPixels cachedPixels : offHeapCache.asMap().values()) {
+            byteCount += cachedPixels.getByteCount();
+        }
+        return byteCount;
+    }
+
+    @Override
+    public void invalidateAll() {
+        offHeapCache.invalidateAll();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return offHeapCache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", cachedByteCount: " + getCachedByteCount() +
+               ", maximumNumberOfCachedBytes: " + maximumNumberOfCachedBytes +
+               ", recordStats: " + recordStats +
+               ", cacheOriginalsForDownSampledImages: " + cacheOriginalsForDownSampledImages +
+               '}';
+    }
+
+    @Override
+    protected ImageProcessor getCachedImageProcessorIfPresent(final CacheKey key) {
+        final CachedPixels cachedPixels = offHeapCache.getIfPresent(key);
+        return cachedPixels == null ? null : cachedPixels.copyToImageProcessor();
+    }
+
+    @Override
+    protected void cacheImageProcessor(final CacheKey key,
+                                       final ImageProcessor imageProcessor) {
+        offHeapCache.put(key, new CachedPixels(imageProcessor));
+    }
+
+    /**
+     * Off-heap copy of an image processor's pixels.
+     * A tiny (1x1) on-heap template processor is retained so that restored processors have the same
+     * color model, display range, and interpolation method as the original processor.
+     *
+     * The cache holds one reference to each instance and every copy holds another while it reads the buffer.
+     * The buffer's direct memory is released once all references have been released.
+     */
+    static class CachedPixels {
+
+        private final ImageProcessor template;
+        private final int width;
+        private final int height;
+        private final ByteBuffer buffer;
+        private final AtomicInteger referenceCount;
+
+        CachedPixels(final ImageProcessor imageProcessor)
+                throws IllegalArgumentException {
+
+            this.template = imageProcessor.createProcessor(1, 1);
+            this.width = imageProcessor.getWidth();
+            this.height = imageProcessor.getHeight();
+
+            final Object pixels = imageProcessor.getPixels();
+            final int pixelCount = width * height;
+
+            if (pixels instanceof byte[]) {
+                this.buffer = allocate(pixelCount);
+                this.buffer.duplicate().put((byte[]) pixels, 0, pixelCount);
+            } else if (pixels instanceof short[]) {
+                this.buffer = allocate(pixelCount * 2L);
+                this.buffer.asShortBuffer().put((short[]) pixels, 0, pixelCount);
+            } else if (pixels instanceof float[]) {
+                this.buffer = allocate(pixelCount * 4L);
+                this.buffer.asFloatBuffer().put((float[]) pixels, 0, pixelCount);
+            } else if (pixels instanceof int[]) {
+                this.buffer = allocate(pixelCount * 4L);
+                this.buffer.asIntBuffer().put((int[]) pixels, 0, pixelCount);
+            } else {
+                throw new IllegalArgumentException(
+                        "unsupported image processor type " + imageProcessor.getClass().getName());
+            }
+
+            this.referenceCount = new AtomicInteger(1);
+        }
+
+        /**
+         * @return number of off-heap bytes used to store these pixels plus a fixed entry overhead.
+         */
+        long getByteCount() {
+            return buffer.capacity() + ENTRY_OVERHEAD_BYTES;
+        }
+
+        /**
+         * @return a new processor containing a copy of these pixels or null if these pixels have been released.
+         */
+        ImageProcessor copyToImageProcessor() {
+
+            if (! acquire()) {
+                return null;
+            }
+
+            try {
+                return toImageProcessor();
+            } finally {
+                release();
+            }
+        }
+
+        /**
+         * Releases one reference to these pixels, freeing the off-heap buffer when no references remain.
+         */
+        void release() {
+            if (referenceCount.decrementAndGet() == 0) {
+                DirectBufferReleaser.release(buffer);
+            }
+        }
+
+        /**
+         * @return true if a reference was acquired; false if these pixels have already been released.
+         */
+        private boolean acquire() {
+            int count;
+            do {
+                count = referenceCount.get();
+                if (count < 1) {
+                    return false;
+                }
+            } while (! referenceCount.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        private ImageProcessor toImageProcessor() {
+
+            final ImageProcessor imageProcessor = template.createProcessor(width, height);
+            final Object pixels = imageProcessor.getPixels();
+
+            // views are used so that concurrent reads never share buffer position state
+            if (imageProcessor instanceof ByteProcessor) {
+                buffer.duplicate().get((byte[]) pixels);
+            } else if (imageProcessor instanceof ShortProcessor) {
+                buffer.asShortBuffer().get((short[]) pixels);
+            } else if (imageProcessor instanceof FloatProcessor) {
+                buffer.asFloatBuffer().get((float[]) pixels);
+            } else if (imageProcessor instanceof ColorProcessor) {
+                buffer.asIntBuffer().get((int[]) pixels);
+            }
+
+            return imageProcessor;
+        }
+
+        private static ByteBuffer allocate(final long byteCount)
+                throws IllegalArgumentException {
+            if (byteCount > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "image with " + byteCount + " bytes is too large for off-heap cache");
+            }
+            return ByteBuffer.allocateDirect((int) byteCount).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /** Rough estimate of heap used for each cache entry (key, template processor, buffer object). */
+    private static final long ENTRY_OVERHEAD_BYTES = 512;
+
+}
@@ -94,6 +94,32 @@ public class ArgbRendererTest {
                             expectedDigestString, actualDigestString);
     }
 
+    @Test
+    public void testMultiThreadedStitching() throws Exception {
+
+        final File expectedFile =
+                new File(modulePath + "/src/test/resources/stitch-test/expected_stitched_4_tiles_with_mixed_masks.jpg");
+
+        final String[] args = {
+                "--tile_spec_url", "src/test/resources/stitch-test/test_4_tiles_with_mixed_masks.json",
+                "--out", outputFile.getAbsolutePath(),
+                "--width", "4576",
+                "--height", "4173",
+                "--scale", "0.05",
+                "--threads", "4"
+        };
+
+        ArgbRenderer.renderUsingCommandLineArguments(args);
+
+        Assert.assertTrue("stitched file " + outputFile.getAbsolutePath() + " not created", outputFile.exists());
+
+        final String expectedDigestString = getDigestString(expectedFile);
+        final String actualDigestString = getDigestString(outputFile);
+
+        Assert.assertEquals("multi-threaded stitched file MD5 hash differs from single-threaded result",
+                            expectedDigestString, actualDigestString);
+    }
+
     @Test
     public void testMixedMaskStitching() throws Exception {
 
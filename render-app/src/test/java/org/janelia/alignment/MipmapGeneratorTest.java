@@ -15,6 +15,8 @@ import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Tests the {@link MipmapGenerator} class.
@@ -111,6 +113,38 @@ public class MipmapGeneratorTest {
 
     }
 
+    @Test
+    public void testGenerateMissingMipmapFilesWithWriterService() throws Exception {
+        final File parametersFile = new File("src/test/resources/mipmap-test/generator_parameters.json");
+        final MipmapGeneratorParameters parameters = MipmapGeneratorParameters.parseJson(parametersFile);
+        parameters.initializeDerivedValues();
+
+        final ExecutorService writerService = Executors.newFixedThreadPool(2);
+        try {
+            final MipmapGenerator mipmapGenerator = new MipmapGenerator(baseMipmapDirectory,
+                                                                        parameters.getFormat(),
+                                                                        parameters.getQuality(),
+                                                                        false,
+                                                                        writerService);
+            for (final TileSpec tileSpec : parameters.getTileSpecs()) {
+
+                mipmapGenerator.generateMissingMipmapFiles(tileSpec, 3);
+
+                final ChannelSpec channelSpec = tileSpec.getAllChannels().get(0);
+                for (int level = 1; level < 4; level++) {
+                    final ImageAndMask imageAndMask = channelSpec.getMipmap(level);
+                    Assert.assertNotNull("tile spec is missing level " + level + " mipmap", imageAndMask);
+                    Assert.assertTrue("level " + level + " image was not written for " + tileSpec.getTileId(),
+                                      new File(imageAndMask.getImageFilePath()).exists());
+                    Assert.assertTrue("level " + level + " mask was not written for " + tileSpec.getTileId(),
+                                      new File(imageAndMask.getMaskFilePath()).exists());
+                }
+            }
+        } finally {
+            writerService.shutdown();
+        }
+    }
+
     private void validateMask(final ChannelSpec channelSpec,
                               final int specIndex,
                               final ImageAndMask consolidatedImageAndMask,
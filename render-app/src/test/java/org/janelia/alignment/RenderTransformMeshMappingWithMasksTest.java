@@ -0,0 +1,206 @@
+package org.janelia.alignment;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+import org.janelia.alignment.RenderTransformMeshMappingWithMasks.Engine;
+import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderTransformMeshMappingWithMasks} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderTransformMeshMappingWithMasksTest {
+
+    @Test
+    public void testScanlineEngineCoverageAndSourceLocations() throws Exception {
+
+        for (final boolean isMappingInterpolated : new boolean[] { false, true }) {
+            for (final int numberOfCells : new int[] { 2, 7, 32 }) {
+
+                final RenderTransformMesh mesh = buildMesh(numberOfCells);
+
+                final LocationRecordingMapper boundingBoxMapper =
+                        new LocationRecordingMapper(TARGET_SIZE, isMappingInterpolated);
+                final LocationRecordingMapper scanlineMapper =
+                        new LocationRecordingMapper(TARGET_SIZE, isMappingInterpolated);
+
+                new RenderTransformMeshMappingWithMasks(mesh, Engine.BOUNDING_BOX).map(boundingBoxMapper, 1);
+                new RenderTransformMeshMappingWithMasks(mesh, Engine.SCANLINE).map(scanlineMapper, 1);
+
+                final String context = "for " + numberOfCells + " cells and interpolated " + isMappingInterpolated;
+
+                Assert.assertTrue("no pixels mapped " + context, boundingBoxMapper.mappedPixelCount > 0);
+
+                for (int i = 0; i < boundingBoxMapper.mapCounts.length; i++) {
+                    Assert.assertEquals("invalid map count for pixel " + i + " " + context,
+                                        boundingBoxMapper.mapCounts[i], scanlineMapper.mapCounts[i]);
+                    if (boundingBoxMapper.mapCounts[i] == 1) {
+                        Assert.assertEquals("invalid source x for pixel " + i + " " + context,
+                                            boundingBoxMapper.sourceXs[i], scanlineMapper.sourceXs[i], 0.000001);
+                        Assert.assertEquals("invalid source y for pixel " + i + " " + context,
+                                            boundingBoxMapper.sourceYs[i], scanlineMapper.sourceYs[i], 0.000001);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testScanlineEngineRenderedPixels() throws Exception {
+
+        final RenderTransformMesh mesh = buildMesh(16);
+
+        final ImageProcessorWithMasks boundingBoxTarget = buildTarget();
+        final ImageProcessorWithMasks scanlineTarget = buildTarget();
+
+        new RenderTransformMeshMappingWithMasks(mesh, Engine.BOUNDING_BOX).map(
+                new SingleChannelWithAlphaMapper(buildSource(), boundingBoxTarget, true), 1);
+        new RenderTransformMeshMappingWithMasks(mesh, Engine.SCANLINE).map(
+                new SingleChannelWithAlphaMapper(buildSource(), scanlineTarget, true), 1);
+
+        final float[] boundingBoxPixels = (float[]) boundingBoxTarget.ip.getPixels();
+        final float[] scanlinePixels = (float[]) scanlineTarget.ip.getPixels();
+        for (int i = 0; i < boundingBoxPixels.length; i++) {
+            Assert.assertEquals("invalid intensity for pixel " + i,
+                                boundingBoxPixels[i], scanlinePixels[i], 0.001);
+            Assert.assertEquals("invalid mask value for pixel " + i,
+                                boundingBoxTarget.mask.get(i), scanlineTarget.mask.get(i), 1);
+        }
+    }
+
+    @Test
+    public void testDefaultEngine() throws Exception {
+        final String originalValue = System.getProperty(RenderTransformMeshMappingWithMasks.ENGINE_PROPERTY);
+        try {
+            System.clearProperty(RenderTransformMeshMappingWithMasks.ENGINE_PROPERTY);
+            Assert.assertEquals("invalid default engine",
+                                Engine.BOUNDING_BOX, RenderTransformMeshMappingWithMasks.getDefaultEngine());
+
+            System.setProperty(RenderTransformMeshMappingWithMasks.ENGINE_PROPERTY, "scanline");
+            Assert.assertEquals("invalid configured engine",
+                                Engine.SCANLINE, RenderTransformMeshMappingWithMasks.getDefaultEngine());
+        } finally {
+            if (originalValue == null) {
+                System.clearProperty(RenderTransformMeshMappingWithMasks.ENGINE_PROPERTY);
+            } else {
+                System.setProperty(RenderTransformMeshMappingWithMasks.ENGINE_PROPERTY, originalValue);
+            }
+        }
+    }
+
+    private static RenderTransformMesh buildMesh(final int numberOfCells) {
+        final RenderTransformMesh mesh = new RenderTransformMesh(new WarpTransform(),
+                                                                 numberOfCells,
+                                                                 SOURCE_SIZE,
+                                                                 SOURCE_SIZE);
+        mesh.updateAffines();
+        return mesh;
+    }
+
+    private static ImageProcessorWithMasks buildSource() {
+        final FloatProcessor ip = new FloatProcessor(SOURCE_SIZE, SOURCE_SIZE);
+        final ByteProcessor mask = new ByteProcessor(SOURCE_SIZE, SOURCE_SIZE);
+        for (int y = 0; y < SOURCE_SIZE; y++) {
+            for (int x = 0; x < SOURCE_SIZE; x++) {
+                ip.setf(x, y, (x * 7 + y * 13) % 255);
+                mask.set(x, y, x < 10 ? 25 * x : 255);
+            }
+        }
+        return new ImageProcessorWithMasks(ip, mask, null);
+    }
+
+    private static ImageProcessorWithMasks buildTarget() {
+        return new ImageProcessorWithMasks(new FloatProcessor(TARGET_SIZE, TARGET_SIZE),
+                                           new ByteProcessor(TARGET_SIZE, TARGET_SIZE),
+                                           null);
+    }
+
+    /**
+     * Rotates, shears, and smoothly warps locations so that mesh triangles have arbitrary orientations.
+     */
+    private static class WarpTransform
+            implements CoordinateTransform {
+
+        @Override
+        public double[] apply(final double[] location) {
+            final double[] transformed = location.clone();
+            applyInPlace(transformed);
+            return transformed;
+        }
+
+        @Override
+        public void applyInPlace(final double[] location) {
+            final double x = location[0];
+            final double y = location[1];
+            location[0] = 40.3 + (x * 0.93) + (y * 0.21) + (3 * Math.sin(y / 50));
+            location[1] = 10.7 - (x * 0.2) + (y * 0.95) + (2 * Math.cos(x / 40));
+        }
+    }
+
+    private static class LocationRecordingMapper
+            implements PixelMapper {
+
+        private final int size;
+        private final boolean isMappingInterpolated;
+        private final double[] sourceXs;
+        private final double[] sourceYs;
+        private final int[] mapCounts;
+        private int mappedPixelCount;
+
+        LocationRecordingMapper(final int size,
+                                final boolean isMappingInterpolated) {
+            this.size = size;
+            this.isMappingInterpolated = isMappingInterpolated;
+            this.sourceXs = new double[size * size];
+            this.sourceYs = new double[size * size];
+            this.mapCounts = new int[size * size];
+            this.mappedPixelCount = 0;
+        }
+
+        @Override
+        public int getTargetWidth() {
+            return size;
+        }
+
+        @Override
+        public int getTargetHeight() {
+            return size;
+        }
+
+        @Override
+        public boolean isMappingInterpolated() {
+            return isMappingInterpolated;
+        }
+
+        @Override
+        public void map(final double sourceX,
+                        final double sourceY,
+                        final int targetX,
+                        final int targetY) {
+            final int i = (targetY * size) + targetX;
+            sourceXs[i] = sourceX;
+            sourceYs[i] = sourceY;
+            mapCounts[i]++;
+            mappedPixelCount++;
+        }
+
+        @Override
+        public void mapInterpolated(final double sourceX,
+                                    final double sourceY,
+                                    final int targetX,
+                                    final int targetY) {
+            map(sourceX, sourceY, targetX, targetY);
+        }
+    }
+
+    private static final int SOURCE_SIZE = 400;
+    private static final int TARGET_SIZE = 500;
+}
@@ -0,0 +1,112 @@
+package org.janelia.alignment.match;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.imagefeatures.FloatArray2DSIFT;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasFeatureExtractor} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureExtractorTest {
+
+    @Test
+    public void testStripExtractionMatchesWholeImageExtraction() {
+
+        final int width = 512;
+        final int height = 512;
+        final BufferedImage image = buildBlobImage(width, height);
+
+        final List<Feature> wholeImageFeatures = buildExtractor(1).extractFeaturesFromImage(image);
+        final List<Feature> stripFeatures = buildExtractor(4).extractFeaturesFromImage(image);
+
+        Assert.assertTrue("no features extracted from whole image", wholeImageFeatures.size() > 0);
+
+        final double countRatio = stripFeatures.size() / (double) wholeImageFeatures.size();
+        Assert.assertEquals("strip feature count " + stripFeatures.size() +
+                            " differs too much from whole image feature count " + wholeImageFeatures.size(),
+                            1.0, countRatio, 0.1);
+
+        // strip features must be unique (features in overlapping margins are only kept by one strip),
+        // note that SIFT can produce multiple features with different orientations at the same location
+        stripFeatures.sort(Comparator.comparingDouble(f -> f.location[1]));
+        for (int i = 0; i < stripFeatures.size(); i++) {
+            final Feature feature = stripFeatures.get(i);
+            Assert.assertTrue("feature y " + feature.location[1] + " is outside of image",
+                              (feature.location[1] >= 0) && (feature.location[1] < height));
+            for (int j = i + 1; j < stripFeatures.size(); j++) {
+                final Feature other = stripFeatures.get(j);
+                if ((other.location[1] - feature.location[1]) > LOCATION_TOLERANCE) {
+                    break;
+                }
+                Assert.assertFalse("duplicate features found at (" + feature.location[0] + ", " +
+                                   feature.location[1] + ")",
+                                   isSameFeature(feature, other));
+            }
+        }
+
+        // strip feature locations must be offset back into full image coordinates
+        int matchCount = 0;
+        for (final Feature wholeImageFeature : wholeImageFeatures) {
+            for (final Feature stripFeature : stripFeatures) {
+                if (isSameFeature(wholeImageFeature, stripFeature)) {
+                    matchCount++;
+                    break;
+                }
+            }
+        }
+
+        final double matchRatio = matchCount / (double) wholeImageFeatures.size();
+        Assert.assertTrue("only " + matchCount + " of " + wholeImageFeatures.size() +
+                          " whole image features were found in strips",
+                          matchRatio > 0.9);
+    }
+
+    private static CanvasFeatureExtractor buildExtractor(final int numberOfThreads) {
+        final FloatArray2DSIFT.Param coreSiftParameters = new FloatArray2DSIFT.Param();
+        coreSiftParameters.fdSize = 4;
+        coreSiftParameters.steps = 3;
+        return new CanvasFeatureExtractor(coreSiftParameters, 0.5, 1.0, false, numberOfThreads);
+    }
+
+    private static BufferedImage buildBlobImage(final int width,
+                                                final int height) {
+
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.GRAY);
+        graphics.fillRect(0, 0, width, height);
+
+        final Random random = new Random(42);
+        for (int i = 0; i < 400; i++) {
+            final int gray = random.nextInt(256);
+            final int diameter = 6 + random.nextInt(30);
+            graphics.setColor(new Color(gray, gray, gray));
+            graphics.fillOval(random.nextInt(width), random.nextInt(height), diameter, diameter);
+        }
+
+        graphics.dispose();
+
+        return image;
+    }
+
+    private static boolean isSameFeature(final Feature a,
+                                         final Feature b) {
+        return (Math.abs(a.location[0] - b.location[0]) <= LOCATION_TOLERANCE) &&
+               (Math.abs(a.location[1] - b.location[1]) <= LOCATION_TOLERANCE) &&
+               (Math.abs(a.scale - b.scale) <= (0.01 * a.scale)) &&
+               (Math.abs(a.orientation - b.orientation) <= 0.01);
+    }
+
+    private static final double LOCATION_TOLERANCE = 0.5;
+}
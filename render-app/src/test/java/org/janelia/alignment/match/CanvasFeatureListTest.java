@@ -17,8 +17,14 @@
 package org.janelia.alignment.match;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 
@@ -84,5 +90,136 @@ public class CanvasFeatureListTest {
                             featureList.size(), storedCanvasFeatureList.getFeatureList().size());
     }
 
+    @Test
+    public void testBinaryWriteRead() throws Exception {
+
+        final List<Feature> featureList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final float[] descriptor = new float[128];
+            for (int d = 0; d < descriptor.length; d++) {
+                descriptor[d] = ((i + d) % 51) / 250.0f;
+            }
+            featureList.add(new Feature(1.5 + i, -0.25 * i, new double[] {10.0 * i, 20.5 + i}, descriptor));
+        }
+
+        // descriptor with a much larger range should not reduce the precision of the other descriptors
+        final float[] wideDescriptor = new float[128];
+        for (int d = 0; d < wideDescriptor.length; d++) {
+            wideDescriptor[d] = d * 3.0f;
+        }
+        featureList.add(new Feature(2.0, 0.5, new double[] {7.0, 8.0}, wideDescriptor));
+
+        final CanvasId canvasId = new CanvasId("testGroup", "testId", MontageRelativePosition.RIGHT);
+
+        final CanvasFeatureList canvasFeatureList = new CanvasFeatureList(canvasId,
+                                                                          "http://foo.com/render-parameters",
+                                                                          0.4,
+                                                                          200,
+                                                                          null,
+                                                                          featureList);
+
+        for (final CanvasFeatureList.StorageFormat format : CanvasFeatureList.StorageFormat.values()) {
+
+            CanvasFeatureList.writeToStorage(rootFeatureListDirectory, canvasFeatureList, format);
+
+            final CanvasFeatureList storedCanvasFeatureList =
+                    CanvasFeatureList.readFromStorage(rootFeatureListDirectory, canvasId, format);
+
+            final String context = format + " ";
+            Assert.assertEquals(context + "invalid stored canvasId",
+                                canvasId, storedCanvasFeatureList.getCanvasId());
+            Assert.assertEquals(context + "invalid stored renderParametersUrl",
+                                canvasFeatureList.getRenderParametersUrl(),
+                                storedCanvasFeatureList.getRenderParametersUrl());
+            Assert.assertEquals(context + "invalid stored clipWidth",
+                                canvasFeatureList.getClipWidth(), storedCanvasFeatureList.getClipWidth());
+            Assert.assertNull(context + "invalid stored clipHeight", storedCanvasFeatureList.getClipHeight());
+            Assert.assertEquals(context + "invalid number of stored features",
+                                featureList.size(), storedCanvasFeatureList.size());
+
+            for (int i = 0; i < featureList.size(); i++) {
+                final Feature expected = featureList.get(i);
+                final Feature actual = storedCanvasFeatureList.getFeatureList().get(i);
+
+                // quantized values are within half a step (descriptor range / 255) of the original values
+                final float descriptorDelta =
+                        format == CanvasFeatureList.StorageFormat.QUANTIZED_BINARY ?
+                        (getRange(expected.descriptor) / 255.0f) : 0.0f;
+
+                Assert.assertEquals(context + "invalid scale for feature " + i, expected.scale, actual.scale, 0.0);
+                Assert.assertEquals(context + "invalid orientation for feature " + i,
+                                    expected.orientation, actual.orientation, 0.0);
+                Assert.assertArrayEquals(context + "invalid location for feature " + i,
+                                         expected.location, actual.location, 0.0);
+                Assert.assertArrayEquals(context + "invalid descriptor for feature " + i,
+                                         expected.descriptor, actual.descriptor, descriptorDelta);
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryReadOfCorruptData() throws Exception {
+
+        final List<Feature> featureList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            featureList.add(new Feature(1.0, 0.0, new double[] {i, i}, new float[] {0.1f * i, 0.2f, 0.3f}));
+        }
+
+        final CanvasId canvasId = new CanvasId("testGroup", "testId");
+        final CanvasFeatureList canvasFeatureList = new CanvasFeatureList(canvasId, null, 1.0, null, null,
+                                                                          featureList);
+
+        final CanvasFeatureList.StorageFormat format = CanvasFeatureList.StorageFormat.BINARY;
+        CanvasFeatureList.writeToStorage(rootFeatureListDirectory, canvasFeatureList, format);
+
+        final Path path = CanvasFeatureList.getStoragePath(rootFeatureListDirectory, canvasId, format);
+        final byte[] validBytes = Files.readAllBytes(path);
+
+        // truncated descriptor column
+        Files.write(path, Arrays.copyOf(validBytes, validBytes.length - 5));
+        assertReadFails(path, "truncated");
+
+        // metadata length prefix larger than file
+        final byte[] badMetadataLengthBytes = validBytes.clone();
+        ByteBuffer.wrap(badMetadataLengthBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(8, Integer.MAX_VALUE);
+        Files.write(path, badMetadataLengthBytes);
+        assertReadFails(path, "invalid metadata length");
+
+        // negative feature count
+        final int metadataLength = ByteBuffer.wrap(validBytes).order(ByteOrder.LITTLE_ENDIAN).getInt(8);
+        final int featureCountOffset = (((12 + metadataLength + 7) / 8) * 8);
+        final byte[] badFeatureCountBytes = validBytes.clone();
+        ByteBuffer.wrap(badFeatureCountBytes).order(ByteOrder.LITTLE_ENDIAN).putInt(featureCountOffset, -1);
+        Files.write(path, badFeatureCountBytes);
+        assertReadFails(path, "invalid feature count");
+
+        Files.write(path, validBytes);
+        Assert.assertEquals("invalid number of features read from restored file",
+                            featureList.size(), CanvasFeatureList.readFromStorage(rootFeatureListDirectory,
+                                                                                  canvasId,
+                                                                                  format).size());
+    }
+
+    private static void assertReadFails(final Path path,
+                                        final String expectedMessageFragment) {
+        try {
+            CanvasFeatureListBinaryFormat.read(path);
+            Assert.fail("read of corrupt data should fail with '" + expectedMessageFragment + "'");
+        } catch (final IOException e) {
+            Assert.assertTrue("unexpected message: " + e.getMessage(),
+                              e.getMessage().contains(expectedMessageFragment));
+        }
+    }
+
+    private static float getRange(final float[] values) {
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (final float value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureListTest.class);
 }
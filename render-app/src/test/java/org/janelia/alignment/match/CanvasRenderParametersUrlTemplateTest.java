@@ -50,4 +50,25 @@ public class CanvasRenderParametersUrlTemplateTest {
                             templateForRun.getTemplateString());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGetTileBatchRenderParametersUrl() throws Exception {
+
+        final String stackUrl = "http://render/render-ws/v1/owner/flyTEM/project/FAFB00/stack/v12_acquire_merged";
+
+        CanvasRenderParametersUrlTemplate template =
+                new CanvasRenderParametersUrlTemplate(stackUrl + "/tile/{id}/render-parameters?scale=0.4");
+        Assert.assertEquals("invalid batch URL for tile template with query",
+                            stackUrl + "/tile-render-parameters?scale=0.4",
+                            template.getTileBatchRenderParametersUrl());
+
+        template = new CanvasRenderParametersUrlTemplate(stackUrl + "/tile/{id}/render-parameters");
+        Assert.assertEquals("invalid batch URL for tile template without query",
+                            stackUrl + "/tile-render-parameters",
+                            template.getTileBatchRenderParametersUrl());
+
+        template = new CanvasRenderParametersUrlTemplate(stackUrl + "/z/{groupId}/box/{id}/render-parameters");
+        Assert.assertNull("box template should not have batch URL",
+                          template.getTileBatchRenderParametersUrl());
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.janelia.alignment.match;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DescriptorRatioMatcher} class.
+ *
+ * @author Eric Trautman
+ */
+public class DescriptorRatioMatcherTest {
+
+    @Test
+    public void testExactMatchesEqualBruteForceMatches() {
+
+        final Random random = new Random(3);
+        final FeatureDescriptors q = buildRandomDescriptors(random, 1500, 0);
+        final FeatureDescriptors p = buildNoisyCopies(random, q, 1000, 0.6);
+
+        final float rod = 0.92f;
+        final int[] expected = findBruteForceMatchedIndexes(p, q, rod);
+        final int[] actual = DescriptorRatioMatcher.buildExactMatcher().findMatchedIndexes(p, q, rod);
+
+        int matchCount = 0;
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("invalid match for descriptor " + i, expected[i], actual[i]);
+            if (expected[i] >= 0) {
+                matchCount++;
+            }
+        }
+
+        Assert.assertTrue("too few matches (" + matchCount + ") for a meaningful test", matchCount > 100);
+    }
+
+    @Test
+    public void testApproximateMatchRecall() {
+
+        final Random random = new Random(5);
+        final FeatureDescriptors q = buildRandomDescriptors(random, 3000, 0);
+        final FeatureDescriptors p = buildNoisyCopies(random, q, 2000, 0.6);
+
+        final float rod = 0.92f;
+        final int[] expected = findBruteForceMatchedIndexes(p, q, rod);
+        final int[] actual = new DescriptorRatioMatcher(4, 5, 512).findMatchedIndexes(p, q, rod);
+
+        int expectedCount = 0;
+        int foundCount = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] >= 0) {
+                expectedCount++;
+                if (expected[i] == actual[i]) {
+                    foundCount++;
+                }
+            }
+        }
+
+        final double recall = foundCount / (double) expectedCount;
+        Assert.assertTrue("recall " + recall + " is too low", recall > 0.8);
+    }
+
+    @Test
+    public void testAmbiguousMatchesRemoved() {
+
+        // two query descriptors that are both closest to the same target
+        final float[] qValues = { 0, 0,   10, 10,   20, 20 };
+        final float[] pValues = { 1, 1,   0, 1 };
+        final FeatureDescriptors q = new FeatureDescriptors(3, 2, qValues, new double[] { 0, 0, 5, 5, 9, 9 });
+        final FeatureDescriptors p = new FeatureDescriptors(2, 2, pValues, new double[] { 1, 1, 2, 2 });
+
+        final int[] actual = DescriptorRatioMatcher.buildExactMatcher().findMatchedIndexes(p, q, 0.92f);
+        Assert.assertArrayEquals("ambiguous matches should be removed", new int[] { -1, -1 }, actual);
+    }
+
+    /**
+     * Array based version of {@link mpicbg.ij.FeatureTransform#matchFeatures} logic.
+     */
+    static int[] findBruteForceMatchedIndexes(final FeatureDescriptors p,
+                                              final FeatureDescriptors q,
+                                              final float rod) {
+        final int[] matchedIndexes = new int[p.size()];
+        for (int i = 0; i < p.size(); i++) {
+            int best = -1;
+            double bestDistance = Double.MAX_VALUE;
+            double secondBestDistance = Double.MAX_VALUE;
+            for (int j = 0; j < q.size(); j++) {
+                final double d = Math.sqrt(p.getDistanceSquared(i, q, j, Double.MAX_VALUE));
+                if (d < bestDistance) {
+                    secondBestDistance = bestDistance;
+                    bestDistance = d;
+                    best = j;
+                } else if (d < secondBestDistance) {
+                    secondBestDistance = d;
+                }
+            }
+            matchedIndexes[i] = ((secondBestDistance < Double.MAX_VALUE) &&
+                                 (bestDistance / secondBestDistance < rod)) ? best : -1;
+        }
+        final boolean[] isAmbiguous = new boolean[matchedIndexes.length];
+        for (int i = 0; i < matchedIndexes.length; i++) {
+            for (int j = i + 1; j < matchedIndexes.length; j++) {
+                if ((matchedIndexes[i] >= 0) && (matchedIndexes[j] >= 0) &&
+                    (q.getX(matchedIndexes[i]) == q.getX(matchedIndexes[j])) &&
+                    (q.getY(matchedIndexes[i]) == q.getY(matchedIndexes[j]))) {
+                    isAmbiguous[i] = true;
+                    isAmbiguous[j] = true;
+                }
+            }
+        }
+        for (int i = 0; i < matchedIndexes.length; i++) {
+            if (isAmbiguous[i]) {
+                matchedIndexes[i] = -1;
+            }
+        }
+        return matchedIndexes;
+    }
+
+    private static FeatureDescriptors buildRandomDescriptors(final Random random,
+                                                             final int size,
+                                                             final int locationOffset) {
+        final int dimension = 128;
+        final float[] descriptors = new float[size * dimension];
+        for (int i = 0; i < descriptors.length; i++) {
+            // SIFT descriptor values are small non-negative numbers
+            descriptors[i] = (float) (random.nextDouble() * random.nextDouble());
+        }
+        final double[] locations = new double[size * 2];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = locationOffset + (i / 2) + (0.5 * (i % 2));
+        }
+        return new FeatureDescriptors(size, dimension, descriptors, locations);
+    }
+
+    private static FeatureDescriptors buildNoisyCopies(final Random random,
+                                                       final FeatureDescriptors source,
+                                                       final int size,
+                                                       final double noiseScale) {
+        final int dimension = source.getDimension();
+        final float[] descriptors = new float[size * dimension];
+        final double[] locations = new double[size * 2];
+        for (int i = 0; i < size; i++) {
+            final int sourceIndex = random.nextInt(source.size());
+            for (int d = 0; d < dimension; d++) {
+                descriptors[(i * dimension) + d] =
+                        (float) (source.getValue(sourceIndex, d) + (noiseScale * 0.25 * random.nextGaussian()));
+            }
+            locations[i * 2] = i;
+            locations[(i * 2) + 1] = i;
+        }
+        return new FeatureDescriptors(size, dimension, descriptors, locations);
+    }
+
+}
@@ -118,6 +118,28 @@ public class FeatureExtractionTest {
                                                              getRenderFile(tileRenderParameters));
     }
 
+    @Test
+    public void testMultiThreadedCenterTile() throws Exception {
+
+        LOG.info("\n\n***** Test Multi-Threaded Center Tile *****\n");
+
+        final FloatArray2DSIFT.Param coreSiftParameters = new FloatArray2DSIFT.Param();
+        coreSiftParameters.fdSize = 4;
+        coreSiftParameters.steps = 3;
+
+        final CanvasFeatureExtractor multiThreadedExtractor = new CanvasFeatureExtractor(coreSiftParameters,
+                                                                                         0.1,
+                                                                                         0.4,
+                                                                                         true,
+                                                                                         4);
+
+        // compare these results (and elapsed time) with testCenterTile results
+        final RenderParameters tileRenderParameters = RenderParameters.parseJson(getCenterTileJson());
+        tileRenderParameters.initializeDerivedValues();
+
+        featureList = multiThreadedExtractor.extractFeatures(tileRenderParameters, null);
+    }
+
     @Test
     public void testMatch() throws Exception {
 
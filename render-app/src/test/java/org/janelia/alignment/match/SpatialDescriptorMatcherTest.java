@@ -0,0 +1,139 @@
+package org.janelia.alignment.match;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SpatialDescriptorMatcher} class.
+ *
+ * @author Eric Trautman
+ */
+public class SpatialDescriptorMatcherTest {
+
+    @Test
+    public void testUnconstrainedMatchesEqualBruteForceMatches() {
+
+        final Random random = new Random(7);
+        final FeatureDescriptors q = buildDescriptors(random, null, 1000, 1000.0, 0.0, 0.0);
+        final FeatureDescriptors p = buildDescriptors(random, q, 800, 1000.0, 0.0, 0.0);
+
+        final float rod = 0.92f;
+        final int[] expected = DescriptorRatioMatcherTest.findBruteForceMatchedIndexes(p, q, rod);
+
+        // radius covers all locations, so every descriptor is compared
+        final int[] actual =
+                new SpatialDescriptorMatcher(5000.0).findMatchedIndexes(p, q, new double[] { 0.0, 0.0 }, rod);
+
+        Assert.assertArrayEquals("unconstrained matches should equal brute force matches", expected, actual);
+    }
+
+    @Test
+    public void testRepeatedTextureMatches() {
+
+        final Random random = new Random(11);
+        final int numberOfFeatures = 1000;
+        final double xOffset = -700.0;
+        final double yOffset = 40.0;
+
+        // second canvas has two copies of each descriptor (e.g. repeated texture) that are far apart
+        final FeatureDescriptors source = buildDescriptors(random, null, numberOfFeatures, 1000.0, 0.0, 0.0);
+        final FeatureDescriptors q = repeat(source, 3000.0);
+        final FeatureDescriptors p = buildDescriptors(random, source, numberOfFeatures, 0.0, -xOffset, -yOffset);
+
+        final float rod = 0.92f;
+        final int[] bruteForceMatches = DescriptorRatioMatcherTest.findBruteForceMatchedIndexes(p, q, rod);
+        final int[] spatialMatches =
+                new SpatialDescriptorMatcher(25.0).findMatchedIndexes(p, q, new double[] { xOffset, yOffset }, rod);
+
+        int bruteForceCount = 0;
+        int spatialCount = 0;
+        for (int i = 0; i < numberOfFeatures; i++) {
+            if (bruteForceMatches[i] >= 0) {
+                bruteForceCount++;
+            }
+            if (spatialMatches[i] >= 0) {
+                spatialCount++;
+                Assert.assertEquals("invalid match for descriptor " + i, i, spatialMatches[i]);
+            }
+        }
+
+        Assert.assertEquals("repeated descriptors should fail brute force ratio test", 0, bruteForceCount);
+        Assert.assertTrue("too few spatial matches (" + spatialCount + ")", spatialCount > (numberOfFeatures / 2));
+    }
+
+    @Test
+    public void testFeaturesOutsideRadiusAreIgnored() {
+
+        final float[] qValues = { 0, 0,   10, 10,   20, 20 };
+        final float[] pValues = { 0, 1 };
+        final FeatureDescriptors q = new FeatureDescriptors(3, 2, qValues, new double[] { 0, 0, 100, 100, 105, 100 });
+        final FeatureDescriptors p = new FeatureDescriptors(1, 2, pValues, new double[] { 0, 0 });
+
+        final SpatialDescriptorMatcher matcher = new SpatialDescriptorMatcher(10.0);
+
+        Assert.assertArrayEquals("nearest descriptor is outside of search radius, so p should match q[1]",
+                                 new int[] { 1 },
+                                 matcher.findMatchedIndexes(p, q, new double[] { 100.0, 100.0 }, 0.92f));
+        Assert.assertArrayEquals("features should not be matched when fewer than two are within radius",
+                                 new int[] { -1 },
+                                 matcher.findMatchedIndexes(p, q, new double[] { 0.0, 0.0 }, 0.92f));
+    }
+
+    /**
+     * @return descriptors with random locations (if source is null) or
+     *         noisy copies of the source descriptors with slightly jittered and offset source locations.
+     */
+    private static FeatureDescriptors buildDescriptors(final Random random,
+                                                       final FeatureDescriptors source,
+                                                       final int size,
+                                                       final double locationRange,
+                                                       final double xOffset,
+                                                       final double yOffset) {
+        final int dimension = 128;
+        final float[] descriptors = new float[size * dimension];
+        final double[] locations = new double[size * 2];
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimension; d++) {
+                if (source == null) {
+                    descriptors[(i * dimension) + d] = (float) (random.nextDouble() * random.nextDouble());
+                } else {
+                    descriptors[(i * dimension) + d] =
+                            (float) (source.getValue(i, d) + (0.15 * random.nextGaussian()));
+                }
+            }
+            if (source == null) {
+                locations[i * 2] = random.nextDouble() * locationRange;
+                locations[(i * 2) + 1] = random.nextDouble() * locationRange;
+            } else {
+                locations[i * 2] = source.getX(i) + xOffset + random.nextDouble();
+                locations[(i * 2) + 1] = source.getY(i) + yOffset + random.nextDouble();
+            }
+        }
+        return new FeatureDescriptors(size, dimension, descriptors, locations);
+    }
+
+    /**
+     * @return the source descriptors followed by a copy of the source descriptors shifted in x.
+     */
+    private static FeatureDescriptors repeat(final FeatureDescriptors source,
+                                             final double xShift) {
+        final int size = source.size();
+        final int dimension = source.getDimension();
+        final float[] descriptors = new float[2 * size * dimension];
+        final double[] locations = new double[4 * size];
+        for (int i = 0; i < size; i++) {
+            for (int d = 0; d < dimension; d++) {
+                descriptors[(i * dimension) + d] = source.getValue(i, d);
+                descriptors[((i + size) * dimension) + d] = source.getValue(i, d);
+            }
+            locations[i * 2] = source.getX(i);
+            locations[(i * 2) + 1] = source.getY(i);
+            locations[(i + size) * 2] = source.getX(i) + xShift;
+            locations[((i + size) * 2) + 1] = source.getY(i);
+        }
+        return new FeatureDescriptors(2 * size, dimension, descriptors, locations);
+    }
+
+}
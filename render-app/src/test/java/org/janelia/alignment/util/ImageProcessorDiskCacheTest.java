@@ -0,0 +1,160 @@
+package org.janelia.alignment.util;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ImageProcessorDiskCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class ImageProcessorDiskCacheTest {
+
+    private File cacheDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        cacheDirectory = Files.createTempDirectory("disk_cache_test_").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(cacheDirectory);
+    }
+
+    @Test
+    public void testPutAndGet() {
+
+        final int width = 37;
+        final int height = 19;
+
+        final ByteProcessor byteProcessor = new ByteProcessor(width, height);
+        final ShortProcessor shortProcessor = new ShortProcessor(width, height);
+        final FloatProcessor floatProcessor = new FloatProcessor(width, height);
+        final ColorProcessor colorProcessor = new ColorProcessor(width, height);
+
+        for (int i = 0; i < width * height; i++) {
+            byteProcessor.set(i, i % 256);
+            shortProcessor.set(i, (i * 31) % 65536);
+            floatProcessor.setf(i, i * 0.37f - 50.0f);
+            colorProcessor.set(i, i * 7919);
+        }
+        shortProcessor.setMinAndMax(100, 4000);
+
+        final ImageProcessorDiskCache diskCache = new ImageProcessorDiskCache(cacheDirectory, 100_000_000L, Runnable::run);
+
+        int levels = 0;
+        for (final ImageProcessor original :
+                new ImageProcessor[] { byteProcessor, shortProcessor, floatProcessor, colorProcessor }) {
+
+            final ImageProcessorCache.CacheKey key = buildKey(levels);
+            final String context = original.getClass().getSimpleName();
+
+            Assert.assertNull("processor should not be cached yet for " + context, diskCache.get(key));
+
+            diskCache.put(key, original);
+
+            final ImageProcessor restored = diskCache.get(key);
+
+            Assert.assertNotNull("processor not cached for " + context, restored);
+            Assert.assertEquals("invalid class for " + context, original.getClass(), restored.getClass());
+            Assert.assertEquals("invalid width for " + context, original.getWidth(), restored.getWidth());
+            Assert.assertEquals("invalid height for " + context, original.getHeight(), restored.getHeight());
+            Assert.assertEquals("invalid min for " + context, original.getMin(), restored.getMin(), 0.0);
+            Assert.assertEquals("invalid max for " + context, original.getMax(), restored.getMax(), 0.0);
+
+            for (int i = 0; i < width * height; i++) {
+                Assert.assertEquals("invalid pixel " + i + " for " + context,
+                                    original.getf(i), restored.getf(i), 0.0);
+            }
+
+            levels++;
+        }
+
+        Assert.assertEquals("invalid number of cached files", 4, diskCache.size());
+
+        diskCache.invalidateAll();
+
+        Assert.assertEquals("files not invalidated", 0, diskCache.size());
+        Assert.assertEquals("byte count not reset", 0, diskCache.getTotalNumberOfBytes());
+        Assert.assertNull("processor should not be cached after invalidation", diskCache.get(buildKey(0)));
+    }
+
+    @Test
+    public void testEvictionAndRestart() throws IOException {
+
+        final ByteProcessor imageProcessor = new ByteProcessor(100, 100);
+
+        ImageProcessorDiskCache diskCache = new ImageProcessorDiskCache(cacheDirectory, 100_000_000L, Runnable::run);
+        diskCache.put(buildKey(0), imageProcessor);
+        final long fileSize = diskCache.getTotalNumberOfBytes();
+
+        // room for only two files
+        diskCache = new ImageProcessorDiskCache(cacheDirectory, (fileSize * 5) / 2, Runnable::run);
+        Assert.assertEquals("existing file not indexed", 1, diskCache.size());
+
+        diskCache.put(buildKey(1), imageProcessor);
+
+        // make key 0 the most recently used file
+        Assert.assertNotNull("key 0 should be cached", diskCache.get(buildKey(0)));
+
+        diskCache.put(buildKey(2), imageProcessor);
+
+        Assert.assertEquals("invalid number of cached files after eviction", 2, diskCache.size());
+        Assert.assertNotNull("most recently used key 0 should not be evicted", diskCache.get(buildKey(0)));
+        Assert.assertNull("least recently used key 1 should be evicted", diskCache.get(buildKey(1)));
+        Assert.assertNotNull("key 2 should be cached", diskCache.get(buildKey(2)));
+        Assert.assertTrue("byte count exceeds max", diskCache.getTotalNumberOfBytes() <= (fileSize * 5) / 2);
+
+        diskCache = new ImageProcessorDiskCache(cacheDirectory, 100_000_000L, Runnable::run);
+        Assert.assertEquals("invalid number of files indexed after restart", 2, diskCache.size());
+        Assert.assertEquals("invalid byte count after restart", fileSize * 2, diskCache.getTotalNumberOfBytes());
+    }
+
+    @Test
+    public void testBackgroundWriteUsesCopiedPixels() throws Exception {
+
+        final ByteProcessor imageProcessor = new ByteProcessor(10, 10);
+        imageProcessor.set(0, 42);
+
+        final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+        try {
+            final ImageProcessorDiskCache diskCache =
+                    new ImageProcessorDiskCache(cacheDirectory, 100_000_000L, writeExecutor);
+
+            diskCache.put(buildKey(0), imageProcessor);
+
+            // callers may modify processors after they have been added
+            imageProcessor.set(0, 99);
+
+            writeExecutor.shutdown();
+            Assert.assertTrue("write did not complete", writeExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+            final ImageProcessor restored = diskCache.get(buildKey(0));
+            Assert.assertNotNull("processor not cached", restored);
+            Assert.assertEquals("pixels should be copied when added", 42, restored.get(0));
+        } finally {
+            writeExecutor.shutdownNow();
+        }
+    }
+
+    private static ImageProcessorCache.CacheKey buildKey(final int downSampleLevels) {
+        return new ImageProcessorCache.CacheKey("file:/tmp/test.png", downSampleLevels, false, false);
+    }
+
+}
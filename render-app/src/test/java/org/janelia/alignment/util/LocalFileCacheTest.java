@@ -0,0 +1,103 @@
+package org.janelia.alignment.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LocalFileCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class LocalFileCacheTest {
+
+    private File cacheDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        cacheDirectory = Files.createTempDirectory("local_file_cache_test_").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(cacheDirectory);
+    }
+
+    @Test
+    public void testEvictionDuringRead() {
+
+        // room for only one file
+        final LocalFileCache fileCache = new LocalFileCache(cacheDirectory, 15, ".txt");
+
+        fileCache.put("aa01", file -> writeString(file, "0123456789"));
+
+        final File[] fileBeingRead = new File[1];
+        final String data = fileCache.read("aa01", file -> {
+            fileBeingRead[0] = file;
+            // evict the file being read
+            fileCache.put("bb02", otherFile -> writeString(otherFile, "9876543210"));
+            Assert.assertEquals("file should be evicted", 1, fileCache.size());
+            Assert.assertTrue("evicted file should not be deleted while it is being read", file.exists());
+            return readString(file);
+        });
+
+        Assert.assertEquals("invalid data read", "0123456789", data);
+        Assert.assertFalse("evicted file should be deleted after it is read", fileBeingRead[0].exists());
+        Assert.assertNull("evicted file should not be readable", fileCache.read("aa01", LocalFileCacheTest::readString));
+        Assert.assertEquals("invalid data for remaining file",
+                            "9876543210", fileCache.read("bb02", LocalFileCacheTest::readString));
+    }
+
+    @Test
+    public void testFailedReadOfRewrittenFile() {
+
+        final LocalFileCache fileCache = new LocalFileCache(cacheDirectory, 1000, ".txt");
+
+        fileCache.put("aa01", file -> writeString(file, "first"));
+
+        final String data = fileCache.read("aa01", file -> {
+            // rewrite the file and then fail to read the original version
+            fileCache.put("aa01", newFile -> writeString(newFile, "second"));
+            throw new IOException("test failure");
+        });
+
+        Assert.assertNull("failed read should return null", data);
+        Assert.assertEquals("rewritten file should not be removed", 1, fileCache.size());
+        Assert.assertEquals("invalid data for rewritten file",
+                            "second", fileCache.read("aa01", LocalFileCacheTest::readString));
+    }
+
+    @Test
+    public void testFailedRead() {
+
+        final LocalFileCache fileCache = new LocalFileCache(cacheDirectory, 1000, ".txt");
+
+        fileCache.put("aa01", file -> writeString(file, "bad"));
+
+        final String data = fileCache.read("aa01", file -> {
+            throw new IOException("test failure");
+        });
+
+        Assert.assertNull("failed read should return null", data);
+        Assert.assertEquals("file should be removed after failed read", 0, fileCache.size());
+        Assert.assertEquals("byte count should be reset", 0, fileCache.getTotalNumberOfBytes());
+    }
+
+    private static void writeString(final File file,
+                                    final String value)
+            throws IOException {
+        Files.write(file.toPath(), value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(final File file)
+            throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.janelia.alignment.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MappingThreadPool} class.
+ *
+ * @author Eric Trautman
+ */
+public class MappingThreadPoolTest {
+
+    @Test
+    public void testForEach() {
+
+        final MappingThreadPool pool = new MappingThreadPool(3);
+
+        final int[] itemCounts = { 0, 1, 2, 7, 10, 101 };
+        final int[] parallelismValues = { 1, 2, 3, 4, 16 };
+
+        for (final int itemCount : itemCounts) {
+
+            final List<Integer> itemList = new ArrayList<>(itemCount);
+            for (int i = 0; i < itemCount; i++) {
+                itemList.add(i);
+            }
+
+            for (final int maxParallelism : parallelismValues) {
+
+                final AtomicIntegerArray processCounts = new AtomicIntegerArray(itemCount);
+                pool.forEach(itemList, maxParallelism, processCounts::incrementAndGet);
+
+                for (int i = 0; i < itemCount; i++) {
+                    Assert.assertEquals("item " + i + " of " + itemCount + " processed wrong number of times " +
+                                        "with max parallelism " + maxParallelism,
+                                        1, processCounts.get(i));
+                }
+            }
+        }
+
+        final MappingThreadPool.Stats stats = pool.getStats();
+        Assert.assertEquals("invalid parallelism", 3, stats.getParallelism());
+        Assert.assertTrue("tasks should have been completed", stats.getCompletedTaskCount() > 0);
+        Assert.assertEquals("queue should be empty", 0, stats.getQueueDepth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new MappingThreadPool(0);
+    }
+
+}
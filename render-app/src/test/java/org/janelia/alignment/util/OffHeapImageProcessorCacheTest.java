@@ -0,0 +1,165 @@
+package org.janelia.alignment.util;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link OffHeapImageProcessorCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class OffHeapImageProcessorCacheTest {
+
+    @Test
+    public void testCachedPixelsRoundTrip() {
+
+        final int width = 37;
+        final int height = 19;
+
+        final ByteProcessor byteProcessor = new ByteProcessor(width, height);
+        final ShortProcessor shortProcessor = new ShortProcessor(width, height);
+        final FloatProcessor floatProcessor = new FloatProcessor(width, height);
+        final ColorProcessor colorProcessor = new ColorProcessor(width, height);
+
+        for (int i = 0; i < width * height; i++) {
+            byteProcessor.set(i, i % 256);
+            shortProcessor.set(i, (i * 31) % 65536);
+            floatProcessor.setf(i, i * 0.37f - 50.0f);
+            colorProcessor.set(i, i * 7919);
+        }
+        shortProcessor.setMinAndMax(100, 4000);
+
+        for (final ImageProcessor original :
+                new ImageProcessor[] { byteProcessor, shortProcessor, floatProcessor, colorProcessor }) {
+
+            final OffHeapImageProcessorCache.CachedPixels cachedPixels =
+                    new OffHeapImageProcessorCache.CachedPixels(original);
+
+            final ImageProcessor restored = cachedPixels.copyToImageProcessor();
+            final String context = original.getClass().getSimpleName();
+
+            Assert.assertEquals("invalid class for " + context, original.getClass(), restored.getClass());
+            Assert.assertEquals("invalid width for " + context, original.getWidth(), restored.getWidth());
+            Assert.assertEquals("invalid height for " + context, original.getHeight(), restored.getHeight());
+            Assert.assertEquals("invalid min for " + context, original.getMin(), restored.getMin(), 0.0);
+            Assert.assertEquals("invalid max for " + context, original.getMax(), restored.getMax(), 0.0);
+
+            for (int i = 0; i < width * height; i++) {
+                Assert.assertEquals("invalid pixel " + i + " for " + context,
+                                    original.getf(i), restored.getf(i), 0.0);
+            }
+
+            final int bytesPerPixel = original.getBitDepth() == 24 ? 4 : original.getBitDepth() / 8;
+            Assert.assertEquals("invalid byte count for " + context,
+                                (width * height * bytesPerPixel) + 512, cachedPixels.getByteCount());
+
+            // restored processors must be independent copies
+            restored.setf(0, 99.0f);
+            Assert.assertEquals("restored processor is not a copy for " + context,
+                                original.getf(0), cachedPixels.copyToImageProcessor().getf(0), 0.0);
+        }
+    }
+
+    @Test
+    public void testGet() {
+
+        final OffHeapImageProcessorCache offHeapCache = new OffHeapImageProcessorCache(100_000_000L, true, false);
+        final ImageProcessorCache heapCache = new ImageProcessorCache(100_000_000L, true, false);
+
+        for (final boolean convertTo16Bit : new boolean[] { false, true }) {
+
+            final ImageProcessor expected = heapCache.get(TEST_IMAGE_URL, 0, false, convertTo16Bit);
+            final ImageProcessor first = offHeapCache.get(TEST_IMAGE_URL, 0, false, convertTo16Bit);
+
+            first.set(0, 0, 1 + first.get(0, 0));
+
+            final ImageProcessor second = offHeapCache.get(TEST_IMAGE_URL, 0, false, convertTo16Bit);
+
+            Assert.assertEquals("invalid class", expected.getClass(), second.getClass());
+            Assert.assertArrayEquals("cached pixels differ from heap cache pixels (or were changed by caller)",
+                                     toFloatArray(expected), toFloatArray(second), 0.0f);
+        }
+
+        Assert.assertEquals("invalid number of cached entries", 2, offHeapCache.size());
+        Assert.assertEquals("invalid number of hits", 2, offHeapCache.getStats().hitCount());
+        Assert.assertTrue("cached byte count not tracked", offHeapCache.getCachedByteCount() > 0);
+
+        offHeapCache.invalidateAll();
+
+        Assert.assertEquals("entries not invalidated", 0, offHeapCache.size());
+        Assert.assertEquals("cached byte count not reset", 0, offHeapCache.getCachedByteCount());
+    }
+
+    @Test
+    public void testEviction() {
+
+        final ImageProcessor imageProcessor = ImageProcessorCache.getNonCachedImage(TEST_IMAGE_URL, 0, false, false);
+        final long imageByteCount = new OffHeapImageProcessorCache.CachedPixels(imageProcessor).getByteCount();
+
+        // not enough room for both the 8-bit and 16-bit versions of the image
+        final long maximumNumberOfCachedBytes = imageByteCount * 5 / 2;
+        final OffHeapImageProcessorCache offHeapCache =
+                new OffHeapImageProcessorCache(maximumNumberOfCachedBytes, false, false);
+
+        offHeapCache.get(TEST_IMAGE_URL, 0, false, false);
+        offHeapCache.get(TEST_IMAGE_URL, 0, false, true);
+
+        Assert.assertTrue("both images should not be cached", offHeapCache.size() < 2);
+        Assert.assertTrue("cached byte count exceeds max",
+                          offHeapCache.getCachedByteCount() <= maximumNumberOfCachedBytes);
+    }
+
+    @Test
+    public void testReleasedPixelsAreNotCopied() {
+
+        final ShortProcessor shortProcessor = new ShortProcessor(11, 7);
+        final OffHeapImageProcessorCache.CachedPixels cachedPixels =
+                new OffHeapImageProcessorCache.CachedPixels(shortProcessor);
+
+        Assert.assertNotNull("pixels should be copied before release", cachedPixels.copyToImageProcessor());
+
+        cachedPixels.release();
+
+        Assert.assertTrue("direct buffers should be explicitly released in this JVM",
+                          DirectBufferReleaser.isSupported());
+        Assert.assertNull("released pixels should not be copied", cachedPixels.copyToImageProcessor());
+    }
+
+    @Test
+    public void testGetAfterEviction() {
+
+        final ImageProcessor imageProcessor = ImageProcessorCache.getNonCachedImage(TEST_IMAGE_URL, 0, false, false);
+        final long imageByteCount = new OffHeapImageProcessorCache.CachedPixels(imageProcessor).getByteCount();
+
+        // too small to hold the image, so every loaded entry is immediately evicted and released
+        final OffHeapImageProcessorCache offHeapCache =
+                new OffHeapImageProcessorCache(imageByteCount / 2, false, false);
+
+        for (int i = 0; i < 3; i++) {
+            final ImageProcessor loaded = offHeapCache.get(TEST_IMAGE_URL, 0, false, false);
+            Assert.assertArrayEquals("invalid pixels for evicted image (attempt " + i + ")",
+                                     toFloatArray(imageProcessor), toFloatArray(loaded), 0.0f);
+        }
+
+        Assert.assertEquals("image should not be cached", 0, offHeapCache.size());
+    }
+
+    private static float[] toFloatArray(final ImageProcessor imageProcessor) {
+        final float[] values = new float[imageProcessor.getPixelCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = imageProcessor.getf(i);
+        }
+        return values;
+    }
+
+    private static final String TEST_IMAGE_URL =
+            new File("src/test/resources/stitch-test/col0075_row0021_cam1.png_level_1_mipmap.png").toURI().toString();
+}
@@ -0,0 +1,192 @@
+package org.janelia.perf;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.PointMatch;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasFeatureList;
+import org.janelia.alignment.match.CanvasFeatureMatcher;
+import org.janelia.alignment.match.ModelType;
+import org.janelia.alignment.util.FileUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares candidate match throughput and recall for each {@link CanvasFeatureMatcher.MatchingEngine}.
+ * Recall is the fraction of brute force ({@link CanvasFeatureMatcher.MatchingEngine#FEATURE_TRANSFORM})
+ * candidate matches that are also found by an engine.  Results are printed to standard out.
+ *
+ * <p>
+ * To compare engines with real data, set pFeatureListPath and qFeatureListPath to stored
+ * canvas feature lists (see {@link CanvasFeatureList#getStoragePath}).
+ * Otherwise, synthetic descriptors are used.
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class FeatureMatchingPerformanceTest {
+
+    private boolean enableTests;
+    private int numberOfTimesToRepeatEachTest;
+    private String pFeatureListPath;
+    private String qFeatureListPath;
+
+    private List<Feature> pFeatures;
+    private List<Feature> qFeatures;
+
+    public static void main(final String[] args) {
+        final FeatureMatchingPerformanceTest test = new FeatureMatchingPerformanceTest();
+        try {
+            test.setup();
+            test.enableTests = true;
+            if (args.length == 2) {
+                test.pFeatureListPath = args[0];
+                test.qFeatureListPath = args[1];
+            }
+            test.runTests();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        enableTests = false; // set this to true to enable tests - normally, there is no need to run them
+        numberOfTimesToRepeatEachTest = 3;
+        pFeatureListPath = null;
+        qFeatureListPath = null;
+    }
+
+    @Test
+    public void runTests() throws Exception {
+        if (enableTests) {
+
+            loadFeatures();
+
+            final List<String> results = new ArrayList<>();
+            results.add(String.format("%-20s  %10s  %12s  %8s",
+                                      "engine", "candidates", "ms/pair", "recall"));
+            results.add(String.format("%-20s  %10s  %12s  %8s",
+                                      "------", "----------", "-------", "------"));
+
+            final Set<String> bruteForceMatches =
+                    toMatchKeys(findCandidates(CanvasFeatureMatcher.MatchingEngine.FEATURE_TRANSFORM));
+
+            for (final CanvasFeatureMatcher.MatchingEngine engine : CanvasFeatureMatcher.MatchingEngine.values()) {
+                results.add(runTest(engine, bruteForceMatches));
+            }
+
+            System.out.println();
+            System.out.println("matched " + pFeatures.size() + " features against " + qFeatures.size() + " features");
+            for (final String result : results) {
+                System.out.println(result);
+            }
+        }
+    }
+
+    private String runTest(final CanvasFeatureMatcher.MatchingEngine engine,
+                           final Set<String> bruteForceMatches) {
+
+        long totalMilliseconds = 0;
+        List<PointMatch> candidates = null;
+
+        // first run is a warm-up run that is excluded from the results
+        for (int testNumber = 0; testNumber <= numberOfTimesToRepeatEachTest; testNumber++) {
+            final long start = System.currentTimeMillis();
+            candidates = findCandidates(engine);
+            if (testNumber > 0) {
+                totalMilliseconds += System.currentTimeMillis() - start;
+            }
+        }
+
+        final Set<String> engineMatches = toMatchKeys(candidates);
+        int foundCount = 0;
+        for (final String key : bruteForceMatches) {
+            if (engineMatches.contains(key)) {
+                foundCount++;
+            }
+        }
+
+        final double recall = bruteForceMatches.size() == 0 ? 1.0 : foundCount / (double) bruteForceMatches.size();
+
+        return String.format("%-20s  %10d  %12.1f  %8.4f",
+                             engine, engineMatches.size(),
+                             totalMilliseconds / (double) numberOfTimesToRepeatEachTest, recall);
+    }
+
+    private List<PointMatch> findCandidates(final CanvasFeatureMatcher.MatchingEngine engine) {
+        final CanvasFeatureMatcher matcher = new CanvasFeatureMatcher(0.92f,
+                                                                      ModelType.AFFINE,
+                                                                      1000,
+                                                                      20.0f,
+                                                                      0.0f,
+                                                                      10,
+                                                                      3.0,
+                                                                      null,
+                                                                      CanvasFeatureMatcher.FilterType.NONE,
+                                                                      engine);
+        return matcher.findCandidateMatches(pFeatures, qFeatures);
+    }
+
+    private void loadFeatures()
+            throws IOException {
+        if ((pFeatureListPath != null) && (qFeatureListPath != null)) {
+            pFeatures = readFeatureList(pFeatureListPath);
+            qFeatures = readFeatureList(qFeatureListPath);
+        } else {
+            final Random random = new Random(13);
+            qFeatures = buildSyntheticFeatures(random, 20000, null);
+            pFeatures = buildSyntheticFeatures(random, 20000, qFeatures);
+        }
+    }
+
+    private static List<Feature> readFeatureList(final String path)
+            throws IOException {
+        try (final Reader reader = new FileUtil().getExtensionBasedReader(path)) {
+            return JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class).getFeatureList();
+        }
+    }
+
+    /**
+     * @return random SIFT like features or noisy copies of random source features (if a source list is specified).
+     */
+    private static List<Feature> buildSyntheticFeatures(final Random random,
+                                                        final int size,
+                                                        final List<Feature> sourceFeatures) {
+        final List<Feature> features = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final float[] descriptor = new float[128];
+            if (sourceFeatures == null) {
+                for (int d = 0; d < descriptor.length; d++) {
+                    descriptor[d] = (float) (random.nextDouble() * random.nextDouble());
+                }
+            } else {
+                final Feature source = sourceFeatures.get(random.nextInt(sourceFeatures.size()));
+                for (int d = 0; d < descriptor.length; d++) {
+                    descriptor[d] = (float) (source.descriptor[d] + (0.15 * random.nextGaussian()));
+                }
+            }
+            features.add(new Feature(1.0, 0.0, new double[] { i, i + 0.5 }, descriptor));
+        }
+        return features;
+    }
+
+    private static Set<String> toMatchKeys(final List<PointMatch> matches) {
+        final Set<String> keys = new HashSet<>(matches.size() * 2);
+        for (final PointMatch match : matches) {
+            final double[] p = match.getP1().getL();
+            final double[] q = match.getP2().getL();
+            keys.add(p[0] + "," + p[1] + "::" + q[0] + "," + q[1]);
+        }
+        return keys;
+    }
+
+}
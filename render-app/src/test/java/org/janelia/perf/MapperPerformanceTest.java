@@ -0,0 +1,193 @@
+package org.janelia.perf;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.alignment.ChannelMap;
+import org.janelia.alignment.mapper.MultiChannelWithAlphaMapper;
+import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.mapper.SingleChannelMapper;
+import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
+import org.janelia.alignment.mapper.SingleChannelWithBinaryMaskMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import static mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+/**
+ * Tests the per-pixel mapping time and heap allocation for each {@link PixelMapper} implementation.
+ * Average nanoseconds and allocated bytes per mapped pixel are printed to standard out.
+ *
+ * <p>
+ * Allocated bytes are measured with {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes}
+ * for the mapping thread, so the JVM must support thread allocation accounting for those numbers to be meaningful.
+ * Blending mappers should allocate (close to) zero bytes per pixel once warmed up.
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class MapperPerformanceTest {
+
+    private boolean enableTests;
+    private int numberOfTimesToRepeatEachTest;
+
+    private final int sourceSize = 2048;
+    private final int targetSize = 2048;
+
+    private double[] sourceLocations;
+
+    public static void main(final String[] args) {
+        final MapperPerformanceTest test = new MapperPerformanceTest();
+        try {
+            test.setup();
+            test.enableTests = true;
+            test.runTests();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        enableTests = false; // set this to true to enable tests - normally, there is no need to run them
+        numberOfTimesToRepeatEachTest = 5;
+
+        // pre-compute (slightly rotated) source locations so that only mapper work is measured
+        final Random random = new Random(11);
+        sourceLocations = new double[targetSize * targetSize * 2];
+        final double cos = Math.cos(0.01);
+        final double sin = Math.sin(0.01);
+        int i = 0;
+        for (int y = 0; y < targetSize; y++) {
+            for (int x = 0; x < targetSize; x++) {
+                final double sx = (cos * x) - (sin * y) + 20 + random.nextDouble();
+                final double sy = (sin * x) + (cos * y) + random.nextDouble();
+                sourceLocations[i++] = Math.max(0, Math.min(sourceSize - 1, sx));
+                sourceLocations[i++] = Math.max(0, Math.min(sourceSize - 1, sy));
+            }
+        }
+    }
+
+    @Test
+    public void runTests() throws Exception {
+        if (enableTests) {
+
+            final List<String> results = new ArrayList<>();
+            results.add(String.format("%-35s  %12s  %9s  %14s", "mapper", "interpolated", "ns/pixel", "bytes/pixel"));
+            results.add(String.format("%-35s  %12s  %9s  %14s", "------", "------------", "--------", "-----------"));
+
+            for (final boolean isInterpolated : new boolean[] { false, true }) {
+                for (final String mapperName : new String[] {
+                        "SingleChannelMapper",
+                        "SingleChannelWithAlphaMapper",
+                        "SingleChannelWithBinaryMaskMapper",
+                        "MultiChannelWithAlphaMapper" }) {
+                    results.add(runTest(mapperName, isInterpolated));
+                }
+            }
+
+            System.out.println();
+            for (final String result : results) {
+                System.out.println(result);
+            }
+        }
+    }
+
+    private String runTest(final String mapperName,
+                           final boolean isInterpolated) {
+
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        final int pixelsPerTest = targetSize * targetSize;
+        long totalNanos = 0;
+        long totalBytes = 0;
+
+        // first run is a warm-up run that is excluded from the results
+        for (int testNumber = 0; testNumber <= numberOfTimesToRepeatEachTest; testNumber++) {
+
+            final PixelMapper mapper = buildMapper(mapperName, isInterpolated);
+
+            final long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            final long startNanos = System.nanoTime();
+
+            int i = 0;
+            if (isInterpolated) {
+                for (int y = 0; y < targetSize; y++) {
+                    for (int x = 0; x < targetSize; x++) {
+                        mapper.mapInterpolated(sourceLocations[i++], sourceLocations[i++], x, y);
+                    }
+                }
+            } else {
+                for (int y = 0; y < targetSize; y++) {
+                    for (int x = 0; x < targetSize; x++) {
+                        mapper.map(sourceLocations[i++], sourceLocations[i++], x, y);
+                    }
+                }
+            }
+
+            final long elapsedNanos = System.nanoTime() - startNanos;
+            final long allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+            if (testNumber > 0) {
+                totalNanos += elapsedNanos;
+                totalBytes += allocatedBytes;
+            }
+        }
+
+        final double numberOfPixels = (double) pixelsPerTest * numberOfTimesToRepeatEachTest;
+
+        return String.format("%-35s  %12s  %9.2f  %14.4f",
+                             mapperName, isInterpolated, totalNanos / numberOfPixels, totalBytes / numberOfPixels);
+    }
+
+    private PixelMapper buildMapper(final String mapperName,
+                                    final boolean isInterpolated) {
+        final PixelMapper mapper;
+        switch (mapperName) {
+            case "SingleChannelMapper":
+                mapper = new SingleChannelMapper(buildSource(), buildTarget(), isInterpolated);
+                break;
+            case "SingleChannelWithAlphaMapper":
+                mapper = new SingleChannelWithAlphaMapper(buildSource(), buildTarget(), isInterpolated);
+                break;
+            case "SingleChannelWithBinaryMaskMapper":
+                mapper = new SingleChannelWithBinaryMaskMapper(buildSource(), buildTarget(), isInterpolated);
+                break;
+            default:
+                final ChannelMap sourceChannels = new ChannelMap();
+                final ChannelMap targetChannels = new ChannelMap();
+                for (final String channelName : new String[] { "a", "b", "c" }) {
+                    sourceChannels.put(channelName, buildSource());
+                    targetChannels.put(channelName, buildTarget());
+                }
+                mapper = new MultiChannelWithAlphaMapper(sourceChannels, targetChannels, isInterpolated);
+        }
+        return mapper;
+    }
+
+    private ImageProcessorWithMasks buildSource() {
+        final float[] pixels = new float[sourceSize * sourceSize];
+        final byte[] maskPixels = new byte[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % 251;
+            maskPixels[i] = (byte) (i % 256);
+        }
+        return new ImageProcessorWithMasks(new FloatProcessor(sourceSize, sourceSize, pixels),
+                                           new ByteProcessor(sourceSize, sourceSize, maskPixels),
+                                           null);
+    }
+
+    private ImageProcessorWithMasks buildTarget() {
+        return new ImageProcessorWithMasks(new FloatProcessor(targetSize, targetSize),
+                                           new ByteProcessor(targetSize, targetSize),
+                                           null);
+    }
+
+}
@@ -0,0 +1,154 @@
+package org.janelia.perf;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.models.CoordinateTransform;
+
+import org.janelia.alignment.RenderTransformMesh;
+import org.janelia.alignment.RenderTransformMeshMappingWithMasks;
+import org.janelia.alignment.RenderTransformMeshMappingWithMasks.Engine;
+import org.janelia.alignment.mapper.SingleChannelMapper;
+import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import static mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+/**
+ * Compares {@link RenderTransformMeshMappingWithMasks} engine mapping times for a typical 2k x 2k tile
+ * rendered with a default sized (64 pixel) mesh.
+ * Average times for each engine, mapper, and thread count are printed to standard out.
+ *
+ * @author Eric Trautman
+ */
+public class MeshMappingPerformanceTest {
+
+    private boolean enableTests;
+    private int numberOfTimesToRepeatEachTest;
+
+    private final int tileSize = 2048;
+    private final int meshCellSize = 64;
+
+    private RenderTransformMesh mesh;
+
+    public static void main(final String[] args) {
+        final MeshMappingPerformanceTest test = new MeshMappingPerformanceTest();
+        try {
+            test.setup();
+            test.enableTests = true;
+            test.runTests();
+        } catch (final Throwable t) {
+            t.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        enableTests = false; // set this to true to enable tests - normally, there is no need to run them
+        numberOfTimesToRepeatEachTest = 10;
+    }
+
+    @Test
+    public void runTests() throws Exception {
+        if (enableTests) {
+
+            mesh = new RenderTransformMesh(new RotateAndWarpTransform(), tileSize / meshCellSize, tileSize, tileSize);
+            mesh.updateAffines();
+
+            final List<String> results = new ArrayList<>();
+            results.add(String.format("%-12s  %-12s  %12s  %7s  %11s",
+                                      "engine", "mapper", "interpolated", "threads", "elapsedTime"));
+            results.add(String.format("%-12s  %-12s  %12s  %7s  %11s",
+                                      "------", "------", "------------", "-------", "-----------"));
+
+            for (final boolean isInterpolated : new boolean[] { false, true }) {
+                for (final boolean withAlpha : new boolean[] { false, true }) {
+                    for (int threads = 1; threads <= 4; threads = threads * 2) {
+                        for (final Engine engine : Engine.values()) {
+                            results.add(runTest(engine, withAlpha, isInterpolated, threads));
+                        }
+                    }
+                }
+            }
+
+            System.out.println();
+            for (final String result : results) {
+                System.out.println(result);
+            }
+        }
+    }
+
+    private String runTest(final Engine engine,
+                           final boolean withAlpha,
+                           final boolean isInterpolated,
+                           final int threads) {
+
+        final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh, engine);
+
+        long totalNanos = 0;
+
+        // first run is a warm-up run that is excluded from the results
+        for (int testNumber = 0; testNumber <= numberOfTimesToRepeatEachTest; testNumber++) {
+
+            final ImageProcessorWithMasks source = buildImage(true);
+            final ImageProcessorWithMasks target = buildImage(false);
+
+            final long startNanos = System.nanoTime();
+
+            if (withAlpha) {
+                mapping.map(new SingleChannelWithAlphaMapper(source, target, isInterpolated), threads);
+            } else {
+                mapping.map(new SingleChannelMapper(source, target, isInterpolated), threads);
+            }
+
+            if (testNumber > 0) {
+                totalNanos += System.nanoTime() - startNanos;
+            }
+        }
+
+        final long averageMilliseconds = totalNanos / numberOfTimesToRepeatEachTest / 1_000_000;
+
+        return String.format("%-12s  %-12s  %12s  %7d  %11d",
+                             engine, withAlpha ? "alpha" : "noMask", isInterpolated, threads, averageMilliseconds);
+    }
+
+    private ImageProcessorWithMasks buildImage(final boolean withContent) {
+        final FloatProcessor ip = new FloatProcessor(tileSize, tileSize);
+        final ByteProcessor mask = new ByteProcessor(tileSize, tileSize);
+        if (withContent) {
+            final float[] pixels = (float[]) ip.getPixels();
+            final byte[] maskPixels = (byte[]) mask.getPixels();
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = i % 251;
+                maskPixels[i] = (byte) 255;
+            }
+        }
+        return new ImageProcessorWithMasks(ip, mask, null);
+    }
+
+    /**
+     * Slightly rotates and warps locations so that mesh triangles are not axis aligned.
+     */
+    private static class RotateAndWarpTransform
+            implements CoordinateTransform {
+
+        @Override
+        public double[] apply(final double[] location) {
+            final double[] transformed = location.clone();
+            applyInPlace(transformed);
+            return transformed;
+        }
+
+        @Override
+        public void applyInPlace(final double[] location) {
+            final double x = location[0];
+            final double y = location[1];
+            location[0] = (x * 0.98) + (y * 0.05) + (4 * Math.sin(y / 200));
+            location[1] = (x * -0.05) + (y * 0.98) + 100 + (4 * Math.cos(x / 200));
+        }
+    }
+}
@@ -225,7 +225,7 @@ public class CopyStackClient {
     private void copyLayer(final Double z) throws Exception {
 
         final ResolvedTileSpecCollection sourceCollection =
-                fromDataClient.getResolvedTiles(parameters.fromStack, z);
+                fromDataClient.getStreamedResolvedTiles(parameters.fromStack, z, z, null, null, null, null, null);
 
         if (parameters.layerBounds.minX != null) {
             final Set<String> tileIdsToKeep = getIdsForTilesInBox(z);
@@ -22,6 +22,7 @@ import org.janelia.alignment.match.CanvasId;
 import org.janelia.alignment.match.CanvasRenderParametersUrlTemplate;
 import org.janelia.alignment.match.OrderedCanvasIdPair;
 import org.janelia.alignment.match.RenderableCanvasIdPairs;
+import org.janelia.render.client.cache.SharedImageProcessorCache;
 import org.janelia.render.client.parameter.CommandLineParameters;
 import org.janelia.alignment.match.parameters.FeatureExtractionParameters;
 import org.janelia.alignment.match.parameters.FeatureRenderClipParameters;
@@ -56,10 +57,16 @@ public class FeatureClient
 
         @Parameter(
                 names = "--rootFeatureDirectory",
-                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz)",
+                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz or .features.bin)",
                 required = true)
         public String rootFeatureDirectory;
 
+        @Parameter(
+                names = "--featureStorageFormat",
+                description = "Format for saved feature lists (JSON, BINARY, or QUANTIZED_BINARY)"
+        )
+        public CanvasFeatureList.StorageFormat storageFormat = CanvasFeatureList.StorageFormat.JSON;
+
         @Parameter(
                 names = "--pairJson",
                 description = "JSON file where tile pairs are stored (.json, .gz, or .zip)",
@@ -148,7 +155,8 @@ public class FeatureClient
                                         parameters.featureRender,
                                         parameters.featureRenderClip,
                                         parameters.featureExtraction,
-                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile());
+                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile(),
+                                        parameters.storageFormat);
     }
 
     private static void generateFeatureListsForCanvases(final String renderParametersUrlTemplate,
@@ -156,7 +164,8 @@ public class FeatureClient
                                                         final FeatureRenderParameters featureRenderParameters,
                                                         final FeatureRenderClipParameters featureRenderClipParameters,
                                                         final FeatureExtractionParameters featureExtractionParameters,
-                                                        final File rootDirectory)
+                                                        final File rootDirectory,
+                                                        final CanvasFeatureList.StorageFormat storageFormat)
             throws IOException, URISyntaxException {
 
         final CanvasRenderParametersUrlTemplate urlTemplateForRun =
@@ -179,7 +188,8 @@ public class FeatureClient
                 new CanvasFeatureExtractor(siftParameters,
                                            featureExtractionParameters.minScale,
                                            featureExtractionParameters.maxScale,
-                                           featureRenderParameters.fillWithNoise);
+                                           featureRenderParameters.fillWithNoise,
+                                           featureExtractionParameters.numberOfThreads);
 
         final double renderScale = featureRenderParameters.renderScale;
 
@@ -193,7 +203,11 @@ public class FeatureClient
             LOG.info("generateFeatureListsForCanvases: extracting features for {} with offsets ({}, {})",
                      canvasId, offsets[0], offsets[1]);
 
-            final List<Feature> featureList = featureExtractor.extractFeatures(renderParameters, null);
+            final List<Feature> featureList =
+                    featureExtractor.extractFeatures(renderParameters,
+                                                     null,
+                                                     SharedImageProcessorCache.getInstance(
+                                                             featureRenderParameters.getMaxSourceImageCacheBytes()));
 
             final CanvasFeatureList canvasFeatureList =
                     new CanvasFeatureList(canvasId,
@@ -203,7 +217,7 @@ public class FeatureClient
                                           urlTemplateForRun.getClipHeight(),
                                           featureList);
 
-            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList);
+            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList, storageFormat);
         }
 
 
@@ -0,0 +1,124 @@
+package org.janelia.render.client;
+
+import com.beust.jcommander.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasFeatureList;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.render.client.parameter.CommandLineParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java client for converting existing JSON feature lists
+ * (saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz) to a binary storage format.
+ *
+ * @author Eric Trautman
+ */
+public class FeatureStorageConversionClient {
+
+    public static class Parameters extends CommandLineParameters {
+
+        @Parameter(
+                names = "--rootFeatureDirectory",
+                description = "Root directory for saved feature lists",
+                required = true)
+        public String rootFeatureDirectory;
+
+        @Parameter(
+                names = "--toFormat",
+                description = "Format for converted feature lists (BINARY or QUANTIZED_BINARY)"
+        )
+        public CanvasFeatureList.StorageFormat toFormat = CanvasFeatureList.StorageFormat.BINARY;
+
+        @Parameter(
+                names = "--removeJsonFiles",
+                description = "Remove each JSON feature list file after it has been converted",
+                arity = 0)
+        public boolean removeJsonFiles = false;
+
+    }
+
+    public static void main(final String[] args) {
+
+        final ClientRunner clientRunner = new ClientRunner(args) {
+            @Override
+            public void runClient(final String[] args) throws Exception {
+
+                final Parameters parameters = new Parameters();
+                parameters.parse(args);
+
+                LOG.info("runClient: entry, parameters={}", parameters);
+
+                final FeatureStorageConversionClient client = new FeatureStorageConversionClient(parameters);
+                client.convertFeatureLists();
+            }
+        };
+        clientRunner.run();
+
+    }
+
+    private final Parameters parameters;
+
+    private FeatureStorageConversionClient(final Parameters parameters)
+            throws IllegalArgumentException {
+        if (parameters.toFormat == CanvasFeatureList.StorageFormat.JSON) {
+            throw new IllegalArgumentException("--toFormat must be a binary format");
+        }
+        this.parameters = parameters;
+    }
+
+    private void convertFeatureLists()
+            throws IOException {
+
+        final File rootDirectory = new File(parameters.rootFeatureDirectory).getAbsoluteFile();
+        final String jsonSuffix = CanvasFeatureList.StorageFormat.JSON.getFileNameSuffix();
+
+        final List<Path> jsonPaths;
+        try (final Stream<Path> pathStream = Files.walk(rootDirectory.toPath())) {
+            jsonPaths = pathStream
+                    .filter(path -> path.getFileName().toString().endsWith(jsonSuffix))
+                    .collect(Collectors.toList());
+        }
+
+        LOG.info("convertFeatureLists: found {} JSON feature lists in {}", jsonPaths.size(), rootDirectory);
+
+        final FileUtil fileUtil = new FileUtil();
+        long jsonBytes = 0;
+        long convertedBytes = 0;
+
+        for (final Path jsonPath : jsonPaths) {
+
+            final CanvasFeatureList canvasFeatureList;
+            try (final Reader reader = fileUtil.getExtensionBasedReader(jsonPath.toString())) {
+                canvasFeatureList = JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+            }
+
+            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList, parameters.toFormat);
+
+            final Path convertedPath = CanvasFeatureList.getStoragePath(rootDirectory,
+                                                                        canvasFeatureList.getCanvasId(),
+                                                                        parameters.toFormat);
+            jsonBytes += Files.size(jsonPath);
+            convertedBytes += Files.size(convertedPath);
+
+            if (parameters.removeJsonFiles) {
+                Files.delete(jsonPath);
+            }
+        }
+
+        LOG.info("convertFeatureLists: converted {} feature lists, total size changed from {} to {} bytes",
+                 jsonPaths.size(), jsonBytes, convertedBytes);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(FeatureStorageConversionClient.class);
+}
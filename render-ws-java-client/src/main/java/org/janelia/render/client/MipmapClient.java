@@ -16,6 +16,10 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import mpicbg.trakem2.util.Downsampler;
 
@@ -37,6 +41,10 @@ import org.slf4j.LoggerFactory;
  * Java client for generating mipmap files into a {@link org.janelia.alignment.spec.stack.MipmapPathBuilder}
  * directory structure.
  *
+ * The source image (and mask) for each tile is decoded once and then down-sampled in memory for each level.
+ * Each level's files are written asynchronously while the next level is being down-sampled and,
+ * when more than one thread is requested, tiles are also processed in parallel.
+ *
  * @author Eric Trautman
  */
 public class MipmapClient {
@@ -117,6 +125,10 @@ public class MipmapClient {
                     "renderGroup (1-n) must be specified when numberOfRenderGroups are specified");
         }
 
+        if (parameters.numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be positive");
+        }
+
         this.renderDataClient = renderWebParameters.getDataClient();
     }
 
@@ -177,11 +189,21 @@ public class MipmapClient {
         int removedFileCount = 0;
 
         final List<TileSpec> tileSpecsToRender = new ArrayList<>(tiles.getTileSpecs()).subList(startTile, stopTile);
-        for (final TileSpec tileSpec : tileSpecsToRender) {
-            if (parameters.removeAll) {
+        if (parameters.removeAll) {
+            for (final TileSpec tileSpec : tileSpecsToRender) {
                 removedFileCount += removeExistingMipmapFiles(tileSpec);
-            } else {
-                generateMissingMipmapFiles(tileSpec);
+            }
+        } else if (parameters.numberOfThreads > 1) {
+            generateMissingMipmapFilesInParallel(tileSpecsToRender);
+        } else {
+            // a single writer thread still lets each level be written while the next level is down-sampled
+            final ExecutorService writerService = Executors.newSingleThreadExecutor();
+            try {
+                for (final TileSpec tileSpec : tileSpecsToRender) {
+                    generateMissingMipmapFiles(tileSpec, writerService);
+                }
+            } finally {
+                writerService.shutdownNow();
             }
         }
 
@@ -198,81 +220,141 @@ public class MipmapClient {
         return renderedTileCount;
     }
 
+    private void generateMissingMipmapFilesInParallel(final List<TileSpec> tileSpecs)
+            throws Exception {
+
+        LOG.info("generateMissingMipmapFilesInParallel: processing {} tiles with {} threads",
+                 tileSpecs.size(), parameters.numberOfThreads);
+
+        // tiles and writes use separate pools so that tile tasks waiting for their writes can never starve them
+        final ExecutorService tileService = Executors.newFixedThreadPool(parameters.numberOfThreads);
+        final ExecutorService writerService = Executors.newFixedThreadPool(parameters.numberOfThreads);
+
+        try {
+
+            final List<Future<Void>> tileFutures = new ArrayList<>(tileSpecs.size());
+            for (final TileSpec tileSpec : tileSpecs) {
+                tileFutures.add(tileService.submit(() -> {
+                    generateMissingMipmapFiles(tileSpec, writerService);
+                    return null;
+                }));
+            }
+
+            waitForCompletion(tileFutures);
+
+        } finally {
+            tileService.shutdownNow();
+            writerService.shutdownNow();
+        }
+    }
+
     void generateMissingMipmapFiles(final TileSpec tileSpec)
             throws IllegalArgumentException, IOException {
+        generateMissingMipmapFiles(tileSpec, null);
+    }
 
-        for (final ChannelSpec channelSpec : tileSpec.getAllChannels()) {
+    /**
+     * Generates missing mipmap files for the specified tile,
+     * decoding each channel's source image and mask only once.
+     *
+     * @param  tileSpec       tile to process.
+     * @param  writerService  service for writing mipmap files asynchronously
+     *                        (or null to write files in the calling thread).
+     *                        All files have been written when this method returns.
+     */
+    void generateMissingMipmapFiles(final TileSpec tileSpec,
+                                    final ExecutorService writerService)
+            throws IllegalArgumentException, IOException {
 
-            final String channelName = channelSpec.getName();
-            final String context;
-            if (channelName == null) {
-                context = "tile '" + tileSpec.getTileId() + "'";
-            } else {
-                context = "channel '" + channelName + "' in tile '" + tileSpec.getTileId() + "'";
+        final List<Future<Void>> pendingWrites = new ArrayList<>();
+        try {
+            for (final ChannelSpec channelSpec : tileSpec.getAllChannels()) {
+                generateMissingChannelMipmapFiles(tileSpec, channelSpec, writerService, pendingWrites);
             }
+        } finally {
+            waitForCompletion(pendingWrites);
+        }
+    }
 
-            final Map.Entry<Integer, ImageAndMask> firstEntry = channelSpec.getFirstMipmapEntry();
-            if (firstEntry == null) {
-                throw new IllegalArgumentException("first entry mipmap is missing from " + context);
-            }
+    private void generateMissingChannelMipmapFiles(final TileSpec tileSpec,
+                                                   final ChannelSpec channelSpec,
+                                                   final ExecutorService writerService,
+                                                   final List<Future<Void>> pendingWrites)
+            throws IllegalArgumentException, IOException {
 
-            final ImageAndMask sourceImageAndMask = firstEntry.getValue();
+        final String channelName = channelSpec.getName();
+        final String context;
+        if (channelName == null) {
+            context = "tile '" + tileSpec.getTileId() + "'";
+        } else {
+            context = "channel '" + channelName + "' in tile '" + tileSpec.getTileId() + "'";
+        }
 
-            if ((sourceImageAndMask == null) || (!sourceImageAndMask.hasImage())) {
-                throw new IllegalArgumentException("first entry mipmap image is missing from " + context);
-            }
+        final Map.Entry<Integer, ImageAndMask> firstEntry = channelSpec.getFirstMipmapEntry();
+        if (firstEntry == null) {
+            throw new IllegalArgumentException("first entry mipmap is missing from " + context);
+        }
 
-            if (parameters.forceGeneration || isMissingMipmaps(channelSpec, firstEntry, sourceImageAndMask.hasMask())) {
+        final ImageAndMask sourceImageAndMask = firstEntry.getValue();
 
-                ImageProcessor sourceImageProcessor = loadImageProcessor(sourceImageAndMask.getImageUrl());
+        if ((sourceImageAndMask == null) || (!sourceImageAndMask.hasImage())) {
+            throw new IllegalArgumentException("first entry mipmap image is missing from " + context);
+        }
 
-                ImageProcessor sourceMaskProcessor = null;
-                if (sourceImageAndMask.hasMask()) {
-                    sourceMaskProcessor = loadImageProcessor(sourceImageAndMask.getMaskUrl());
-                }
+        if (parameters.forceGeneration || isMissingMipmaps(channelSpec, firstEntry, sourceImageAndMask.hasMask())) {
 
-                Map.Entry<Integer, ImageAndMask> derivedEntry;
-                ImageAndMask derivedImageAndMask;
-                File imageMipmapFile;
-                File maskMipmapFile;
-                for (int mipmapLevel = 1; mipmapLevel <= mipmapPathBuilder.getNumberOfLevels(); mipmapLevel++) {
+            ImageProcessor sourceImageProcessor = loadImageProcessor(sourceImageAndMask.getImageUrl());
 
-                    derivedEntry = mipmapPathBuilder.deriveImageAndMask(mipmapLevel, firstEntry, false);
-                    derivedImageAndMask = derivedEntry.getValue();
+            ImageProcessor sourceMaskProcessor = null;
+            if (sourceImageAndMask.hasMask()) {
+                sourceMaskProcessor = loadImageProcessor(sourceImageAndMask.getMaskUrl());
+            }
 
-                    if (! channelSpec.hasMipmap(mipmapLevel)) {
+            Map.Entry<Integer, ImageAndMask> derivedEntry;
+            ImageAndMask derivedImageAndMask;
+            File imageMipmapFile;
+            File maskMipmapFile;
+            for (int mipmapLevel = 1; mipmapLevel <= mipmapPathBuilder.getNumberOfLevels(); mipmapLevel++) {
 
-                        final boolean isMipmapLevelInRange = mipmapLevel >= parameters.minLevel;
+                derivedEntry = mipmapPathBuilder.deriveImageAndMask(mipmapLevel, firstEntry, false);
+                derivedImageAndMask = derivedEntry.getValue();
 
-                        if (isMipmapLevelInRange) {
-                            createMissingDirectories(derivedImageAndMask.getImageUrl());
-                        }
+                if (! channelSpec.hasMipmap(mipmapLevel)) {
 
-                        imageMipmapFile = getFileForUrlString(derivedImageAndMask.getImageUrl());
-                        sourceImageProcessor = generateMipmapFile(sourceImageProcessor,
-                                                                  imageMipmapFile,
-                                                                  channelSpec.getMinIntensity(),
-                                                                  channelSpec.getMaxIntensity(),
-                                                                  isMipmapLevelInRange);
+                    final boolean isMipmapLevelInRange = mipmapLevel >= parameters.minLevel;
 
-                        if (sourceImageAndMask.hasMask()) {
-                            if (isMipmapLevelInRange) {
-                                createMissingDirectories(derivedImageAndMask.getMaskUrl());
-                            }
-                            maskMipmapFile = getFileForUrlString(derivedImageAndMask.getMaskUrl());
-                            sourceMaskProcessor = generateMipmapFile(sourceMaskProcessor,
-                                                                     maskMipmapFile,
-                                                                     channelSpec.getMinIntensity(),
-                                                                     channelSpec.getMaxIntensity(),
-                                                                     isMipmapLevelInRange);
-                        }
+                    if (isMipmapLevelInRange) {
+                        createMissingDirectories(derivedImageAndMask.getImageUrl());
+                    }
+
+                    imageMipmapFile = getFileForUrlString(derivedImageAndMask.getImageUrl());
+                    sourceImageProcessor = generateMipmapFile(sourceImageProcessor,
+                                                              imageMipmapFile,
+                                                              channelSpec.getMinIntensity(),
+                                                              channelSpec.getMaxIntensity(),
+                                                              isMipmapLevelInRange,
+                                                              writerService,
+                                                              pendingWrites);
 
+                    if (sourceImageAndMask.hasMask()) {
+                        if (isMipmapLevelInRange) {
+                            createMissingDirectories(derivedImageAndMask.getMaskUrl());
+                        }
+                        maskMipmapFile = getFileForUrlString(derivedImageAndMask.getMaskUrl());
+                        sourceMaskProcessor = generateMipmapFile(sourceMaskProcessor,
+                                                                 maskMipmapFile,
+                                                                 channelSpec.getMinIntensity(),
+                                                                 channelSpec.getMaxIntensity(),
+                                                                 isMipmapLevelInRange,
+                                                                 writerService,
+                                                                 pendingWrites);
                     }
-                }
 
-            } else {
-                LOG.info("generateMissingMipmapFiles: all mipmap files exist for ", context);
+                }
             }
+
+        } else {
+            LOG.info("generateMissingMipmapFiles: all mipmap files exist for ", context);
         }
     }
 
@@ -380,24 +462,71 @@ public class MipmapClient {
                                               final File targetMipmapFile,
                                               final double minIntensity,
                                               final double maxIntensity,
-                                              final boolean isMipmapLevelInRange)
+                                              final boolean isMipmapLevelInRange,
+                                              final ExecutorService writerService,
+                                              final List<Future<Void>> pendingWrites)
             throws IOException {
 
         final int mipmapLevelDelta = 1;
         final ImageProcessor downSampledProcessor = Downsampler.downsampleImageProcessor(sourceProcessor,
                                                                                          mipmapLevelDelta);
         if (isMipmapLevelInRange && (parameters.forceGeneration || (! targetMipmapFile.exists()))) {
+            // image pixels are copied here, so the processor can be down-sampled again while the image is written
             final BufferedImage image = getGrayBufferedImage(downSampledProcessor, minIntensity, maxIntensity);
-            Utils.saveImage(image,
-                            targetMipmapFile.getAbsolutePath(),
-                            parameters.format,
-                            false,
-                            0.85f);
+            if (writerService == null) {
+                saveMipmapImage(image, targetMipmapFile);
+            } else {
+                pendingWrites.add(writerService.submit(() -> {
+                    saveMipmapImage(image, targetMipmapFile);
+                    return null;
+                }));
+            }
         }
 
         return downSampledProcessor;
     }
 
+    private void saveMipmapImage(final BufferedImage image,
+                                 final File targetMipmapFile)
+            throws IOException {
+        Utils.saveImage(image,
+                        targetMipmapFile.getAbsolutePath(),
+                        parameters.format,
+                        false,
+                        0.85f);
+    }
+
+    /**
+     * Waits for all of the specified tasks to finish (even if some of them fail)
+     * and then throws the first failure (if any).
+     */
+    private static void waitForCompletion(final List<Future<Void>> futures)
+            throws IOException {
+
+        Throwable firstFailure = null;
+        for (final Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                futures.forEach(f -> f.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for mipmap generation to finish", e);
+            } catch (final ExecutionException e) {
+                if (firstFailure == null) {
+                    firstFailure = e.getCause();
+                }
+            }
+        }
+
+        if (firstFailure instanceof IOException) {
+            throw (IOException) firstFailure;
+        } else if (firstFailure instanceof RuntimeException) {
+            throw (RuntimeException) firstFailure;
+        } else if (firstFailure != null) {
+            throw new IOException("mipmap generation failed", firstFailure);
+        }
+    }
+
     private static BufferedImage getGrayBufferedImage(final ImageProcessor downSampledProcessor,
                                                       final double minIntensity,
                                                       final double maxIntensity) {
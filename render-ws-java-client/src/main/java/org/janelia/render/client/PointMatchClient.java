@@ -392,7 +392,8 @@ public class PointMatchClient {
                                                                       parameters.match.matchMinNumInliers,
                                                                       parameters.match.matchMaxTrust,
                                                                       parameters.match.matchMaxNumInliers,
-                                                                      parameters.match.matchFilter);
+                                                                      parameters.match.matchFilter,
+                                                                      parameters.match.matchEngine);
 
         String pUrlString;
         String qUrlString;
@@ -566,7 +567,8 @@ public class PointMatchClient {
             this.extractor = new CanvasFeatureExtractor(siftParameters,
                                                         clientParameters.featureExtraction.minScale,
                                                         clientParameters.featureExtraction.maxScale,
-                                                        clientParameters.fillWithNoise);
+                                                        clientParameters.fillWithNoise,
+                                                        clientParameters.featureExtraction.numberOfThreads);
         }
 
         @Override
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.apache.http.client.methods.HttpDelete;
@@ -31,6 +32,7 @@ import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.stack.HierarchicalStack;
 import org.janelia.alignment.spec.stack.MipmapPathBuilder;
 import org.janelia.alignment.spec.stack.StackId;
@@ -39,9 +41,11 @@ import org.janelia.alignment.spec.stack.StackVersion;
 import org.janelia.alignment.transform.ConsensusWarpFieldBuilder;
 import org.janelia.alignment.util.RenderWebServiceUrls;
 import org.janelia.alignment.util.ZFilter;
+import org.janelia.render.client.request.GzipJsonEntity;
 import org.janelia.render.client.request.WaitingRetryHandler;
 import org.janelia.render.client.response.EmptyResponseHandler;
 import org.janelia.render.client.response.JsonResponseHandler;
+import org.janelia.render.client.response.ResolvedTilesStreamResponseHandler;
 import org.janelia.render.client.response.ResourceCreatedResponseHandler;
 import org.janelia.render.client.response.TextResponseHandler;
 import org.slf4j.Logger;
@@ -1003,8 +1007,101 @@ public class RenderDataClient {
         return httpClient.execute(httpGet, responseHandler);
     }
 
+    /**
+     * Streams resolved tiles and transforms that match the specified criteria.
+     * Unlike {@link #getResolvedTiles}, there is no limit on the number of tiles
+     * and the full response is never held in memory.
+     *
+     * All transform specs are passed to the transform consumer before any tile specs are
+     * passed to the tile consumer.  Tile specs are not sorted.
+     *
+     * @param  stack                  name of stack.
+     * @param  minZ                   minimum z value for all tiles (or null for no minimum).
+     * @param  maxZ                   maximum z value for all tiles (or null for no maximum).
+     * @param  groupId                group id for all tiles (or null).
+     * @param  minX                   minimum x value for all tiles (or null for no minimum).
+     * @param  maxX                   maximum x value for all tiles (or null for no maximum).
+     * @param  minY                   minimum y value for all tiles (or null for no minimum).
+     * @param  maxY                   maximum y value for all tiles (or null for no maximum).
+     * @param  transformSpecConsumer  consumer for each referenced transform spec.
+     * @param  tileSpecConsumer       consumer for each tile spec.
+     *
+     * @return number of tile specs streamed.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     */
+    public long streamResolvedTiles(final String stack,
+                                    final Double minZ,
+                                    final Double maxZ,
+                                    final String groupId,
+                                    final Double minX,
+                                    final Double maxX,
+                                    final Double minY,
+                                    final Double maxY,
+                                    final Consumer<TransformSpec> transformSpecConsumer,
+                                    final Consumer<TileSpec> tileSpecConsumer)
+            throws IOException {
+
+        final URIBuilder uriBuilder = new URIBuilder(getUri(getResolvedTilesUri(stack, null) + "/stream"));
+        addParameterIfDefined("minZ", minZ, uriBuilder);
+        addParameterIfDefined("maxZ", maxZ, uriBuilder);
+        addParameterIfDefined("groupId", groupId, uriBuilder);
+        addParameterIfDefined("minX", minX, uriBuilder);
+        addParameterIfDefined("maxX", maxX, uriBuilder);
+        addParameterIfDefined("minY", minY, uriBuilder);
+        addParameterIfDefined("maxY", maxY, uriBuilder);
+
+        final URI uri = getUri(uriBuilder);
+        final HttpGet httpGet = new HttpGet(uri);
+        final String requestContext = "GET " + uri;
+        final ResolvedTilesStreamResponseHandler responseHandler =
+                new ResolvedTilesStreamResponseHandler(requestContext, transformSpecConsumer, tileSpecConsumer);
+
+        LOG.info("streamResolvedTiles: submitting {}", requestContext);
+
+        final long tileCount = httpClient.execute(httpGet, responseHandler);
+
+        LOG.info("streamResolvedTiles: received {} tile specs", tileCount);
+
+        return tileCount;
+    }
+
+    /**
+     * Uses the streaming API to retrieve resolved tiles and transforms that match the specified criteria.
+     * Unlike {@link #getResolvedTiles}, there is no limit on the number of tiles
+     * (but all tiles are loaded into the returned collection).
+     *
+     * @return the set of resolved tiles and transforms that match the specified criteria.
+     *
+     * @throws IOException
+     *   if the request fails for any reason.
+     *
+     * @see #streamResolvedTiles
+     */
+    public ResolvedTileSpecCollection getStreamedResolvedTiles(final String stack,
+                                                               final Double minZ,
+                                                               final Double maxZ,
+                                                               final String groupId,
+                                                               final Double minX,
+                                                               final Double maxX,
+                                                               final Double minY,
+                                                               final Double maxY)
+            throws IOException {
+
+        final ResolvedTileSpecCollection resolvedTiles = new ResolvedTileSpecCollection();
+
+        // transforms are always streamed first, so each tile can be resolved as soon as it is added
+        streamResolvedTiles(stack, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                            resolvedTiles::addTransformSpecToCollection,
+                            resolvedTiles::addTileSpecToCollection);
+
+        return resolvedTiles;
+    }
+
     /**
      * Saves the specified collection.
+     * The collection is streamed to the server as gzip encoded JSON.
      *
      * @param  resolvedTiles  collection of tile and transform specs to save.
      * @param  stack          name of stack.
@@ -1018,14 +1115,12 @@ public class RenderDataClient {
                                   final Double z)
             throws IOException {
 
-        final String json = resolvedTiles.toJson();
-        final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
         final URI uri = getResolvedTilesUri(stack, z);
         final String requestContext = "PUT " + uri;
         final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
 
         final HttpPut httpPut = new HttpPut(uri);
-        httpPut.setEntity(stringEntity);
+        httpPut.setEntity(new GzipJsonEntity(resolvedTiles));
 
         LOG.info("saveResolvedTiles: submitting {} for {} transforms and {} tiles",
                  requestContext, resolvedTiles.getTransformCount(), resolvedTiles.getTileCount());
@@ -1284,6 +1379,7 @@ public class RenderDataClient {
 
     /**
      * Saves the specified matches.
+     * The matches are streamed to the server as gzip encoded JSON.
      *
      * @param  canvasMatches  matches to save.
      *
@@ -1295,14 +1391,12 @@ public class RenderDataClient {
 
         if (canvasMatches.size() > 0) {
 
-            final String json = JsonUtils.MAPPER.writeValueAsString(canvasMatches);
-            final StringEntity stringEntity = new StringEntity(json, ContentType.APPLICATION_JSON);
             final URI uri = getUri(urls.getMatchesUrlString());
             final String requestContext = "PUT " + uri;
             final ResourceCreatedResponseHandler responseHandler = new ResourceCreatedResponseHandler(requestContext);
 
             final HttpPut httpPut = new HttpPut(uri);
-            httpPut.setEntity(stringEntity);
+            httpPut.setEntity(new GzipJsonEntity(canvasMatches));
 
             LOG.info("saveMatches: submitting {} for {} pair(s)", requestContext, canvasMatches.size());
 
@@ -7,7 +7,9 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import mpicbg.imagefeatures.FloatArray2DSIFT;
@@ -152,9 +154,21 @@ public class SIFTPointMatchClient
                         getCanvasFeatureExtractor(featureExtractionParameters, featureRenderParameters),
                         featureStorageParameters.getRootFeatureDirectory(),
                         featureStorageParameters.requireStoredFeatures);
+        featureLoader.setStorageFormat(featureStorageParameters.storageFormat);
+        featureLoader.setMaxImageCacheBytes(featureRenderParameters.getMaxSourceImageCacheBytes());
+        featureLoader.setLoadCanvasOrigins(matchDerivationParameters.matchSearchRadius != null);
 
         final CanvasDataCache dataCache = CanvasDataCache.getSharedCache(cacheMaxKilobytes, featureLoader);
         final CanvasFeatureMatcher featureMatcher = getCanvasFeatureMatcher(matchDerivationParameters);
+        final Double scaledSearchRadius = getScaledSearchRadius(matchDerivationParameters,
+                                                                featureRenderParameters.renderScale);
+
+        final Set<CanvasId> canvasIds = new LinkedHashSet<>();
+        for (final OrderedCanvasIdPair pair : renderableCanvasIdPairs.getNeighborPairs()) {
+            canvasIds.add(pair.getP());
+            canvasIds.add(pair.getQ());
+        }
+        dataCache.prefetchRenderParameters(canvasIds);
 
         final List<CanvasMatches> matchList = new ArrayList<>();
 
@@ -172,8 +186,12 @@ public class SIFTPointMatchClient
 
             LOG.info("generateMatchesForPairs: derive matches between {} and {}", p, q);
 
+            final double[] predictedOffset =
+                    CachedCanvasFeatures.getPredictedOffset(pFeatures, qFeatures, featureRenderParameters.renderScale);
             matchResult = featureMatcher.deriveMatchResult(pFeatures.getFeatureList(),
-                                                           qFeatures.getFeatureList());
+                                                           qFeatures.getFeatureList(),
+                                                           predictedOffset,
+                                                           scaledSearchRadius);
 
             final double[] pClipOffsets = pFeatures.getClipOffsets();
             final double[] qClipOffsets = qFeatures.getClipOffsets();
@@ -225,7 +243,8 @@ public class SIFTPointMatchClient
         return new CanvasFeatureExtractor(siftParameters,
                                           featureExtraction.minScale,
                                           featureExtraction.maxScale,
-                                          featureRender.fillWithNoise);
+                                          featureRender.fillWithNoise,
+                                          featureExtraction.numberOfThreads);
     }
 
     public static CanvasFeatureMatcher getCanvasFeatureMatcher(final MatchDerivationParameters matchParameters) {
@@ -237,7 +256,17 @@ public class SIFTPointMatchClient
                                         matchParameters.matchMinNumInliers,
                                         matchParameters.matchMaxTrust,
                                         matchParameters.matchMaxNumInliers,
-                                        matchParameters.matchFilter);
+                                        matchParameters.matchFilter,
+                                        matchParameters.matchEngine);
+    }
+
+    /**
+     * @return search radius for spatially constrained matching in rendered canvas pixels
+     *         (or null if matching should not be spatially constrained).
+     */
+    public static Double getScaledSearchRadius(final MatchDerivationParameters matchParameters,
+                                               final double renderScale) {
+        return matchParameters.matchSearchRadius == null ? null : matchParameters.matchSearchRadius * renderScale;
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(SIFTPointMatchClient.class);
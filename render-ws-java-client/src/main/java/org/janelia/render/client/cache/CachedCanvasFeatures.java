@@ -13,11 +13,14 @@ public class CachedCanvasFeatures implements CachedCanvasData {
 
     private final List<Feature> featureList;
     private final double[] clipOffsets;
+    private final double[] canvasOrigin;
 
     CachedCanvasFeatures(final List<Feature> featureList,
-                         final double[] clipOffsets) {
+                         final double[] clipOffsets,
+                         final double[] canvasOrigin) {
         this.featureList = featureList;
         this.clipOffsets = clipOffsets;
+        this.canvasOrigin = canvasOrigin;
     }
 
     public List<Feature> getFeatureList() {
@@ -28,6 +31,36 @@ public class CachedCanvasFeatures implements CachedCanvasData {
         return clipOffsets;
     }
 
+    /**
+     * @return full scale world x[0] and y[1] coordinates of the rendered (clipped) canvas' upper left corner
+     *         or null if they were not loaded.
+     */
+    public double[] getCanvasOrigin() {
+        return canvasOrigin;
+    }
+
+    /**
+     * @param  pFeatures    features for the first canvas in a pair.
+     * @param  qFeatures    features for the second canvas in a pair.
+     * @param  renderScale  scale of the rendered canvases.
+     *
+     * @return predicted x[0] and y[1] offset (in rendered canvas pixels) of q feature locations from their
+     *         corresponding p feature locations based upon the current world positions of the two canvases,
+     *         or null if either canvas origin is unknown.
+     */
+    public static double[] getPredictedOffset(final CachedCanvasFeatures pFeatures,
+                                              final CachedCanvasFeatures qFeatures,
+                                              final double renderScale) {
+        double[] predictedOffset = null;
+        if ((pFeatures.canvasOrigin != null) && (qFeatures.canvasOrigin != null)) {
+            predictedOffset = new double[] {
+                    (pFeatures.canvasOrigin[0] - qFeatures.canvasOrigin[0]) * renderScale,
+                    (pFeatures.canvasOrigin[1] - qFeatures.canvasOrigin[1]) * renderScale
+            };
+        }
+        return predictedOffset;
+    }
+
     public long getKilobytes() {
         return (long) (featureList.size() * AVERAGE_KILOBYTES_PER_FEATURE) + 1;
     }
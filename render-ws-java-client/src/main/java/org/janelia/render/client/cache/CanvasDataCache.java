@@ -8,6 +8,9 @@ import com.google.common.cache.RemovalListeners;
 import com.google.common.cache.Weigher;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -217,6 +220,22 @@ public class CanvasDataCache {
         return (CachedCanvasFeatures) getData(canvasId);
     }
 
+    /**
+     * Retrieves render parameters for all of the specified canvases that are not already cached
+     * with a single request (see {@link CanvasDataLoader#prefetchRenderParameters(Collection)}).
+     *
+     * @param  canvasIds  canvases that will (likely) soon be requested from this cache.
+     */
+    public void prefetchRenderParameters(final Collection<CanvasId> canvasIds) {
+        final Set<CanvasId> missingCanvasIds = new LinkedHashSet<>(canvasIds.size() * 2);
+        for (final CanvasId canvasId : canvasIds) {
+            if (! canvasIdToDataCache.asMap().containsKey(canvasId)) { // avoid skewing hit stats
+                missingCanvasIds.add(canvasId);
+            }
+        }
+        canvasDataLoader.prefetchRenderParameters(missingCanvasIds);
+    }
+
     @Override
     public String toString() {
         return "CanvasDataCache{" +
@@ -1,18 +1,39 @@
 package org.janelia.render.client.cache;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.cache.CacheLoader;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.match.CanvasId;
 import org.janelia.alignment.match.CanvasRenderParametersUrlTemplate;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.render.client.response.JsonResponseHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Loader implementations create data that is missing from the cache.
  *
  * This base class provides a mechanism ({@link #getRenderParametersUrl(CanvasId)})
- * to derive canvas specific render parameters URLs needed to build missing data.
+ * to derive canvas specific render parameters URLs needed to build missing data
+ * and a mechanism ({@link #prefetchRenderParameters(Collection)}) to retrieve
+ * render parameters for many canvases with one request.
  *
  * @author Eric Trautman
  */
@@ -21,6 +42,10 @@ public abstract class CanvasDataLoader
 
     private final CanvasRenderParametersUrlTemplate urlTemplate;
     private final Class dataClass;
+    private long maxImageCacheBytes;
+
+    /** Unclipped parameters retrieved by the last prefetch, removed as each canvas is loaded. */
+    private transient volatile Map<CanvasId, RenderParameters> prefetchedRenderParameters;
 
     /**
      * @param  urlTemplate  template for deriving render parameters URL for each canvas.
@@ -30,6 +55,7 @@ public abstract class CanvasDataLoader
                      final Class dataClass) {
         this.urlTemplate = urlTemplate;
         this.dataClass = dataClass;
+        this.maxImageCacheBytes = 0;
     }
 
     Class getDataClass() {
@@ -51,8 +77,106 @@ public abstract class CanvasDataLoader
         return urlTemplate.getRenderParametersUrl(canvasId);
     }
 
+    /**
+     * @param  maxImageCacheBytes  maximum number of source image pixel bytes to cache (in a cache shared by all
+     *                             loaders in the current JVM) when rendering canvases.
+     *                             Specify zero (the default) to disable source image caching.
+     */
+    public void setMaxImageCacheBytes(final long maxImageCacheBytes) {
+        this.maxImageCacheBytes = maxImageCacheBytes;
+    }
+
+    /**
+     * @return source image cache to use when rendering canvases.
+     */
+    ImageProcessorCache getImageProcessorCache() {
+        return SharedImageProcessorCache.getInstance(maxImageCacheBytes);
+    }
+
     RenderParameters getRenderParameters(final CanvasId canvasId)
             throws IllegalArgumentException {
-        return urlTemplate.getRenderParameters(canvasId);
+
+        final RenderParameters prefetchedParameters =
+                prefetchedRenderParameters == null ? null : prefetchedRenderParameters.remove(canvasId);
+
+        final RenderParameters renderParameters;
+        if (prefetchedParameters == null) {
+            renderParameters = urlTemplate.getRenderParameters(canvasId);
+        } else {
+            urlTemplate.applyClipInfo(canvasId, prefetchedParameters);
+            renderParameters = prefetchedParameters;
+        }
+
+        return renderParameters;
     }
+
+    /**
+     * Retrieves render parameters for the specified canvases with a single request so that
+     * subsequent loads of those canvases don't need to make separate requests.
+     * Prefetching is skipped if this loader's URL template does not support batch retrieval
+     * (see {@link CanvasRenderParametersUrlTemplate#getTileBatchRenderParametersUrl()}) or if the request fails.
+     *
+     * @param  canvasIds  canvases that will (likely) soon be loaded.
+     */
+    public synchronized void prefetchRenderParameters(final Collection<CanvasId> canvasIds) {
+
+        final String batchUrl = urlTemplate.getTileBatchRenderParametersUrl();
+
+        if ((batchUrl == null) || (canvasIds.size() < 2)) {
+            return;
+        }
+
+        if (prefetchedRenderParameters == null) {
+            prefetchedRenderParameters = new ConcurrentHashMap<>();
+        }
+
+        final List<CanvasId> allCanvasIds = new ArrayList<>(canvasIds);
+        for (int fromIndex = 0; fromIndex < allCanvasIds.size(); fromIndex += MAX_CANVASES_PER_PREFETCH) {
+            final int toIndex = Math.min(fromIndex + MAX_CANVASES_PER_PREFETCH, allCanvasIds.size());
+            prefetchBatch(batchUrl, allCanvasIds.subList(fromIndex, toIndex));
+        }
+    }
+
+    private void prefetchBatch(final String batchUrl,
+                               final List<CanvasId> canvasIdList) {
+
+        final List<String> tileIds = new ArrayList<>(canvasIdList.size());
+        for (final CanvasId canvasId : canvasIdList) {
+            tileIds.add(canvasId.getId());
+        }
+
+        final String requestContext = "PUT " + batchUrl;
+
+        try (final CloseableHttpClient httpClient = HttpClientBuilder.create().build()) {
+
+            final HttpPut httpPut = new HttpPut(new URI(batchUrl));
+            httpPut.setEntity(new StringEntity(JsonUtils.FAST_MAPPER.writeValueAsString(tileIds),
+                                               ContentType.APPLICATION_JSON));
+
+            final TypeReference<List<RenderParameters>> typeReference =
+                    new TypeReference<List<RenderParameters>>() {};
+            final JsonUtils.GenericHelper<List<RenderParameters>> helper =
+                    new JsonUtils.GenericHelper<>(typeReference);
+            final JsonResponseHandler<List<RenderParameters>> responseHandler =
+                    new JsonResponseHandler<>(requestContext, helper);
+
+            LOG.info("prefetchRenderParameters: submitting {} for {} canvases", requestContext, tileIds.size());
+
+            final List<RenderParameters> renderParametersList = httpClient.execute(httpPut, responseHandler);
+
+            for (int i = 0; i < canvasIdList.size(); i++) {
+                final RenderParameters renderParameters = renderParametersList.get(i);
+                renderParameters.initializeDerivedValues();
+                prefetchedRenderParameters.put(canvasIdList.get(i), renderParameters);
+            }
+
+        } catch (final IOException | URISyntaxException | RuntimeException e) {
+            LOG.warn("prefetchRenderParameters: failed to prefetch parameters, canvases will be loaded individually", e);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasDataLoader.class);
+
+    /** Limit batch sizes to keep request and response sizes reasonable. */
+    private static final int MAX_CANVASES_PER_PREFETCH = 1000;
 }
@@ -2,6 +2,7 @@ package org.janelia.render.client.cache;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 
 import javax.annotation.Nonnull;
@@ -27,6 +28,8 @@ public class CanvasFeatureListLoader
     private final CanvasFeatureExtractor featureExtractor;
     private final File rootFeatureStorageDirectory;
     private final boolean requireStoredFeatures;
+    private CanvasFeatureList.StorageFormat storageFormat;
+    private boolean loadCanvasOrigins;
 
     /**
      * @param  urlTemplate                  template for deriving render parameters URL for each canvas.
@@ -59,6 +62,34 @@ public class CanvasFeatureListLoader
         this.featureExtractor = featureExtractor;
         this.rootFeatureStorageDirectory =rootFeatureStorageDirectory;
         this.requireStoredFeatures = requireStoredFeatures;
+        this.storageFormat = CanvasFeatureList.StorageFormat.JSON;
+        this.loadCanvasOrigins = false;
+    }
+
+    /**
+     * @param  storageFormat  format of persisted feature list data (default is JSON).
+     */
+    public void setStorageFormat(final CanvasFeatureList.StorageFormat storageFormat) {
+        this.storageFormat = storageFormat;
+    }
+
+    /**
+     * @param  loadCanvasOrigins  indicates whether world origins should also be loaded for canvases
+     *                            with stored features (needed for spatially constrained matching).
+     *                            Origins are always available for dynamically rendered canvases.
+     */
+    public void setLoadCanvasOrigins(final boolean loadCanvasOrigins) {
+        this.loadCanvasOrigins = loadCanvasOrigins;
+    }
+
+    /**
+     * Skips prefetching when render parameters are only needed for canvases without stored features.
+     */
+    @Override
+    public void prefetchRenderParameters(final Collection<CanvasId> canvasIds) {
+        if ((rootFeatureStorageDirectory == null) || loadCanvasOrigins) {
+            super.prefetchRenderParameters(canvasIds);
+        }
     }
 
     @Override
@@ -66,15 +97,20 @@ public class CanvasFeatureListLoader
 
         List<Feature> featureList = null;
         double[] offsets = null;
+        double[] canvasOrigin = null;
 
         if (rootFeatureStorageDirectory != null) {
 
-            final Path storagePath = CanvasFeatureList.getStoragePath(rootFeatureStorageDirectory, canvasId);
+            final Path storagePath = CanvasFeatureList.getStoragePath(rootFeatureStorageDirectory,
+                                                                           canvasId,
+                                                                           storageFormat);
 
             CanvasFeatureList canvasFeatureList = null;
             try {
 
-                canvasFeatureList = CanvasFeatureList.readFromStorage(rootFeatureStorageDirectory, canvasId);
+                canvasFeatureList = CanvasFeatureList.readFromStorage(rootFeatureStorageDirectory,
+                                                                      canvasId,
+                                                                      storageFormat);
 
                 LOG.info("loaded {} features from {}", canvasFeatureList.size(), storagePath);
 
@@ -101,6 +137,10 @@ public class CanvasFeatureListLoader
 
                 featureList = canvasFeatureList.getFeatureList();
                 offsets = storedCanvasId.getClipOffsets();
+
+                if (loadCanvasOrigins) {
+                    canvasOrigin = getCanvasOrigin(getRenderParameters(canvasId));
+                }
             }
 
         }
@@ -110,12 +150,20 @@ public class CanvasFeatureListLoader
             offsets = canvasId.getClipOffsets(); // HACK WARNING: offsets get applied by getRenderParameters call
 
             LOG.info("load: extracting features for {} with offsets ({}, {})", canvasId, offsets[0], offsets[1]);
-            featureList = featureExtractor.extractFeatures(renderParameters, null);
+            featureList = featureExtractor.extractFeatures(renderParameters,
+                                                           null,
+                                                           getImageProcessorCache());
+            canvasOrigin = getCanvasOrigin(renderParameters);
         }
 
         LOG.info("load: exit");
 
-        return new CachedCanvasFeatures(featureList, offsets);
+        return new CachedCanvasFeatures(featureList, offsets, canvasOrigin);
+    }
+
+    private static double[] getCanvasOrigin(final RenderParameters renderParameters) {
+        // render parameters have already been clipped, so origin includes any clip offsets
+        return new double[] { renderParameters.getX(), renderParameters.getY() };
     }
 
     private void checkCompatibility(final String context,
@@ -12,7 +12,6 @@ import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
 import org.janelia.alignment.match.CanvasId;
 import org.janelia.alignment.match.CanvasRenderParametersUrlTemplate;
-import org.janelia.alignment.util.ImageProcessorCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,7 +57,7 @@ public class CanvasFileLoader
         final BufferedImage bufferedImage = renderParameters.openTargetImage();
         renderParameters.setFillWithNoise(fillWithNoise);
 
-        ArgbRenderer.render(renderParameters, bufferedImage, ImageProcessorCache.DISABLED_CACHE);
+        ArgbRenderer.render(renderParameters, bufferedImage, getImageProcessorCache());
 
         Utils.saveImage(bufferedImage,
                         renderFile,
@@ -0,0 +1,43 @@
+package org.janelia.render.client.cache;
+
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The source image processor cache to be shared by all canvas rendering in the current JVM (e.g. Spark executor).
+ *
+ * Canvases that overlap the same source tiles (e.g. clipped regions of the same tile for different neighbors
+ * or the same tile at different relative positions) can then reuse loaded and decoded source images.
+ *
+ * @author Eric Trautman
+ */
+public class SharedImageProcessorCache {
+
+    private static volatile ImageProcessorCache sharedCache;
+
+    /**
+     * @param  maxCachedBytes  maximum number of source pixel bytes for the shared cache
+     *                         (only used when the shared cache is first created).
+     *
+     * @return the shared cache for the current JVM or a disabled cache if the specified maximum is not positive.
+     */
+    public static ImageProcessorCache getInstance(final long maxCachedBytes) {
+        if (maxCachedBytes <= 0) {
+            return ImageProcessorCache.DISABLED_CACHE;
+        }
+        if (sharedCache == null) {
+            setSharedCache(maxCachedBytes);
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache(final long maxCachedBytes) {
+        if (sharedCache == null) {
+            sharedCache = new ImageProcessorCache(maxCachedBytes, true, false);
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedImageProcessorCache.class);
+}
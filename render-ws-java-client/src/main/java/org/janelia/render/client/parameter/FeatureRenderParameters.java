@@ -57,5 +57,18 @@ public class FeatureRenderParameters
             arity = 1)
     public boolean fillWithNoise = true;
 
-}
+    @Parameter(
+            names = "--maxSourceImageCacheGb",
+            description = "Maximum number of gigabytes of source images to cache (and share across canvases) " +
+                          "when rendering canvases (default of 0 disables caching)",
+            required = false)
+    public Integer maxSourceImageCacheGb = 0;
 
+    /**
+     * @return maximum number of source image pixel bytes to cache (the image processor cache weighs by bytes).
+     */
+    public long getMaxSourceImageCacheBytes() {
+        return maxSourceImageCacheGb == null ? 0 : maxSourceImageCacheGb * 1_000_000_000L;
+    }
+
+}
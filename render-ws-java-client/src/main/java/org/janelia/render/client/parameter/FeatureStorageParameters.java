@@ -5,6 +5,8 @@ import com.beust.jcommander.Parameter;
 import java.io.File;
 import java.io.Serializable;
 
+import org.janelia.alignment.match.CanvasFeatureList;
+
 /**
  * Parameters for persisting or retrieving extracted feature data to/from disk.
  *
@@ -19,6 +21,12 @@ public class FeatureStorageParameters
             required = false)
     public String rootFeatureDirectory;
 
+    @Parameter(
+            names = "--featureStorageFormat",
+            description = "Format of saved feature lists (JSON, BINARY, or QUANTIZED_BINARY)",
+            required = false)
+    public CanvasFeatureList.StorageFormat storageFormat = CanvasFeatureList.StorageFormat.JSON;
+
     @Parameter(
             names = "--requireStoredFeatures",
             description = "indicates that an exception should be thrown when stored features cannot be found (if omitted, missing features are extracted from dynamically rendered canvases)",
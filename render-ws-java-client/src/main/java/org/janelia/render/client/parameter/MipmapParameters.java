@@ -64,6 +64,12 @@ public class MipmapParameters implements Serializable {
     )
     public Integer numberOfRenderGroups = 1;
 
+    @Parameter(
+            names = "--numberOfThreads",
+            description = "Number of threads to use for generating mipmaps (tiles are processed and mipmap files are written in parallel)"
+    )
+    public int numberOfThreads = 1;
+
     @Parameter(
             names = "--removeAll",
             description = "Indicates that existing mipmaps should be removed (instead of generated)")
@@ -0,0 +1,84 @@
+package org.janelia.render.client.request;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Request entity that serializes an object as gzip encoded JSON directly to the request output stream,
+ * so that the full JSON text is never held in memory.
+ *
+ * The object is serialized each time the entity is written, so the entity is repeatable
+ * (and requests can be retried) as long as the object is not modified.
+ *
+ * @author Eric Trautman
+ */
+public class GzipJsonEntity
+        extends AbstractHttpEntity {
+
+    private final Object value;
+
+    /**
+     * @param  value  object to serialize.
+     */
+    public GzipJsonEntity(final Object value) {
+        this.value = value;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setContentEncoding(GZIP_ENCODING);
+        setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    /**
+     * @return stream of gzip encoded content (only used for debugging, since this requires buffering all content).
+     */
+    @Override
+    public InputStream getContent()
+            throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeTo(outputStream);
+        return new ByteArrayInputStream(outputStream.toByteArray());
+    }
+
+    @Override
+    public void writeTo(final OutputStream outputStream)
+            throws IOException {
+
+        final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+
+        final JsonGenerator generator = JsonUtils.FAST_MAPPER.getFactory().createGenerator(gzipOutputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        JsonUtils.FAST_MAPPER.writeValue(generator, value);
+        generator.flush();
+
+        // finish (rather than close) the gzip stream since the connection owns the underlying stream
+        gzipOutputStream.finish();
+        outputStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    private static final String GZIP_ENCODING = "gzip";
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
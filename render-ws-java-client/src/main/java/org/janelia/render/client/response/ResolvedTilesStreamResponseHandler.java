@@ -0,0 +1,95 @@
+package org.janelia.render.client.response;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.ResponseHandler;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+
+/**
+ * Incrementally parses a streamed resolved tile spec collection response,
+ * passing each transform spec and tile spec to a consumer as soon as it is parsed
+ * so that the full response never needs to be held in memory.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTilesStreamResponseHandler
+        extends BaseResponseHandler
+        implements ResponseHandler<Long> {
+
+    private final Consumer<TransformSpec> transformSpecConsumer;
+    private final Consumer<TileSpec> tileSpecConsumer;
+
+    /**
+     * @param  requestContext         context (e.g. "GET http://janelia.org") for use in error messages.
+     * @param  transformSpecConsumer  consumer for each parsed transform spec.
+     * @param  tileSpecConsumer       consumer for each parsed tile spec.
+     */
+    public ResolvedTilesStreamResponseHandler(final String requestContext,
+                                              final Consumer<TransformSpec> transformSpecConsumer,
+                                              final Consumer<TileSpec> tileSpecConsumer) {
+        super(requestContext);
+        this.transformSpecConsumer = transformSpecConsumer;
+        this.tileSpecConsumer = tileSpecConsumer;
+    }
+
+    /**
+     * @return number of parsed tile specs.
+     */
+    @Override
+    public Long handleResponse(final HttpResponse response)
+            throws IOException {
+
+        final HttpEntity entity = getValidatedResponseEntity(response, OK);
+        final Header contentTypeHeader = entity.getContentType();
+
+        if (contentTypeHeader == null) {
+            throw new ClientProtocolException("content type header missing for\n\n  " + getRequestContext() + "\n");
+        } else if (! JSON_MIME_TYPE.equals(contentTypeHeader.getValue())) {
+            throw new ClientProtocolException("invalid mime type '" + contentTypeHeader.getValue() + "' for\n\n  " +
+                                              getRequestContext() + "\n\n(expected '" + JSON_MIME_TYPE + "')");
+        }
+
+        long tileCount = 0;
+
+        try (final InputStream inputStream = entity.getContent();
+             final JsonParser parser = JsonUtils.FAST_MAPPER.getFactory().createParser(inputStream)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ClientProtocolException("expected JSON object for\n\n  " + getRequestContext() + "\n");
+            }
+
+            String fieldName;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if ("transformIdToSpecMap".equals(fieldName)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        parser.nextToken();
+                        transformSpecConsumer.accept(parser.readValueAs(TransformSpec.class));
+                    }
+                } else if ("tileIdToSpecMap".equals(fieldName)) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        parser.nextToken();
+                        tileSpecConsumer.accept(parser.readValueAs(TileSpec.class));
+                        tileCount++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        return tileCount;
+    }
+}
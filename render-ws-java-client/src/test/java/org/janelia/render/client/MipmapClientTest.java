@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.spec.ChannelSpec;
@@ -154,6 +156,55 @@ public class MipmapClientTest {
 
     }
 
+    @Test
+    public void testGenerateMissingMipmapFilesWithWriterService() throws Exception {
+
+        final MipmapClient.Parameters parameters = new MipmapClient.Parameters();
+        parameters.mipmap.rootDirectory = mipmapRootDirectory.getAbsolutePath();
+        parameters.mipmap.maxLevel = 3;
+        parameters.mipmap.numberOfThreads = 2;
+
+        final MipmapClient mipmapClient = new MipmapClient(parameters.renderWeb, parameters.mipmap);
+
+        final ImageAndMask sourceImageAndMask = new ImageAndMask("src/test/resources/col0060_row0140_cam0.tif",
+                                                                 "src/test/resources/mask.tif");
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("test-async-mipmap-tile");
+        final ChannelSpec channelSpec = new ChannelSpec();
+        channelSpec.putMipmap(0, sourceImageAndMask);
+        tileSpec.addChannel(channelSpec);
+        tileSpec.setMipmapPathBuilder(mipmapClient.getMipmapPathBuilder());
+
+        final ExecutorService writerService = Executors.newFixedThreadPool(2);
+        try {
+            mipmapClient.generateMissingMipmapFiles(tileSpec, writerService);
+        } finally {
+            writerService.shutdown();
+        }
+
+        final ImageProcessor sourceProcessor = MipmapClient.loadImageProcessor(sourceImageAndMask.getImageUrl());
+        int expectedWidth = sourceProcessor.getWidth();
+        int expectedHeight = sourceProcessor.getHeight();
+
+        ImageAndMask imageAndMask;
+        ImageProcessor imageProcessor;
+        for (int level = 1; level < 4; level++) {
+            expectedWidth = expectedWidth / 2;
+            expectedHeight = expectedHeight / 2;
+
+            imageAndMask = channelSpec.getFloorMipmapEntry(level).getValue();
+
+            // all files should have been written when generateMissingMipmapFiles returns
+            for (final String url : new String[] { imageAndMask.getImageUrl(), imageAndMask.getMaskUrl() }) {
+                imageProcessor = MipmapClient.loadImageProcessor(url);
+                Assert.assertEquals("invalid width for level " + level + " file " + url,
+                                    expectedWidth, imageProcessor.getWidth());
+                Assert.assertEquals("invalid height for level " + level + " file " + url,
+                                    expectedHeight, imageProcessor.getHeight());
+            }
+        }
+    }
+
     public static File createTestDirectory(final String baseName)
             throws IOException {
         final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmssSSS");
@@ -0,0 +1,44 @@
+package org.janelia.render.client.request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link GzipJsonEntity} class.
+ *
+ * @author Eric Trautman
+ */
+public class GzipJsonEntityTest {
+
+    @Test
+    public void testWriteTo() throws Exception {
+
+        final List<String> values = Arrays.asList("a", "b", "c");
+        final GzipJsonEntity entity = new GzipJsonEntity(values);
+
+        Assert.assertEquals("invalid content encoding", "gzip", entity.getContentEncoding().getValue());
+        Assert.assertTrue("entity should be repeatable", entity.isRepeatable());
+
+        for (int i = 0; i < 2; i++) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            entity.writeTo(outputStream);
+
+            final String[] parsedValues;
+            try (final InputStream inputStream =
+                         new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+                parsedValues = JsonUtils.FAST_MAPPER.readValue(inputStream, String[].class);
+            }
+
+            Assert.assertEquals("invalid values parsed for write " + i, values, Arrays.asList(parsedValues));
+        }
+    }
+
+}
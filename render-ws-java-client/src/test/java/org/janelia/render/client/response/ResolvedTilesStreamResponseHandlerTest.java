@@ -0,0 +1,61 @@
+package org.janelia.render.client.response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResolvedTilesStreamResponseHandler} class.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTilesStreamResponseHandlerTest {
+
+    @Test
+    public void testHandleResponse() throws Exception {
+
+        final String json =
+                "{\n" +
+                "  \"unknownField\": { \"a\": [ 1, 2 ] },\n" +
+                "  \"transformIdToSpecMap\": {\n" +
+                "    \"t1\": { \"type\": \"leaf\", \"id\": \"t1\", \"className\": \"mpicbg.trakem2.transform.AffineModel2D\", \"dataString\": \"1 0 0 1 0 0\" },\n" +
+                "    \"t2\": { \"type\": \"leaf\", \"id\": \"t2\", \"className\": \"mpicbg.trakem2.transform.AffineModel2D\", \"dataString\": \"1 0 0 1 9 9\" }\n" +
+                "  },\n" +
+                "  \"tileIdToSpecMap\": {\n" +
+                "    \"tile-a\": { \"tileId\": \"tile-a\", \"z\": 1.0 },\n" +
+                "    \"tile-b\": { \"tileId\": \"tile-b\", \"z\": 1.0 },\n" +
+                "    \"tile-c\": { \"tileId\": \"tile-c\", \"z\": 2.0 }\n" +
+                "  }\n" +
+                "}";
+
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        final StringEntity entity = new StringEntity(json, "UTF-8");
+        entity.setContentType(ContentType.APPLICATION_JSON.getMimeType());
+        response.setEntity(entity);
+
+        final List<TransformSpec> transformSpecs = new ArrayList<>();
+        final List<TileSpec> tileSpecs = new ArrayList<>();
+        final ResolvedTilesStreamResponseHandler handler =
+                new ResolvedTilesStreamResponseHandler("GET test", transformSpecs::add, tileSpecs::add);
+
+        final Long tileCount = handler.handleResponse(response);
+
+        Assert.assertEquals("invalid tile count returned", 3L, tileCount.longValue());
+        Assert.assertEquals("invalid number of transform specs parsed", 2, transformSpecs.size());
+        Assert.assertEquals("invalid number of tile specs parsed", 3, tileSpecs.size());
+        Assert.assertEquals("invalid transform id parsed", "t2", transformSpecs.get(1).getId());
+        Assert.assertEquals("invalid tile id parsed", "tile-c", tileSpecs.get(2).getTileId());
+        Assert.assertEquals("invalid tile z parsed", 2.0, tileSpecs.get(2).getZ(), 0.0);
+    }
+
+}
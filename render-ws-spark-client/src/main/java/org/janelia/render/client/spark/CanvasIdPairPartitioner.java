@@ -0,0 +1,195 @@
+package org.janelia.render.client.spark;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.spark.SparkEnv;
+import org.apache.spark.api.java.JavaRDD;
+import org.apache.spark.api.java.JavaSparkContext;
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.match.OrderedCanvasIdPair;
+import org.janelia.render.client.cache.CanvasDataCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Orders canvas pairs so that the contiguous slices created by {@link JavaSparkContext#parallelize}
+ * contain connected blocks of canvases.
+ *
+ * Pairs are visited in breadth first order of the canvas connectivity graph (starting from the
+ * lowest canvas in each connected component), emitting all unvisited pairs for each canvas when
+ * it is reached.  Pairs that share a canvas therefore end up next to each other (and in the same partition)
+ * instead of being scattered across executors, so each canvas' data (e.g. rendered images or features)
+ * is loaded by as few executors as possible.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairPartitioner implements Serializable {
+
+    private final int numberOfPartitions;
+
+    /**
+     * @param  numberOfPartitions  number of partitions (slices) for the pairs.
+     */
+    public CanvasIdPairPartitioner(final int numberOfPartitions) {
+        this.numberOfPartitions = numberOfPartitions;
+    }
+
+    public int getNumberOfPartitions() {
+        return numberOfPartitions;
+    }
+
+    /**
+     * @return the specified pairs ordered by canvas connectivity.
+     */
+    public List<OrderedCanvasIdPair> orderPairs(final List<OrderedCanvasIdPair> pairs) {
+
+        // sorted map so that traversal (and therefore partitioning) is deterministic
+        final Map<CanvasId, List<Integer>> canvasToPairIndexes = new TreeMap<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            final OrderedCanvasIdPair pair = pairs.get(i);
+            canvasToPairIndexes.computeIfAbsent(pair.getP(), k -> new ArrayList<>()).add(i);
+            canvasToPairIndexes.computeIfAbsent(pair.getQ(), k -> new ArrayList<>()).add(i);
+        }
+
+        final List<OrderedCanvasIdPair> orderedPairs = new ArrayList<>(pairs.size());
+        final boolean[] isEmitted = new boolean[pairs.size()];
+        final Set<CanvasId> visitedCanvasIds = new HashSet<>(canvasToPairIndexes.size() * 2);
+        final ArrayDeque<CanvasId> queue = new ArrayDeque<>();
+
+        for (final CanvasId startCanvasId : canvasToPairIndexes.keySet()) {
+
+            if (visitedCanvasIds.add(startCanvasId)) {
+
+                queue.add(startCanvasId);
+
+                while (! queue.isEmpty()) {
+                    final CanvasId canvasId = queue.remove();
+                    for (final Integer pairIndex : canvasToPairIndexes.get(canvasId)) {
+                        if (! isEmitted[pairIndex]) {
+                            isEmitted[pairIndex] = true;
+                            final OrderedCanvasIdPair pair = pairs.get(pairIndex);
+                            orderedPairs.add(pair);
+                            final CanvasId otherCanvasId = canvasId.equals(pair.getP()) ? pair.getQ() : pair.getP();
+                            if (visitedCanvasIds.add(otherCanvasId)) {
+                                queue.add(otherCanvasId);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return orderedPairs;
+    }
+
+    /**
+     * @return number of times canvas data must be loaded to process the specified pairs
+     *         if they are split into contiguous slices the same way {@link JavaSparkContext#parallelize} does
+     *         and each slice loads each of its canvases once.
+     */
+    public long getExpectedNumberOfCanvasLoads(final List<OrderedCanvasIdPair> pairs) {
+        long loadCount = 0;
+        final long size = pairs.size();
+        final Set<CanvasId> sliceCanvasIds = new HashSet<>();
+        for (int slice = 0; slice < numberOfPartitions; slice++) {
+            final int start = (int) ((slice * size) / numberOfPartitions);
+            final int end = (int) (((slice + 1) * size) / numberOfPartitions);
+            sliceCanvasIds.clear();
+            for (final OrderedCanvasIdPair pair : pairs.subList(start, end)) {
+                sliceCanvasIds.add(pair.getP());
+                sliceCanvasIds.add(pair.getQ());
+            }
+            loadCount += sliceCanvasIds.size();
+        }
+        return loadCount;
+    }
+
+    /**
+     * @return expected fraction of canvas requests (two per pair) that are cache hits
+     *         (see {@link #getExpectedNumberOfCanvasLoads}).
+     */
+    public double getExpectedCacheHitRatio(final List<OrderedCanvasIdPair> pairs) {
+        final long requestCount = 2L * pairs.size();
+        return requestCount == 0 ? 0.0 : 1.0 - (getExpectedNumberOfCanvasLoads(pairs) / (double) requestCount);
+    }
+
+    /**
+     * Orders the specified pairs by canvas connectivity and distributes them across this partitioner's
+     * number of partitions.
+     *
+     * @return RDD of ordered pairs.
+     */
+    public JavaRDD<OrderedCanvasIdPair> parallelize(final JavaSparkContext sparkContext,
+                                                    final List<OrderedCanvasIdPair> pairs) {
+
+        final List<OrderedCanvasIdPair> orderedPairs = orderPairs(pairs);
+
+        LOG.info("parallelize: ordered {} pairs for {} partitions, expected cache hit ratio is {} " +
+                 "(was {} with original pair order)",
+                 pairs.size(), numberOfPartitions,
+                 String.format("%4.2f", getExpectedCacheHitRatio(orderedPairs)),
+                 String.format("%4.2f", getExpectedCacheHitRatio(pairs)));
+
+        return sparkContext.parallelize(orderedPairs, numberOfPartitions);
+    }
+
+    /**
+     * Snapshot of an executor's (cumulative) shared canvas data cache statistics.
+     */
+    public static class ExecutorCacheStats implements Serializable {
+
+        private final String executorId;
+        private final long hitCount;
+        private final long missCount;
+
+        public ExecutorCacheStats(final CanvasDataCache dataCache) {
+            this.executorId = SparkEnv.get() == null ? "driver" : SparkEnv.get().executorId();
+            this.hitCount = dataCache.stats().hitCount();
+            this.missCount = dataCache.stats().missCount();
+        }
+
+        @Override
+        public String toString() {
+            return "{'executorId': '" + executorId + "', 'hitCount': " + hitCount + ", 'missCount': " + missCount + '}';
+        }
+    }
+
+    /**
+     * Logs the actual cache hit ratio across all executors.
+     *
+     * @param  executorCacheStats  cache stats snapshots collected at the end of each partition
+     *                             (only the latest snapshot for each executor is used since stats are cumulative).
+     */
+    public static void logActualCacheHitRatio(final Collection<ExecutorCacheStats> executorCacheStats) {
+
+        final Map<String, ExecutorCacheStats> latestStats = new HashMap<>();
+        for (final ExecutorCacheStats stats : executorCacheStats) {
+            latestStats.merge(stats.executorId, stats,
+                              (a, b) -> (a.hitCount + a.missCount) >= (b.hitCount + b.missCount) ? a : b);
+        }
+
+        long hitCount = 0;
+        long missCount = 0;
+        for (final ExecutorCacheStats stats : latestStats.values()) {
+            hitCount += stats.hitCount;
+            missCount += stats.missCount;
+        }
+
+        final long requestCount = hitCount + missCount;
+        final double hitRatio = requestCount == 0 ? 0.0 : hitCount / (double) requestCount;
+
+        LOG.info("logActualCacheHitRatio: actual cache hit ratio is {} ({} hits and {} misses on {} executors)",
+                 String.format("%4.2f", hitRatio), hitCount, missCount, latestStats.size());
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasIdPairPartitioner.class);
+}
@@ -17,6 +17,7 @@ import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.util.CollectionAccumulator;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
 import org.janelia.alignment.match.CanvasId;
@@ -31,6 +32,7 @@ import org.janelia.render.client.parameter.FeatureRenderParameters;
 import org.janelia.render.client.parameter.MatchWebServiceParameters;
 import org.janelia.render.client.cache.CanvasDataCache;
 import org.janelia.render.client.cache.CanvasFileLoader;
+import org.janelia.render.client.spark.CanvasIdPairPartitioner.ExecutorCacheStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -155,6 +157,7 @@ public class DMeshPointMatchClient
                         parameters.featureRender.fillWithNoise,
                         parameters.format,
                         new File(parameters.imageCacheParentDirectory));
+        fileLoader.setMaxImageCacheBytes(parameters.featureRender.getMaxSourceImageCacheBytes());
 
         final DMeshTool dMeshTool = new DMeshTool(new File(parameters.dMeshScript),
                                                   new File(parameters.dMeshParameters),
@@ -168,8 +171,12 @@ public class DMeshPointMatchClient
         final Broadcast<DMeshTool> broadcastDMeshTool = sparkContext.broadcast(dMeshTool);
 
 
+        final CollectionAccumulator<ExecutorCacheStats> cacheStatsAccumulator =
+                sparkContext.sc().collectionAccumulator("canvasDataCacheStats");
+
+        final CanvasIdPairPartitioner pairPartitioner = new CanvasIdPairPartitioner(sparkContext.defaultParallelism());
         final JavaRDD<OrderedCanvasIdPair> rddCanvasIdPairs =
-                sparkContext.parallelize(renderableCanvasIdPairs.getNeighborPairs());
+                pairPartitioner.parallelize(sparkContext, renderableCanvasIdPairs.getNeighborPairs());
 
         final JavaRDD<CanvasMatches> rddMatches =
                 rddCanvasIdPairs.mapPartitionsWithIndex(
@@ -232,6 +239,8 @@ public class DMeshPointMatchClient
                         }
                     }
 
+                    cacheStatsAccumulator.add(new ExecutorCacheStats(dataCache));
+
                     log.info("rddMatches: derived matches for {} out of {} pairs, cache stats are {}",
                              matchList.size(), pairCount, dataCache.stats());
 
@@ -261,6 +270,8 @@ public class DMeshPointMatchClient
         LOG.info("run: collected stats");
         LOG.info("run: saved {} match pairs on {} partitions", total, matchPairCountList.size());
 
+        CanvasIdPairPartitioner.logActualCacheHitRatio(cacheStatsAccumulator.value());
+
         final List<Boolean> cleanupList = new ArrayList<>(numPartitions);
         for (int i = 0; i < numPartitions; i++) {
             cleanupList.add(false);
@@ -8,7 +8,9 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
@@ -17,7 +19,7 @@ import mpicbg.imagefeatures.FloatArray2DSIFT;
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
-import org.apache.spark.api.java.function.Function;
+import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.broadcast.Broadcast;
 import org.janelia.alignment.match.CanvasFeatureExtractor;
 import org.janelia.alignment.match.CanvasFeatureList;
@@ -62,10 +64,16 @@ public class FeatureClient
 
         @Parameter(
                 names = "--rootFeatureDirectory",
-                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz)",
+                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz or .features.bin)",
                 required = true)
         public String rootFeatureDirectory;
 
+        @Parameter(
+                names = "--featureStorageFormat",
+                description = "Format for saved feature lists (JSON, BINARY, or QUANTIZED_BINARY)"
+        )
+        public CanvasFeatureList.StorageFormat storageFormat = CanvasFeatureList.StorageFormat.JSON;
+
         @Parameter(
                 names = "--pairJson",
                 description = "JSON file where tile pairs are stored (.json, .gz, or .zip)",
@@ -141,7 +149,8 @@ public class FeatureClient
                                         parameters.featureRender,
                                         parameters.featureRenderClip,
                                         parameters.featureExtraction,
-                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile());
+                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile(),
+                                        parameters.storageFormat);
     }
 
     private static void generateFeatureListsForCanvases(final JavaSparkContext sparkContext,
@@ -150,7 +159,8 @@ public class FeatureClient
                                                         final FeatureRenderParameters featureRenderParameters,
                                                         final FeatureRenderClipParameters featureRenderClipParameters,
                                                         final FeatureExtractionParameters featureExtractionParameters,
-                                                        final File rootDirectory)
+                                                        final File rootDirectory,
+                                                        final CanvasFeatureList.StorageFormat storageFormat)
             throws URISyntaxException {
 
         final CanvasRenderParametersUrlTemplate urlTemplateForRun =
@@ -173,35 +183,53 @@ public class FeatureClient
                 new CanvasFeatureExtractor(siftParameters,
                                            featureExtractionParameters.minScale,
                                            featureExtractionParameters.maxScale,
-                                           featureRenderParameters.fillWithNoise);
+                                           featureRenderParameters.fillWithNoise,
+                                           featureExtractionParameters.numberOfThreads);
 
         final CanvasFeatureListLoader featureLoader = new CanvasFeatureListLoader(urlTemplateForRun,
                                                                                   featureExtractor);
+        featureLoader.setMaxImageCacheBytes(featureRenderParameters.getMaxSourceImageCacheBytes());
 
         final double renderScale = featureRenderParameters.renderScale;
 
         // broadcast to all nodes
         final Broadcast<CanvasFeatureListLoader> broadcastFeatureLoader = sparkContext.broadcast(featureLoader);
 
-        final JavaRDD<CanvasId> rddCanvasIds = sparkContext.parallelize(canvasIdList);
+        // sort canvases so that canvases for the same (or neighboring) tiles tend to be in the same partition
+        // and can share cached source images
+        final List<CanvasId> sortedCanvasIdList = new ArrayList<>(canvasIdList);
+        Collections.sort(sortedCanvasIdList);
+
+        final JavaRDD<CanvasId> rddCanvasIds = sparkContext.parallelize(sortedCanvasIdList);
 
-        final JavaRDD<Integer> rddCanvasCounts = rddCanvasIds.map(
-                (Function<CanvasId, Integer>) canvasId -> {
+        final JavaRDD<Integer> rddCanvasCounts = rddCanvasIds.mapPartitionsWithIndex(
+                (Function2<Integer, Iterator<CanvasId>, Iterator<Integer>>) (partitionIndex, canvasIdIterator) -> {
 
-                    LogUtilities.setupExecutorLog4j(canvasId.getGroupId());
+                    LogUtilities.setupExecutorLog4j("partition " + partitionIndex);
+
+                    final List<CanvasId> partitionCanvasIds = new ArrayList<>();
+                    canvasIdIterator.forEachRemaining(partitionCanvasIds::add);
 
                     final CanvasFeatureListLoader localFeatureLoader = broadcastFeatureLoader.getValue();
-                    final CachedCanvasFeatures canvasFeatures = localFeatureLoader.load(canvasId);
-                    final CanvasFeatureList canvasFeatureList =
-                            new CanvasFeatureList(canvasId,
-                                                  localFeatureLoader.getRenderParametersUrl(canvasId),
-                                                  renderScale,
-                                                  localFeatureLoader.getClipWidth(),
-                                                  localFeatureLoader.getClipHeight(),
-                                                  canvasFeatures.getFeatureList());
-                    CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList);
-                    return 1;
-                }
+
+                    // fetch render parameters for all of the partition's canvases with one request
+                    localFeatureLoader.prefetchRenderParameters(partitionCanvasIds);
+
+                    for (final CanvasId canvasId : partitionCanvasIds) {
+                        final CachedCanvasFeatures canvasFeatures = localFeatureLoader.load(canvasId);
+                        final CanvasFeatureList canvasFeatureList =
+                                new CanvasFeatureList(canvasId,
+                                                      localFeatureLoader.getRenderParametersUrl(canvasId),
+                                                      renderScale,
+                                                      localFeatureLoader.getClipWidth(),
+                                                      localFeatureLoader.getClipHeight(),
+                                                      canvasFeatures.getFeatureList());
+                        CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList, storageFormat);
+                    }
+
+                    return Collections.singletonList(partitionCanvasIds.size()).iterator();
+                },
+                true
         );
 
         final List<Integer> canvasCountList = rddCanvasCounts.collect();
@@ -8,13 +8,16 @@ import java.io.Serializable;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.spark.SparkConf;
 import org.apache.spark.api.java.JavaRDD;
 import org.apache.spark.api.java.JavaSparkContext;
 import org.apache.spark.api.java.function.Function2;
 import org.apache.spark.broadcast.Broadcast;
+import org.apache.spark.util.CollectionAccumulator;
 import org.janelia.alignment.match.CanvasFeatureMatchResult;
 import org.janelia.alignment.match.CanvasFeatureMatcher;
 import org.janelia.alignment.match.CanvasId;
@@ -33,11 +36,13 @@ import org.janelia.render.client.parameter.CommandLineParameters;
 import org.janelia.render.client.parameter.FeatureRenderParameters;
 import org.janelia.render.client.parameter.FeatureStorageParameters;
 import org.janelia.render.client.parameter.MatchWebServiceParameters;
+import org.janelia.render.client.spark.CanvasIdPairPartitioner.ExecutorCacheStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static org.janelia.render.client.SIFTPointMatchClient.getCanvasFeatureExtractor;
 import static org.janelia.render.client.SIFTPointMatchClient.getCanvasFeatureMatcher;
+import static org.janelia.render.client.SIFTPointMatchClient.getScaledSearchRadius;
 
 /**
  * Spark client for generating and storing SIFT point matches for a specified set of canvas (e.g. tile) pairs.
@@ -184,9 +189,13 @@ public class SIFTPointMatchClient
                         getCanvasFeatureExtractor(featureExtractionParameters, featureRenderParameters),
                         featureStorageParameters.getRootFeatureDirectory(),
                         featureStorageParameters.requireStoredFeatures);
+        featureLoader.setStorageFormat(featureStorageParameters.storageFormat);
+        featureLoader.setMaxImageCacheBytes(featureRenderParameters.getMaxSourceImageCacheBytes());
+        featureLoader.setLoadCanvasOrigins(matchDerivationParameters.matchSearchRadius != null);
 
         final double renderScale = featureRenderParameters.renderScale;
         final Double pairMaxDeltaStandardDeviation = matchDerivationParameters.pairMaxDeltaStandardDeviation;
+        final Double scaledSearchRadius = getScaledSearchRadius(matchDerivationParameters, renderScale);
 
         // broadcast to all nodes
         final Broadcast<Long> broadcastCacheMaxKilobytes = sparkContext.broadcast(cacheMaxKilobytes);
@@ -194,8 +203,12 @@ public class SIFTPointMatchClient
         final Broadcast<CanvasFeatureMatcher> broadcastFeatureMatcher =
                 sparkContext.broadcast(getCanvasFeatureMatcher(matchDerivationParameters));
 
+        final CollectionAccumulator<ExecutorCacheStats> cacheStatsAccumulator =
+                sparkContext.sc().collectionAccumulator("canvasDataCacheStats");
+
+        final CanvasIdPairPartitioner pairPartitioner = new CanvasIdPairPartitioner(sparkContext.defaultParallelism());
         final JavaRDD<OrderedCanvasIdPair> rddCanvasIdPairs =
-                sparkContext.parallelize(renderableCanvasIdPairs.getNeighborPairs());
+                pairPartitioner.parallelize(sparkContext, renderableCanvasIdPairs.getNeighborPairs());
 
         final JavaRDD<CanvasMatches> rddMatches = rddCanvasIdPairs.mapPartitionsWithIndex(
                 (Function2<Integer, Iterator<OrderedCanvasIdPair>, Iterator<CanvasMatches>>) (partitionIndex, pairIterator) -> {
@@ -209,18 +222,26 @@ public class SIFTPointMatchClient
                                                            broadcastFeatureLoader.getValue());
                     final CanvasFeatureMatcher featureMatcher = broadcastFeatureMatcher.getValue();
 
+                    // fetch render parameters for all of the partition's canvases with one request
+                    final List<OrderedCanvasIdPair> partitionPairs = new ArrayList<>();
+                    final Set<CanvasId> partitionCanvasIds = new LinkedHashSet<>();
+                    pairIterator.forEachRemaining(pair -> {
+                        partitionPairs.add(pair);
+                        partitionCanvasIds.add(pair.getP());
+                        partitionCanvasIds.add(pair.getQ());
+                    });
+                    dataCache.prefetchRenderParameters(partitionCanvasIds);
+
                     final List<CanvasMatches> matchList = new ArrayList<>();
                     int pairCount = 0;
 
-                    OrderedCanvasIdPair pair;
                     CanvasId p;
                     CanvasId q;
                     CachedCanvasFeatures pFeatures;
                     CachedCanvasFeatures qFeatures;
                     CanvasFeatureMatchResult matchResult;
-                    while (pairIterator.hasNext()) {
+                    for (final OrderedCanvasIdPair pair : partitionPairs) {
 
-                        pair = pairIterator.next();
                         pairCount++;
 
                         p = pair.getP();
@@ -231,8 +252,12 @@ public class SIFTPointMatchClient
 
                         log.info("derive matches between {} and {}", p, q);
 
+                        final double[] predictedOffset =
+                                CachedCanvasFeatures.getPredictedOffset(pFeatures, qFeatures, renderScale);
                         matchResult = featureMatcher.deriveMatchResult(pFeatures.getFeatureList(),
-                                                                       qFeatures.getFeatureList());
+                                                                       qFeatures.getFeatureList(),
+                                                                       predictedOffset,
+                                                                       scaledSearchRadius);
 
                         final double[] pClipOffsets = pFeatures.getClipOffsets();
                         final double[] qClipOffsets = qFeatures.getClipOffsets();
@@ -248,6 +273,8 @@ public class SIFTPointMatchClient
                                                            matchList);
                     }
 
+                    cacheStatsAccumulator.add(new ExecutorCacheStats(dataCache));
+
                     log.info("derived matches for {} out of {} pairs, cache stats are {}",
                              matchList.size(), pairCount, dataCache.stats());
 
@@ -267,6 +294,8 @@ public class SIFTPointMatchClient
 
         LOG.info("generateMatchesForPairs: collected stats");
 
+        CanvasIdPairPartitioner.logActualCacheHitRatio(cacheStatsAccumulator.value());
+
         long totalSaved = 0;
         for (final Integer matchCount : matchPairCountList) {
             totalSaved += matchCount;
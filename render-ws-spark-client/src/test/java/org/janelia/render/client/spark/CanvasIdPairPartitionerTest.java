@@ -0,0 +1,100 @@
+package org.janelia.render.client.spark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.janelia.alignment.match.CanvasId;
+import org.janelia.alignment.match.OrderedCanvasIdPair;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CanvasIdPairPartitioner} class.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasIdPairPartitionerTest {
+
+    @Test
+    public void testOrderPairs() throws Exception {
+
+        final List<OrderedCanvasIdPair> pairs = buildGridPairs(5, 20, 20);
+        Collections.shuffle(pairs, new Random(13));
+
+        final CanvasIdPairPartitioner partitioner = new CanvasIdPairPartitioner(20);
+        final List<OrderedCanvasIdPair> orderedPairs = partitioner.orderPairs(pairs);
+
+        Assert.assertEquals("invalid number of ordered pairs", pairs.size(), orderedPairs.size());
+        Assert.assertEquals("ordered pairs should contain all original pairs",
+                            new HashSet<>(pairs), new HashSet<>(orderedPairs));
+
+        final double shuffledHitRatio = partitioner.getExpectedCacheHitRatio(pairs);
+        final double orderedHitRatio = partitioner.getExpectedCacheHitRatio(orderedPairs);
+
+        Assert.assertTrue("ordered hit ratio " + orderedHitRatio + " should be much better than " +
+                          "shuffled hit ratio " + shuffledHitRatio,
+                          orderedHitRatio > (shuffledHitRatio + 0.3));
+    }
+
+    @Test
+    public void testExpectedNumberOfCanvasLoads() throws Exception {
+
+        final CanvasId a = new CanvasId("1.0", "a");
+        final CanvasId b = new CanvasId("1.0", "b");
+        final CanvasId c = new CanvasId("1.0", "c");
+        final CanvasId d = new CanvasId("1.0", "d");
+
+        final List<OrderedCanvasIdPair> pairs = new ArrayList<>();
+        pairs.add(new OrderedCanvasIdPair(a, b));
+        pairs.add(new OrderedCanvasIdPair(c, d));
+        pairs.add(new OrderedCanvasIdPair(b, c));
+        pairs.add(new OrderedCanvasIdPair(a, c));
+
+        final CanvasIdPairPartitioner partitioner = new CanvasIdPairPartitioner(2);
+
+        // slices: [ab, cd] and [bc, ac]
+        Assert.assertEquals("invalid number of loads for original order",
+                            7, partitioner.getExpectedNumberOfCanvasLoads(pairs));
+
+        // slices: [ab, ac] and [bc, cd]
+        final List<OrderedCanvasIdPair> orderedPairs = partitioner.orderPairs(pairs);
+        Assert.assertEquals("invalid number of loads for ordered pairs",
+                            6, partitioner.getExpectedNumberOfCanvasLoads(orderedPairs));
+    }
+
+    /**
+     * @return montage (row and column neighbor) and cross layer pairs for a grid of canvases in each layer.
+     */
+    private static List<OrderedCanvasIdPair> buildGridPairs(final int numberOfLayers,
+                                                            final int numberOfRows,
+                                                            final int numberOfColumns) {
+        final List<OrderedCanvasIdPair> pairs = new ArrayList<>();
+        for (int z = 0; z < numberOfLayers; z++) {
+            for (int row = 0; row < numberOfRows; row++) {
+                for (int column = 0; column < numberOfColumns; column++) {
+                    final CanvasId canvasId = buildCanvasId(z, row, column);
+                    if (column > 0) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, buildCanvasId(z, row, column - 1)));
+                    }
+                    if (row > 0) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, buildCanvasId(z, row - 1, column)));
+                    }
+                    if (z > 0) {
+                        pairs.add(new OrderedCanvasIdPair(canvasId, buildCanvasId(z - 1, row, column)));
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private static CanvasId buildCanvasId(final int z,
+                                          final int row,
+                                          final int column) {
+        return new CanvasId(z + ".0", String.format("%d.%03d.%03d", z, row, column));
+    }
+
+}
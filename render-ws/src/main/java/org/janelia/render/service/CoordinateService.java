@@ -2,8 +2,13 @@ package org.janelia.render.service;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -16,11 +21,18 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.models.CoordinateTransformMesh;
+import mpicbg.models.NoninvertibleModelException;
+
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.model.ObjectNotFoundException;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.SharedMappingThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -195,15 +207,16 @@ public class CoordinateService {
                  owner, project, stack, localCoordinatesList.size());
 
         final long startTime = System.currentTimeMillis();
-        long lastStatusTime = startTime;
-        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(localCoordinatesList.size());
         final StackId stackId = new StackId(owner, project, stack);
-        TileSpec tileSpec;
+        final int numberOfPoints = localCoordinatesList.size();
+        final TileCoordinates[] worldCoordinatesArray = new TileCoordinates[numberOfPoints];
+
+        // group points by tile so that each tile spec is retrieved and each transform list is built once
+        final Map<String, List<Integer>> tileIdToPointIndexes = new LinkedHashMap<>();
         TileCoordinates coordinates;
         String tileId;
         double[] local;
-        int errorCount = 0;
-        for (int i = 0; i < localCoordinatesList.size(); i++) {
+        for (int i = 0; i < numberOfPoints; i++) {
 
             coordinates = localCoordinatesList.get(i);
             try {
@@ -224,35 +237,37 @@ public class CoordinateService {
                     throw new IllegalArgumentException("local values must include both x and y");
                 }
 
-                tileSpec = renderDao.getTileSpec(stackId, tileId, true);
-                worldCoordinatesList.add(TileCoordinates.getWorldCoordinates(tileSpec, local[0], local[1]));
+                tileIdToPointIndexes.computeIfAbsent(tileId, k -> new ArrayList<>()).add(i);
 
             } catch (final Throwable t) {
+                worldCoordinatesArray[i] = buildErrorCoordinates("getWorldCoordinates", i, coordinates, true, t);
+            }
+        }
 
-                LOG.warn("getWorldCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
-
-                errorCount++;
+        final Map<String, TileSpec> tileIdToSpecMap = getTileIdToSpecMap(stackId, tileIdToPointIndexes.keySet());
 
-                if (coordinates == null) {
-                    coordinates = TileCoordinates.buildLocalInstance(null, null);
-                }
-                coordinates.setError(t.getMessage());
+        final List<Map.Entry<String, List<Integer>>> tileGroups = new ArrayList<>(tileIdToPointIndexes.entrySet());
 
-                worldCoordinatesList.add(coordinates);
-            }
+        SharedMappingThreadPool.getInstance().forEach(
+                tileGroups,
+                SharedMappingThreadPool.getThreadsPerRequest(),
+                tileGroup -> mapTileGroupToWorld(stackId,
+                                                 tileIdToSpecMap.get(tileGroup.getKey()),
+                                                 tileGroup,
+                                                 localCoordinatesList,
+                                                 worldCoordinatesArray));
 
-            if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
-                lastStatusTime = System.currentTimeMillis();
-                LOG.info("getWorldCoordinates: transformed {} out of {} points",
-                         worldCoordinatesList.size(), localCoordinatesList.size());
+        int errorCount = 0;
+        for (final TileCoordinates worldCoordinates : worldCoordinatesArray) {
+            if (worldCoordinates.hasError()) {
+                errorCount++;
             }
-
         }
 
-        LOG.info("getWorldCoordinates: exit, transformed {} points with {} errors in {} ms",
-                 worldCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+        LOG.info("getWorldCoordinates: exit, transformed {} points in {} tiles with {} errors in {} ms",
+                 numberOfPoints, tileGroups.size(), errorCount, (System.currentTimeMillis() - startTime));
 
-        return worldCoordinatesList;
+        return Arrays.asList(worldCoordinatesArray);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/local-to-world-coordinates")
@@ -402,20 +417,18 @@ public class CoordinateService {
                  owner, project, stack, z, worldCoordinatesList.size());
 
         final long startTime = System.currentTimeMillis();
-        long lastStatusTime = startTime;
+        final StackId stackId = new StackId(owner, project, stack);
+        final int numberOfPoints = worldCoordinatesList.size();
 
-        double currentZ = -1;
-        if (z != null) {
-            currentZ = z;
-        }
+        @SuppressWarnings("unchecked")
+        final List<TileCoordinates>[] localCoordinatesArray = new List[numberOfPoints];
 
-        final List<List<TileCoordinates>> localCoordinatesList = new ArrayList<>(worldCoordinatesList.size());
-        final StackId stackId = new StackId(owner, project, stack);
-        List<TileSpec> tileSpecList;
+        // group points by layer so that tile ids for each layer can be found with one (cached) index
+        final Map<Double, List<Integer>> zToPointIndexes = new LinkedHashMap<>();
         TileCoordinates coordinates;
         double[] world;
-        int errorCount = 0;
-        for (int i = 0; i < worldCoordinatesList.size(); i++) {
+        Double currentZ;
+        for (int i = 0; i < numberOfPoints; i++) {
 
             coordinates = worldCoordinatesList.get(i);
             try {
@@ -438,42 +451,296 @@ public class CoordinateService {
 
                 } else if (world.length < 2) {
                     throw new IllegalArgumentException("world values must include both x and y");
+                } else {
+                    currentZ = z;
                 }
 
-                tileSpecList = renderDao.getTileSpecs(stackId, world[0], world[1], currentZ);
-                localCoordinatesList.add(TileCoordinates.getLocalCoordinates(tileSpecList,
-                                                                             world[0],
-                                                                             world[1]));
+                zToPointIndexes.computeIfAbsent(currentZ, k -> new ArrayList<>()).add(i);
+
+            } catch (final Throwable t) {
+                localCoordinatesArray[i] = Collections.singletonList(
+                        buildErrorCoordinates("getLocalCoordinates", i, coordinates, false, t));
+            }
+        }
+
+        // find the (sorted) ids of the tiles that contain each point and then group points by tile
+        final List<List<String>> tileIdsForPoints = new ArrayList<>(Collections.nCopies(numberOfPoints, null));
+        final Map<String, List<Integer>> tileIdToPointIndexes = new LinkedHashMap<>();
+        for (final Map.Entry<Double, List<Integer>> layerGroup : zToPointIndexes.entrySet()) {
+
+            final Double layerZ = layerGroup.getKey();
+            final List<Integer> pointIndexes = layerGroup.getValue();
+
+            final List<double[]> layerPoints = new ArrayList<>(pointIndexes.size());
+            for (final Integer i : pointIndexes) {
+                layerPoints.add(worldCoordinatesList.get(i).getWorld());
+            }
+
+            try {
+
+                final List<List<String>> layerTileIds = renderDao.getTileIdsForPoints(stackId, layerZ, layerPoints);
+
+                for (int p = 0; p < pointIndexes.size(); p++) {
+                    final int i = pointIndexes.get(p);
+                    final List<String> tileIds = layerTileIds.get(p);
+                    if (tileIds.size() == 0) {
+                        final double[] point = layerPoints.get(p);
+                        final IllegalArgumentException e = new IllegalArgumentException(
+                                "no tile specifications found in " + stackId + " for world coordinates x=" +
+                                point[0] + ", y=" + point[1] + ", z=" + layerZ);
+                        localCoordinatesArray[i] = Collections.singletonList(
+                                buildErrorCoordinates("getLocalCoordinates", i, worldCoordinatesList.get(i), false, e));
+                    } else {
+                        tileIdsForPoints.set(i, tileIds);
+                        for (final String tileId : tileIds) {
+                            tileIdToPointIndexes.computeIfAbsent(tileId, k -> new ArrayList<>()).add(i);
+                        }
+                    }
+                }
 
             } catch (final Throwable t) {
+                for (final Integer i : pointIndexes) {
+                    localCoordinatesArray[i] = Collections.singletonList(
+                            buildErrorCoordinates("getLocalCoordinates", i, worldCoordinatesList.get(i), false, t));
+                }
+            }
+        }
 
-                LOG.warn("getLocalCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
+        final Map<String, TileSpec> tileIdToSpecMap = getTileIdToSpecMap(stackId, tileIdToPointIndexes.keySet());
 
+        // locals for each point, ordered the same way as the point's tile ids (null if not invertible)
+        final double[][][] localsForPoints = new double[numberOfPoints][][];
+        for (int i = 0; i < numberOfPoints; i++) {
+            final List<String> tileIds = tileIdsForPoints.get(i);
+            if (tileIds != null) {
+                localsForPoints[i] = new double[tileIds.size()][];
+            }
+        }
+
+        // failures (other than non-invertible points) for each point, reported instead of the point's locals
+        final Throwable[] failuresForPoints = new Throwable[numberOfPoints];
+
+        final List<Map.Entry<String, List<Integer>>> tileGroups = new ArrayList<>(tileIdToPointIndexes.entrySet());
+
+        SharedMappingThreadPool.getInstance().forEach(
+                tileGroups,
+                SharedMappingThreadPool.getThreadsPerRequest(),
+                tileGroup -> mapTileGroupToLocal(tileIdToSpecMap.get(tileGroup.getKey()),
+                                                 tileGroup,
+                                                 worldCoordinatesList,
+                                                 tileIdsForPoints,
+                                                 localsForPoints,
+                                                 failuresForPoints));
+
+        int errorCount = 0;
+        for (int i = 0; i < numberOfPoints; i++) {
+            if (failuresForPoints[i] != null) {
+                localCoordinatesArray[i] = Collections.singletonList(
+                        buildErrorCoordinates("getLocalCoordinates", i, worldCoordinatesList.get(i), false,
+                                              failuresForPoints[i]));
+            } else if (localsForPoints[i] != null) {
+                try {
+                    localCoordinatesArray[i] = buildLocalCoordinatesList(tileIdsForPoints.get(i),
+                                                                         localsForPoints[i],
+                                                                         worldCoordinatesList.get(i).getWorld());
+                } catch (final Throwable t) {
+                    localCoordinatesArray[i] = Collections.singletonList(
+                            buildErrorCoordinates("getLocalCoordinates", i, worldCoordinatesList.get(i), false, t));
+                }
+            }
+            if (localCoordinatesArray[i].get(0).hasError()) {
                 errorCount++;
+            }
+        }
 
-                if (coordinates == null) {
-                    coordinates = TileCoordinates.buildWorldInstance(null, null);
+        LOG.info("getLocalCoordinates: inversely transformed {} points in {} tiles with {} errors in {} ms",
+                 numberOfPoints, tileGroups.size(), errorCount, (System.currentTimeMillis() - startTime));
+
+        return Arrays.asList(localCoordinatesArray);
+    }
+
+    /**
+     * @return map of ids to resolved specs for the specified tiles (missing tiles are not included in the map).
+     */
+    private Map<String, TileSpec> getTileIdToSpecMap(final StackId stackId,
+                                                     final Collection<String> tileIds) {
+
+        final Map<String, TileSpec> tileIdToSpecMap = new HashMap<>(tileIds.size() * 2);
+
+        final List<String> tileIdList = new ArrayList<>(tileIds);
+        for (int fromIndex = 0; fromIndex < tileIdList.size(); fromIndex += TILE_SPEC_BATCH_SIZE) {
+            final int toIndex = Math.min(fromIndex + TILE_SPEC_BATCH_SIZE, tileIdList.size());
+            for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId, tileIdList.subList(fromIndex, toIndex))) {
+                tileIdToSpecMap.put(tileSpec.getTileId(), tileSpec);
+            }
+        }
+
+        return tileIdToSpecMap;
+    }
+
+    /**
+     * Maps the local coordinates for all points in the specified tile group to world coordinates
+     * using one transform list instance for the tile.
+     */
+    private static void mapTileGroupToWorld(final StackId stackId,
+                                            final TileSpec tileSpec,
+                                            final Map.Entry<String, List<Integer>> tileGroup,
+                                            final List<TileCoordinates> localCoordinatesList,
+                                            final TileCoordinates[] worldCoordinatesArray) {
+
+        final String tileId = tileGroup.getKey();
+        final List<Integer> pointIndexes = tileGroup.getValue();
+
+        CoordinateTransformList<CoordinateTransform> transformList = null;
+        Throwable tileFailure = null;
+        if (tileSpec == null) {
+            tileFailure = new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in " +
+                                                      stackId);
+        } else if (tileSpec.hasTransforms()) {
+            try {
+                transformList = tileSpec.getTransformList();
+            } catch (final Throwable t) {
+                tileFailure = t;
+            }
+        }
+
+        TileCoordinates coordinates;
+        double[] local;
+        double[] world;
+        for (final Integer i : pointIndexes) {
+            coordinates = localCoordinatesList.get(i);
+            if (tileFailure == null) {
+                try {
+                    local = coordinates.getLocal();
+                    world = new double[] { local[0], local[1] };
+                    if (transformList != null) {
+                        transformList.applyInPlace(world);
+                    }
+                    worldCoordinatesArray[i] = TileCoordinates.buildWorldInstance(tileId, appendZ(world, tileSpec));
+                } catch (final Throwable t) {
+                    worldCoordinatesArray[i] = buildErrorCoordinates("getWorldCoordinates", i, coordinates, true, t);
                 }
-                coordinates.setError(t.getMessage());
+            } else {
+                worldCoordinatesArray[i] = buildErrorCoordinates("getWorldCoordinates", i, coordinates, true,
+                                                                 tileFailure);
+            }
+        }
+    }
 
-                localCoordinatesList.add(Collections.singletonList(coordinates));
+    /**
+     * Inversely maps the world coordinates for all points in the specified tile group to local coordinates
+     * using one transform mesh instance for the tile.
+     * Non-invertible points (and points in tiles that cannot be retrieved) are left with null locals.
+     * Any other failure (e.g. a mesh that cannot be built) is saved for each point in the group
+     * so that the actual cause can be reported.
+     */
+    private static void mapTileGroupToLocal(final TileSpec tileSpec,
+                                            final Map.Entry<String, List<Integer>> tileGroup,
+                                            final List<TileCoordinates> worldCoordinatesList,
+                                            final List<List<String>> tileIdsForPoints,
+                                            final double[][][] localsForPoints,
+                                            final Throwable[] failuresForPoints) {
+
+        final String tileId = tileGroup.getKey();
+
+        if (tileSpec == null) {
+            LOG.warn("mapTileGroupToLocal: skipping missing tile {}", tileId);
+            return;
+        }
+
+        final CoordinateTransformMesh mesh;
+        if (tileSpec.hasTransforms()) {
+            try {
+                mesh = tileSpec.getCoordinateTransformMesh(tileSpec.getMeshCellSize());
+            } catch (final Throwable t) {
+                LOG.warn("mapTileGroupToLocal: failed to build mesh for tile " + tileId, t);
+                for (final Integer i : tileGroup.getValue()) {
+                    failuresForPoints[i] = t;
+                }
+                return;
+            }
+        } else {
+            mesh = null;
+        }
+
+        double[] world;
+        double[] local;
+        for (final Integer i : tileGroup.getValue()) {
+            world = worldCoordinatesList.get(i).getWorld();
+            local = new double[] { world[0], world[1] };
+            try {
+                if (mesh != null) {
+                    mesh.applyInverseInPlace(local);
+                }
+                localsForPoints[i][tileIdsForPoints.get(i).indexOf(tileId)] = appendZ(local, tileSpec);
+            } catch (final NoninvertibleModelException e) {
+                LOG.debug("mapTileGroupToLocal: point {} is not invertible in tile {}", i, tileId);
+            } catch (final Throwable t) {
+                failuresForPoints[i] = t;
             }
+        }
+    }
 
-            if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
-                lastStatusTime = System.currentTimeMillis();
-                LOG.info("getLocalCoordinates: inversely transformed {} out of {} points",
-                         localCoordinatesList.size(), worldCoordinatesList.size());
+    /**
+     * @return local coordinates for each tile that contains a point with the last invertible tile marked as visible
+     *         (same logic as {@link TileCoordinates#getLocalCoordinates}).
+     *
+     * @throws IllegalStateException
+     *   if the point cannot be inverted for any of the tiles.
+     */
+    private static List<TileCoordinates> buildLocalCoordinatesList(final List<String> tileIds,
+                                                                   final double[][] locals,
+                                                                   final double[] world)
+            throws IllegalStateException {
+
+        final List<TileCoordinates> tileCoordinatesList = new ArrayList<>(tileIds.size());
+        for (int k = 0; k < tileIds.size(); k++) {
+            if (locals[k] != null) {
+                tileCoordinatesList.add(TileCoordinates.buildLocalInstance(tileIds.get(k), locals[k]));
             }
+        }
 
+        if (tileCoordinatesList.size() == 0) {
+            throw new IllegalStateException("world coordinate (" + world[0] + ", " + world[1] +
+                                            ") found in tile id(s) " + tileIds + " cannot be inverted");
         }
 
-        LOG.info("getLocalCoordinates: inversely transformed {} points with {} errors in {} ms",
-                 localCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+        // for overlapping regions, the last tile is the visible one since it is rendered "on top of" the others
+        tileCoordinatesList.get(tileCoordinatesList.size() - 1).setVisible(true);
 
-        return localCoordinatesList;
+        return tileCoordinatesList;
+    }
+
+    private static double[] appendZ(final double[] xy,
+                                    final TileSpec tileSpec) {
+        final Double tileZ = tileSpec.getZ();
+        return tileZ == null ? xy : new double[] { xy[0], xy[1], tileZ };
+    }
+
+    private static TileCoordinates buildErrorCoordinates(final String context,
+                                                         final int listIndex,
+                                                         final TileCoordinates originalCoordinates,
+                                                         final boolean isLocal,
+                                                         final Throwable t) {
+
+        LOG.warn(context + ": caught exception for list item " + listIndex +
+                 ", adding original coordinates with error message to list", t);
+
+        final TileCoordinates errorCoordinates;
+        if (originalCoordinates != null) {
+            errorCoordinates = originalCoordinates;
+        } else if (isLocal) {
+            errorCoordinates = TileCoordinates.buildLocalInstance(null, null);
+        } else {
+            errorCoordinates = TileCoordinates.buildWorldInstance(null, null);
+        }
+        errorCoordinates.setError(t.getMessage());
+
+        return errorCoordinates;
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(CoordinateService.class);
 
-    private static final long COORDINATE_PROCESSING_LOG_INTERVAL = 5000;
+    /** Maximum number of tile specs to retrieve with each query. */
+    private static final int TILE_SPEC_BATCH_SIZE = 5000;
 }
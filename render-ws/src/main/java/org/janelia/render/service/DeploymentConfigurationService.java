@@ -15,9 +15,13 @@ import javax.ws.rs.core.Response;
 
 import org.janelia.alignment.filter.FilterFactory;
 import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.alignment.util.MappingThreadPool;
+import org.janelia.render.service.util.EncodedImageCache;
+import org.janelia.render.service.util.RenderRequestCoalescer;
 import org.janelia.render.service.util.RenderServerProperties;
 import org.janelia.render.service.util.RenderServiceUtil;
 import org.janelia.render.service.util.SharedImageProcessorCache;
+import org.janelia.render.service.util.SharedMappingThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -123,6 +127,51 @@ public class DeploymentConfigurationService {
         return response;
     }
 
+    @Path("v1/encodedImageCache/allEntries")
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Discards all cached rendered (encoded) images",
+            produces = MediaType.APPLICATION_JSON)
+    public Response invalidateEncodedImageCache() {
+        Response response = null;
+        try {
+            final EncodedImageCache sharedCache = EncodedImageCache.getSharedInstance();
+            LOG.info("invalidateEncodedImageCache: entry, invalidating {} elements, current stats are: {}",
+                     sharedCache.size(), sharedCache.getStats());
+            sharedCache.invalidateAll();
+
+            response = Response.ok().build();
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
+    @Path("v1/mappingThreadPool/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Current queue depth and task latency metrics for the shared pixel mapping thread pool",
+            produces = MediaType.APPLICATION_JSON)
+    public MappingThreadPool.Stats getMappingThreadPoolStats() {
+        return SharedMappingThreadPool.getInstance().getStats();
+    }
+
+    @Path("v1/renderRequests/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Render and coalesced request counts along with currently in-flight renders",
+            produces = MediaType.APPLICATION_JSON)
+    public RenderRequestCoalescer.Stats getRenderRequestStats() {
+        return RenderRequestCoalescer.getSharedInstance().getStats();
+    }
+
     private FilterFactory getFilterFactory() {
         if (this.filterFactory == null) {
             // lazy-load factory configuration from JSON file
@@ -10,16 +10,19 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
@@ -553,6 +556,70 @@ public class RenderDataService {
         return resolvedTiles;
     }
 
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/resolvedTiles/stream")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Stack Data APIs",
+            value = "Stream raw tile and transform specs for specified group or bounding box",
+            notes = "Unlike the resolvedTiles API, there is no limit on the number of matching tiles.  " +
+                    "All transform specs are written before any tile specs and tile specs are not sorted.  " +
+                    "Transforms and tiles are read in separate passes, so results are only guaranteed to be " +
+                    "consistent for stacks that are not being changed (e.g. COMPLETE stacks).  " +
+                    "Responses are gzip encoded for clients that accept gzip.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "no tile specs found"),
+    })
+    public Response streamResolvedTiles(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @QueryParam("minZ") final Double minZ,
+                                        @QueryParam("maxZ") final Double maxZ,
+                                        @QueryParam("groupId") final String groupId,
+                                        @QueryParam("minX") final Double minX,
+                                        @QueryParam("maxX") final Double maxX,
+                                        @QueryParam("minY") final Double minY,
+                                        @QueryParam("maxY") final Double maxY,
+                                        @HeaderParam(HttpHeaders.ACCEPT_ENCODING) final String acceptEncoding) {
+
+        LOG.info("streamResolvedTiles: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, groupId={}, minX={}, maxX={}, minY={}, maxY={}",
+                 owner, project, stack, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+
+            // resolve transforms before streaming so that missing data is reported with a proper status
+            final Map<String, TransformSpec> referencedTransformSpecs =
+                    renderDao.getReferencedTransformSpecs(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+
+            final boolean gzipResponse = (acceptEncoding != null) && acceptEncoding.contains(GZIP_ENCODING);
+
+            final StreamingOutput responseOutput = output -> {
+                if (gzipResponse) {
+                    final GZIPOutputStream gzipOutput = new GZIPOutputStream(output, GZIP_BUFFER_SIZE);
+                    renderDao.writeResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                                                 referencedTransformSpecs, gzipOutput);
+                    gzipOutput.finish();
+                } else {
+                    renderDao.writeResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                                                 referencedTransformSpecs, output);
+                }
+            };
+
+            final Response.ResponseBuilder responseBuilder = Response.ok(responseOutput);
+            if (gzipResponse) {
+                responseBuilder.header(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+            }
+            response = responseBuilder.build();
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/resolvedTiles")
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
@@ -1104,4 +1171,7 @@ public class RenderDataService {
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderDataService.class);
+
+    private static final String GZIP_ENCODING = "gzip";
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
 }
@@ -1,13 +1,18 @@
 package org.janelia.render.service;
 
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.BeanParam;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
@@ -167,6 +172,70 @@ public class TileDataService {
         return parameters;
     }
 
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/tile-render-parameters")
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Get parameters for rendering each of the specified tiles",
+            notes = "Accepts the same query parameters as the single tile render-parameters API " +
+                    "and returns parameters in the same order as the requested tile ids.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 404, message = "stack or tile not found"),
+    })
+    public List<RenderParameters> getRenderParametersForTiles(@PathParam("owner") final String owner,
+                                                              @PathParam("project") final String project,
+                                                              @PathParam("stack") final String stack,
+                                                              @BeanParam final RenderQueryParameters renderQueryParameters,
+                                                              @QueryParam("width") final Integer width,// full scale width
+                                                              @QueryParam("height") final Integer height,// full scale height
+                                                              @QueryParam("normalizeForMatching") final Boolean normalizeForMatching,
+                                                              @QueryParam("excludeTransformsAfterLast") final Set<String> excludeAfterLastLabels,
+                                                              @QueryParam("excludeFirstTransformAndAllAfter") final Set<String> excludeFirstAndAllAfterLabels,
+                                                              @QueryParam("excludeAllTransforms") final Boolean excludeAllTransforms,
+                                                              final List<String> tileIds) {
+
+        LOG.info("getRenderParametersForTiles: entry, owner={}, project={}, stack={}, tileIds.size={}",
+                 owner, project, stack, tileIds == null ? 0 : tileIds.size());
+
+        List<RenderParameters> parametersList = null;
+        try {
+            if (tileIds == null) {
+                throw new IllegalArgumentException("list of tile ids must be specified in request body");
+            }
+
+            final StackId stackId = new StackId(owner, project, stack);
+            final StackMetaData stackMetaData = getStackMetaData(stackId);
+
+            // fetch all tile specs with one query and build parameters once for each distinct tile
+            final Map<String, RenderParameters> tileIdToParameters = new HashMap<>();
+            for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId, tileIds)) {
+                final RenderParameters parameters =
+                        getCoreTileRenderParameters(width, height, renderQueryParameters.getScale(),
+                                                    normalizeForMatching, excludeAfterLastLabels,
+                                                    excludeFirstAndAllAfterLabels, excludeAllTransforms, tileSpec);
+                renderQueryParameters.applyQueryAndDefaultParameters(parameters,
+                                                                     stackMetaData,
+                                                                     renderDataService);
+                tileIdToParameters.put(tileSpec.getTileId(), parameters);
+            }
+
+            parametersList = new ArrayList<>(tileIds.size());
+            for (final String tileId : tileIds) {
+                final RenderParameters parameters = tileIdToParameters.get(tileId);
+                if (parameters == null) {
+                    throw new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in " + stackId);
+                }
+                parametersList.add(parameters);
+            }
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return parametersList;
+    }
+
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/tile/{tileId}/validation-info")
     @GET
     @Produces(MediaType.TEXT_PLAIN)
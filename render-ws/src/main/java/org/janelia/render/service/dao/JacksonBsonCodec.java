@@ -0,0 +1,209 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Encodes and decodes objects directly between BSON and the objects' Jackson JSON mappings.
+ *
+ * Mongo documents were originally converted with {@code Type.fromJson(document.toJson())} and
+ * {@code Document.parse(object.toJson())}, which formats and re-parses every document as a JSON string.
+ * This codec instead streams BSON values into (and out of) a Jackson {@link TokenBuffer}, so the same
+ * Jackson annotations and mapper configuration are used without building intermediate strings or
+ * {@link org.bson.Document} maps.  Stored documents are identical to the ones written by the string based
+ * conversion: integral values are written as 32-bit integers when they fit and floats are written
+ * as the doubles their JSON text represents.
+ *
+ * @author Eric Trautman
+ */
+public class JacksonBsonCodec<T>
+        implements Codec<T> {
+
+    private final Class<T> valueType;
+    private final ObjectMapper mapper;
+
+    public JacksonBsonCodec(final Class<T> valueType) {
+        this.valueType = valueType;
+        this.mapper = JsonUtils.FAST_MAPPER;
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return valueType;
+    }
+
+    @Override
+    public T decode(final BsonReader reader,
+                    final DecoderContext decoderContext) {
+        final TokenBuffer tokenBuffer = new TokenBuffer(mapper, false);
+        try {
+            readDocument(reader, tokenBuffer);
+            return mapper.readValue(tokenBuffer.asParser(), valueType);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to decode " + valueType.getName(), e);
+        }
+    }
+
+    @Override
+    public void encode(final BsonWriter writer,
+                       final T value,
+                       final EncoderContext encoderContext) {
+        final TokenBuffer tokenBuffer = new TokenBuffer(mapper, false);
+        try {
+            mapper.writeValue(tokenBuffer, value);
+            final JsonParser parser = tokenBuffer.asParser();
+            parser.nextToken();
+            writeValue(parser, writer);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to encode " + valueType.getName(), e);
+        }
+    }
+
+    private static void readDocument(final BsonReader reader,
+                                     final TokenBuffer tokenBuffer)
+            throws IOException {
+        reader.readStartDocument();
+        tokenBuffer.writeStartObject();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            tokenBuffer.writeFieldName(reader.readName());
+            readValue(reader, tokenBuffer);
+        }
+        reader.readEndDocument();
+        tokenBuffer.writeEndObject();
+    }
+
+    private static void readArray(final BsonReader reader,
+                                  final TokenBuffer tokenBuffer)
+            throws IOException {
+        reader.readStartArray();
+        tokenBuffer.writeStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            readValue(reader, tokenBuffer);
+        }
+        reader.readEndArray();
+        tokenBuffer.writeEndArray();
+    }
+
+    private static void readValue(final BsonReader reader,
+                                  final TokenBuffer tokenBuffer)
+            throws IOException {
+
+        switch (reader.getCurrentBsonType()) {
+            case DOUBLE:
+                tokenBuffer.writeNumber(reader.readDouble());
+                break;
+            case INT32:
+                tokenBuffer.writeNumber(reader.readInt32());
+                break;
+            case INT64:
+                tokenBuffer.writeNumber(reader.readInt64());
+                break;
+            case DECIMAL128:
+                tokenBuffer.writeNumber(reader.readDecimal128().bigDecimalValue());
+                break;
+            case STRING:
+                tokenBuffer.writeString(reader.readString());
+                break;
+            case BOOLEAN:
+                tokenBuffer.writeBoolean(reader.readBoolean());
+                break;
+            case DOCUMENT:
+                readDocument(reader, tokenBuffer);
+                break;
+            case ARRAY:
+                readArray(reader, tokenBuffer);
+                break;
+            case OBJECT_ID:
+                tokenBuffer.writeString(reader.readObjectId().toHexString());
+                break;
+            case DATE_TIME:
+                tokenBuffer.writeNumber(reader.readDateTime());
+                break;
+            case NULL:
+                reader.readNull();
+                tokenBuffer.writeNull();
+                break;
+            default:
+                // no mapped objects use other BSON types, so treat them as missing
+                reader.skipValue();
+                tokenBuffer.writeNull();
+        }
+    }
+
+    private static void writeValue(final JsonParser parser,
+                                   final BsonWriter writer)
+            throws IOException {
+
+        final JsonToken token = parser.getCurrentToken();
+
+        switch (token) {
+            case START_OBJECT:
+                writer.writeStartDocument();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    writer.writeName(parser.getCurrentName());
+                    parser.nextToken();
+                    writeValue(parser, writer);
+                }
+                writer.writeEndDocument();
+                break;
+            case START_ARRAY:
+                writer.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    writeValue(parser, writer);
+                }
+                writer.writeEndArray();
+                break;
+            case VALUE_STRING:
+                writer.writeString(parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                writeIntegralNumber(parser, writer);
+                break;
+            case VALUE_NUMBER_FLOAT:
+                if (parser.getNumberType() == JsonParser.NumberType.FLOAT) {
+                    // match the double parsed from the float's JSON text
+                    writer.writeDouble(Double.parseDouble(Float.toString(parser.getFloatValue())));
+                } else {
+                    writer.writeDouble(parser.getDoubleValue());
+                }
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                writer.writeBoolean(parser.getBooleanValue());
+                break;
+            case VALUE_NULL:
+                writer.writeNull();
+                break;
+            default:
+                throw new IOException("unsupported token " + token);
+        }
+    }
+
+    private static void writeIntegralNumber(final JsonParser parser,
+                                            final BsonWriter writer)
+            throws IOException {
+        if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+            writer.writeDouble(parser.getDoubleValue());
+        } else {
+            final long value = parser.getLongValue();
+            if ((value >= Integer.MIN_VALUE) && (value <= Integer.MAX_VALUE)) {
+                writer.writeInt32((int) value);
+            } else {
+                writer.writeInt64(value);
+            }
+        }
+    }
+
+}
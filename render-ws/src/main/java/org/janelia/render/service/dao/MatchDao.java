@@ -53,7 +53,7 @@ public class MatchDao {
     private final MongoDatabase matchDatabase;
 
     MatchDao(final MongoClient client) {
-        matchDatabase = client.getDatabase(MATCH_DB_NAME);
+        matchDatabase = client.getDatabase(MATCH_DB_NAME).withCodecRegistry(RenderCodecProvider.REGISTRY);
     }
 
     /**
@@ -274,9 +274,10 @@ public class MatchDao {
 
         int matchCount = 0;
         CanvasMatches canvasMatches = null;
-        try (final MongoCursor<Document> cursor = collection.find(query).iterator()) {
+        try (final MongoCursor<CanvasMatches> cursor =
+                     collection.withDocumentClass(CanvasMatches.class).find(query).iterator()) {
             if (cursor.hasNext()) {
-                canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
+                canvasMatches = cursor.next();
                 matchCount = canvasMatches.size();
             }
         }
@@ -418,11 +419,10 @@ public class MatchDao {
 
             ensureMatchIndexes(collection);
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(matchesList.size());
+            final List<WriteModel<CanvasMatches>> modelList = new ArrayList<>(matchesList.size());
 
             final UpdateOptions upsertOption = new UpdateOptions().upsert(true);
             Document filter;
-            Document matchesObject;
             for (final CanvasMatches canvasMatches : matchesList) {
                 canvasMatches.normalize();
                 filter = new Document(
@@ -430,11 +430,12 @@ public class MatchDao {
                         "pId", canvasMatches.getpId()).append(
                         "qGroupId", canvasMatches.getqGroupId()).append(
                         "qId", canvasMatches.getqId());
-                matchesObject = Document.parse(canvasMatches.toJson());
-                modelList.add(new ReplaceOneModel<>(filter, matchesObject, upsertOption));
+                modelList.add(new ReplaceOneModel<>(filter, canvasMatches, upsertOption));
             }
 
-            final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            final BulkWriteResult result =
+                    collection.withDocumentClass(CanvasMatches.class).bulkWrite(modelList,
+                                                                                MongoUtil.UNORDERED_OPTION);
 
             if (LOG.isDebugEnabled()) {
                 final String bulkResultMessage = MongoUtil.toMessage("matches", result, matchesList.size());
@@ -665,9 +666,10 @@ public class MatchDao {
 
         final Document projection = excludeMatchDetails ? EXCLUDE_MONGO_ID_KEY_AND_MATCHES : EXCLUDE_MONGO_ID_KEY;
 
-        try (final MongoCursor<Document> cursor = collection.find(query).projection(projection).iterator()) {
+        try (final MongoCursor<CanvasMatches> cursor =
+                     collection.withDocumentClass(CanvasMatches.class).find(query).projection(projection).iterator()) {
             while (cursor.hasNext()) {
-                canvasMatchesList.add(CanvasMatches.fromJson(cursor.next().toJson()));
+                canvasMatchesList.add(cursor.next());
             }
         }
 
@@ -742,15 +744,15 @@ public class MatchDao {
         int count = 0;
 
         final int numberOfCollections = collectionList.size();
-        final List<MongoCursor<Document>> cursorList = new ArrayList<>(numberOfCollections);
+        final List<MongoCursor<CanvasMatches>> cursorList = new ArrayList<>(numberOfCollections);
         final List<CanvasMatches> matchesList = new ArrayList<>(numberOfCollections);
 
         try {
 
             int numberOfCompletedCursors = 0;
-            MongoCollection<Document> collection;
+            MongoCollection<CanvasMatches> collection;
             for (int i = 0; i < numberOfCollections; i++) {
-                collection = collectionList.get(i);
+                collection = collectionList.get(i).withDocumentClass(CanvasMatches.class);
                 cursorList.add(collection.find(query).projection(projection).sort(MATCH_ORDER_BY).iterator());
                 matchesList.add(null);
                 numberOfCompletedCursors += updateMatches(cursorList, matchesList, i);
@@ -778,7 +780,7 @@ public class MatchDao {
 
         } finally {
 
-            for (final MongoCursor<Document> cursor : cursorList) {
+            for (final MongoCursor<CanvasMatches> cursor : cursorList) {
                 if (cursor != null) {
                     try {
                         cursor.close();
@@ -805,7 +807,7 @@ public class MatchDao {
         }
     }
 
-    private CanvasMatches getNextMergedMatches(final List<MongoCursor<Document>> cursorList,
+    private CanvasMatches getNextMergedMatches(final List<MongoCursor<CanvasMatches>> cursorList,
                                                final List<CanvasMatches> matchesList) {
 
         int numberOfCompletedCursors = 0;
@@ -834,9 +836,9 @@ public class MatchDao {
         return nextMatches;
     }
 
-    private void removeCompletedCursors(final List<MongoCursor<Document>> cursorList,
+    private void removeCompletedCursors(final List<MongoCursor<CanvasMatches>> cursorList,
                                         final List<CanvasMatches> matchesList) {
-        MongoCursor<Document> cursor;
+        MongoCursor<CanvasMatches> cursor;
         for (int i = matchesList.size() - 1; i >=0; i--) {
             if (matchesList.get(i) == null) {
                 matchesList.remove(i);
@@ -846,13 +848,13 @@ public class MatchDao {
         }
     }
 
-    private int updateMatches(final List<MongoCursor<Document>> cursorList,
+    private int updateMatches(final List<MongoCursor<CanvasMatches>> cursorList,
                               final List<CanvasMatches> matchesList,
                               final int index) {
         CanvasMatches canvasMatches = null;
-        final MongoCursor<Document> cursor = cursorList.get(index);
+        final MongoCursor<CanvasMatches> cursor = cursorList.get(index);
         if (cursor.hasNext()) {
-            canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
+            canvasMatches = cursor.next();
         }
         matchesList.set(index, canvasMatches);
         return (canvasMatches == null ? 1 : 0);
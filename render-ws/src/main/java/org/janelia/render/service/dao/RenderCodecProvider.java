@@ -0,0 +1,57 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.MongoClient;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+
+/**
+ * Provides {@link JacksonBsonCodec} instances for the render objects that are stored directly in Mongo.
+ *
+ * Transform specs are polymorphic (e.g. {@link org.janelia.alignment.spec.ListTransformSpec}),
+ * so codecs are provided for every {@link TransformSpec} subclass.
+ *
+ * @author Eric Trautman
+ */
+public class RenderCodecProvider
+        implements CodecProvider {
+
+    /** Registry with render object codecs followed by the default driver codecs. */
+    public static final CodecRegistry REGISTRY =
+            CodecRegistries.fromRegistries(CodecRegistries.fromProviders(new RenderCodecProvider()),
+                                           MongoClient.getDefaultCodecRegistry());
+
+    private final Codec<TileSpec> tileSpecCodec;
+    private final Codec<CanvasMatches> canvasMatchesCodec;
+    private final Codec<Matches> matchesCodec;
+
+    public RenderCodecProvider() {
+        this.tileSpecCodec = new JacksonBsonCodec<>(TileSpec.class);
+        this.canvasMatchesCodec = new JacksonBsonCodec<>(CanvasMatches.class);
+        this.matchesCodec = new JacksonBsonCodec<>(Matches.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> Codec<T> get(final Class<T> clazz,
+                            final CodecRegistry registry) {
+        Codec<T> codec = null;
+        if (TileSpec.class.equals(clazz)) {
+            codec = (Codec<T>) tileSpecCodec;
+        } else if (TransformSpec.class.isAssignableFrom(clazz)) {
+            codec = new JacksonBsonCodec<>(clazz);
+        } else if (CanvasMatches.class.equals(clazz)) {
+            codec = (Codec<T>) canvasMatchesCodec;
+        } else if (Matches.class.equals(clazz)) {
+            codec = (Codec<T>) matchesCodec;
+        }
+        return codec;
+    }
+
+}
@@ -1,5 +1,8 @@
 package org.janelia.render.service.dao;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.mongodb.BasicDBList;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
@@ -10,7 +13,6 @@ import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.InsertOneModel;
-import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
@@ -34,7 +36,9 @@ import java.util.TreeSet;
 import org.bson.Document;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
@@ -58,17 +62,37 @@ public class RenderDao {
 
     public static final String RENDER_DB_NAME = "render";
     public static final String STACK_META_DATA_COLLECTION_NAME = "admin__stack_meta_data";
+    public static final String STACK_CHANGED_LAYERS_COLLECTION_NAME = "admin__stack_changed_layers";
 
     public static RenderDao build()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new RenderDao(mongoClient);
+        return new RenderDao(mongoClient,
+                             TileBoundsIndexCache.getSharedInstance(),
+                             ResolvedTransformSpecCache.getSharedInstance(),
+                             TileSpecBulkWriter.getSharedInstance());
     }
 
     private final MongoDatabase renderDatabase;
+    private final TileBoundsIndexCache tileBoundsIndexCache;
+    private final ResolvedTransformSpecCache resolvedTransformSpecCache;
+    private final TileSpecBulkWriter tileSpecBulkWriter;
 
     public RenderDao(final MongoClient client) {
-        renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this(client,
+             new TileBoundsIndexCache(TileBoundsIndexCache.DEFAULT_MAX_NUMBER_OF_TILES),
+             new ResolvedTransformSpecCache(ResolvedTransformSpecCache.DEFAULT_MAX_NUMBER_OF_SPECS),
+             new TileSpecBulkWriter(TileSpecBulkWriter.DEFAULT_BATCH_SIZE, 1));
+    }
+
+    public RenderDao(final MongoClient client,
+                     final TileBoundsIndexCache tileBoundsIndexCache,
+                     final ResolvedTransformSpecCache resolvedTransformSpecCache,
+                     final TileSpecBulkWriter tileSpecBulkWriter) {
+        this.renderDatabase = client.getDatabase(RENDER_DB_NAME).withCodecRegistry(RenderCodecProvider.REGISTRY);
+        this.tileBoundsIndexCache = tileBoundsIndexCache;
+        this.resolvedTransformSpecCache = resolvedTransformSpecCache;
+        this.tileSpecBulkWriter = tileSpecBulkWriter;
     }
 
     /**
@@ -96,13 +120,30 @@ public class RenderDao {
 
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
-        final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
-        if (groupId != null) {
-            tileQuery.append("groupId", groupId);
+
+        final Supplier<StackMetaData> stackMetaData = getStackMetaDataSupplier(stackId);
+
+        // groupId is not indexed, so grouped requests always use a range query
+        List<String> indexedTileIds = null;
+        if (groupId == null) {
+            indexedTileIds = getIndexedTileIds(stackMetaData.get(), z, x, y, lowerRightX, lowerRightY);
+        }
+
+        final Document tileQuery;
+        if (indexedTileIds == null) {
+            tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
+            if (groupId != null) {
+                tileQuery.append("groupId", groupId);
+            }
+        } else if (indexedTileIds.size() > MAX_TILES_PER_QUERY) {
+            throw new IllegalArgumentException("query too broad, " + indexedTileIds.size() + " tiles in " +
+                                               stackId + " z " + z + " intersect the requested box");
+        } else {
+            tileQuery = getTileIdsQuery(indexedTileIds);
         }
 
         final RenderParameters renderParameters = new RenderParameters(null, x, y, width, height, scale);
-        addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        addResolvedTileSpecs(stackId, stackMetaData, tileQuery, renderParameters);
 
         return renderParameters;
     }
@@ -163,10 +204,17 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("width", width);
         MongoUtil.validateRequiredParameter("height", height);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
+
+        final List<String> indexedTileIds = getIndexedTileIds(getStackMetaData(stackId),
+                                                              z, x, y, lowerRightX, lowerRightY);
+        if (indexedTileIds != null) {
+            LOG.debug("getTileCount: found {} indexed tile(s) for {} z {}", indexedTileIds.size(), stackId, z);
+            return indexedTileIds.size();
+        }
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
 
         final long count = tileCollection.count(tileQuery);
@@ -199,7 +247,7 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("tileId", tileId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<TileSpec> tileCollection = getTileSpecCollection(stackId);
 
         final Document query = new Document();
         query.put("tileId", tileId);
@@ -208,24 +256,37 @@ public class RenderDao {
 
         // EXAMPLE:   find({ "tileId" : "140723171842050101.3299.0"})
         // INDEX:     tileId_1
-        final Document document = tileCollection.find(query).first();
+        final TileSpec tileSpec = tileCollection.find(query).first();
 
-        if (document == null) {
+        if (tileSpec == null) {
             throw new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in the " +
                                               MongoUtil.fullName(tileCollection) + " collection");
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
-
         if (resolveTransformReferences) {
-            resolveTransformReferencesForTiles(stackId, Collections.singletonList(tileSpec));
+            resolveTransformReferencesForTiles(stackId,
+                                               Collections.singletonList(tileSpec),
+                                               getStackMetaDataSupplier(stackId));
         }
 
         return tileSpec;
     }
 
+    /**
+     * Resolves transform references for the specified tiles.
+     *
+     * @param  stackId                  stack containing the tiles.
+     * @param  tileSpecs                tiles to resolve.
+     * @param  stackMetaData            lazily loaded metadata for the stack (shared with the rest of the request)
+     *                                  or null if the shared (cached) specs for the stack should not be used.
+     *                                  Cached specs do not include the nested specs they reference, so this
+     *                                  should be null when the returned map must contain all referenced specs.
+     *
+     * @return map of ids to resolved specs for all references.
+     */
     private Map<String, TransformSpec> resolveTransformReferencesForTiles(final StackId stackId,
-                                                                          final List<TileSpec> tileSpecs)
+                                                                          final List<TileSpec> tileSpecs,
+                                                                          final Supplier<StackMetaData> stackMetaData)
             throws IllegalStateException {
 
         final Set<String> unresolvedIds = new HashSet<>();
@@ -242,12 +303,39 @@ public class RenderDao {
         final int unresolvedCount = unresolvedIds.size();
         if (unresolvedCount > 0) {
 
-            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-            getDataForTransformSpecReferences(transformCollection, unresolvedIds, resolvedIdToSpecMap, 1);
+            StackMetaData cacheableStackMetaData = null;
+            if ((stackMetaData != null) && resolvedTransformSpecCache.isCacheable(stackMetaData.get())) {
+                cacheableStackMetaData = stackMetaData.get();
+                resolvedIdToSpecMap.putAll(resolvedTransformSpecCache.getResolvedSpecs(cacheableStackMetaData,
+                                                                                      unresolvedIds));
+            }
 
-            // resolve any references within the retrieved transform specs
-            for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
-                transformSpec.resolveReferences(resolvedIdToSpecMap);
+            final Set<String> uncachedIds = new HashSet<>(unresolvedIds);
+            uncachedIds.removeAll(resolvedIdToSpecMap.keySet());
+
+            if (uncachedIds.size() > 0) {
+
+                final Set<String> cachedIds = new HashSet<>(resolvedIdToSpecMap.keySet());
+
+                final MongoCollection<TransformSpec> transformCollection = getTransformSpecCollection(stackId);
+                getDataForTransformSpecReferences(transformCollection, uncachedIds, resolvedIdToSpecMap, 1);
+
+                // resolve any references within the retrieved transform specs
+                final List<TransformSpec> retrievedSpecs = new ArrayList<>(resolvedIdToSpecMap.size());
+                for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
+                    if (! cachedIds.contains(transformSpec.getId())) {
+                        transformSpec.resolveReferences(resolvedIdToSpecMap);
+                        retrievedSpecs.add(transformSpec);
+                    }
+                }
+
+                if (cacheableStackMetaData != null) {
+                    resolvedTransformSpecCache.putResolvedSpecs(cacheableStackMetaData, retrievedSpecs);
+                }
+
+            } else {
+                LOG.debug("resolveTransformReferencesForTiles: using {} cached transform specs for {}",
+                          resolvedIdToSpecMap.size(), stackId);
             }
 
             // apply fully resolved transform specs to tiles
@@ -285,9 +373,12 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("y", y);
         MongoUtil.validateRequiredParameter("z", z);
 
-        final Document tileQuery = getIntersectsBoxQuery(z, x, y, x, y);
+        final Supplier<StackMetaData> stackMetaData = getStackMetaDataSupplier(stackId);
+        final List<String> indexedTileIds = getIndexedTileIds(stackMetaData.get(), z, x, y, x, y);
+        final Document tileQuery = indexedTileIds == null ?
+                                   getIntersectsBoxQuery(z, x, y, x, y) : getTileIdsQuery(indexedTileIds);
         final RenderParameters renderParameters = new RenderParameters();
-        addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        addResolvedTileSpecs(stackId, stackMetaData, tileQuery, renderParameters);
 
         if (! renderParameters.hasTileSpecs()) {
             throw new IllegalArgumentException("no tile specifications found in " + stackId +
@@ -487,6 +578,7 @@ public class RenderDao {
         final Document tileQuery = new Document("z", z);
         final RenderParameters renderParameters = new RenderParameters();
         final Map<String, TransformSpec> resolvedIdToSpecMap = addResolvedTileSpecs(stackId,
+                                                                                    null,
                                                                                     tileQuery,
                                                                                     renderParameters);
 
@@ -523,6 +615,7 @@ public class RenderDao {
         final Document query = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
         final RenderParameters renderParameters = new RenderParameters();
         final Map<String, TransformSpec> resolvedIdToSpecMap = addResolvedTileSpecs(stackId,
+                                                                                    null,
                                                                                     query,
                                                                                     renderParameters);
 
@@ -534,6 +627,161 @@ public class RenderDao {
                                               renderParameters.getTileSpecs());
     }
 
+    /**
+     * Retrieves the (fully resolved) transform specs referenced by all tiles that match the specified criteria.
+     * Only the transform data for each tile is loaded, so memory use does not depend upon the number of tiles.
+     *
+     * @return map of transform ids to specs for all referenced transforms.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or if the stack cannot be found.
+     *
+     * @throws ObjectNotFoundException
+     *   if no tile can be found for the specified criteria.
+     */
+    public Map<String, TransformSpec> getReferencedTransformSpecs(final StackId stackId,
+                                                                  final Double minZ,
+                                                                  final Double maxZ,
+                                                                  final String groupId,
+                                                                  final Double minX,
+                                                                  final Double maxX,
+                                                                  final Double minY,
+                                                                  final Double maxY)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final Document query = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document transformsKeys = new Document("transforms", 1).append("_id", 0);
+
+        final Set<String> referencedTransformIds = new HashSet<>();
+        long tileCount = 0;
+        try (final MongoCursor<Document> cursor = tileCollection.find(query).projection(transformsKeys).iterator()) {
+            while (cursor.hasNext()) {
+                addReferencedTransformIds(cursor.next().get("transforms"), referencedTransformIds);
+                tileCount++;
+            }
+        }
+
+        if (tileCount == 0) {
+            throwExceptionIfStackIsMissing(stackId);
+            throw new ObjectNotFoundException("no tile specifications found in " + stackId +" for " + query);
+        }
+
+        final Map<String, TransformSpec> resolvedIdToSpecMap = new HashMap<>();
+        getDataForTransformSpecReferences(getTransformSpecCollection(stackId),
+                                          referencedTransformIds,
+                                          resolvedIdToSpecMap,
+                                          1);
+
+        LOG.debug("getReferencedTransformSpecs: {} tiles reference {} transforms for {}.find({})",
+                  tileCount, resolvedIdToSpecMap.size(), MongoUtil.fullName(tileCollection), query.toJson());
+
+        return resolvedIdToSpecMap;
+    }
+
+    /**
+     * Writes a resolved tile spec collection (as JSON) for all tiles that match the specified criteria
+     * to the specified stream.  Unlike {@link #getResolvedTiles}, tile specs are written directly from
+     * the database cursor, so there is no limit on the number of tiles and server memory use does not
+     * depend upon the number of tiles.
+     *
+     * The specified transform specs are written before any tile specs so that clients can
+     * resolve each tile as it is parsed.  Tile specs are written in natural (unsorted) order.
+     *
+     * Tiles are read in a separate query from the one used to find the referenced transform specs,
+     * so the stream is only guaranteed to be consistent for stacks that are not changed while it is written
+     * (e.g. COMPLETE stacks).  If a LOADING stack is changed between the two queries, the stream may include
+     * tiles that reference transforms missing from the stream (these are logged as a warning)
+     * or omit transforms that are no longer referenced.
+     *
+     * @param  referencedTransformSpecs  transforms referenced by the tiles
+     *                                   (see {@link #getReferencedTransformSpecs}).
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeResolvedTiles(final StackId stackId,
+                                   final Double minZ,
+                                   final Double maxZ,
+                                   final String groupId,
+                                   final Double minX,
+                                   final Double maxX,
+                                   final Double minY,
+                                   final Double maxY,
+                                   final Map<String, TransformSpec> referencedTransformSpecs,
+                                   final OutputStream outputStream)
+            throws IllegalArgumentException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("referencedTransformSpecs", referencedTransformSpecs);
+
+        final Document query = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
+        final MongoCollection<TileSpec> tileSpecCollection = getTileSpecCollection(stackId);
+        final ProcessTimer timer = new ProcessTimer();
+
+        final JsonGenerator generator = JsonUtils.FAST_MAPPER.getFactory().createGenerator(outputStream);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        generator.writeStartObject();
+
+        generator.writeObjectFieldStart("transformIdToSpecMap");
+        for (final Map.Entry<String, TransformSpec> entry : referencedTransformSpecs.entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeObject(entry.getValue());
+        }
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("tileIdToSpecMap");
+        long tileCount = 0;
+        final Set<String> tileTransformIds = new HashSet<>();
+        final Set<String> missingTransformIds = new HashSet<>();
+        try (final MongoCursor<TileSpec> cursor = tileSpecCollection.find(query).iterator()) {
+            TileSpec tileSpec;
+            ListTransformSpec transforms;
+            while (cursor.hasNext()) {
+                tileSpec = cursor.next();
+
+                // tiles changed after the referenced transforms were found may reference transforms not in the stream
+                transforms = tileSpec.getTransforms();
+                if (transforms != null) {
+                    tileTransformIds.clear();
+                    transforms.addUnresolvedIds(tileTransformIds);
+                    for (final String transformId : tileTransformIds) {
+                        if (! referencedTransformSpecs.containsKey(transformId)) {
+                            missingTransformIds.add(transformId);
+                        }
+                    }
+                }
+
+                generator.writeFieldName(tileSpec.getTileId());
+                generator.writeObject(tileSpec);
+                tileCount++;
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("writeResolvedTiles: data written for {} tiles", tileCount);
+                }
+            }
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+        generator.flush();
+
+        if (missingTransformIds.size() > 0) {
+            LOG.warn("writeResolvedTiles: {} was changed while streaming, tiles reference transforms {} that are not in the stream",
+                     stackId, missingTransformIds);
+        }
+
+        LOG.debug("writeResolvedTiles: wrote data for {} tiles and {} transforms returned by {}.find({}), elapsedSeconds={}",
+                  tileCount, referencedTransformSpecs.size(), MongoUtil.fullName(tileSpecCollection),
+                  query.toJson(), timer.getElapsedSeconds());
+    }
+
     /**
      * Saves the specified tile spec to the database.
      *
@@ -550,6 +798,8 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("resolvedTileSpecs", resolvedTileSpecs);
 
+        invalidateCachedStackData(stackId);
+
         final Collection<TransformSpec> transformSpecs = resolvedTileSpecs.getTransformSpecs();
         final Collection<TileSpec> tileSpecs = resolvedTileSpecs.getTileSpecs();
 
@@ -559,24 +809,19 @@ public class RenderDao {
 
         if (tileSpecs.size() > 0) {
 
-            final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-
-            final List<WriteModel<Document>> modelList = new ArrayList<>(tileSpecs.size());
-            Document query = new Document();
-            Document tileSpecObject;
+            final Set<Double> changedZValues = new HashSet<>();
             for (final TileSpec tileSpec : tileSpecs) {
-                query = new Document("tileId", tileSpec.getTileId());
-                tileSpecObject = Document.parse(tileSpec.toJson());
-                modelList.add(new ReplaceOneModel<>(query, tileSpecObject, MongoUtil.UPSERT_OPTION));
+                changedZValues.add(tileSpec.getZ());
             }
 
-            final BulkWriteResult result = tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            // the bulk writer relies upon the unique tileId index to detect existing tiles,
+            // so make sure the core indexes exist (e.g. for stacks created before they were added);
+            // secondary tile indexes are not built until the stack is completed (see ensureIndexesAndDeriveStats)
+            ensureCoreTileIndexes(getTileCollection(stackId));
+
+            changedZValues.addAll(tileSpecBulkWriter.write(getTileSpecCollection(stackId), tileSpecs));
 
-            if (LOG.isDebugEnabled()) {
-                final String bulkResultMessage = MongoUtil.toMessage("tile specs", result, tileSpecs.size());
-                LOG.debug("saveResolvedTiles: {} using {}.initializeUnorderedBulkOp()",
-                          bulkResultMessage, MongoUtil.fullName(tileCollection), query.toJson());
-            }
+            recordChangedLayers(stackId, changedZValues);
         }
 
     }
@@ -598,7 +843,7 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("tileSpec", tileSpec);
         MongoUtil.validateRequiredParameter("tileSpec.tileId", tileSpec.getTileId());
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<TileSpec> tileCollection = getTileSpecCollection(stackId);
 
         final String context = "tile spec with id '" + tileSpec.getTileId();
         validateTransformReferences(context, stackId, tileSpec.getTransforms());
@@ -606,9 +851,12 @@ public class RenderDao {
         final Document query = new Document();
         query.put("tileId", tileSpec.getTileId());
 
-        final Document tileSpecObject = Document.parse(tileSpec.toJson());
+        final Set<Double> changedZValues = getDistinctZValues(stackId, query);
+        changedZValues.add(tileSpec.getZ());
 
-        final UpdateResult result = tileCollection.replaceOne(query, tileSpecObject, MongoUtil.UPSERT_OPTION);
+        final UpdateResult result = tileCollection.replaceOne(query, tileSpec, MongoUtil.UPSERT_OPTION);
+
+        recordChangedLayers(stackId, changedZValues);
 
         LOG.debug("saveTileSpec: {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(tileCollection),
@@ -634,22 +882,22 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("transformId", transformId);
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final MongoCollection<TransformSpec> transformCollection = getTransformSpecCollection(stackId);
 
         final Document query = new Document();
         query.put("id", transformId);
 
         LOG.debug("getTransformSpec: {}.find({})", MongoUtil.fullName(transformCollection), query.toJson());
 
-        final Document document = transformCollection.find(query).first();
+        final TransformSpec transformSpec = transformCollection.find(query).first();
 
-        if (document == null) {
+        if (transformSpec == null) {
             throwExceptionIfStackIsMissing(stackId);
             throw new ObjectNotFoundException("transform spec with id '" + transformId + "' does not exist in the " +
                                               stackId);
         }
 
-        return TransformSpec.fromJson(document.toJson());
+        return transformSpec;
     }
 
     /**
@@ -669,7 +917,7 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("transformSpec", transformSpec);
         MongoUtil.validateRequiredParameter("transformSpec.id", transformSpec.getId());
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final MongoCollection<TransformSpec> transformCollection = getTransformSpecCollection(stackId);
 
         final String context = "transform spec with id '" + transformSpec.getId() + "'";
         validateTransformReferences(context, stackId, transformSpec);
@@ -677,10 +925,8 @@ public class RenderDao {
         final Document query = new Document();
         query.put("id", transformSpec.getId());
 
-        final Document transformSpecObject = Document.parse(transformSpec.toJson());
-
         final UpdateResult result = transformCollection.replaceOne(query,
-                                                                   transformSpecObject,
+                                                                   transformSpec,
                                                                    MongoUtil.UPSERT_OPTION);
 
         LOG.debug("saveTransformSpec: {}.{},({}), upsertedId is {}",
@@ -750,18 +996,16 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("sectionId", sectionId);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<TileSpec> tileCollection = getTileSpecCollection(stackId);
         final Document query = new Document("layout.sectionId", sectionId);
 
-        final Document document = tileCollection.find(query).first();
+        final TileSpec tileSpec = tileCollection.find(query).first();
 
-        if (document == null) {
+        if (tileSpec == null) {
             throwExceptionIfStackIsMissing(stackId);
             throw new ObjectNotFoundException("sectionId '" + sectionId + "' does not exist in the " + stackId);
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
-
         return tileSpec.getZ();
     }
 
@@ -774,12 +1018,19 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("sectionId", sectionId);
         MongoUtil.validateRequiredParameter("z", z);
 
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document query = new Document("layout.sectionId", sectionId);
         final Document update = new Document("$set", new Document("z", z));
 
+        final Set<Double> changedZValues = getDistinctZValues(stackId, query);
+        changedZValues.add(z);
+
         final UpdateResult result = tileCollection.updateMany(query, update);
 
+        recordChangedLayers(stackId, changedZValues);
+
         LOG.debug("updateZForSection: updated {} tile specs with {}.update({},{})",
                   result.getModifiedCount(), MongoUtil.fullName(tileCollection), query.toJson(), update.toJson());
     }
@@ -793,12 +1044,19 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("z", z);
         MongoUtil.validateRequiredParameter("tileIds", tileIds);
 
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document query = new Document("tileId", new Document("$in", tileIds));
         final Document update = new Document("$set", new Document("z", z));
 
+        final Set<Double> changedZValues = getDistinctZValues(stackId, query);
+        changedZValues.add(z);
+
         final UpdateResult result = tileCollection.updateMany(query, update);
 
+        recordChangedLayers(stackId, changedZValues);
+
         final String shortQueryForLog = "{ 'tileId': { '$in': [ " + tileIds.size() + " tile ids ... ] } }";
         LOG.debug("updateZForTiles: updated {} tile specs with {}.update({},{})",
                   result.getModifiedCount(), MongoUtil.fullName(tileCollection), shortQueryForLog, update.toJson());
@@ -841,7 +1099,10 @@ public class RenderDao {
             query.append("_id.z", new Document(QueryOperators.LTE, maxZ));
         }
 
-        try (final MongoCursor<Document> cursor = sectionCollection.find(query).iterator()) {
+        // sort explicitly since incrementally derived sections are not stored in sectionId order
+        final Document sortCriteria = new Document("_id.sectionId", 1);
+
+        try (final MongoCursor<Document> cursor = sectionCollection.find(query).sort(sortCriteria).iterator()) {
             Document document;
             Document resultId;
             String sectionId;
@@ -999,6 +1260,8 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackMetaData", stackMetaData);
 
         final StackId stackId = stackMetaData.getStackId();
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
 
         final Document query = getStackIdQuery(stackId);
@@ -1037,133 +1300,48 @@ public class RenderDao {
 
         ensureSupplementaryTileIndexes(tileCollection);
 
-        deriveSectionData(stackId);
-
-        final List<Double> zValues = getZValues(stackId);
-        final long sectionCount = zValues.size();
-
-        long nonIntegralSectionCount = 0;
-        double truncatedZ;
-        for (final Double z : zValues) {
-            truncatedZ = (double) z.intValue();
-            if (z > truncatedZ) {
-                nonIntegralSectionCount++;
-            }
-        }
+        final Document stackIdQuery = getStackIdQuery(stackId);
 
         final long tileCount = tileCollection.count();
         LOG.debug("ensureIndexesAndDeriveStats: tileCount for {} is {}", stackId, tileCount);
 
+        if (tileCount == 0) {
+            throw new IllegalStateException("Stack data cannot be aggregated for " + stackId +
+                                            " because the stack has no tiles.");
+        }
+
         final long transformCount = transformCollection.count();
         LOG.debug("ensureIndexesAndDeriveStats: transformCount for {} is {}, deriving aggregate stats ...",
                   stackId, transformCount);
 
-        // db.<stack_prefix>__tile.aggregate(
-        //     [
-        //         {
-        //             "$project":  {
-        //                 "z": "$z",
-        //                 "minX": "$minX",
-        //                 "minY": "$minY",
-        //                 "maxX": "$maxX",
-        //                 "maxY": "$maxY",
-        //                 "width":  { "$subtract": [ "$maxX", "$minX" ] },
-        //                 "height": { "$subtract": [ "$maxY", "$minY" ] }
-        //             }
-        //         },
-        //         {
-        //             "$group": {
-        //                 "_id": "minAndMaxValues",
-        //                 "stackMinX": { "$min": "$minX" },
-        //                 "stackMinY": { "$min": "$minY" },
-        //                 "stackMinZ": { "$min": "$z" },
-        //                 "stackMaxX": { "$max": "$maxX" },
-        //                 "stackMaxY": { "$max": "$maxY" },
-        //                 "stackMaxZ": { "$max": "$z" } } } )
-        //                 "stackMinTileWidth":  { "$min": "$width" },
-        //                 "stackMaxTileWidth":  { "$max": "$width" },
-        //                 "stackMinTileHeight": { "$min": "$height" },
-        //                 "stackMaxTileHeight": { "$max": "$height" }
-        //             }
-        //         }
-        //     ]
-        // )
+        // claim the recorded changes before aggregating so that changes recorded during aggregation are kept
+        final Document changedLayers = claimChangedLayers(stackId);
 
-        final Document tileWidth = new Document("$subtract", buildBasicDBList(new String[] {"$maxX","$minX" }));
-        final Document tileHeight = new Document("$subtract", buildBasicDBList(new String[] {"$maxY","$minY" }));
-        final Document tileValues = new Document("z", "$z").append(
-                "minX", "$minX").append("minY", "$minY").append("maxX", "$maxX").append("maxY", "$maxY").append(
-                "width", tileWidth).append("height", tileHeight);
-
-        final Document projectStage = new Document("$project", tileValues);
-
-        final String minXKey = "stackMinX";
-        final String minYKey = "stackMinY";
-        final String minZKey = "stackMinZ";
-        final String maxXKey = "stackMaxX";
-        final String maxYKey = "stackMaxY";
-        final String maxZKey = "stackMaxZ";
-        final String minWidthKey = "stackMinTileWidth";
-        final String maxWidthKey = "stackMaxTileWidth";
-        final String minHeightKey = "stackMinTileHeight";
-        final String maxHeightKey = "stackMaxTileHeight";
-
-        final Document minAndMaxValues = new Document("_id", "minAndMaxValues");
-        minAndMaxValues.append(minXKey, new Document(QueryOperators.MIN, "$minX"));
-        minAndMaxValues.append(minYKey, new Document(QueryOperators.MIN, "$minY"));
-        minAndMaxValues.append(minZKey, new Document(QueryOperators.MIN, "$z"));
-        minAndMaxValues.append(maxXKey, new Document(QueryOperators.MAX, "$maxX"));
-        minAndMaxValues.append(maxYKey, new Document(QueryOperators.MAX, "$maxY"));
-        minAndMaxValues.append(maxZKey, new Document(QueryOperators.MAX, "$z"));
-        minAndMaxValues.append(minWidthKey, new Document(QueryOperators.MIN, "$width"));
-        minAndMaxValues.append(maxWidthKey, new Document(QueryOperators.MAX, "$width"));
-        minAndMaxValues.append(minHeightKey, new Document(QueryOperators.MIN, "$height"));
-        minAndMaxValues.append(maxHeightKey, new Document(QueryOperators.MAX, "$height"));
-        final Document groupStage = new Document("$group", minAndMaxValues);
-
-        final List<Document> pipeline = new ArrayList<>();
-        pipeline.add(projectStage);
-        pipeline.add(groupStage);
+        StackStats stats = null;
+        try {
 
+            if (deriveSectionDataForChangedLayers(stackId, changedLayers)) {
+                stats = buildStatsFromSectionData(stackId, transformCount);
+                // unrecorded changes can only be detected when they alter the tile or layer count
+                final long layerCount = getZValues(stackId).size();
+                if ((stats.getTileCount() != tileCount) || (stats.getSectionCount() != layerCount)) {
+                    LOG.warn("ensureIndexesAndDeriveStats: section data for {} has {} tiles in {} layers " +
+                             "but stack has {} tiles in {} layers, re-aggregating all layers",
+                             stackId, stats.getTileCount(), stats.getSectionCount(), tileCount, layerCount);
+                    stats = null;
+                }
+            }
 
-        // mongodb java 3.0 driver notes:
-        // -- need to set cursor batchSize to prevent NPE from cursor creation
-        final Document aggregateResult = tileCollection.aggregate(pipeline).batchSize(1).first();
-        if (aggregateResult == null) {
-            String cause = "";
-            if (tileCollection.count() == 0) {
-                cause = " because the stack has no tiles";
+            if (stats == null) {
+                deriveSectionData(stackId);
+                stats = buildStatsFromSectionData(stackId, transformCount);
             }
-            throw new IllegalStateException("Stack data aggregation returned no results" + cause + ".  " +
-                                            "The aggregation query was " + MongoUtil.fullName(tileCollection) +
-                                            ".aggregate(" + pipeline + ") .");
-        }
-
-        final List<String> channelNames = tileCollection.distinct("channels.name", String.class).into(new ArrayList<>());
-        Collections.sort(channelNames);
-
-        final Bounds stackBounds = new Bounds(aggregateResult.get(minXKey, Double.class),
-                                              aggregateResult.get(minYKey, Double.class),
-                                              aggregateResult.get(minZKey, Double.class),
-                                              aggregateResult.get(maxXKey, Double.class),
-                                              aggregateResult.get(maxYKey, Double.class),
-                                              aggregateResult.get(maxZKey, Double.class));
-
-        final Integer minTileWidth = MongoUtil.toInteger(aggregateResult.get(minWidthKey, Double.class));
-        final Integer maxTileWidth = MongoUtil.toInteger(aggregateResult.get(maxWidthKey, Double.class));
-        final Integer minTileHeight = MongoUtil.toInteger(aggregateResult.get(minHeightKey, Double.class));
-        final Integer maxTileHeight = MongoUtil.toInteger(aggregateResult.get(maxHeightKey, Double.class));
-
-        final StackStats stats = new StackStats(stackBounds,
-                                                sectionCount,
-                                                nonIntegralSectionCount,
-                                                tileCount,
-                                                transformCount,
-                                                minTileWidth,
-                                                maxTileWidth,
-                                                minTileHeight,
-                                                maxTileHeight,
-                                                new LinkedHashSet<>(channelNames));
+
+        } catch (final RuntimeException e) {
+            restoreChangedLayers(stackId, changedLayers);
+            throw e;
+        }
+
         stackMetaData.setStats(stats);
 
         LOG.debug("ensureIndexesAndDeriveStats: completed stat derivation for {}, stats={}", stackId, stats);
@@ -1171,14 +1349,13 @@ public class RenderDao {
         stackMetaData.setState(StackMetaData.StackState.COMPLETE);
 
         final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
-        final Document query = getStackIdQuery(stackId);
         final Document stackMetaDataObject = Document.parse(stackMetaData.toJson());
-        final UpdateResult result = stackMetaDataCollection.replaceOne(query,
+        final UpdateResult result = stackMetaDataCollection.replaceOne(stackIdQuery,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
 
         LOG.debug("ensureIndexesAndDeriveStats: {}.{}({})",
-                  MongoUtil.fullName(stackMetaDataCollection), MongoUtil.action(result), query.toJson());
+                  MongoUtil.fullName(stackMetaDataCollection), MongoUtil.action(result), stackIdQuery.toJson());
 
         return stackMetaData;
     }
@@ -1194,27 +1371,15 @@ public class RenderDao {
         //         { "$group": { "_id": { "sectionId": "$layout.sectionId", "z": "$z" } },
         //                       "tileCount": { "$sum": 1 },
         //                       "minX": { "$min": "$minX" }, "maxX": { "$max": "$maxX" },
-        //                       "minY": { "$min": "$minY" }, "maxY": { "$max": "$maxY" }},
+        //                       "minY": { "$min": "$minY" }, "maxY": { "$max": "$maxY" },
+        //                       "minTileWidth": { "$min": { "$subtract": [ "$maxX", "$minX" ] } }, ...
+        //                       "channelNames": { "$addToSet": "$channels.name" } },
         //         { "$sort": { "_id.sectionId": 1 } }
         //     ]
         // )
 
-        final Document idComponents = new Document("sectionId", "$layout.sectionId").append("z", "$z");
-        final Document tileCountComponents = new Document("$sum", 1);
-        final Document minXComponents = new Document("$min", "$minX");
-        final Document maxXComponents = new Document("$max", "$maxX");
-        final Document minYComponents = new Document("$min", "$minY");
-        final Document maxYComponents = new Document("$max", "$maxY");
-        final Document group = new Document(
-                "_id", idComponents).append(
-                "tileCount", tileCountComponents).append(
-                "minX", minXComponents).append(
-                "maxX", maxXComponents).append(
-                "minY", minYComponents).append(
-                "maxY", maxYComponents);
-
         final List<Document> pipeline = new ArrayList<>();
-        pipeline.add(new Document("$group", group));
+        pipeline.add(new Document("$group", getSectionDataGroup()));
         pipeline.add(new Document("$sort", new Document("_id.sectionId", 1)));
         pipeline.add(new Document("$out", sectionCollectionName));
 
@@ -1242,12 +1407,199 @@ public class RenderDao {
                   sectionCount, MongoUtil.fullName(sectionCollection));
     }
 
+    /**
+     * Re-aggregates section data for only the layers that have changed since section data was last derived.
+     *
+     * @return true if section data was updated; false if all section data needs to be re-aggregated
+     *         (because section data has not been derived, was derived in an older format,
+     *          or all layers may have changed).
+     */
+    private boolean deriveSectionDataForChangedLayers(final StackId stackId,
+                                                      final Document changedLayers) {
+
+        if (! MongoUtil.exists(renderDatabase, stackId.getSectionCollectionName())) {
+            return false;
+        }
+
+        final MongoCollection<Document> sectionCollection = getSectionCollection(stackId);
+
+        // section data derived before per-section tile sizes were saved needs to be completely rebuilt
+        final Document olderFormatQuery = new Document(MIN_TILE_WIDTH_KEY, new Document("$exists", false));
+        if (sectionCollection.find(olderFormatQuery).first() != null) {
+            return false;
+        }
+
+        final List<Double> changedZValues = new ArrayList<>();
+        if (changedLayers != null) {
+            if (Boolean.TRUE.equals(changedLayers.getBoolean(ALL_LAYERS_CHANGED_KEY))) {
+                return false;
+            }
+            final List<?> storedZValues = changedLayers.get(CHANGED_Z_VALUES_KEY, List.class);
+            if (storedZValues != null) {
+                for (final Object z : storedZValues) {
+                    if (z instanceof Number) {
+                        changedZValues.add(((Number) z).doubleValue());
+                    }
+                }
+            }
+        }
+
+        if (changedZValues.size() > 0) {
+
+            final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+
+            final Document sectionQuery = new Document("_id.z", new Document(QueryOperators.IN, changedZValues));
+            final DeleteResult deleteResult = sectionCollection.deleteMany(sectionQuery);
+
+            final List<Document> pipeline = new ArrayList<>();
+            pipeline.add(new Document("$match", new Document("z", new Document(QueryOperators.IN, changedZValues))));
+            pipeline.add(new Document("$group", getSectionDataGroup()));
+
+            final List<Document> sectionDocuments = tileCollection.aggregate(pipeline).into(new ArrayList<>());
+            if (sectionDocuments.size() > 0) {
+                sectionCollection.insertMany(sectionDocuments);
+            }
+
+            LOG.debug("deriveSectionDataForChangedLayers: replaced {} sections with {} sections for {} changed layers in {}",
+                      deleteResult.getDeletedCount(), sectionDocuments.size(), changedZValues.size(),
+                      MongoUtil.fullName(sectionCollection));
+
+        } else {
+            LOG.debug("deriveSectionDataForChangedLayers: no layers have changed in {}",
+                      MongoUtil.fullName(sectionCollection));
+        }
+
+        return true;
+    }
+
+    /**
+     * @return group stage specification for aggregating tile data into section data.
+     */
+    private Document getSectionDataGroup() {
+
+        final Document idComponents = new Document("sectionId", "$layout.sectionId").append("z", "$z");
+        final Document tileWidth = new Document("$subtract", buildBasicDBList(new String[] {"$maxX","$minX" }));
+        final Document tileHeight = new Document("$subtract", buildBasicDBList(new String[] {"$maxY","$minY" }));
+
+        return new Document(
+                "_id", idComponents).append(
+                "tileCount", new Document("$sum", 1)).append(
+                "minX", new Document(QueryOperators.MIN, "$minX")).append(
+                "maxX", new Document(QueryOperators.MAX, "$maxX")).append(
+                "minY", new Document(QueryOperators.MIN, "$minY")).append(
+                "maxY", new Document(QueryOperators.MAX, "$maxY")).append(
+                MIN_TILE_WIDTH_KEY, new Document(QueryOperators.MIN, tileWidth)).append(
+                "maxTileWidth", new Document(QueryOperators.MAX, tileWidth)).append(
+                "minTileHeight", new Document(QueryOperators.MIN, tileHeight)).append(
+                "maxTileHeight", new Document(QueryOperators.MAX, tileHeight)).append(
+                "channelNames", new Document("$addToSet", "$channels.name"));
+    }
+
+    /**
+     * @return stack stats derived from the (small) stack section data collection
+     *         instead of from the (large) tile collection.
+     */
+    private StackStats buildStatsFromSectionData(final StackId stackId,
+                                                 final long transformCount) {
+
+        final Set<Double> zValues = new HashSet<>();
+        final Set<String> channelNames = new TreeSet<>();
+        long tileCount = 0;
+        Double minX = null;
+        Double minY = null;
+        Double minZ = null;
+        Double maxX = null;
+        Double maxY = null;
+        Double maxZ = null;
+        Double minTileWidth = null;
+        Double maxTileWidth = null;
+        Double minTileHeight = null;
+        Double maxTileHeight = null;
+
+        try (final MongoCursor<Document> cursor = getSectionCollection(stackId).find().iterator()) {
+            Document document;
+            Double z;
+            Number sectionTileCount;
+            while (cursor.hasNext()) {
+                document = cursor.next();
+
+                z = document.get("_id", Document.class).getDouble("z");
+                if (z != null) {
+                    zValues.add(z);
+                    minZ = min(minZ, z);
+                    maxZ = max(maxZ, z);
+                }
+
+                // aggregation creates an Integer if the tileCount is small enough
+                sectionTileCount = document.get("tileCount", Number.class);
+                if (sectionTileCount != null) {
+                    tileCount += sectionTileCount.longValue();
+                }
+
+                minX = min(minX, document.getDouble("minX"));
+                minY = min(minY, document.getDouble("minY"));
+                maxX = max(maxX, document.getDouble("maxX"));
+                maxY = max(maxY, document.getDouble("maxY"));
+                minTileWidth = min(minTileWidth, document.getDouble(MIN_TILE_WIDTH_KEY));
+                maxTileWidth = max(maxTileWidth, document.getDouble("maxTileWidth"));
+                minTileHeight = min(minTileHeight, document.getDouble("minTileHeight"));
+                maxTileHeight = max(maxTileHeight, document.getDouble("maxTileHeight"));
+
+                addChannelNames(document.get("channelNames"), channelNames);
+            }
+        }
+
+        long nonIntegralSectionCount = 0;
+        for (final Double z : zValues) {
+            if (z > (double) z.intValue()) {
+                nonIntegralSectionCount++;
+            }
+        }
+
+        return new StackStats(new Bounds(minX, minY, minZ, maxX, maxY, maxZ),
+                              (long) zValues.size(),
+                              nonIntegralSectionCount,
+                              tileCount,
+                              transformCount,
+                              MongoUtil.toInteger(minTileWidth),
+                              MongoUtil.toInteger(maxTileWidth),
+                              MongoUtil.toInteger(minTileHeight),
+                              MongoUtil.toInteger(maxTileHeight),
+                              new LinkedHashSet<>(channelNames));
+    }
+
+    /**
+     * Adds all channel names in the specified (possibly nested) section data list to the specified set.
+     */
+    private void addChannelNames(final Object channelNameData,
+                                 final Set<String> channelNames) {
+        if (channelNameData instanceof String) {
+            channelNames.add((String) channelNameData);
+        } else if (channelNameData instanceof List) {
+            for (final Object value : (List<?>) channelNameData) {
+                addChannelNames(value, channelNames);
+            }
+        }
+    }
+
+    private static Double min(final Double a,
+                              final Double b) {
+        return (a == null) ? b : (b == null) ? a : Math.min(a, b);
+    }
+
+    private static Double max(final Double a,
+                              final Double b) {
+        return (a == null) ? b : (b == null) ? a : Math.max(a, b);
+    }
+
     public void removeStack(final StackId stackId,
                             final boolean includeMetaData)
             throws IllegalArgumentException {
 
         MongoUtil.validateRequiredParameter("stackId", stackId);
 
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final long tileCount = tileCollection.count();
         tileCollection.drop();
@@ -1268,6 +1620,8 @@ public class RenderDao {
         LOG.debug("removeStack: {}.drop() deleted {} document(s)",
                   MongoUtil.fullName(sectionCollection), sectionCount);
 
+        getChangedLayersCollection().deleteMany(getStackIdQuery(stackId));
+
         if (includeMetaData) {
             final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
             final Document stackIdQuery = getStackIdQuery(stackId);
@@ -1287,10 +1641,15 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("sectionId", sectionId);
 
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileQuery = new Document("layout.sectionId", sectionId);
+        final Set<Double> changedZValues = getDistinctZValues(stackId, tileQuery);
         final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
 
+        recordChangedLayers(stackId, changedZValues);
+
         LOG.debug("removeTilesWithSectionId: {}.remove({}) deleted {} document(s)",
                   MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
     }
@@ -1302,10 +1661,14 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("z", z);
 
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileQuery = new Document("z", z);
         final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
 
+        recordChangedLayers(stackId, Collections.singleton(z));
+
         LOG.debug("removeTilesWithZ: {}.remove({}) deleted {} document(s)",
                   MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
     }
@@ -1325,8 +1688,11 @@ public class RenderDao {
                                                       new Document(QueryOperators.IN,
                                                                    Arrays.asList("list of",
                                                                                  tileIds.size() + " tileIds")));
+        final Set<Double> changedZValues = getDistinctZValues(stackId, tileQuery);
         final DeleteResult removeResult = tileCollection.deleteMany(tileQuery);
 
+        recordChangedLayers(stackId, changedZValues);
+
         LOG.debug("removeTilesWithIds: {}.remove({}) deleted {} document(s)",
                   MongoUtil.fullName(tileCollection), tileQueryForLog.toJson(), removeResult.getDeletedCount());
     }
@@ -1338,10 +1704,15 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("stackId", stackId);
         MongoUtil.validateRequiredParameter("tileId", tileId);
 
+        invalidateCachedStackData(stackId);
+
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document tileQuery = new Document("tileId", tileId);
+        final Set<Double> changedZValues = getDistinctZValues(stackId, tileQuery);
         final DeleteResult removeResult = tileCollection.deleteOne(tileQuery);
 
+        recordChangedLayers(stackId, changedZValues);
+
         LOG.debug("removeTile: {}.remove({}) deleted {} document(s)",
                   MongoUtil.fullName(tileCollection), tileQuery.toJson(), removeResult.getDeletedCount());
     }
@@ -1414,6 +1785,88 @@ public class RenderDao {
         return list;
     }
 
+    /**
+     * @param  stackId      stack identifier.
+     * @param  z            z value for all points.
+     * @param  worldPoints  list of world [x, y] points.
+     *
+     * @return list (in point order) of the sorted ids for all tiles that contain each point.
+     *         Lists for points that are not in any tile are empty.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws ObjectNotFoundException
+     *    if the stack cannot be found.
+     */
+    public List<List<String>> getTileIdsForPoints(final StackId stackId,
+                                                  final Double z,
+                                                  final List<double[]> worldPoints)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+        MongoUtil.validateRequiredParameter("worldPoints", worldPoints);
+
+        final List<List<String>> tileIdsForPoints = new ArrayList<>(worldPoints.size());
+
+        final StackMetaData stackMetaData = getStackMetaData(stackId);
+        if (tileBoundsIndexCache.isCacheable(stackMetaData)) {
+            for (final double[] point : worldPoints) {
+                tileIdsForPoints.add(
+                        tileBoundsIndexCache.getIntersectingTileIds(stackMetaData,
+                                                                    z, point[0], point[1], point[0], point[1],
+                                                                    this::getTileBoundsForZ));
+            }
+        } else if (worldPoints.size() <= MAX_POINTS_FOR_BOX_QUERIES) {
+            // for a few points, querying for the matching tiles is cheaper than loading the whole layer
+            if (stackMetaData == null) {
+                throwExceptionIfStackIsMissing(stackId);
+            }
+            final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+            for (final double[] point : worldPoints) {
+                tileIdsForPoints.add(getTileIdsInBox(tileCollection, z, point[0], point[1], point[0], point[1]));
+            }
+        } else {
+            // stack layers can't be cached, so build a temporary index for this request
+            final TileBoundsIndexCache.LayerIndex layerIndex =
+                    new TileBoundsIndexCache.LayerIndex(z, getTileBoundsForZ(stackId, z));
+            for (final double[] point : worldPoints) {
+                tileIdsForPoints.add(layerIndex.findTileIdsInBox(point[0], point[1], point[0], point[1]));
+            }
+        }
+
+        LOG.debug("getTileIdsForPoints: found tile ids for {} points in {} z {}",
+                  worldPoints.size(), stackId, z);
+
+        return tileIdsForPoints;
+    }
+
+    /**
+     * @return sorted ids of the tiles in the specified layer that intersect the specified box.
+     */
+    private List<String> getTileIdsInBox(final MongoCollection<Document> tileCollection,
+                                         final double z,
+                                         final double x,
+                                         final double y,
+                                         final double lowerRightX,
+                                         final double lowerRightY) {
+
+        final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
+        final Document tileKeys = new Document("tileId", 1).append("_id", 0);
+        final Document orderBy = new Document("tileId", 1);
+
+        final List<String> tileIds = new ArrayList<>();
+        try (final MongoCursor<Document> cursor =
+                     tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
+            while (cursor.hasNext()) {
+                tileIds.add(cursor.next().getString("tileId"));
+            }
+        }
+
+        return tileIds;
+    }
+
     /**
      * @return spatial data for all tiles with the specified z.
      *
@@ -1463,6 +1916,8 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("fromStackId", fromStackId);
         MongoUtil.validateRequiredParameter("toStackId", toStackId);
 
+        invalidateCachedStackData(toStackId);
+
         if ((skipTransforms == null) || (! skipTransforms)) {
             final MongoCollection<Document> fromTransformCollection = getTransformCollection(fromStackId);
             final MongoCollection<Document> toTransformCollection = getTransformCollection(toStackId);
@@ -1480,6 +1935,8 @@ public class RenderDao {
         final MongoCollection<Document> fromTileCollection = getTileCollection(fromStackId);
         final MongoCollection<Document> toTileCollection = getTileCollection(toStackId);
         cloneCollection(fromTileCollection, toTileCollection, filterQuery);
+
+        recordAllLayersChanged(toStackId);
     }
 
     /**
@@ -1501,6 +1958,9 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("fromStackId", fromStackId);
         MongoUtil.validateRequiredParameter("toStackId", toStackId);
 
+        invalidateCachedStackData(fromStackId);
+        invalidateCachedStackData(toStackId);
+
         final StackMetaData fromStackMetaData = getStackMetaData(fromStackId);
         if (fromStackMetaData == null) {
             throw new ObjectNotFoundException(fromStackId + " does not exist");
@@ -1523,6 +1983,13 @@ public class RenderDao {
         MongoUtil.renameCollection(renderDatabase,
                                    fromStackId.getTileCollectionName(), toStackId.getTileCollectionName());
 
+        final Document toStackIdFields = new Document(
+                "stackId.owner", toStackId.getOwner()).append(
+                "stackId.project", toStackId.getProject()).append(
+                "stackId.stack", toStackId.getStack());
+        getChangedLayersCollection().updateOne(getStackIdQuery(fromStackId),
+                                               new Document("$set", toStackIdFields));
+
         toStackMetaData = StackMetaData.buildDerivedMetaData(toStackId, fromStackMetaData);
 
         final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
@@ -1578,7 +2045,7 @@ public class RenderDao {
             outputStream.write(header.getBytes());
         }
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<TileSpec> tileCollection = getTileSpecCollection(stackId);
 
         Document zFilter = null;
         if (minZ != null) {
@@ -1605,15 +2072,13 @@ public class RenderDao {
         final ProcessTimer timer = new ProcessTimer();
         int tileSpecCount = 0;
         final Document orderBy = format.getOrderBy();
-        try (final MongoCursor<Document> cursor =
+        try (final MongoCursor<TileSpec> cursor =
                      tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
 
-            Document document;
             TileSpec tileSpec;
             String layoutText;
             while (cursor.hasNext()) {
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
+                tileSpec = cursor.next();
                 layoutText = format.formatTileSpec(tileSpec, stackRequestUri);
                 outputStream.write(layoutText.getBytes());
                 tileSpecCount++;
@@ -1759,7 +2224,7 @@ public class RenderDao {
         return list;
     }
 
-    private List<TransformSpec> getTransformSpecs(final MongoCollection<Document> transformCollection,
+    private List<TransformSpec> getTransformSpecs(final MongoCollection<TransformSpec> transformCollection,
                                                   final Set<String> specIds) {
         final int specCount = specIds.size();
         final List<TransformSpec> transformSpecList = new ArrayList<>(specCount);
@@ -1771,13 +2236,9 @@ public class RenderDao {
             LOG.debug("getTransformSpecs: {}.find({})",
                       MongoUtil.fullName(transformCollection), transformQuery.toJson());
 
-            try (final MongoCursor<Document> cursor = transformCollection.find(transformQuery).iterator()) {
-                Document document;
-                TransformSpec transformSpec;
+            try (final MongoCursor<TransformSpec> cursor = transformCollection.find(transformQuery).iterator()) {
                 while (cursor.hasNext()) {
-                    document = cursor.next();
-                    transformSpec = TransformSpec.fromJson(document.toJson());
-                    transformSpecList.add(transformSpec);
+                    transformSpecList.add(cursor.next());
                 }
             }
 
@@ -1786,7 +2247,7 @@ public class RenderDao {
         return transformSpecList;
     }
 
-    private void getDataForTransformSpecReferences(final MongoCollection<Document> transformCollection,
+    private void getDataForTransformSpecReferences(final MongoCollection<TransformSpec> transformCollection,
                                                    final Set<String> unresolvedSpecIds,
                                                    final Map<String, TransformSpec> resolvedIdToSpecMap,
                                                    final int callCount) {
@@ -1825,11 +2286,42 @@ public class RenderDao {
         }
     }
 
+    /**
+     * Adds the ids of all references in the specified (raw document) transform data to the specified set.
+     */
+    private void addReferencedTransformIds(final Object transformData,
+                                           final Set<String> referencedIds) {
+        if (transformData instanceof Document) {
+            final Document document = (Document) transformData;
+            if (ReferenceTransformSpec.TYPE.equals(document.get("type"))) {
+                final Object refId = document.get("refId");
+                if (refId instanceof String) {
+                    referencedIds.add((String) refId);
+                }
+            } else {
+                for (final Object value : document.values()) {
+                    addReferencedTransformIds(value, referencedIds);
+                }
+            }
+        } else if (transformData instanceof List) {
+            for (final Object value : (List<?>) transformData) {
+                addReferencedTransformIds(value, referencedIds);
+            }
+        }
+    }
+
+    private void addResolvedTileSpecs(final StackId stackId,
+                                      final Document tileQuery,
+                                      final RenderParameters renderParameters) {
+        addResolvedTileSpecs(stackId, getStackMetaDataSupplier(stackId), tileQuery, renderParameters);
+    }
+
     private Map<String, TransformSpec> addResolvedTileSpecs(final StackId stackId,
+                                                            final Supplier<StackMetaData> stackMetaData,
                                                             final Document tileQuery,
                                                             final RenderParameters renderParameters) {
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final MongoCollection<TileSpec> tileCollection = getTileSpecCollection(stackId);
 
         // EXAMPLE:   find({"z": 4050.0 , "minX": {"$lte": 239850.0} , "minY": {"$lte": 149074.0}, "maxX": {"$gte": -109.0}, "maxY": {"$gte": 370.0}}).sort({"tileId": 1})
         // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
@@ -1837,16 +2329,14 @@ public class RenderDao {
         // order tile specs by tileId to ensure consistent coordinate mapping
         final Document orderBy = new Document("tileId", 1);
 
-        try (final MongoCursor<Document> cursor = tileCollection.find(tileQuery).sort(orderBy).iterator()) {
-            Document document;
+        try (final MongoCursor<TileSpec> cursor = tileCollection.find(tileQuery).sort(orderBy).iterator()) {
             TileSpec tileSpec;
             int count = 0;
             while (cursor.hasNext()) {
-                if (count > 50000) {
+                if (count > MAX_TILES_PER_QUERY) {
                     throw new IllegalArgumentException("query too broad, over " + count + " tiles match " + tileQuery);
                 }
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
+                tileSpec = cursor.next();
                 renderParameters.addTileSpec(tileSpec);
                 count++;
             }
@@ -1862,7 +2352,15 @@ public class RenderDao {
                       queryJson, orderBy.toJson());
         }
 
-        return resolveTransformReferencesForTiles(stackId, renderParameters.getTileSpecs());
+        return resolveTransformReferencesForTiles(stackId, renderParameters.getTileSpecs(), stackMetaData);
+    }
+
+    /**
+     * @return supplier that loads the specified stack's metadata the first time it is needed
+     *         and then returns the same metadata for the rest of the request.
+     */
+    private Supplier<StackMetaData> getStackMetaDataSupplier(final StackId stackId) {
+        return Suppliers.memoize(() -> getStackMetaData(stackId));
     }
 
     private Document lte(final double value) {
@@ -1889,6 +2387,146 @@ public class RenderDao {
                 "maxY", gte(y));
     }
 
+    /**
+     * Discards this JVM's cached data for the specified stack.
+     * Caches in other JVMs detect changes through the stack's last modified timestamp.
+     */
+    private void invalidateCachedStackData(final StackId stackId) {
+        tileBoundsIndexCache.invalidateStack(stackId);
+        resolvedTransformSpecCache.invalidateStack(stackId);
+    }
+
+    /**
+     * @return mutable set of the distinct (non-null) z values for tiles that match the specified query.
+     */
+    private Set<Double> getDistinctZValues(final StackId stackId,
+                                           final Document tileQuery) {
+        final Set<Double> zValues = new HashSet<>();
+        for (final Double z : getTileCollection(stackId).distinct("z", tileQuery, Double.class)) {
+            if (z != null) {
+                zValues.add(z);
+            }
+        }
+        return zValues;
+    }
+
+    /**
+     * Remembers that tiles in the specified layers have changed so that only those layers
+     * need to be re-aggregated the next time stack stats are derived.
+     */
+    private void recordChangedLayers(final StackId stackId,
+                                     final Collection<Double> zValues) {
+
+        final List<Double> changedZValues = new ArrayList<>(zValues.size());
+        for (final Double z : zValues) {
+            if (z != null) {
+                changedZValues.add(z);
+            }
+        }
+
+        if (changedZValues.size() > 0) {
+            final Document update =
+                    new Document("$addToSet",
+                                 new Document(CHANGED_Z_VALUES_KEY, new Document("$each", changedZValues)));
+            getChangedLayersCollection().updateOne(getStackIdQuery(stackId), update, MongoUtil.UPSERT_OPTION);
+        }
+    }
+
+    /**
+     * Remembers that (potentially) all layers of the specified stack have changed so that
+     * all section data is re-aggregated the next time stack stats are derived.
+     */
+    private void recordAllLayersChanged(final StackId stackId) {
+        final Document update = new Document("$set", new Document(ALL_LAYERS_CHANGED_KEY, true));
+        getChangedLayersCollection().updateOne(getStackIdQuery(stackId), update, MongoUtil.UPSERT_OPTION);
+    }
+
+    /**
+     * Removes the currently recorded layer changes for the specified stack so that they can be re-aggregated.
+     * Only the z values (and all layers flag) that were read are removed, so any changes recorded
+     * after this call remain for the next derivation.
+     *
+     * @return the claimed changes or null if no changes were recorded.
+     */
+    private Document claimChangedLayers(final StackId stackId) {
+
+        final MongoCollection<Document> changedLayersCollection = getChangedLayersCollection();
+        final Document stackIdQuery = getStackIdQuery(stackId);
+        final Document changedLayers = changedLayersCollection.find(stackIdQuery).first();
+
+        if (changedLayers != null) {
+
+            final Document update = new Document();
+            final List<?> changedZValues = changedLayers.get(CHANGED_Z_VALUES_KEY, List.class);
+            if ((changedZValues != null) && (changedZValues.size() > 0)) {
+                update.append("$pullAll", new Document(CHANGED_Z_VALUES_KEY, changedZValues));
+            }
+            if (Boolean.TRUE.equals(changedLayers.getBoolean(ALL_LAYERS_CHANGED_KEY))) {
+                update.append("$unset", new Document(ALL_LAYERS_CHANGED_KEY, ""));
+            }
+            if (update.size() > 0) {
+                changedLayersCollection.updateOne(stackIdQuery, update);
+            }
+
+            // only remove the document if no other changes were recorded after it was read
+            final Document unchangedQuery = getStackIdQuery(stackId).append(
+                    CHANGED_Z_VALUES_KEY + ".0", new Document(QueryOperators.EXISTS, false)).append(
+                    ALL_LAYERS_CHANGED_KEY, new Document(QueryOperators.NE, true));
+            changedLayersCollection.deleteOne(unchangedQuery);
+        }
+
+        return changedLayers;
+    }
+
+    /**
+     * Re-records claimed layer changes after a failed derivation so that they are not lost.
+     */
+    private void restoreChangedLayers(final StackId stackId,
+                                      final Document changedLayers) {
+        if (changedLayers != null) {
+            if (Boolean.TRUE.equals(changedLayers.getBoolean(ALL_LAYERS_CHANGED_KEY))) {
+                recordAllLayersChanged(stackId);
+            }
+            final List<?> changedZValues = changedLayers.get(CHANGED_Z_VALUES_KEY, List.class);
+            if (changedZValues != null) {
+                final List<Double> zValues = new ArrayList<>(changedZValues.size());
+                for (final Object z : changedZValues) {
+                    if (z instanceof Number) {
+                        zValues.add(((Number) z).doubleValue());
+                    }
+                }
+                recordChangedLayers(stackId, zValues);
+            }
+        }
+    }
+
+    private Document getTileIdsQuery(final List<String> tileIds) {
+        return new Document("tileId", new Document(QueryOperators.IN, tileIds));
+    }
+
+    /**
+     * @return sorted ids of the tiles in the specified layer that intersect the specified box
+     *         (using the cached spatial index for the layer) or null if the stack's layers cannot be indexed.
+     */
+    private List<String> getIndexedTileIds(final StackMetaData stackMetaData,
+                                           final double z,
+                                           final double x,
+                                           final double y,
+                                           final double lowerRightX,
+                                           final double lowerRightY) {
+
+        List<String> tileIds = null;
+
+        if (tileBoundsIndexCache.isCacheable(stackMetaData)) {
+
+            tileIds = tileBoundsIndexCache.getIntersectingTileIds(stackMetaData,
+                                                                  z, x, y, lowerRightX, lowerRightY,
+                                                                  this::getTileBoundsForZ);
+        }
+
+        return tileIds;
+    }
+
     private Document getStackIdQuery(final StackId stackId) {
         return new Document(
                 "stackId.owner", stackId.getOwner()).append(
@@ -1954,7 +2592,7 @@ public class RenderDao {
         final Set<String> unresolvedTransformSpecIds = transformSpec.getUnresolvedIds();
 
         if (unresolvedTransformSpecIds.size() > 0) {
-            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+            final MongoCollection<TransformSpec> transformCollection = getTransformSpecCollection(stackId);
             final List<TransformSpec> transformSpecList = getTransformSpecs(transformCollection,
                                                                             unresolvedTransformSpecIds);
             if (transformSpecList.size() != unresolvedTransformSpecIds.size()) {
@@ -2092,17 +2730,16 @@ public class RenderDao {
     private void saveResolvedTransforms(final StackId stackId,
                                         final Collection<TransformSpec> transformSpecs) {
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final MongoCollection<TransformSpec> transformCollection = getTransformSpecCollection(stackId);
 
         int updateCount = 0;
         int insertCount = 0;
         UpdateResult result;
         for (final TransformSpec transformSpec : transformSpecs) {
             final Document query = new Document("id", transformSpec.getId());
-            final Document transformSpecObject = Document.parse(transformSpec.toJson());
             try {
                 result = transformCollection.replaceOne(query,
-                                                        transformSpecObject,
+                                                        transformSpec,
                                                         MongoUtil.UPSERT_OPTION);
                 if (result.getMatchedCount() > 0) {
                     updateCount++;
@@ -2113,7 +2750,7 @@ public class RenderDao {
                 LOG.warn("possible duplicate key exception thrown for upsert, retrying operation ...", e);
 
                 result = transformCollection.replaceOne(query,
-                                                        transformSpecObject,
+                                                        transformSpec,
                                                         MongoUtil.UPSERT_OPTION);
                 if (result.getMatchedCount() > 0) {
                     updateCount++;
@@ -2132,6 +2769,10 @@ public class RenderDao {
         }
     }
 
+    private MongoCollection<Document> getChangedLayersCollection() {
+        return renderDatabase.getCollection(STACK_CHANGED_LAYERS_COLLECTION_NAME);
+    }
+
     private MongoCollection<Document> getStackMetaDataCollection() {
         return renderDatabase.getCollection(STACK_META_DATA_COLLECTION_NAME);
     }
@@ -2140,6 +2781,10 @@ public class RenderDao {
         return renderDatabase.getCollection(stackId.getTileCollectionName());
     }
 
+    private MongoCollection<TileSpec> getTileSpecCollection(final StackId stackId) {
+        return getTileCollection(stackId).withDocumentClass(TileSpec.class);
+    }
+
     private MongoCollection<Document> getSectionCollection(final StackId stackId) {
         return renderDatabase.getCollection(stackId.getSectionCollectionName());
     }
@@ -2148,6 +2793,10 @@ public class RenderDao {
         return renderDatabase.getCollection(stackId.getTransformCollectionName());
     }
 
+    private MongoCollection<TransformSpec> getTransformSpecCollection(final StackId stackId) {
+        return getTransformCollection(stackId).withDocumentClass(TransformSpec.class);
+    }
+
     private void ensureCoreTransformIndex(final MongoCollection<Document> transformCollection) {
         MongoUtil.createIndex(transformCollection,
                               new Document("id", 1),
@@ -2203,6 +2852,15 @@ public class RenderDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderDao.class);
 
+    private static final String CHANGED_Z_VALUES_KEY = "changedZValues";
+    private static final String ALL_LAYERS_CHANGED_KEY = "allLayersChanged";
+    private static final String MIN_TILE_WIDTH_KEY = "minTileWidth";
+
+    private static final int MAX_TILES_PER_QUERY = 50000;
+
+    /** Maximum number of points in a non-indexed layer to look up with individual box queries. */
+    private static final int MAX_POINTS_FOR_BOX_QUERIES = 100;
+
     /** Explicitly named index options allow a little more namespace room for stack id components. */
     private static final IndexOptions TRANSFORM_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions TILE_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
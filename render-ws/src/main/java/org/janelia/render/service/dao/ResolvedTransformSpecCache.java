@@ -0,0 +1,180 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server side cache of fully resolved (shared) transform specs for each stack.
+ *
+ * Most stacks have a small number of reference transforms (e.g. lens correction or section-level affines)
+ * that are used by every tile, so caching them allows tile requests to skip the transform collection queries.
+ *
+ * Like the {@link TileBoundsIndexCache}, specs are keyed by stack, stack last modified timestamp,
+ * and transform id, so changes to a stack implicitly invalidate its specs.
+ * Specs for LOADING stacks are never cached because their timestamps are not updated as transforms are added.
+ * As with the index cache, explicit invalidation only affects the local JVM and other
+ * web service instances rely upon the last modified timestamp keys to detect stack changes.
+ *
+ * Cached specs are shared across requests, so callers must not modify them.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTransformSpecCache {
+
+    /** Default max number of cached transform specs. */
+    public static final long DEFAULT_MAX_NUMBER_OF_SPECS = 100_000L;
+
+    private static ResolvedTransformSpecCache sharedCache;
+
+    public static ResolvedTransformSpecCache getSharedInstance() {
+        if (sharedCache == null) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (sharedCache == null) {
+            sharedCache = new ResolvedTransformSpecCache(DEFAULT_MAX_NUMBER_OF_SPECS);
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private final long maximumNumberOfSpecs;
+    private final Cache<String, TransformSpec> specCache;
+    private final Map<String, Long> stackToLastModifiedTime;
+
+    /**
+     * @param  maximumNumberOfSpecs  maximum number of specs to cache (zero disables caching).
+     */
+    public ResolvedTransformSpecCache(final long maximumNumberOfSpecs) {
+        this.maximumNumberOfSpecs = maximumNumberOfSpecs;
+        this.specCache = CacheBuilder.newBuilder()
+                .maximumSize(maximumNumberOfSpecs)
+                .recordStats()
+                .build();
+        this.stackToLastModifiedTime = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return true if transform specs for the specified stack can be cached.
+     */
+    public boolean isCacheable(final StackMetaData stackMetaData) {
+        return (maximumNumberOfSpecs > 0) &&
+               (stackMetaData != null) &&
+               (! stackMetaData.isLoading()) &&
+               (stackMetaData.getLastModifiedTimestamp() != null);
+    }
+
+    /**
+     * @param  stackMetaData  metadata for the stack (must be cacheable).
+     * @param  specIds        ids of the desired specs.
+     *
+     * @return map of ids to cached specs for the subset of specified ids that are cached.
+     */
+    public Map<String, TransformSpec> getResolvedSpecs(final StackMetaData stackMetaData,
+                                                       final Collection<String> specIds) {
+
+        invalidateStaleEntries(stackMetaData);
+
+        final String keyPrefix = getKeyPrefix(stackMetaData);
+        final Map<String, TransformSpec> idToSpecMap = new HashMap<>();
+        TransformSpec spec;
+        for (final String specId : specIds) {
+            spec = specCache.getIfPresent(keyPrefix + specId);
+            if (spec != null) {
+                idToSpecMap.put(specId, spec);
+            }
+        }
+
+        return idToSpecMap;
+    }
+
+    /**
+     * Caches the fully resolved specs in the specified collection (other specs are ignored).
+     *
+     * @param  stackMetaData  metadata for the stack (must be cacheable).
+     * @param  specs          specs to cache.
+     */
+    public void putResolvedSpecs(final StackMetaData stackMetaData,
+                                 final Collection<TransformSpec> specs) {
+
+        invalidateStaleEntries(stackMetaData);
+
+        final String keyPrefix = getKeyPrefix(stackMetaData);
+        for (final TransformSpec spec : specs) {
+            if (spec.hasId() && spec.isFullyResolved()) {
+                specCache.put(keyPrefix + spec.getId(), spec);
+            }
+        }
+    }
+
+    /**
+     * Discards all cached specs for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        final String stackPrefix = getStackPrefix(stackId);
+        stackToLastModifiedTime.remove(stackPrefix);
+        specCache.asMap().keySet().removeIf(key -> key.startsWith(stackPrefix));
+    }
+
+    /**
+     * Discards all cached specs.
+     */
+    public void invalidateAll() {
+        stackToLastModifiedTime.clear();
+        specCache.invalidateAll();
+    }
+
+    public long size() {
+        return specCache.size();
+    }
+
+    public CacheStats getStats() {
+        return specCache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", maximumNumberOfSpecs: " + maximumNumberOfSpecs +
+               '}';
+    }
+
+    private void invalidateStaleEntries(final StackMetaData stackMetaData) {
+
+        final String stackPrefix = getStackPrefix(stackMetaData.getStackId());
+        final long lastModifiedTime = stackMetaData.getLastModifiedTimestamp().getTime();
+        final Long previousLastModifiedTime = stackToLastModifiedTime.put(stackPrefix, lastModifiedTime);
+
+        if ((previousLastModifiedTime != null) && (previousLastModifiedTime != lastModifiedTime)) {
+            final String currentKeyPrefix = getKeyPrefix(stackMetaData);
+            specCache.asMap().keySet().removeIf(
+                    key -> key.startsWith(stackPrefix) && (! key.startsWith(currentKeyPrefix)));
+            LOG.info("invalidateStaleEntries: removed specs for {} modified before {}",
+                     stackMetaData.getStackId(), stackMetaData.getLastModifiedTimestamp());
+        }
+    }
+
+    private static String getStackPrefix(final StackId stackId) {
+        return stackId.toJson() + "::";
+    }
+
+    private static String getKeyPrefix(final StackMetaData stackMetaData) {
+        return getStackPrefix(stackMetaData.getStackId()) + stackMetaData.getLastModifiedTimestamp().getTime() + "::";
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResolvedTransformSpecCache.class);
+}
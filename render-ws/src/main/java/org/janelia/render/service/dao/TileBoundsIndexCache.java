@@ -0,0 +1,249 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server side cache of in-memory spatial indexes for the tiles in each (stack, z) layer.
+ *
+ * Indexes allow box intersection queries to be answered without a Mongo range scan,
+ * so that only the exact intersecting tile documents need to be fetched (by tileId).
+ *
+ * Like the {@link org.janelia.render.service.util.EncodedImageCache}, indexes are keyed by stack,
+ * stack last modified timestamp, and z, so changes to a stack implicitly invalidate its indexes.
+ * Indexes for LOADING stacks are never cached because their timestamps are not updated as tiles are added.
+ *
+ * Explicit invalidation (see {@link #invalidateStack}) only affects the cache in the local JVM.
+ * Other web service instances rely upon the last modified timestamp keys to detect stack changes.
+ *
+ * @author Eric Trautman
+ */
+public class TileBoundsIndexCache {
+
+    /** Default max number of tiles (across all layers) for the cache. */
+    public static final long DEFAULT_MAX_NUMBER_OF_TILES = 2_000_000L;
+
+    /** Loader for the bounds of all tiles in a layer. */
+    public interface TileBoundsLoader {
+        List<TileBounds> load(final StackId stackId,
+                              final Double z);
+    }
+
+    private static TileBoundsIndexCache sharedCache;
+
+    public static TileBoundsIndexCache getSharedInstance() {
+        if (sharedCache == null) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (sharedCache == null) {
+            sharedCache = new TileBoundsIndexCache(DEFAULT_MAX_NUMBER_OF_TILES);
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private final long maximumNumberOfTiles;
+    private final Cache<String, LayerIndex> layerCache;
+    private final Map<String, Long> stackToLastModifiedTime;
+
+    /**
+     * @param  maximumNumberOfTiles  maximum number of tiles to index (zero disables caching).
+     */
+    public TileBoundsIndexCache(final long maximumNumberOfTiles) {
+        this.maximumNumberOfTiles = maximumNumberOfTiles;
+        this.layerCache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumNumberOfTiles)
+                .weigher((String key, LayerIndex value) -> value.size() + 1)
+                .recordStats()
+                .build();
+        this.stackToLastModifiedTime = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return true if layers for the specified stack can be indexed.
+     */
+    public boolean isCacheable(final StackMetaData stackMetaData) {
+        return (maximumNumberOfTiles > 0) &&
+               (stackMetaData != null) &&
+               (! stackMetaData.isLoading()) &&
+               (stackMetaData.getLastModifiedTimestamp() != null);
+    }
+
+    /**
+     * @param  stackMetaData  metadata for the stack (must be cacheable).
+     * @param  z              z value for the layer.
+     * @param  minX           minimum x value for the box.
+     * @param  minY           minimum y value for the box.
+     * @param  maxX           maximum x value for the box.
+     * @param  maxY           maximum y value for the box.
+     * @param  loader         loader for the layer's tile bounds (only called if the layer is not already indexed).
+     *
+     * @return sorted list of ids for all tiles in the layer that intersect the specified box
+     *         (using the same inclusive intersection logic as the Mongo box queries).
+     *
+     * @throws IllegalArgumentException
+     *   if the stack is not cacheable.
+     */
+    public List<String> getIntersectingTileIds(final StackMetaData stackMetaData,
+                                               final double z,
+                                               final double minX,
+                                               final double minY,
+                                               final double maxX,
+                                               final double maxY,
+                                               final TileBoundsLoader loader)
+            throws IllegalArgumentException {
+
+        if (! isCacheable(stackMetaData)) {
+            throw new IllegalArgumentException("layers for " + stackMetaData + " cannot be cached");
+        }
+
+        invalidateStaleEntries(stackMetaData);
+
+        final StackId stackId = stackMetaData.getStackId();
+        final String key = getStackPrefix(stackId) + stackMetaData.getLastModifiedTimestamp().getTime() + "::" + z;
+
+        final LayerIndex layerIndex;
+        try {
+            layerIndex = layerCache.get(key, () -> new LayerIndex(z, loader.load(stackId, z)));
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("failed to index tiles for " + stackId + " z " + z, cause);
+        }
+
+        return layerIndex.findTileIdsInBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Discards all cached indexes for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        final String stackPrefix = getStackPrefix(stackId);
+        stackToLastModifiedTime.remove(stackPrefix);
+        layerCache.asMap().keySet().removeIf(key -> key.startsWith(stackPrefix));
+    }
+
+    /**
+     * Discards all cached indexes.
+     */
+    public void invalidateAll() {
+        stackToLastModifiedTime.clear();
+        layerCache.invalidateAll();
+    }
+
+    public long size() {
+        return layerCache.size();
+    }
+
+    public CacheStats getStats() {
+        return layerCache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", maximumNumberOfTiles: " + maximumNumberOfTiles +
+               '}';
+    }
+
+    private void invalidateStaleEntries(final StackMetaData stackMetaData) {
+
+        final String stackPrefix = getStackPrefix(stackMetaData.getStackId());
+        final long lastModifiedTime = stackMetaData.getLastModifiedTimestamp().getTime();
+        final Long previousLastModifiedTime = stackToLastModifiedTime.put(stackPrefix, lastModifiedTime);
+
+        if ((previousLastModifiedTime != null) && (previousLastModifiedTime != lastModifiedTime)) {
+            final String currentKeyPrefix = stackPrefix + lastModifiedTime + "::";
+            layerCache.asMap().keySet().removeIf(
+                    key -> key.startsWith(stackPrefix) && (! key.startsWith(currentKeyPrefix)));
+            LOG.info("invalidateStaleEntries: removed indexes for {} modified before {}",
+                     stackMetaData.getStackId(), stackMetaData.getLastModifiedTimestamp());
+        }
+    }
+
+    private static String getStackPrefix(final StackId stackId) {
+        return stackId.toJson() + "::";
+    }
+
+    /**
+     * Spatial index for one layer.
+     *
+     * The RTree stores single precision bounds, so it is only used to find candidate tiles
+     * for a slightly padded box.  Candidates are then filtered with exact (double) comparisons.
+     */
+    static class LayerIndex {
+
+        private final TileBoundsRTree tree;
+
+        LayerIndex(final Double z,
+                   final List<TileBounds> tileBoundsList) {
+
+            final List<TileBounds> boundedTiles = new ArrayList<>(tileBoundsList.size());
+            for (final TileBounds tileBounds : tileBoundsList) {
+                if ((tileBounds.getMinX() != null) && (tileBounds.getMinY() != null) &&
+                    (tileBounds.getMaxX() != null) && (tileBounds.getMaxY() != null)) {
+                    boundedTiles.add(tileBounds);
+                }
+            }
+
+            this.tree = new TileBoundsRTree(z, boundedTiles);
+        }
+
+        int size() {
+            return tree.size();
+        }
+
+        List<String> findTileIdsInBox(final double minX,
+                                      final double minY,
+                                      final double maxX,
+                                      final double maxY) {
+
+            final List<TileBounds> candidates = tree.findTilesInBox(minX - getPadding(minX),
+                                                                    minY - getPadding(minY),
+                                                                    maxX + getPadding(maxX),
+                                                                    maxY + getPadding(maxY));
+            final List<String> tileIds = new ArrayList<>(candidates.size());
+            for (final TileBounds tileBounds : candidates) {
+                // same logic as RenderDao#getIntersectsBoxQuery
+                if ((tileBounds.getMinX() <= maxX) && (tileBounds.getMinY() <= maxY) &&
+                    (tileBounds.getMaxX() >= minX) && (tileBounds.getMaxY() >= minY)) {
+                    tileIds.add(tileBounds.getTileId());
+                }
+            }
+
+            Collections.sort(tileIds);
+
+            return tileIds;
+        }
+
+        /**
+         * @return padding that more than covers float rounding error for the specified value.
+         */
+        private static double getPadding(final double value) {
+            return Math.max(1.0, Math.abs(value) * 1e-6);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileBoundsIndexCache.class);
+}
@@ -0,0 +1,236 @@
+package org.janelia.render.service.dao;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.QueryOperators;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bson.Document;
+import org.janelia.alignment.spec.TileSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes tile specs for LOADING stacks in bounded batches that are processed in parallel.
+ *
+ * Each batch is first written with unordered inserts, which are much cheaper than replace-upserts
+ * when (as is typical during imports) tile ids are new.  Any tiles in a batch that already exist
+ * are then replaced, so the overall result is the same as upserting every tile.
+ *
+ * @author Eric Trautman
+ */
+public class TileSpecBulkWriter {
+
+    /** Default max number of tile specs written in one batch. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /** Default max number of batches written concurrently (across all requests). */
+    public static final int DEFAULT_NUMBER_OF_THREADS = 4;
+
+    private static TileSpecBulkWriter sharedWriter;
+
+    public static TileSpecBulkWriter getSharedInstance() {
+        if (sharedWriter == null) {
+            setSharedWriter();
+        }
+        return sharedWriter;
+    }
+
+    private static synchronized void setSharedWriter() {
+        if (sharedWriter == null) {
+            sharedWriter = new TileSpecBulkWriter(DEFAULT_BATCH_SIZE, DEFAULT_NUMBER_OF_THREADS);
+            LOG.info("setSharedWriter: exit, created {}", sharedWriter);
+        }
+    }
+
+    private final int batchSize;
+    private final int numberOfThreads;
+    private final ExecutorService executorService;
+
+    /**
+     * @param  batchSize        max number of tile specs written in one batch.
+     * @param  numberOfThreads  max number of batches written concurrently
+     *                          (specify 1 to write all batches in the calling thread).
+     *
+     * @throws IllegalArgumentException
+     *   if either value is not positive.
+     */
+    public TileSpecBulkWriter(final int batchSize,
+                              final int numberOfThreads)
+            throws IllegalArgumentException {
+
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be positive");
+        }
+
+        this.batchSize = batchSize;
+        this.numberOfThreads = numberOfThreads;
+
+        if (numberOfThreads > 1) {
+            final AtomicInteger threadCount = new AtomicInteger(0);
+            this.executorService = Executors.newFixedThreadPool(numberOfThreads, runnable -> {
+                final Thread thread = new Thread(runnable, "tile-bulk-writer-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.executorService = null;
+        }
+    }
+
+    /**
+     * Saves the specified tile specs to the specified collection.
+     *
+     * @param  tileCollection  collection for the tiles (must have a unique tileId index,
+     *                         otherwise existing tiles are duplicated instead of replaced).
+     * @param  tileSpecs       specs to save.
+     *
+     * @return z values that replaced tiles had before they were replaced.
+     *
+     * @throws IllegalStateException
+     *   if a batch write is interrupted.
+     */
+    public Set<Double> write(final MongoCollection<TileSpec> tileCollection,
+                             final Collection<TileSpec> tileSpecs)
+            throws IllegalStateException {
+
+        final long startTime = System.currentTimeMillis();
+
+        final List<TileSpec> tileSpecList = new ArrayList<>(tileSpecs);
+        final List<List<TileSpec>> batches = new ArrayList<>();
+        for (int fromIndex = 0; fromIndex < tileSpecList.size(); fromIndex += batchSize) {
+            final int toIndex = Math.min(fromIndex + batchSize, tileSpecList.size());
+            batches.add(tileSpecList.subList(fromIndex, toIndex));
+        }
+
+        final Set<Double> replacedZValues = ConcurrentHashMap.newKeySet();
+        int insertCount = 0;
+        int replaceCount = 0;
+
+        if ((executorService == null) || (batches.size() < 2)) {
+
+            for (final List<TileSpec> batch : batches) {
+                final int batchInsertCount = writeBatch(tileCollection, batch, replacedZValues);
+                insertCount += batchInsertCount;
+                replaceCount += batch.size() - batchInsertCount;
+            }
+
+        } else {
+
+            final List<Future<Integer>> futures = new ArrayList<>(batches.size());
+            for (final List<TileSpec> batch : batches) {
+                futures.add(executorService.submit(() -> writeBatch(tileCollection, batch, replacedZValues)));
+            }
+
+            RuntimeException firstFailure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    final int batchInsertCount = futures.get(i).get();
+                    insertCount += batchInsertCount;
+                    replaceCount += batches.get(i).size() - batchInsertCount;
+                } catch (final InterruptedException e) {
+                    futures.forEach(future -> future.cancel(true));
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("interrupted while writing tile specs", e);
+                } catch (final ExecutionException e) {
+                    // wait for remaining batches before failing so that no writes are left running
+                    if (firstFailure == null) {
+                        final Throwable cause = e.getCause();
+                        firstFailure = (cause instanceof RuntimeException) ? (RuntimeException) cause :
+                                       new IllegalStateException("failed to write tile specs", cause);
+                    }
+                }
+            }
+
+            if (firstFailure != null) {
+                throw firstFailure;
+            }
+        }
+
+        final long elapsedMilliseconds = Math.max(1, System.currentTimeMillis() - startTime);
+        final long tilesPerSecond = (tileSpecList.size() * 1000L) / elapsedMilliseconds;
+
+        LOG.info("write: inserted {} and replaced {} tile specs in {} batches for {}, elapsedMilliseconds={}, tilesPerSecond={}",
+                 insertCount, replaceCount, batches.size(), MongoUtil.fullName(tileCollection),
+                 elapsedMilliseconds, tilesPerSecond);
+
+        return replacedZValues;
+    }
+
+    @Override
+    public String toString() {
+        return "{batchSize: " + batchSize +
+               ", numberOfThreads: " + numberOfThreads +
+               '}';
+    }
+
+    /**
+     * @return number of inserted tile specs (the rest of the batch was replaced).
+     */
+    private int writeBatch(final MongoCollection<TileSpec> tileCollection,
+                           final List<TileSpec> batch,
+                           final Set<Double> replacedZValues) {
+
+        final List<TileSpec> existingTileSpecs = new ArrayList<>();
+
+        try {
+            tileCollection.insertMany(batch, UNORDERED_INSERT_OPTION);
+        } catch (final MongoBulkWriteException e) {
+            for (final BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+                existingTileSpecs.add(batch.get(error.getIndex()));
+            }
+        }
+
+        if (existingTileSpecs.size() > 0) {
+
+            final List<String> existingTileIds = new ArrayList<>(existingTileSpecs.size());
+            for (final TileSpec tileSpec : existingTileSpecs) {
+                existingTileIds.add(tileSpec.getTileId());
+            }
+            final Document existingQuery = new Document("tileId", new Document(QueryOperators.IN, existingTileIds));
+            final Document zKeys = new Document("z", 1).append("_id", 0);
+            for (final Document document :
+                    tileCollection.withDocumentClass(Document.class).find(existingQuery).projection(zKeys)) {
+                final Double z = document.getDouble("z");
+                if (z != null) {
+                    replacedZValues.add(z);
+                }
+            }
+
+            final List<WriteModel<TileSpec>> modelList = new ArrayList<>(existingTileSpecs.size());
+            for (final TileSpec tileSpec : existingTileSpecs) {
+                modelList.add(new ReplaceOneModel<>(new Document("tileId", tileSpec.getTileId()),
+                                                    tileSpec,
+                                                    MongoUtil.UPSERT_OPTION));
+            }
+            tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+        }
+
+        return batch.size() - existingTileSpecs.size();
+    }
+
+    private static final InsertManyOptions UNORDERED_INSERT_OPTION = new InsertManyOptions().ordered(false);
+
+    private static final Logger LOG = LoggerFactory.getLogger(TileSpecBulkWriter.class);
+}
@@ -97,28 +97,48 @@ public class BufferedImageStreamingOutput implements StreamingOutput {
         pngWriter.setCompLevel(compressionLevel);
         pngWriter.setFilterType(filterType);
 
+        writePngRows(bufferedImage, 0, new ImageLineInt(imageInfo), pngWriter);
+        pngWriter.end();
+
+//        // This looked like a nicer option, but only works for DataBufferByte (not DataBufferInt)
+//        final ImageLineSetARGBbi lines = new ImageLineSetARGBbi(bufferedImage, imageInfo);
+//        pngWriter.writeRows(lines);
+//        pngWriter.end();
+    }
+
+    /**
+     * Writes all rows of the specified ARGB image (or image strip) with the specified writer.
+     *
+     * @param  bufferedImage  image (or strip) to write.
+     * @param  firstRow       index of the image's first row within the full PNG image.
+     * @param  line           reusable line buffer for the PNG image.
+     * @param  pngWriter      writer for the full PNG image.
+     *
+     * @throws IOException
+     *   if the image's data buffer contains the wrong number of banks.
+     */
+    static void writePngRows(final BufferedImage bufferedImage,
+                             final int firstRow,
+                             final ImageLineInt line,
+                             final PngWriter pngWriter)
+            throws IOException {
+
         final DataBufferInt dataBuffer =((DataBufferInt) bufferedImage.getRaster().getDataBuffer());
         if (dataBuffer.getNumBanks() != 1) {
             throw new IOException("invalid number of banks (" + dataBuffer.getNumBanks() + "), must be 1");
         }
 
         final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) bufferedImage.getSampleModel();
-        final ImageLineInt line = new ImageLineInt(imageInfo);
         final int[] data = dataBuffer.getData();
-        for (int row = 0; row < imageInfo.rows; row++) {
+        final int numberOfColumns = bufferedImage.getWidth();
+        for (int row = 0; row < bufferedImage.getHeight(); row++) {
             int elem = sampleModel.getOffset(0, row);
-            for (int col = 0; col < imageInfo.cols; col++) {
+            for (int col = 0; col < numberOfColumns; col++) {
                 final int sample = data[elem++];
                 ImageLineHelper.setPixelRGBA8(line, col, sample);
             }
-            pngWriter.writeRow(line, row);
+            pngWriter.writeRow(line, firstRow + row);
         }
-        pngWriter.end();
-
-//        // This looked like a nicer option, but only works for DataBufferByte (not DataBufferInt)
-//        final ImageLineSetARGBbi lines = new ImageLineSetARGBbi(bufferedImage, imageInfo);
-//        pngWriter.writeRows(lines);
-//        pngWriter.end();
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(BufferedImageStreamingOutput.class);
@@ -0,0 +1,229 @@
+package org.janelia.render.service.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.alignment.util.LocalFileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Server side cache of encoded (e.g. jpeg, png, tiff) rendered images.
+ *
+ * Cached images are keyed by stack, stack last modified timestamp, and canonical render request
+ * (see {@link RenderServiceUtil#getRenderRequestKey}), so changes to a stack implicitly invalidate all
+ * of its previously cached images.  When a newer timestamp is first seen for a stack, that stack's stale
+ * in-memory entries are also explicitly removed.  Stale disk entries can no longer be reached and
+ * are eventually removed in least recently used order.
+ *
+ * Images for LOADING stacks are never cached because their timestamps are not updated as tiles are added.
+ *
+ * @author Eric Trautman
+ */
+public class EncodedImageCache {
+
+    /** Default max number of bytes for the in-memory cache. */
+    public static final long DEFAULT_MAX_BYTES = 256_000_000L; // 256MB
+
+    private static EncodedImageCache sharedCache;
+
+    public static EncodedImageCache getSharedInstance() {
+        if (sharedCache == null) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (sharedCache == null) {
+
+            final RenderServerProperties serverProperties = RenderServerProperties.getProperties();
+
+            long maxBytes = DEFAULT_MAX_BYTES;
+            final Integer maxMb = serverProperties.getInteger("webService.maxEncodedImageCacheMb");
+            if (maxMb != null) {
+                maxBytes = maxMb * 1_000_000L;
+            }
+
+            LocalFileCache fileCache = null;
+            final String directoryPath = serverProperties.get("webService.encodedImageCacheDirectory");
+            if ((directoryPath != null) && (directoryPath.trim().length() > 0)) {
+                long maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+                final Integer maxDiskGb = serverProperties.getInteger("webService.encodedImageCacheMaxGb");
+                if (maxDiskGb != null) {
+                    maxDiskBytes = maxDiskGb * 1_000_000_000L;
+                }
+                try {
+                    fileCache = new LocalFileCache(new File(directoryPath.trim()), maxDiskBytes, FILE_SUFFIX);
+                } catch (final Throwable t) {
+                    LOG.error("setSharedCache: failed to create disk cache, continuing without it", t);
+                }
+            }
+
+            sharedCache = new EncodedImageCache(maxBytes, fileCache);
+
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private final long maximumNumberOfBytes;
+    private final Cache<String, byte[]> memoryCache;
+    private final LocalFileCache fileCache;
+    private final Map<String, Long> stackToLastModifiedTime;
+
+    /**
+     * @param  maximumNumberOfBytes  maximum number of encoded image bytes to keep in memory
+     *                               (zero disables in-memory caching).
+     *
+     * @param  fileCache             second tier disk cache or null if images should only be cached in memory.
+     */
+    public EncodedImageCache(final long maximumNumberOfBytes,
+                             final LocalFileCache fileCache) {
+        this.maximumNumberOfBytes = maximumNumberOfBytes;
+        this.memoryCache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumNumberOfBytes)
+                .weigher((String key, byte[] value) -> value.length)
+                .recordStats()
+                .build();
+        this.fileCache = fileCache;
+        this.stackToLastModifiedTime = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return true if this cache can hold any images.
+     */
+    public boolean isEnabled() {
+        return (maximumNumberOfBytes > 0) || (fileCache != null);
+    }
+
+    /**
+     * @return true if images rendered from the specified stack can be cached.
+     */
+    public static boolean isCacheable(final StackMetaData stackMetaData) {
+        return (stackMetaData != null) &&
+               (! stackMetaData.isLoading()) &&
+               (stackMetaData.getLastModifiedTimestamp() != null);
+    }
+
+    /**
+     * @param  stackMetaData  metadata for the rendered stack.
+     * @param  requestKey     canonical key for the render request.
+     *
+     * @return the cached encoded image for the specified request or null if it is not cached.
+     */
+    public byte[] get(final StackMetaData stackMetaData,
+                      final String requestKey) {
+
+        byte[] encodedImage = null;
+
+        if (isCacheable(stackMetaData)) {
+
+            final String key = getKey(stackMetaData, requestKey);
+            encodedImage = memoryCache.getIfPresent(key);
+
+            if ((encodedImage == null) && (fileCache != null)) {
+                encodedImage = fileCache.read(getFileName(key), file -> Files.readAllBytes(file.toPath()));
+                if (encodedImage != null) {
+                    memoryCache.put(key, encodedImage);
+                }
+            }
+        }
+
+        return encodedImage;
+    }
+
+    /**
+     * Caches the specified encoded image (if the stack is cacheable).
+     *
+     * @param  stackMetaData  metadata for the rendered stack.
+     * @param  requestKey     canonical key for the render request.
+     * @param  encodedImage   encoded image bytes.
+     */
+    public void put(final StackMetaData stackMetaData,
+                    final String requestKey,
+                    final byte[] encodedImage) {
+
+        if (isCacheable(stackMetaData)) {
+
+            invalidateStaleEntries(stackMetaData);
+
+            final String key = getKey(stackMetaData, requestKey);
+            memoryCache.put(key, encodedImage);
+
+            if (fileCache != null) {
+                fileCache.put(getFileName(key), file -> Files.write(file.toPath(), encodedImage));
+            }
+        }
+    }
+
+    /**
+     * Discards all cached images.
+     */
+    public void invalidateAll() {
+        memoryCache.invalidateAll();
+        if (fileCache != null) {
+            fileCache.invalidateAll();
+        }
+    }
+
+    public long size() {
+        return memoryCache.size();
+    }
+
+    public CacheStats getStats() {
+        return memoryCache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", maximumNumberOfBytes: " + maximumNumberOfBytes +
+               ", fileCache: " + fileCache +
+               '}';
+    }
+
+    private void invalidateStaleEntries(final StackMetaData stackMetaData) {
+
+        final String stackPrefix = getStackPrefix(stackMetaData);
+        final long lastModifiedTime = stackMetaData.getLastModifiedTimestamp().getTime();
+        final Long previousLastModifiedTime = stackToLastModifiedTime.put(stackPrefix, lastModifiedTime);
+
+        if ((previousLastModifiedTime != null) && (previousLastModifiedTime != lastModifiedTime)) {
+            final String currentKeyPrefix = stackPrefix + lastModifiedTime + "::";
+            memoryCache.asMap().keySet().removeIf(
+                    key -> key.startsWith(stackPrefix) && (! key.startsWith(currentKeyPrefix)));
+            LOG.info("invalidateStaleEntries: removed cached images for {} modified before {}",
+                     stackMetaData.getStackId(), stackMetaData.getLastModifiedTimestamp());
+        }
+    }
+
+    private static String getStackPrefix(final StackMetaData stackMetaData) {
+        return stackMetaData.getStackId().toJson() + "::";
+    }
+
+    private static String getKey(final StackMetaData stackMetaData,
+                                 final String requestKey) {
+        return getStackPrefix(stackMetaData) + stackMetaData.getLastModifiedTimestamp().getTime() + "::" +
+               requestKey;
+    }
+
+    private static String getFileName(final String key) {
+        return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+    }
+
+    /** Default max number of bytes for the disk cache. */
+    private static final long DEFAULT_MAX_DISK_BYTES = 10_000_000_000L; // 10GB
+
+    private static final String FILE_SUFFIX = ".image";
+
+    private static final Logger LOG = LoggerFactory.getLogger(EncodedImageCache.class);
+}
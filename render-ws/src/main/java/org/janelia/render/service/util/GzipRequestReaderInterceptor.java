@@ -0,0 +1,52 @@
+package org.janelia.render.service.util;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.ReaderInterceptor;
+import javax.ws.rs.ext.ReaderInterceptorContext;
+
+/**
+ * Decompresses request bodies with a gzip content encoding before they are deserialized,
+ * so that clients can stream large (e.g. resolved tile or point match) uploads in compressed form.
+ *
+ * Requests without a gzip content encoding are passed through unchanged.
+ *
+ * @author Eric Trautman
+ */
+@Provider
+public class GzipRequestReaderInterceptor
+        implements ReaderInterceptor {
+
+    @Override
+    public Object aroundReadFrom(final ReaderInterceptorContext context)
+            throws IOException, WebApplicationException {
+
+        final List<String> contentEncodings = context.getHeaders().get(HttpHeaders.CONTENT_ENCODING);
+
+        if ((contentEncodings != null) && isGzipEncoded(contentEncodings)) {
+            context.getHeaders().remove(HttpHeaders.CONTENT_ENCODING);
+            context.setInputStream(new GZIPInputStream(context.getInputStream(), BUFFER_SIZE));
+        }
+
+        return context.proceed();
+    }
+
+    private boolean isGzipEncoded(final List<String> contentEncodings) {
+        boolean isGzip = false;
+        for (final String encoding : contentEncodings) {
+            if ((encoding != null) && GZIP_ENCODING.equalsIgnoreCase(encoding.trim())) {
+                isGzip = true;
+                break;
+            }
+        }
+        return isGzip;
+    }
+
+    private static final String GZIP_ENCODING = "gzip";
+    private static final int BUFFER_SIZE = 64 * 1024;
+}
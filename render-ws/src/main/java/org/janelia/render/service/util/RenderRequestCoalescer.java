@@ -0,0 +1,261 @@
+package org.janelia.render.service.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent identical render requests so that only one render is performed
+ * and its result is returned to every waiting request.
+ *
+ * Requests are considered identical when they have the same key (see
+ * {@link RenderServiceUtil#getRenderRequestKey}).  Keys are only tracked while a render is in flight,
+ * so this is not a cache - a request that arrives after a render has completed triggers a new render.
+ *
+ * The result of a render is only encoded into memory when other requests joined it while it was in flight.
+ * Otherwise, the rendered output is returned as is so that it can be streamed directly to the response.
+ *
+ * @author Eric Trautman
+ */
+public class RenderRequestCoalescer {
+
+    private static final RenderRequestCoalescer SHARED_INSTANCE = new RenderRequestCoalescer();
+
+    /**
+     * @return the coalescer shared across all render web service requests.
+     */
+    public static RenderRequestCoalescer getSharedInstance() {
+        return SHARED_INSTANCE;
+    }
+
+    private final Map<String, InFlightRender> keyToInFlightRender;
+    private final LongAdder requestCount;
+    private final LongAdder renderCount;
+    private final LongAdder coalescedRequestCount;
+    private final LongAdder bufferedRenderCount;
+
+    public RenderRequestCoalescer() {
+        this.keyToInFlightRender = new ConcurrentHashMap<>();
+        this.requestCount = new LongAdder();
+        this.renderCount = new LongAdder();
+        this.coalescedRequestCount = new LongAdder();
+        this.bufferedRenderCount = new LongAdder();
+    }
+
+    /**
+     * Renders (or waits for an identical in-flight render of) an image.
+     *
+     * @param  key          canonical key for the request.
+     * @param  description  short human readable description of the request (for metrics).
+     * @param  renderer     renders the image if no identical render is in flight and returns
+     *                      output that encodes the rendered image when it is written.
+     *
+     * @return output for the response.  If no other requests joined the render, this is the renderer's output.
+     *         Otherwise, it is a copy of the encoded bytes shared by all joined requests.
+     *
+     * @throws Exception
+     *   if the render fails (all coalesced requests receive the same exception).
+     */
+    public StreamingOutput getImageOutput(final String key,
+                                          final String description,
+                                          final Callable<StreamingOutput> renderer)
+            throws Exception {
+
+        requestCount.increment();
+
+        final InFlightRender newRender = new InFlightRender(description);
+
+        // join (or start) the render atomically so that the rendering request can reliably
+        // determine whether anyone joined once it has removed the render from the in-flight map
+        final InFlightRender inFlightRender = keyToInFlightRender.compute(key, (k, existingRender) -> {
+            if (existingRender == null) {
+                return newRender;
+            }
+            existingRender.joinedRequestCount.incrementAndGet();
+            return existingRender;
+        });
+
+        final StreamingOutput imageOutput;
+
+        if (inFlightRender == newRender) {
+
+            renderCount.increment();
+
+            try {
+                final StreamingOutput renderedOutput = renderer.call();
+
+                keyToInFlightRender.remove(key, newRender);
+
+                if (newRender.joinedRequestCount.get() == 0) {
+                    // nobody else needs the result, so let the caller stream it
+                    imageOutput = renderedOutput;
+                } else {
+                    bufferedRenderCount.increment();
+                    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    renderedOutput.write(outputStream);
+                    final byte[] encodedImage = outputStream.toByteArray();
+                    newRender.result.complete(encodedImage);
+                    imageOutput = getByteOutput(encodedImage);
+                }
+
+            } catch (final Throwable t) {
+                keyToInFlightRender.remove(key, newRender);
+                newRender.result.completeExceptionally(t);
+                throw t;
+            }
+
+        } else {
+
+            coalescedRequestCount.increment();
+            inFlightRender.waiterCount.incrementAndGet();
+
+            LOG.debug("getImageOutput: waiting for in-flight render of {}", inFlightRender.description);
+
+            try {
+                imageOutput = getByteOutput(inFlightRender.result.get());
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                } else {
+                    throw e;
+                }
+            } finally {
+                inFlightRender.waiterCount.decrementAndGet();
+            }
+
+        }
+
+        return imageOutput;
+    }
+
+    public Stats getStats() {
+        return new Stats(this);
+    }
+
+    private static StreamingOutput getByteOutput(final byte[] encodedImage) {
+        return outputStream -> outputStream.write(encodedImage);
+    }
+
+    private static class InFlightRender {
+
+        private final String description;
+        private final long startTime;
+        private final CompletableFuture<byte[]> result;
+        private final AtomicInteger joinedRequestCount;
+        private final AtomicInteger waiterCount;
+
+        InFlightRender(final String description) {
+            this.description = description;
+            this.startTime = System.currentTimeMillis();
+            this.result = new CompletableFuture<>();
+            this.joinedRequestCount = new AtomicInteger(0);
+            this.waiterCount = new AtomicInteger(0);
+        }
+    }
+
+    /**
+     * Snapshot of request counts and currently in-flight renders.
+     */
+    public static class Stats
+            implements Serializable {
+
+        private final long requestCount;
+        private final long renderCount;
+        private final long coalescedRequestCount;
+        private final long bufferedRenderCount;
+        private final List<InFlightRenderStats> inFlightRenders;
+
+        Stats(final RenderRequestCoalescer coalescer) {
+            this.requestCount = coalescer.requestCount.sum();
+            this.renderCount = coalescer.renderCount.sum();
+            this.coalescedRequestCount = coalescer.coalescedRequestCount.sum();
+            this.bufferedRenderCount = coalescer.bufferedRenderCount.sum();
+
+            final long now = System.currentTimeMillis();
+            this.inFlightRenders = new ArrayList<>();
+            for (final InFlightRender inFlightRender : coalescer.keyToInFlightRender.values()) {
+                inFlightRenders.add(new InFlightRenderStats(inFlightRender, now));
+            }
+            this.inFlightRenders.sort(Comparator.comparing(InFlightRenderStats::getElapsedMilliseconds).reversed());
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        public long getRenderCount() {
+            return renderCount;
+        }
+
+        /**
+         * @return number of requests that were fulfilled by another request's render.
+         */
+        public long getCoalescedRequestCount() {
+            return coalescedRequestCount;
+        }
+
+        /**
+         * @return number of renders that were encoded into memory because other requests joined them.
+         */
+        public long getBufferedRenderCount() {
+            return bufferedRenderCount;
+        }
+
+        /**
+         * @return currently in-flight renders ordered from oldest to newest.
+         */
+        public List<InFlightRenderStats> getInFlightRenders() {
+            return inFlightRenders;
+        }
+    }
+
+    /**
+     * Metrics for one in-flight render.
+     */
+    public static class InFlightRenderStats
+            implements Serializable {
+
+        private final String description;
+        private final long elapsedMilliseconds;
+        private final int waiterCount;
+
+        InFlightRenderStats(final InFlightRender inFlightRender,
+                            final long now) {
+            this.description = inFlightRender.description;
+            this.elapsedMilliseconds = now - inFlightRender.startTime;
+            this.waiterCount = inFlightRender.waiterCount.get();
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public long getElapsedMilliseconds() {
+            return elapsedMilliseconds;
+        }
+
+        /**
+         * @return number of coalesced requests currently waiting for this render.
+         */
+        public int getWaiterCount() {
+            return waiterCount;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenderRequestCoalescer.class);
+}
@@ -64,6 +64,14 @@ public class RenderServerProperties {
         return value;
     }
 
+    /**
+     * @return true if the specified property value is "true" (ignoring case); otherwise false.
+     */
+    public boolean getBoolean(final String key) {
+        final String valueString = get(key);
+        return (valueString != null) && Boolean.parseBoolean(valueString.trim());
+    }
+
     public static RenderServerProperties getProperties() {
         if (serverProperties == null) {
             buildProperties();
@@ -1,16 +1,24 @@
 package org.janelia.render.service.util;
 
+import com.google.common.hash.Hashing;
+
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.BoundingBoxRenderer;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.Renderer;
 import org.janelia.alignment.ShortRenderer;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ServiceException;
 import org.slf4j.Logger;
@@ -145,14 +153,60 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
                 }
             }
 
-            final BufferedImage targetImage = validateParametersAndRenderImage(renderParameters,
-                                                                               renderBoundingBoxesOnly,
-                                                                               render16bit);
-            final BufferedImageStreamingOutput out =
-                    new BufferedImageStreamingOutput(targetImage,
-                                                     format,
-                                                     renderParameters.isConvertToGray(),
-                                                     renderParameters.getQuality());
+            final boolean renderBoxesOnly = renderBoundingBoxesOnly;
+
+            // when configured, very large png and tiff images are rendered and streamed in strips
+            // to bound memory use, so they are not coalesced or cached
+            final int stripHeight = getStreamingStripHeight();
+            if ((! renderBoxesOnly) && (! render16bit) &&
+                isStripStreamingAppropriate(renderParameters, format, stripHeight)) {
+                final StripRenderStreamingOutput out =
+                        new StripRenderStreamingOutput(renderParameters,
+                                                       SharedImageProcessorCache.getInstance(),
+                                                       format,
+                                                       stripHeight);
+                // render the first strip before the response is committed so that its failures
+                // (e.g. missing sources) are reported with an error status
+                out.renderFirstStrip();
+                LOG.info("renderImageStream: exit, streaming image in strips of {} rows", stripHeight);
+                return responseHelper.getImageByteResponse(out, mimeType);
+            }
+
+            final String requestKey = getRenderRequestKey(renderParameters, format, renderBoxesOnly, render16bit);
+
+            // unmodified stacks are frequently rendered with identical parameters, so check for a cached result
+            final StackMetaData stackMetaData = responseHelper.getStackMetaData();
+            final EncodedImageCache encodedImageCache = EncodedImageCache.getSharedInstance();
+            final byte[] cachedImage = encodedImageCache.get(stackMetaData, requestKey);
+
+            final StreamingOutput out;
+            if (cachedImage == null) {
+                // images are only encoded into memory when they will be cached,
+                // otherwise they are encoded as they are streamed
+                final boolean cacheResult = encodedImageCache.isEnabled() &&
+                                            EncodedImageCache.isCacheable(stackMetaData);
+
+                // concurrent identical requests (e.g. from viewers opening the same layer) share one render
+                out = RenderRequestCoalescer.getSharedInstance().getImageOutput(
+                        requestKey,
+                        getRenderRequestDescription(renderParameters, format),
+                        () -> {
+                            final StreamingOutput renderedOutput =
+                                    renderImageOutput(renderParameters, format, renderBoxesOnly, render16bit);
+                            if (cacheResult) {
+                                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                                renderedOutput.write(outputStream);
+                                final byte[] encodedImage = outputStream.toByteArray();
+                                encodedImageCache.put(stackMetaData, requestKey, encodedImage);
+                                return os -> os.write(encodedImage);
+                            }
+                            return renderedOutput;
+                        });
+            } else {
+                LOG.info("renderImageStream: returning cached image");
+                out = outputStream -> outputStream.write(cachedImage);
+            }
+
             response = responseHelper.getImageByteResponse(out, mimeType);
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
@@ -182,6 +236,85 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
 
         return response;
     }
+    /**
+     * Strip streaming is disabled by default because streamed renders bypass the encoded image cache and
+     * request coalescing, and failures after the first strip can only be reported by truncating the response.
+     *
+     * @return number of rows in each strip for streamed renders or 0 if strip streaming is disabled.
+     */
+    private static int getStreamingStripHeight() {
+        final Integer stripHeight =
+                RenderServerProperties.getProperties().getInteger("webService.streamingStripHeight");
+        return stripHeight == null ? 0 : stripHeight;
+    }
+
+    /**
+     * Validates the specified parameters (since streamed renders cannot report errors once
+     * the response has started) and then determines whether they should be rendered in strips.
+     *
+     * @return true if the rendered image is large enough to be worth streaming in strips
+     *         and the parameters support strip rendering.
+     */
+    private static boolean isStripStreamingAppropriate(final RenderParameters renderParameters,
+                                                       final String format,
+                                                       final int stripHeight)
+            throws IllegalArgumentException {
+
+        boolean isAppropriate = false;
+
+        if ((stripHeight > 0) && StripRenderStreamingOutput.isSupportedFormat(format)) {
+            final int targetHeight = (int) (renderParameters.getScale() * renderParameters.getHeight());
+            if (targetHeight > (2 * stripHeight)) {
+                renderParameters.initializeDerivedValues();
+                renderParameters.validate();
+                if (Renderer.isStripRenderingSupported(renderParameters)) {
+                    renderParameters.setNumberOfThreads(SharedMappingThreadPool.getThreadsPerRequest());
+                    isAppropriate = true;
+                }
+            }
+        }
+
+        return isAppropriate;
+    }
+
+    /**
+     * @return canonical key identifying all parameters that affect the encoded result of a render request.
+     *
+     * @throws IOException
+     *   if the render parameters cannot be serialized.
+     */
+    static String getRenderRequestKey(final RenderParameters renderParameters,
+                                      final String format,
+                                      final boolean renderBoundingBoxesOnly,
+                                      final boolean render16bit)
+            throws IOException {
+        final String canonicalRequest = format + "::" + renderBoundingBoxesOnly + "::" + render16bit + "::" +
+                                        renderParameters.toJson();
+        return Hashing.sha256().hashString(canonicalRequest, StandardCharsets.UTF_8).toString();
+    }
+
+    private static String getRenderRequestDescription(final RenderParameters renderParameters,
+                                                      final String format) {
+        return format + " " + renderParameters.getWidth() + "x" + renderParameters.getHeight() +
+               " box at (" + renderParameters.getX() + ", " + renderParameters.getY() +
+               ") with scale " + renderParameters.getScale() + " and " +
+               renderParameters.numberOfTileSpecs() + " tiles";
+    }
+
+    private static StreamingOutput renderImageOutput(final RenderParameters renderParameters,
+                                                     final String format,
+                                                     final boolean renderBoundingBoxesOnly,
+                                                     final boolean render16bit) {
+
+        final BufferedImage targetImage = validateParametersAndRenderImage(renderParameters,
+                                                                           renderBoundingBoxesOnly,
+                                                                           render16bit);
+        return new BufferedImageStreamingOutput(targetImage,
+                                                format,
+                                                renderParameters.isConvertToGray(),
+                                                renderParameters.getQuality());
+    }
+
     private static BufferedImage validateParametersAndRenderImage(final RenderParameters renderParameters,
                                                                   final boolean renderBoundingBoxesOnly){
         return validateParametersAndRenderImage(renderParameters, renderBoundingBoxesOnly,false);
@@ -195,7 +328,8 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
 
         renderParameters.initializeDerivedValues();
         renderParameters.validate();
-        renderParameters.setNumberOfThreads(1); // service requests should always be single threaded
+        // limit the number of shared mapping pool threads each request can use
+        renderParameters.setNumberOfThreads(SharedMappingThreadPool.getThreadsPerRequest());
 
         final BufferedImage targetImage;
 
@@ -42,6 +42,13 @@ public class ResponseHelper {
         }
     }
 
+    /**
+     * @return metadata for the stack being rendered or null if the response is not stack based.
+     */
+    public StackMetaData getStackMetaData() {
+        return stackMetaData;
+    }
+
     public EntityTag getStackTag() {
         // Using eTag based upon last modified time instead of directly specifying the last modified time
         // to allow for other non-time based tags in the future.
@@ -1,6 +1,10 @@
 package org.janelia.render.service.util;
 
+import java.io.File;
+
 import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.alignment.util.ImageProcessorDiskCache;
+import org.janelia.alignment.util.OffHeapImageProcessorCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,20 +27,37 @@ public class SharedImageProcessorCache {
     private static synchronized void setSharedCache() {
         if (sharedCache == null) {
 
-            long maxCachedPixels = ImageProcessorCache.DEFAULT_MAX_CACHED_PIXELS;
+            // both heap and off-heap caches weigh entries by the number of bytes used to store their pixels
+            long maxCacheSize = ImageProcessorCache.DEFAULT_MAX_CACHED_PIXELS;
 
-            final Integer maxGb = RenderServerProperties.getProperties().getInteger("webService.maxImageProcessorCacheGb");
+            final RenderServerProperties serverProperties = RenderServerProperties.getProperties();
+            final Integer maxGb = serverProperties.getInteger("webService.maxImageProcessorCacheGb");
 
             if (maxGb == null) {
                 final long maxMemory = Runtime.getRuntime().maxMemory();
                 if (maxMemory < Long.MAX_VALUE) {
-                    maxCachedPixels = maxMemory / 2;
+                    maxCacheSize = maxMemory / 2;
                 }
             } else {
-                maxCachedPixels = maxGb * 1_000_000_000;
+                maxCacheSize = maxGb * 1_000_000_000L;
+            }
+
+            final String diskCacheDirectory = serverProperties.get("webService.imageDiskCacheDirectory");
+            if ((diskCacheDirectory != null) && (diskCacheDirectory.trim().length() > 0)) {
+                long maxDiskCacheBytes = ImageProcessorDiskCache.DEFAULT_MAX_BYTES;
+                final Integer maxDiskCacheGb = serverProperties.getInteger("webService.imageDiskCacheMaxGb");
+                if (maxDiskCacheGb != null) {
+                    maxDiskCacheBytes = maxDiskCacheGb * 1_000_000_000L;
+                }
+                ImageProcessorDiskCache.initializeSharedInstance(new File(diskCacheDirectory.trim()),
+                                                                 maxDiskCacheBytes);
             }
 
-            sharedCache = new ImageProcessorCache(maxCachedPixels, true, false);
+            if (serverProperties.getBoolean("webService.useOffHeapImageProcessorCache")) {
+                sharedCache = new OffHeapImageProcessorCache(maxCacheSize, true, false);
+            } else {
+                sharedCache = new ImageProcessorCache(maxCacheSize, true, false);
+            }
 
             LOG.info("setSharedCache: exit, created {}", sharedCache);
         }
@@ -0,0 +1,57 @@
+package org.janelia.render.service.util;
+
+import org.janelia.alignment.util.MappingThreadPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pixel mapping thread pool to be shared across all render web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedMappingThreadPool {
+
+    private static MappingThreadPool sharedPool;
+    private static int threadsPerRequest = 1;
+
+    public static MappingThreadPool getInstance() {
+        if (sharedPool == null) {
+            setSharedPool();
+        }
+        return sharedPool;
+    }
+
+    /**
+     * @return the maximum number of shared pool threads that can be used to map pixels for a single request.
+     */
+    public static int getThreadsPerRequest() {
+        if (sharedPool == null) {
+            setSharedPool();
+        }
+        return threadsPerRequest;
+    }
+
+    private static synchronized void setSharedPool() {
+        if (sharedPool == null) {
+
+            final RenderServerProperties serverProperties = RenderServerProperties.getProperties();
+
+            final Integer poolSize = serverProperties.getInteger("webService.mappingThreadPoolSize");
+            if (poolSize == null) {
+                sharedPool = MappingThreadPool.getSharedInstance();
+            } else {
+                sharedPool = MappingThreadPool.initializeSharedInstance(poolSize);
+            }
+
+            final Integer configuredThreadsPerRequest =
+                    serverProperties.getInteger("webService.mappingThreadsPerRequest");
+            if (configuredThreadsPerRequest != null) {
+                threadsPerRequest = Math.max(1, Math.min(configuredThreadsPerRequest, sharedPool.getParallelism()));
+            }
+
+            LOG.info("setSharedPool: exit, created {} with {} threads per request", sharedPool, threadsPerRequest);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedMappingThreadPool.class);
+}
@@ -0,0 +1,154 @@
+package org.janelia.render.service.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.janelia.alignment.ArgbRenderer;
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ar.com.hjg.pngj.FilterType;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngWriter;
+
+/**
+ * Renders and encodes large PNG or TIFF images in horizontal strips, writing each strip to the response
+ * stream as soon as it has been rendered.  This keeps peak memory proportional to the strip height
+ * (instead of the full image height) and lets clients start receiving data before the full image is rendered.
+ *
+ * Because rendering happens while the response is being written, the render parameters must be
+ * validated and the first strip should be rendered (see {@link #renderFirstStrip}) before this output
+ * is returned (see {@link RenderServiceUtil#renderImageStream}).  That way, invalid parameters and
+ * missing or unreadable sources in the first strip are reported with an error status.
+ * Failures in later strips happen after the response status and headers have been sent,
+ * so they cannot be reported as an HTTP error status - clients will instead see a truncated response.
+ *
+ * @author Eric Trautman
+ */
+public class StripRenderStreamingOutput implements StreamingOutput {
+
+    private final RenderParameters renderParameters;
+    private final ImageProcessorCache imageProcessorCache;
+    private final String format;
+    private final int stripHeight;
+    private final int width;
+    private final int height;
+    private BufferedImage firstStrip;
+
+    /**
+     * @param  renderParameters     initialized and validated parameters
+     *                              (see {@link org.janelia.alignment.Renderer#isStripRenderingSupported}).
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  format               {@link Utils#PNG_FORMAT} or {@link Utils#TIFF_FORMAT}.
+     * @param  stripHeight          number of rows to render in each strip.
+     *
+     * @throws IllegalArgumentException
+     *   if the format cannot be streamed.
+     */
+    public StripRenderStreamingOutput(final RenderParameters renderParameters,
+                                      final ImageProcessorCache imageProcessorCache,
+                                      final String format,
+                                      final int stripHeight)
+            throws IllegalArgumentException {
+
+        if (! isSupportedFormat(format)) {
+            throw new IllegalArgumentException(format + " images cannot be rendered in strips");
+        }
+
+        this.renderParameters = renderParameters;
+        this.imageProcessorCache = imageProcessorCache;
+        this.format = format;
+        this.stripHeight = stripHeight;
+
+        final double scale = renderParameters.getScale();
+        this.width = (int) (scale * renderParameters.getWidth());
+        this.height = (int) (scale * renderParameters.getHeight());
+        this.firstStrip = null;
+    }
+
+    /**
+     * Renders the first strip so that any rendering problems it encounters can be reported
+     * before the response is committed.  The strip is held until it is written.
+     *
+     * @throws IllegalArgumentException
+     *   if the first strip cannot be rendered.
+     */
+    public void renderFirstStrip()
+            throws IllegalArgumentException {
+        if (firstStrip == null) {
+            firstStrip = ArgbRenderer.renderStrip(renderParameters,
+                                                  imageProcessorCache,
+                                                  0,
+                                                  Math.min(stripHeight, height));
+        }
+    }
+
+    /**
+     * @return true if images with the specified format can be rendered in strips.
+     */
+    public static boolean isSupportedFormat(final String format) {
+        return Utils.PNG_FORMAT.equals(format) || Utils.TIFF_FORMAT.equals(format);
+    }
+
+    @Override
+    public void write(final OutputStream outputStream)
+            throws IOException, WebApplicationException {
+
+        LOG.info("write: entry, format={}, stripHeight={}", format, stripHeight);
+
+        renderFirstStrip();
+
+        final int secondStripRow = firstStrip.getHeight();
+
+        if (Utils.PNG_FORMAT.equals(format)) {
+
+            final ImageInfo imageInfo = new ImageInfo(width, height, 8, true);
+            final PngWriter pngWriter = new PngWriter(outputStream, imageInfo);
+            pngWriter.setCompLevel(6);
+            pngWriter.setFilterType(FilterType.FILTER_PAETH);
+            final ImageLineInt line = new ImageLineInt(imageInfo);
+
+            BufferedImageStreamingOutput.writePngRows(firstStrip, 0, line, pngWriter);
+            firstStrip = null;
+
+            ArgbRenderer.renderStrips(renderParameters,
+                                      imageProcessorCache,
+                                      stripHeight,
+                                      secondStripRow,
+                                      (strip, firstRow) ->
+                                              BufferedImageStreamingOutput.writePngRows(strip,
+                                                                                        firstRow,
+                                                                                        line,
+                                                                                        pngWriter));
+            pngWriter.end();
+
+        } else {
+
+            final StripTiffWriter tiffWriter = new StripTiffWriter(outputStream, width, height);
+
+            tiffWriter.writeRows(firstStrip);
+            firstStrip = null;
+
+            ArgbRenderer.renderStrips(renderParameters,
+                                      imageProcessorCache,
+                                      stripHeight,
+                                      secondStripRow,
+                                      (strip, firstRow) -> tiffWriter.writeRows(strip));
+            tiffWriter.end();
+
+        }
+
+        LOG.info("write: exit");
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(StripRenderStreamingOutput.class);
+
+}
@@ -0,0 +1,171 @@
+package org.janelia.render.service.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an uncompressed baseline 8-bit RGB TIFF image row by row so that an image can be streamed
+ * without ever holding all of its pixels in memory.
+ *
+ * The written image is equivalent to the one produced by {@link org.janelia.alignment.Utils#writeTiffImage}
+ * for ARGB images (alpha values are dropped), but the header is written before any rows
+ * so that rows can be sent as soon as they are rendered.
+ *
+ * @author Eric Trautman
+ */
+public class StripTiffWriter {
+
+    private final DataOutputStream dataOutputStream;
+    private final int width;
+    private final int height;
+    private final byte[] rowBytes;
+    private int numberOfRowsWritten;
+
+    /**
+     * Writes the TIFF header for an image with the specified dimensions.
+     *
+     * @throws IOException
+     *   if the image is too large for a baseline TIFF or the header cannot be written.
+     */
+    public StripTiffWriter(final OutputStream outputStream,
+                           final int width,
+                           final int height)
+            throws IOException {
+
+        final long numberOfPixelBytes = (long) width * height * 3;
+        if ((width < 1) || (height < 1) || (IMAGE_OFFSET + numberOfPixelBytes > MAX_BASELINE_TIFF_BYTES)) {
+            throw new IOException("cannot write " + width + "x" + height + " image as a baseline tiff");
+        }
+
+        this.dataOutputStream = new DataOutputStream(outputStream);
+        this.width = width;
+        this.height = height;
+        this.rowBytes = new byte[width * 3];
+        this.numberOfRowsWritten = 0;
+
+        writeHeader(numberOfPixelBytes);
+    }
+
+    /**
+     * Writes all rows of the specified strip.
+     *
+     * @param  strip  ARGB strip with the same width as the image.
+     *
+     * @throws IOException
+     *   if the strip is invalid, would exceed the image height, or cannot be written.
+     */
+    public void writeRows(final BufferedImage strip)
+            throws IOException {
+
+        if (strip.getType() != BufferedImage.TYPE_INT_ARGB) {
+            throw new IOException("invalid image type (" + strip.getType() +
+                                  "), must be BufferedImage.TYPE_INT_ARGB");
+        }
+
+        if (strip.getWidth() != width) {
+            throw new IOException("strip width " + strip.getWidth() + " differs from image width " + width);
+        }
+
+        if (numberOfRowsWritten + strip.getHeight() > height) {
+            throw new IOException("strip rows exceed image height " + height);
+        }
+
+        final int[] data = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) strip.getSampleModel();
+
+        for (int row = 0; row < strip.getHeight(); row++) {
+            int elem = sampleModel.getOffset(0, row);
+            int byteIndex = 0;
+            for (int col = 0; col < width; col++) {
+                final int argb = data[elem++];
+                rowBytes[byteIndex++] = (byte) (argb >> 16);
+                rowBytes[byteIndex++] = (byte) (argb >> 8);
+                rowBytes[byteIndex++] = (byte) argb;
+            }
+            dataOutputStream.write(rowBytes);
+        }
+
+        numberOfRowsWritten += strip.getHeight();
+    }
+
+    /**
+     * Flushes the image after all rows have been written.
+     *
+     * @throws IOException
+     *   if fewer rows than the image height have been written.
+     */
+    public void end()
+            throws IOException {
+        if (numberOfRowsWritten != height) {
+            throw new IOException("only " + numberOfRowsWritten + " of " + height + " rows were written");
+        }
+        dataOutputStream.flush();
+    }
+
+    private void writeHeader(final long numberOfPixelBytes)
+            throws IOException {
+
+        // big endian ("MM") header with first image file directory immediately after it
+        dataOutputStream.writeShort(0x4D4D);
+        dataOutputStream.writeShort(42);
+        dataOutputStream.writeInt(IFD_OFFSET);
+
+        dataOutputStream.writeShort(NUMBER_OF_IFD_ENTRIES);
+        writeIfdEntry(256, TYPE_LONG, 1, width);                          // ImageWidth
+        writeIfdEntry(257, TYPE_LONG, 1, height);                         // ImageLength
+        writeIfdEntry(258, TYPE_SHORT, 3, BITS_PER_SAMPLE_OFFSET);        // BitsPerSample
+        writeShortIfdEntry(259, 1);                                       // Compression: none
+        writeShortIfdEntry(262, 2);                                       // PhotometricInterpretation: RGB
+        writeIfdEntry(273, TYPE_LONG, 1, IMAGE_OFFSET);                   // StripOffsets
+        writeShortIfdEntry(277, 3);                                       // SamplesPerPixel
+        writeIfdEntry(278, TYPE_LONG, 1, height);                         // RowsPerStrip
+        writeIfdEntry(279, TYPE_LONG, 1, (int) numberOfPixelBytes);       // StripByteCounts
+        dataOutputStream.writeInt(0);                                     // no more image file directories
+
+        // bits per sample values
+        for (int i = 0; i < 3; i++) {
+            dataOutputStream.writeShort(8);
+        }
+
+        // pad to image offset
+        for (int i = dataOutputStream.size(); i < IMAGE_OFFSET; i++) {
+            dataOutputStream.writeByte(0);
+        }
+    }
+
+    private void writeIfdEntry(final int tag,
+                               final int type,
+                               final int count,
+                               final int value)
+            throws IOException {
+        dataOutputStream.writeShort(tag);
+        dataOutputStream.writeShort(type);
+        dataOutputStream.writeInt(count);
+        dataOutputStream.writeInt(value);
+    }
+
+    private void writeShortIfdEntry(final int tag,
+                                    final int value)
+            throws IOException {
+        dataOutputStream.writeShort(tag);
+        dataOutputStream.writeShort(TYPE_SHORT);
+        dataOutputStream.writeInt(1);
+        dataOutputStream.writeShort(value); // short values are left justified within the 4 byte value field
+        dataOutputStream.writeShort(0);
+    }
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+
+    private static final int IFD_OFFSET = 8;
+    private static final int NUMBER_OF_IFD_ENTRIES = 9;
+    private static final int BITS_PER_SAMPLE_OFFSET = IFD_OFFSET + 2 + (NUMBER_OF_IFD_ENTRIES * 12) + 4;
+    private static final int IMAGE_OFFSET = 128;
+
+    // strip offsets and byte counts are unsigned 32-bit values, but keep to signed int range for simplicity
+    private static final long MAX_BASELINE_TIFF_BYTES = Integer.MAX_VALUE;
+}
@@ -201,6 +201,83 @@ public class CoordinateServiceTest {
                            localCoordinates.isVisible());
     }
 
+    @Test
+    public void testMultipleLayerPointsMatchSinglePointResults() throws Exception {
+
+        // points are interleaved across tiles and layers to ensure results are returned in input order
+        final int errorPointIndex = 3;
+        final double[][] points = new double[][]{
+                {9000.0, 7000.0, Z},             // 254 only
+                {8000.0, 7000.0, 3903.1},        // reacquire_a and reacquire_b
+                {8000.0, 5900.0, Z},             // 253 and 254
+                {109010.0, 107010.0, Z},         // outside of all tiles
+                {2000.0, 3000.0, Z},             // 134 only
+                {9010.0, 7010.0, Z}              // 254 only
+        };
+
+        final List<TileCoordinates> worldCoordinateList = new ArrayList<>();
+        for (final double[] point : points) {
+            worldCoordinateList.add(TileCoordinates.buildWorldInstance(null, point));
+        }
+
+        final List<List<TileCoordinates>> localCoordinatesListOfLists =
+                service.getLocalCoordinates(stackId.getOwner(),
+                                            stackId.getProject(),
+                                            stackId.getStack(),
+                                            null,
+                                            worldCoordinateList);
+
+        Assert.assertEquals("invalid local list size", points.length, localCoordinatesListOfLists.size());
+
+        for (int i = 0; i < points.length; i++) {
+
+            final List<TileCoordinates> batchList = localCoordinatesListOfLists.get(i);
+
+            if (i == errorPointIndex) {
+                Assert.assertEquals("point [" + i + "] should have one error result", 1, batchList.size());
+                Assert.assertTrue("point [" + i + "] should have error", batchList.get(0).hasError());
+                Assert.assertNotNull("point [" + i + "] with error should have world values",
+                                     batchList.get(0).getWorld());
+                continue;
+            }
+
+            final List<TileCoordinates> singleList =
+                    service.getLocalCoordinates(stackId.getOwner(),
+                                                stackId.getProject(),
+                                                stackId.getStack(),
+                                                points[i][0],
+                                                points[i][1],
+                                                points[i][2]);
+
+            Assert.assertEquals("invalid number of tiles for point [" + i + "]",
+                                singleList.size(), batchList.size());
+
+            for (int k = 0; k < singleList.size(); k++) {
+                final String context = "point [" + i + "] tile [" + k + "]";
+                final TileCoordinates single = singleList.get(k);
+                final TileCoordinates batch = batchList.get(k);
+                Assert.assertFalse(context + " should not have error", batch.hasError());
+                Assert.assertEquals(context + " has invalid tileId", single.getTileId(), batch.getTileId());
+                Assert.assertEquals(context + " has invalid visibility", single.isVisible(), batch.isVisible());
+                Assert.assertArrayEquals(context + " has invalid local values",
+                                         single.getLocal(), batch.getLocal(), ACCEPTABLE_DELTA);
+            }
+        }
+
+        // for overlapping tiles, the last tile (sorted by tileId) is visible
+        final List<TileCoordinates> reacquireList = localCoordinatesListOfLists.get(1);
+        Assert.assertEquals("invalid visible tile for point in layer with duplicate tiles",
+                            "reacquire_b", reacquireList.get(reacquireList.size() - 1).getTileId());
+        Assert.assertTrue("last tile should be visible for point in layer with duplicate tiles",
+                          reacquireList.get(reacquireList.size() - 1).isVisible());
+
+        final List<TileCoordinates> overlapList = localCoordinatesListOfLists.get(2);
+        Assert.assertEquals("invalid visible tile for point in overlapping tiles",
+                            ID_FOR_TILE_WITH_REAL_TRANSFORMS, overlapList.get(overlapList.size() - 1).getTileId());
+        Assert.assertTrue("last tile should be visible for point in overlapping tiles",
+                          overlapList.get(overlapList.size() - 1).isVisible());
+    }
+
     private void validateCoordinates(final String context,
                                      final TileCoordinates coordinates,
                                      final String expectedTileId,
@@ -0,0 +1,47 @@
+package org.janelia.render.service.dao;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.Matches;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JacksonBsonCodec} class.
+ *
+ * @author Eric Trautman
+ */
+public class JacksonBsonCodecTest {
+
+    @Test
+    public void testCanvasMatchesRoundTrip() {
+
+        final Matches matches = new Matches(new double[][] { { 1.0, 2.5 }, { 3.0, 4.25 } },
+                                            new double[][] { { 5.0, 6.0 }, { 7.5, 8.0 } },
+                                            new double[] { 1.0, 0.5 });
+        final CanvasMatches canvasMatches = new CanvasMatches("1.0", "tileA", "2.0", "tileB", matches);
+
+        final Codec<CanvasMatches> codec =
+                RenderCodecProvider.REGISTRY.get(CanvasMatches.class);
+
+        final BsonDocument encodedDocument = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(encodedDocument), canvasMatches, EncoderContext.builder().build());
+
+        Assert.assertEquals("encoded document should match document parsed from JSON",
+                            BsonDocument.parse(canvasMatches.toJson()), encodedDocument);
+
+        // mongo adds an _id to stored documents, make sure it is ignored
+        encodedDocument.put("_id", new org.bson.BsonObjectId());
+
+        final CanvasMatches decodedMatches =
+                codec.decode(new BsonDocumentReader(encodedDocument), DecoderContext.builder().build());
+
+        Assert.assertEquals("invalid decoded matches", canvasMatches.toJson(), decodedMatches.toJson());
+    }
+
+}
@@ -169,6 +169,24 @@ public class RenderDaoReadOnlyTest {
         Assert.assertEquals("invalid tileId retrieved", existingTileId, tileSpec.getTileId());
     }
 
+    @Test
+    public void testGetResolvedTileSpecUsesSpecCache() {
+        final ResolvedTransformSpecCache specCache = new ResolvedTransformSpecCache(1000);
+        final RenderDao cachingDao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                                                   new TileBoundsIndexCache(0),
+                                                   specCache,
+                                                   new TileSpecBulkWriter(TileSpecBulkWriter.DEFAULT_BATCH_SIZE, 1));
+
+        final String tileIdWithReferences = "134";
+        final TileSpec tileSpec = cachingDao.getTileSpec(stackId, tileIdWithReferences, true);
+        Assert.assertTrue("transforms should be fully resolved", tileSpec.getTransforms().isFullyResolved());
+        Assert.assertTrue("resolved specs should be cached for single tile requests", specCache.size() > 0);
+
+        final TileSpec cachedTileSpec = cachingDao.getTileSpec(stackId, tileIdWithReferences, true);
+        Assert.assertTrue("cached transforms should be fully resolved",
+                          cachedTileSpec.getTransforms().isFullyResolved());
+    }
+
     @Test
     public void testGetTileSpecs() {
         final List<TileSpec> list = dao.getTileSpecs(stackId, 3903.0);
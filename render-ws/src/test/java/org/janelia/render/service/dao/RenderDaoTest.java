@@ -1,18 +1,24 @@
 package org.janelia.render.service.dao;
 
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
+import org.bson.Document;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LayoutData;
 import org.janelia.alignment.spec.LeafTransformSpec;
 import org.janelia.alignment.spec.ListTransformSpec;
 import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.SectionData;
 import org.janelia.alignment.spec.TileBounds;
 import org.janelia.alignment.spec.TileSpec;
@@ -52,6 +58,11 @@ public class RenderDaoTest {
 
     @Before
     public void setUp() throws Exception {
+        // remove derived data left by prior tests
+        final MongoDatabase renderDatabase = embeddedMongoDb.getMongoClient().getDatabase(RenderDao.RENDER_DB_NAME);
+        renderDatabase.getCollection(stackId.getSectionCollectionName()).drop();
+        renderDatabase.getCollection(RenderDao.STACK_CHANGED_LAYERS_COLLECTION_NAME).drop();
+
         embeddedMongoDb.importCollection(RenderDao.STACK_META_DATA_COLLECTION_NAME,
                                          new File("src/test/resources/mongodb/admin__stack_meta_data.json"),
                                          true,
@@ -228,6 +239,56 @@ public class RenderDaoTest {
         Assert.assertEquals("invalid number of sections found for filtered list", 2, filteredList.size());
     }
 
+    @Test
+    public void testDeriveStatsForChangedLayers() throws Exception {
+
+        dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        dao.removeTilesWithZ(stackId, 3903.1);
+        dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        StackStats stats = dao.getStackMetaData(stackId).getStats();
+        Assert.assertEquals("invalid tile count after layer removal", new Long(12), stats.getTileCount());
+        Assert.assertEquals("invalid section count after layer removal", new Long(1), stats.getSectionCount());
+        Assert.assertEquals("invalid max z after layer removal", 3903.0, stats.getStackBounds().getMaxZ(), 0.01);
+        Assert.assertEquals("invalid number of sections found after layer removal",
+                            2, dao.getSectionData(stackId, null, null).size());
+
+        dao.updateZForTiles(stackId, 3904.0, Collections.singletonList("134"));
+        dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        stats = dao.getStackMetaData(stackId).getStats();
+        Assert.assertEquals("invalid tile count after z update", new Long(12), stats.getTileCount());
+        Assert.assertEquals("invalid section count after z update", new Long(2), stats.getSectionCount());
+        Assert.assertEquals("invalid max z after z update", 3904.0, stats.getStackBounds().getMaxZ(), 0.01);
+
+        final MongoCollection<Document> changedLayersCollection =
+                embeddedMongoDb.getMongoClient().getDatabase(RenderDao.RENDER_DB_NAME).getCollection(
+                        RenderDao.STACK_CHANGED_LAYERS_COLLECTION_NAME);
+        Assert.assertEquals("changed layers should be cleared after derivation",
+                            0, changedLayersCollection.countDocuments());
+    }
+
+    @Test
+    public void testDeriveStatsForUnrecordedLayerChange() throws Exception {
+
+        dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        // move a tile to a new layer without recording the change (tile count stays the same)
+        final MongoCollection<Document> tileCollection =
+                embeddedMongoDb.getMongoClient().getDatabase(RenderDao.RENDER_DB_NAME).getCollection(
+                        stackId.getTileCollectionName());
+        tileCollection.updateOne(new Document("tileId", "134"),
+                                 new Document("$set", new Document("z", 3904.0)));
+
+        dao.ensureIndexesAndDeriveStats(dao.getStackMetaData(stackId));
+
+        final StackStats stats = dao.getStackMetaData(stackId).getStats();
+        Assert.assertEquals("invalid tile count after unrecorded change", new Long(14), stats.getTileCount());
+        Assert.assertEquals("invalid section count after unrecorded change", new Long(3), stats.getSectionCount());
+        Assert.assertEquals("invalid max z after unrecorded change", 3904.0, stats.getStackBounds().getMaxZ(), 0.01);
+    }
+
     @Test
     public void testRemoveStack() throws Exception {
 
@@ -361,6 +422,54 @@ public class RenderDaoTest {
         Assert.assertTrue("tileSpec is missing transforms after update", tileSpec.hasTransforms());
     }
 
+    @Test
+    public void testSaveResolvedTilesInParallelBatches() throws Exception {
+
+        final MongoCollection<Document> tileCollection =
+                embeddedMongoDb.getMongoClient().getDatabase(RenderDao.RENDER_DB_NAME).getCollection(
+                        stackId.getTileCollectionName());
+        // imported collection has no tileId index, so the save must create it before batches are written
+        Assert.assertEquals("imported collection should only have default _id index",
+                            1, tileCollection.listIndexes().into(new ArrayList<>()).size());
+
+        final RenderDao batchDao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                                                 new TileBoundsIndexCache(0),
+                                                 new ResolvedTransformSpecCache(0),
+                                                 new TileSpecBulkWriter(2, 2));
+
+        final String existingTileId = "134";
+        final String changedTemca = "changed";
+        final TileSpec existingTileSpec = batchDao.getTileSpec(stackId, existingTileId, false);
+        existingTileSpec.setLayout(new LayoutData("s123", changedTemca, null, null, null, null, null, null));
+
+        final List<TileSpec> tileSpecs = new ArrayList<>();
+        tileSpecs.add(existingTileSpec);
+        for (int i = 0; i < 4; i++) {
+            final TileSpec tileSpec = new TileSpec();
+            tileSpec.setTileId("new-batch-tile-" + i);
+            tileSpec.setZ(3903.0);
+            tileSpecs.add(tileSpec);
+        }
+
+        final long countBeforeSave = tileCollection.countDocuments();
+
+        batchDao.saveResolvedTiles(stackId, new ResolvedTileSpecCollection(new ArrayList<>(), tileSpecs));
+
+        Assert.assertEquals("invalid number of tiles after save",
+                            countBeforeSave + 4, tileCollection.countDocuments());
+        Assert.assertEquals("existing tile should have been replaced, not duplicated",
+                            1, tileCollection.countDocuments(new Document("tileId", existingTileId)));
+
+        final TileSpec replacedTileSpec = batchDao.getTileSpec(stackId, existingTileId, false);
+        Assert.assertEquals("invalid temca retrieved after replace",
+                            changedTemca, replacedTileSpec.getLayout().getTemca());
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertNotNull("missing inserted tile " + i,
+                                 batchDao.getTileSpec(stackId, "new-batch-tile-" + i, false));
+        }
+    }
+
     @Test
     public void testSaveTransformSpec() throws Exception {
 
@@ -0,0 +1,90 @@
+package org.janelia.render.service.dao;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ResolvedTransformSpecCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class ResolvedTransformSpecCacheTest {
+
+    @Test
+    public void testGetResolvedSpecs() throws Exception {
+
+        final ResolvedTransformSpecCache cache = new ResolvedTransformSpecCache(1000);
+        final StackMetaData stackMetaData = buildStackMetaData("testStack", "COMPLETE", 1000);
+        final List<String> specIds = Arrays.asList("lens", "section");
+
+        Assert.assertEquals("empty cache should miss all specs",
+                            0, cache.getResolvedSpecs(stackMetaData, specIds).size());
+
+        final ListTransformSpec unresolvedSpec = new ListTransformSpec("section", null);
+        unresolvedSpec.addSpec(new ReferenceTransformSpec("lens"));
+
+        cache.putResolvedSpecs(stackMetaData, Arrays.asList(buildLeafSpec("lens"), unresolvedSpec));
+
+        final Map<String, TransformSpec> cachedSpecs = cache.getResolvedSpecs(stackMetaData, specIds);
+        Assert.assertEquals("only resolved spec should be cached",
+                            Collections.singleton("lens"), cachedSpecs.keySet());
+        Assert.assertEquals("invalid size after put", 1, cache.size());
+
+        final StackMetaData otherStackMetaData = buildStackMetaData("otherStack", "COMPLETE", 1000);
+        Assert.assertEquals("specs should not be shared across stacks",
+                            0, cache.getResolvedSpecs(otherStackMetaData, specIds).size());
+        cache.putResolvedSpecs(otherStackMetaData, Collections.singletonList(buildLeafSpec("lens")));
+
+        final StackMetaData modifiedStackMetaData = buildStackMetaData("testStack", "COMPLETE", 2000);
+        Assert.assertEquals("specs should be missed after stack is modified",
+                            0, cache.getResolvedSpecs(modifiedStackMetaData, specIds).size());
+        Assert.assertEquals("stale specs should be removed without affecting other stacks", 1, cache.size());
+
+        cache.putResolvedSpecs(modifiedStackMetaData, Collections.singletonList(buildLeafSpec("lens")));
+        Assert.assertEquals("spec should be cached for modified stack",
+                            1, cache.getResolvedSpecs(modifiedStackMetaData, specIds).size());
+
+        cache.invalidateStack(modifiedStackMetaData.getStackId());
+        Assert.assertEquals("specs should be missed after stack is invalidated",
+                            0, cache.getResolvedSpecs(modifiedStackMetaData, specIds).size());
+        Assert.assertEquals("invalid size after invalidating stack", 1, cache.size());
+    }
+
+    @Test
+    public void testIsCacheable() throws Exception {
+        final ResolvedTransformSpecCache cache = new ResolvedTransformSpecCache(1000);
+        Assert.assertTrue("complete stack should be cacheable",
+                          cache.isCacheable(buildStackMetaData("testStack", "COMPLETE", 1000)));
+        Assert.assertFalse("loading stack should not be cacheable",
+                           cache.isCacheable(buildStackMetaData("testStack", "LOADING", 1000)));
+        Assert.assertFalse("missing stack should not be cacheable",
+                           cache.isCacheable(null));
+        Assert.assertFalse("disabled cache should not cache anything",
+                           new ResolvedTransformSpecCache(0).isCacheable(
+                                   buildStackMetaData("testStack", "COMPLETE", 1000)));
+    }
+
+    private static StackMetaData buildStackMetaData(final String stack,
+                                                    final String state,
+                                                    final long lastModifiedTime) {
+        final StackId stackId = new StackId("testOwner", "testProject", stack);
+        return StackMetaData.fromJson("{\"stackId\": " + stackId.toJson() + ", \"state\": \"" + state +
+                                      "\", \"lastModifiedTimestamp\": " + lastModifiedTime + "}");
+    }
+
+    private static LeafTransformSpec buildLeafSpec(final String id) {
+        return new LeafTransformSpec(id, null, "mpicbg.trakem2.transform.AffineModel2D", "1 0 0 1 0 0");
+    }
+
+}
@@ -0,0 +1,98 @@
+package org.janelia.render.service.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileBoundsIndexCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class TileBoundsIndexCacheTest {
+
+    @Test
+    public void testGetIntersectingTileIds() throws Exception {
+
+        final TileBoundsIndexCache cache = new TileBoundsIndexCache(1000);
+        final StackMetaData stackMetaData = buildStackMetaData("COMPLETE", 1000);
+        final AtomicInteger loadCount = new AtomicInteger(0);
+
+        final TileBoundsIndexCache.TileBoundsLoader loader = (stackId, z) -> {
+            loadCount.incrementAndGet();
+            return buildGrid(z);
+        };
+
+        Assert.assertEquals("invalid tiles for box within one tile",
+                            Collections.singletonList("1.0.1.1"),
+                            cache.getIntersectingTileIds(stackMetaData, 1.0, 110, 110, 120, 120, loader));
+
+        // boundaries are inclusive, just like the Mongo box query
+        Assert.assertEquals("invalid tiles for box touching tile corners",
+                            Arrays.asList("1.0.0.0", "1.0.0.1", "1.0.1.0", "1.0.1.1"),
+                            cache.getIntersectingTileIds(stackMetaData, 1.0, 100, 100, 100, 100, loader));
+
+        Assert.assertEquals("invalid tiles for box that misses tiles by a tiny amount",
+                            Collections.singletonList("1.0.1.1"),
+                            cache.getIntersectingTileIds(stackMetaData, 1.0, 100.000001, 100.000001, 150, 150, loader));
+
+        Assert.assertEquals("invalid tiles for box outside layer",
+                            Collections.emptyList(),
+                            cache.getIntersectingTileIds(stackMetaData, 1.0, 5000, 5000, 6000, 6000, loader));
+
+        Assert.assertEquals("layer should only be loaded once", 1, loadCount.get());
+
+        cache.getIntersectingTileIds(stackMetaData, 2.0, 0, 0, 10, 10, loader);
+        Assert.assertEquals("second layer should be loaded", 2, loadCount.get());
+
+        final StackMetaData modifiedStackMetaData = buildStackMetaData("COMPLETE", 2000);
+        cache.getIntersectingTileIds(modifiedStackMetaData, 1.0, 0, 0, 10, 10, loader);
+        Assert.assertEquals("layer should be reloaded after stack is modified", 3, loadCount.get());
+        Assert.assertEquals("stale layers should be removed", 1, cache.size());
+
+        cache.invalidateStack(modifiedStackMetaData.getStackId());
+        Assert.assertEquals("invalid size after invalidating stack", 0, cache.size());
+    }
+
+    @Test
+    public void testIsCacheable() throws Exception {
+        final TileBoundsIndexCache cache = new TileBoundsIndexCache(1000);
+        Assert.assertTrue("complete stack should be cacheable",
+                          cache.isCacheable(buildStackMetaData("COMPLETE", 1000)));
+        Assert.assertFalse("loading stack should not be cacheable",
+                           cache.isCacheable(buildStackMetaData("LOADING", 1000)));
+        Assert.assertFalse("missing stack should not be cacheable",
+                           cache.isCacheable(null));
+        Assert.assertFalse("disabled cache should not cache anything",
+                           new TileBoundsIndexCache(0).isCacheable(buildStackMetaData("COMPLETE", 1000)));
+    }
+
+    private static StackMetaData buildStackMetaData(final String state,
+                                                    final long lastModifiedTime) {
+        final StackId stackId = new StackId("testOwner", "testProject", "testStack");
+        return StackMetaData.fromJson("{\"stackId\": " + stackId.toJson() + ", \"state\": \"" + state +
+                                      "\", \"lastModifiedTimestamp\": " + lastModifiedTime + "}");
+    }
+
+    private static List<TileBounds> buildGrid(final Double z) {
+        final List<TileBounds> list = new ArrayList<>();
+        for (int row = 0; row < 10; row++) {
+            for (int column = 0; column < 10; column++) {
+                final double minX = column * 100.0;
+                final double minY = row * 100.0;
+                list.add(new TileBounds(z + "." + row + "." + column, null, z,
+                                        minX, minY, minX + 100.0, minY + 100.0));
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.janelia.render.service.util;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.alignment.spec.stack.StackStats;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.alignment.util.LocalFileCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link EncodedImageCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class EncodedImageCacheTest {
+
+    @Test
+    public void testStackModification() throws Exception {
+
+        final EncodedImageCache cache = new EncodedImageCache(1_000_000L, null);
+        final StackMetaData stackMetaData = buildCompleteStackMetaData("a");
+        final StackMetaData otherStackMetaData = buildCompleteStackMetaData("b");
+        final byte[] image = { 1, 2, 3 };
+
+        cache.put(stackMetaData, "request", image);
+        cache.put(otherStackMetaData, "request", image);
+
+        Assert.assertArrayEquals("image not cached", image, cache.get(stackMetaData, "request"));
+        Assert.assertNull("unknown request should not be cached", cache.get(stackMetaData, "otherRequest"));
+
+        Thread.sleep(5); // make sure modified timestamp changes
+
+        stackMetaData.setState(StackMetaData.StackState.LOADING);
+
+        Assert.assertNull("images for loading stacks should not be cached", cache.get(stackMetaData, "request"));
+        cache.put(stackMetaData, "request", image);
+        Assert.assertEquals("images for loading stacks should not be cached", 2, cache.size());
+
+        stackMetaData.setStats(buildStats());
+
+        Assert.assertNull("images for modified stacks should not be returned", cache.get(stackMetaData, "request"));
+
+        cache.put(stackMetaData, "request", image);
+
+        Assert.assertEquals("stale image not removed", 2, cache.size());
+        Assert.assertArrayEquals("other stack image should still be cached",
+                                 image, cache.get(otherStackMetaData, "request"));
+    }
+
+    @Test
+    public void testDiskTier() throws Exception {
+
+        final File cacheDirectory = Files.createTempDirectory("encoded_image_cache_test_").toFile();
+        try {
+
+            final StackMetaData stackMetaData = buildCompleteStackMetaData("a");
+            final byte[] image = { 4, 5, 6, 7 };
+
+            final EncodedImageCache cache =
+                    new EncodedImageCache(1_000_000L, new LocalFileCache(cacheDirectory, 1_000_000L, ".image"));
+            cache.put(stackMetaData, "request", image);
+
+            // memory caching is disabled for the restarted cache, so image must come from disk
+            final EncodedImageCache restartedCache =
+                    new EncodedImageCache(0, new LocalFileCache(cacheDirectory, 1_000_000L, ".image"));
+            Assert.assertArrayEquals("image not cached on disk", image, restartedCache.get(stackMetaData, "request"));
+
+        } finally {
+            FileUtil.deleteRecursive(cacheDirectory);
+        }
+    }
+
+    private static StackMetaData buildCompleteStackMetaData(final String stackName) {
+        final StackMetaData stackMetaData = new StackMetaData(new StackId("test", "project", stackName), null);
+        stackMetaData.setStats(buildStats());
+        return stackMetaData;
+    }
+
+    private static StackStats buildStats() {
+        return new StackStats(null, 1L, 0L, 1L, 1L, 10, 10, 10, 10, null);
+    }
+
+}
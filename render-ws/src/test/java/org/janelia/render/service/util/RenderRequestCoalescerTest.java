@@ -0,0 +1,148 @@
+package org.janelia.render.service.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderRequestCoalescer} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderRequestCoalescerTest {
+
+    @Test
+    public void testCoalescing() throws Exception {
+
+        final RenderRequestCoalescer coalescer = new RenderRequestCoalescer();
+        final AtomicInteger renderCount = new AtomicInteger(0);
+        final CountDownLatch renderStarted = new CountDownLatch(1);
+        final CountDownLatch releaseRender = new CountDownLatch(1);
+        final byte[] expectedBytes = { 1, 2, 3 };
+
+        final int numberOfRequests = 5;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfRequests);
+        try {
+
+            final List<Future<byte[]>> results = new ArrayList<>();
+            results.add(executorService.submit(
+                    () -> toBytes(coalescer.getImageOutput("a", "test", () -> {
+                        renderCount.incrementAndGet();
+                        renderStarted.countDown();
+                        releaseRender.await();
+                        return toOutput(expectedBytes);
+                    }))));
+
+            Assert.assertTrue("render did not start", renderStarted.await(10, TimeUnit.SECONDS));
+
+            for (int i = 1; i < numberOfRequests; i++) {
+                results.add(executorService.submit(
+                        () -> toBytes(coalescer.getImageOutput("a", "test", () -> {
+                            renderCount.incrementAndGet();
+                            return toOutput(new byte[0]);
+                        }))));
+            }
+
+            waitForWaiters(coalescer, numberOfRequests - 1);
+
+            final RenderRequestCoalescer.Stats inFlightStats = coalescer.getStats();
+            Assert.assertEquals("invalid number of in-flight renders", 1, inFlightStats.getInFlightRenders().size());
+
+            releaseRender.countDown();
+
+            for (final Future<byte[]> result : results) {
+                Assert.assertArrayEquals("invalid result", expectedBytes, result.get(10, TimeUnit.SECONDS));
+            }
+
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        final RenderRequestCoalescer.Stats stats = coalescer.getStats();
+
+        Assert.assertEquals("invalid number of renders", 1, renderCount.get());
+        Assert.assertEquals("invalid request count", numberOfRequests, stats.getRequestCount());
+        Assert.assertEquals("invalid render count", 1, stats.getRenderCount());
+        Assert.assertEquals("invalid coalesced count", numberOfRequests - 1, stats.getCoalescedRequestCount());
+        Assert.assertEquals("invalid buffered render count", 1, stats.getBufferedRenderCount());
+        Assert.assertEquals("in-flight render not removed", 0, stats.getInFlightRenders().size());
+
+        // completed renders are not cached
+        coalescer.getImageOutput("a", "test", () -> {
+            renderCount.incrementAndGet();
+            return toOutput(expectedBytes);
+        });
+        Assert.assertEquals("completed render should not be reused", 2, renderCount.get());
+    }
+
+    @Test
+    public void testSingleRequestIsNotBuffered() throws Exception {
+
+        final RenderRequestCoalescer coalescer = new RenderRequestCoalescer();
+        final StreamingOutput renderedOutput = toOutput(new byte[] { 1, 2, 3 });
+
+        final StreamingOutput imageOutput = coalescer.getImageOutput("a", "test", () -> renderedOutput);
+
+        Assert.assertSame("rendered output should be returned for streaming", renderedOutput, imageOutput);
+
+        final RenderRequestCoalescer.Stats stats = coalescer.getStats();
+        Assert.assertEquals("invalid render count", 1, stats.getRenderCount());
+        Assert.assertEquals("single request should not be buffered", 0, stats.getBufferedRenderCount());
+        Assert.assertEquals("in-flight render not removed", 0, stats.getInFlightRenders().size());
+    }
+
+    @Test
+    public void testFailedRender() throws Exception {
+
+        final RenderRequestCoalescer coalescer = new RenderRequestCoalescer();
+
+        try {
+            coalescer.getImageOutput("a", "test", () -> {
+                throw new IllegalArgumentException("bad request");
+            });
+            Assert.fail("exception should have been thrown");
+        } catch (final IllegalArgumentException e) {
+            Assert.assertEquals("invalid exception", "bad request", e.getMessage());
+        }
+
+        Assert.assertEquals("failed render not removed", 0, coalescer.getStats().getInFlightRenders().size());
+    }
+
+    private static StreamingOutput toOutput(final byte[] bytes) {
+        return outputStream -> outputStream.write(bytes);
+    }
+
+    private static byte[] toBytes(final StreamingOutput output)
+            throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        output.write(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static void waitForWaiters(final RenderRequestCoalescer coalescer,
+                                       final int expectedWaiterCount)
+            throws InterruptedException {
+        for (int attempt = 0; attempt < 1000; attempt++) {
+            final List<RenderRequestCoalescer.InFlightRenderStats> inFlightRenders =
+                    coalescer.getStats().getInFlightRenders();
+            if ((inFlightRenders.size() == 1) && (inFlightRenders.get(0).getWaiterCount() == expectedWaiterCount)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        Assert.fail("coalesced requests never started waiting");
+    }
+
+}
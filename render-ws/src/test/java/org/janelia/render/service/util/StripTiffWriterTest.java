@@ -0,0 +1,73 @@
+package org.janelia.render.service.util;
+
+import ij.ImagePlus;
+import ij.io.Opener;
+import ij.process.ColorProcessor;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link StripTiffWriter} class.
+ *
+ * @author Eric Trautman
+ */
+public class StripTiffWriterTest {
+
+    @Test
+    public void testWriteRows() throws Exception {
+
+        final int width = 7;
+        final int height = 5;
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final StripTiffWriter tiffWriter = new StripTiffWriter(outputStream, width, height);
+        tiffWriter.writeRows(buildStrip(width, 0, 3));
+        tiffWriter.writeRows(buildStrip(width, 3, 2));
+        tiffWriter.end();
+
+        final ImagePlus imagePlus =
+                new Opener().openTiff(new ByteArrayInputStream(outputStream.toByteArray()), "test");
+
+        Assert.assertNotNull("tiff could not be opened", imagePlus);
+        Assert.assertEquals("invalid width", width, imagePlus.getWidth());
+        Assert.assertEquals("invalid height", height, imagePlus.getHeight());
+
+        final ColorProcessor colorProcessor = (ColorProcessor) imagePlus.getProcessor();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Assert.assertEquals("invalid pixel (" + x + ", " + y + ")",
+                                    getRgb(x, y), colorProcessor.get(x, y) & 0x00ffffff);
+            }
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testMissingRows() throws Exception {
+        final StripTiffWriter tiffWriter = new StripTiffWriter(new ByteArrayOutputStream(), 3, 3);
+        tiffWriter.writeRows(buildStrip(3, 0, 2));
+        tiffWriter.end();
+    }
+
+    private static BufferedImage buildStrip(final int width,
+                                            final int firstRow,
+                                            final int numberOfRows) {
+        final BufferedImage strip = new BufferedImage(width, numberOfRows, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < numberOfRows; y++) {
+            for (int x = 0; x < width; x++) {
+                strip.setRGB(x, y, 0xff000000 | getRgb(x, firstRow + y));
+            }
+        }
+        return strip;
+    }
+
+    private static int getRgb(final int x,
+                              final int y) {
+        return ((x * 30) << 16) | ((y * 40) << 8) | ((x + y) * 10);
+    }
+
+}